@@ -0,0 +1,29 @@
+package com.fasterxml.transistore.basic;
+
+import java.util.*;
+
+import com.fasterxml.clustermate.api.msg.ExtensibleType;
+
+/**
+ * Simple value class used for requesting contents of multiple entries
+ * from a node with a single call (see {@link BasicTSPath#STORE_ENTRIES_BATCH}).
+ * Keys are passed in their external String representation
+ * (see {@link BasicTSKeyConverter#keyToString}).
+ */
+public class BasicTSBatchRequest extends ExtensibleType
+{
+    public List<String> keys;
+
+    public BasicTSBatchRequest() { }
+
+    public void addKey(String key) {
+        if (keys == null) {
+            keys = new ArrayList<String>();
+        }
+        keys.add(key);
+    }
+
+    public int size() {
+        return (keys == null) ? 0 : keys.size();
+    }
+}
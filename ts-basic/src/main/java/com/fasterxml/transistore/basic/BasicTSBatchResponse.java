@@ -0,0 +1,75 @@
+package com.fasterxml.transistore.basic;
+
+import java.util.*;
+
+import com.fasterxml.clustermate.api.msg.ExtensibleType;
+
+/**
+ * Response for a {@link BasicTSBatchRequest}: contains one item for each
+ * requested key, in the same order as in request. Items have status
+ * codes with same meaning as for single-entry GETs; entries that
+ * are not included for other reasons (like size limits) should be
+ * fetched individually.
+ */
+public class BasicTSBatchResponse extends ExtensibleType
+{
+    /**
+     * Status for entries included in response
+     */
+    public final static int STATUS_OK = 200;
+
+    /**
+     * Status for entries that were not found (or have been deleted)
+     */
+    public final static int STATUS_NOT_FOUND = 404;
+
+    /**
+     * Status for entries not included because of size limits
+     */
+    public final static int STATUS_TOO_LARGE = 413;
+
+    /**
+     * Status for entries that could not be read due to a problem
+     * on server side
+     */
+    public final static int STATUS_ERROR = 500;
+
+    public List<Item> entries;
+
+    public BasicTSBatchResponse() { }
+
+    public BasicTSBatchResponse(int expSize) {
+        entries = new ArrayList<Item>(expSize);
+    }
+
+    public void addEntry(Item item) {
+        if (entries == null) {
+            entries = new ArrayList<Item>();
+        }
+        entries.add(item);
+    }
+
+    public int size() {
+        return (entries == null) ? 0 : entries.size();
+    }
+
+    /**
+     * Value class for a single entry of the response
+     */
+    public static class Item
+    {
+        public int status;
+
+        /**
+         * Uncompressed contents of the entry, if included
+         */
+        public byte[] data;
+
+        public Item() { }
+
+        public Item(int status, byte[] data) {
+            this.status = status;
+            this.data = data;
+        }
+    }
+}
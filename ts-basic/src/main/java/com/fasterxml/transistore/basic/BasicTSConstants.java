@@ -10,4 +10,18 @@ public interface BasicTSConstants
      * used for grouping files for expiration purposes.
      */
     public final static String TS_QUERY_PARAM_PARTITION_ID = "partition";
+
+    /**
+     * Query parameter used to pass optional absolute expiration time (in
+     * milliseconds since epoch) of resource being PUT; if earlier than
+     * expiration indicated by maximum TTL, entry expires at this time instead.
+     */
+    public final static String TS_QUERY_PARAM_EXPIRES = "expires";
+
+    /**
+     * Custom HTTP header that client may use to indicate how long (in milliseconds)
+     * it is willing to wait for response: if server can not start processing
+     * request before this time has elapsed, it will reject the request with 503.
+     */
+    public final static String TS_HTTP_HEADER_TIMEOUT_MSECS = "X-TS-Timeout";
 }
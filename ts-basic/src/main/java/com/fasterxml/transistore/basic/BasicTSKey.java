@@ -1,5 +1,7 @@
 package com.fasterxml.transistore.basic;
 
+import java.util.Arrays;
+
 import com.fasterxml.clustermate.api.EntryKey;
 import com.fasterxml.storemate.shared.StorableKey;
 import com.fasterxml.storemate.shared.util.WithBytesAsUTF8String;
@@ -44,6 +46,22 @@ public class BasicTSKey
      * Full path, including Partition id as prefix.
      */
     private transient String _externalPath;
+
+    /**
+     * Partition id, if any, decoded lazily (and interned)
+     */
+    private transient String _partitionId;
+
+    /**
+     * Path without partition id, decoded lazily
+     */
+    private transient String _path;
+
+    /**
+     * Routing hash, calculated lazily by {@link BasicTSKeyConverter};
+     * 0 if not yet calculated (since truncated hashes are never 0).
+     */
+    private transient int _routingHash;
     
     /*
     /**********************************************************************
@@ -79,16 +97,33 @@ public class BasicTSKey
     /**********************************************************************
      */
 
+    /**
+     * @return Routing hash calculated earlier, if any; 0 if none
+     */
+    int cachedRoutingHash() {
+        return _routingHash;
+    }
+
+    void cacheRoutingHash(int hash) {
+        _routingHash = hash;
+    }
+
     /**
      * Accessor for getting path part of key, not including partition id.
      */
     public String getPath()
     {
-        String full = getPartitionAndPath();
-        if (_partitionIdLength == 0) {
-            return full;
+        String str = _path;
+        if (str == null) {
+            if (_partitionIdLength == 0) {
+                str = getPartitionAndPath();
+            } else { // only decode path part; length is in bytes, not chars
+                final int offset = BasicTSKeyConverter.DEFAULT_KEY_HEADER_LENGTH + _partitionIdLength;
+                str = _rawKey.withRange(WithBytesAsUTF8String.instance, offset, _rawKey.length() - offset);
+            }
+            _path = str;
         }
-        return full.substring(_partitionIdLength);
+        return str;
     }
 
     /**
@@ -114,7 +149,12 @@ public class BasicTSKey
         if (_partitionIdLength == 0) {
             return null;
         }
-        return getPartitionAndPath().substring(0, _partitionIdLength);
+        String str = _partitionId;
+        if (str == null) {
+            _partitionId = str = _rawKey.withRange(PartitionIdTable.shared(),
+                    BasicTSKeyConverter.DEFAULT_KEY_HEADER_LENGTH, _partitionIdLength);
+        }
+        return str;
     }
 
     public byte[] getPartitionIdAsBytes()
@@ -122,7 +162,13 @@ public class BasicTSKey
         if (_partitionIdLength == 0) {
             return null;
         }
-        return _rawKey.rangeAsBytes(BasicTSKeyConverter.DEFAULT_KEY_HEADER_LENGTH, _partitionIdLength);
+        // NOTE: not using 'StorableKey.rangeAsBytes()', which copies too many bytes
+        return _rawKey.withRange(new WithBytesCallback<byte[]>() {
+            @Override
+            public byte[] withBytes(byte[] buffer, int offset, int length) {
+                return Arrays.copyOfRange(buffer, offset, offset+length);
+            }
+        }, BasicTSKeyConverter.DEFAULT_KEY_HEADER_LENGTH, _partitionIdLength);
     }
 
     /**
@@ -147,6 +193,107 @@ public class BasicTSKey
     public int getPartitionIdLength() {
         return _partitionIdLength;
     }
+
+    /*
+    /**********************************************************************
+    /* Byte-level accessors: no decoding into Strings
+    /**********************************************************************
+     */
+
+    /**
+     * @return Length of the path part of the key, in bytes (UTF-8 encoded)
+     */
+    public int getPathLength() {
+        return _rawKey.length() - BasicTSKeyConverter.DEFAULT_KEY_HEADER_LENGTH - _partitionIdLength;
+    }
+
+    /**
+     * Callback-based accessor for UTF-8 encoded bytes of path part of the key
+     * (not including partition id).
+     */
+    public <T> T withPath(WithBytesCallback<T> cb)
+    {
+        final int offset = BasicTSKeyConverter.DEFAULT_KEY_HEADER_LENGTH + _partitionIdLength;
+        return _rawKey.withRange(cb, offset, _rawKey.length() - offset);
+    }
+
+    /**
+     * Method for checking whether path part of the key starts with given
+     * UTF-8 encoded prefix.
+     */
+    public boolean pathStartsWith(byte[] prefix)
+    {
+        if (prefix.length > getPathLength()) {
+            return false;
+        }
+        final int offset = BasicTSKeyConverter.DEFAULT_KEY_HEADER_LENGTH + _partitionIdLength;
+        for (int i = 0; i < prefix.length; ++i) {
+            if (_rawKey.byteAt(offset+i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method for checking whether partition id of the key equals
+     * given UTF-8 encoded partition id; null or empty array meaning
+     * "no partition id".
+     */
+    public boolean hasPartitionId(byte[] partitionId)
+    {
+        final int len = (partitionId == null) ? 0 : partitionId.length;
+        if (len != _partitionIdLength) {
+            return false;
+        }
+        final int offset = BasicTSKeyConverter.DEFAULT_KEY_HEADER_LENGTH;
+        for (int i = 0; i < len; ++i) {
+            if (_rawKey.byteAt(offset+i) != partitionId[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method for checking whether this key has the same partition id
+     * (or lack thereof) as given key.
+     */
+    public boolean hasSamePartition(BasicTSKey other)
+    {
+        final int len = _partitionIdLength;
+        if (len != other._partitionIdLength) {
+            return false;
+        }
+        // note: header contains the length, so can just compare header too
+        final int end = BasicTSKeyConverter.DEFAULT_KEY_HEADER_LENGTH + len;
+        for (int i = BasicTSKeyConverter.DEFAULT_KEY_HEADER_LENGTH; i < end; ++i) {
+            if (_rawKey.byteAt(i) != other._rawKey.byteAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method for comparing path parts of keys (ignoring partition ids);
+     * ordering is that of UTF-8 encoded bytes (which equals code point
+     * ordering of Strings).
+     */
+    public int comparePathTo(BasicTSKey other)
+    {
+        final int offset1 = BasicTSKeyConverter.DEFAULT_KEY_HEADER_LENGTH + _partitionIdLength;
+        final int offset2 = BasicTSKeyConverter.DEFAULT_KEY_HEADER_LENGTH + other._partitionIdLength;
+        final int len1 = _rawKey.length() - offset1;
+        final int len2 = other._rawKey.length() - offset2;
+        for (int i = 0, end = Math.min(len1, len2); i < end; ++i) {
+            int diff = (_rawKey.byteAt(offset1+i) & 0xFF) - (other._rawKey.byteAt(offset2+i) & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return len1 - len2;
+    }
     
     /*
     /**********************************************************************
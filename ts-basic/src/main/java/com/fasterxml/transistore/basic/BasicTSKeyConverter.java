@@ -3,7 +3,6 @@ package com.fasterxml.transistore.basic;
 import com.fasterxml.storemate.shared.*;
 import com.fasterxml.storemate.shared.hash.*;
 import com.fasterxml.storemate.shared.util.UTF8Encoder;
-import com.fasterxml.storemate.shared.util.WithBytesCallback;
 
 import com.fasterxml.clustermate.api.DecodableRequestPath;
 import com.fasterxml.clustermate.api.EntryKeyConverter;
@@ -33,6 +32,13 @@ public class BasicTSKeyConverter
      */
     protected final BlockHasher32 _hasher;
 
+    /**
+     * Whether routing hashes are memoized in {@link BasicTSKey}s: only done
+     * when default hashing is used, as keys may be shared between
+     * converters.
+     */
+    protected final boolean _cacheRoutingHashes;
+
     /*
     /**********************************************************************
     /* Life-cycle
@@ -45,6 +51,8 @@ public class BasicTSKeyConverter
     
     protected BasicTSKeyConverter(BlockHasher32 blockHasher) {
         _hasher = blockHasher;
+        _cacheRoutingHashes = (getClass() == BasicTSKeyConverter.class)
+                && (blockHasher.getClass() == BlockMurmur3Hasher.class);
     }
     
     /**
@@ -71,19 +79,20 @@ public class BasicTSKeyConverter
     }
     
     @Override
-    public BasicTSKey rawToEntryKey(final StorableKey rawKey) {
-        return rawKey.with(new WithBytesCallback<BasicTSKey>() {
-            @Override
-            public BasicTSKey withBytes(byte[] buffer, int offset, int length) {
-                int partitionIdLength = ((buffer[offset] & 0xFF) << 8)
-                        | (buffer[offset+1] & 0xFF);
-                if (partitionIdLength > length) {
-                    throw new IllegalArgumentException("Invalid partition id length ("+partitionIdLength
-                            +" / 0x"+Integer.toHexString(partitionIdLength)+"): total key length only "+length+")");
-                }
-                return new BasicTSKey(rawKey, partitionIdLength);
-            }
-        });
+    public BasicTSKey rawToEntryKey(final StorableKey rawKey)
+    {
+        // no need for callbacks (or decoding): just need the length header
+        final int length = rawKey.length();
+        if (length < DEFAULT_KEY_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Invalid key: length ("+length+") less than header length ("
+                    +DEFAULT_KEY_HEADER_LENGTH+")");
+        }
+        int partitionIdLength = ((rawKey.byteAt(0) & 0xFF) << 8) | (rawKey.byteAt(1) & 0xFF);
+        if (partitionIdLength > (length - DEFAULT_KEY_HEADER_LENGTH)) {
+            throw new IllegalArgumentException("Invalid partition id length ("+partitionIdLength
+                    +" / 0x"+Integer.toHexString(partitionIdLength)+"): total key length only "+length+")");
+        }
+        return new BasicTSKey(rawKey, partitionIdLength);
     }
 
     @Override
@@ -117,8 +126,93 @@ public class BasicTSKeyConverter
      * regarding given content key.
      */
     @Override
-    public int routingHashFor(BasicTSKey key) {
-        return _truncateHash(rawHashForRouting(key, _hasher));
+    public int routingHashFor(BasicTSKey key)
+    {
+        if (!_cacheRoutingHashes) {
+            return _truncateHash(rawHashForRouting(key, _hasher));
+        }
+        int hash = key.cachedRoutingHash();
+        if (hash == 0) {
+            hash = _truncateHash(rawHashForRouting(key, _hasher));
+            key.cacheRoutingHash(hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Bulk variant of {@link #routingHashFor(BasicTSKey)}, used when building
+     * routing tables for sets of keys.
+     *
+     * @param result Array to store hashes in, if large enough; if not (or null),
+     *   a new array is allocated
+     *
+     * @return Array with routing hashes, at same indexes as respective keys
+     */
+    public int[] routingHashesFor(BasicTSKey[] keys, int[] result)
+    {
+        final int count = keys.length;
+        if (result == null || result.length < count) {
+            result = new int[count];
+        }
+        for (int i = 0; i < count; ++i) {
+            result[i] = routingHashFor(keys[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Bulk variant of {@link #routingHashFor(BasicTSKey)} for raw keys:
+     * hashes are calculated directly from bytes, without constructing
+     * {@link BasicTSKey}s.
+     *
+     * @return Array with routing hashes, at same indexes as respective keys
+     */
+    public int[] rawRoutingHashesFor(StorableKey[] rawKeys)
+    {
+        final BlockHasher32 hasher = _hasher;
+        final int count = rawKeys.length;
+        final int[] result = new int[count];
+        for (int i = 0; i < count; ++i) {
+            final StorableKey rawKey = rawKeys[i];
+            if (!_cacheRoutingHashes) { // sub-class may calculate differently
+                result[i] = routingHashFor(rawToEntryKey(rawKey));
+                continue;
+            }
+            final int length = rawKey.length() - DEFAULT_KEY_HEADER_LENGTH;
+            if (length < 0) {
+                throw new IllegalArgumentException("Invalid raw key at index #"+i
+                        +": length only "+rawKey.length()+" bytes");
+            }
+            int partitionIdLength = ((rawKey.byteAt(0) & 0xFF) << 8) | (rawKey.byteAt(1) & 0xFF);
+            if (partitionIdLength > length) {
+                throw new IllegalArgumentException("Invalid raw key at index #"+i+": partition id length ("
+                        +partitionIdLength+") exceeds key length");
+            }
+            // as with 'rawHashForRouting': partition id if got one, full path otherwise
+            result[i] = _truncateHash(rawKey.hashCode(hasher, DEFAULT_KEY_HEADER_LENGTH,
+                    (partitionIdLength > 0) ? partitionIdLength : length));
+        }
+        return result;
+    }
+
+    /**
+     * Method for extracting partition id of given raw key, without constructing
+     * a {@link BasicTSKey} or decoding the path part of the key. Partition ids
+     * are interned (see {@link PartitionIdTable}), so this usually does not
+     * allocate anything.
+     *
+     * @return Partition id of the key, if it has one; null if not
+     */
+    public String rawToPartitionId(StorableKey rawKey)
+    {
+        if (rawKey.length() < DEFAULT_KEY_HEADER_LENGTH) {
+            return null;
+        }
+        int partitionIdLength = ((rawKey.byteAt(0) & 0xFF) << 8) | (rawKey.byteAt(1) & 0xFF);
+        if (partitionIdLength == 0 || partitionIdLength > (rawKey.length() - DEFAULT_KEY_HEADER_LENGTH)) {
+            return null;
+        }
+        return rawKey.withRange(PartitionIdTable.shared(), DEFAULT_KEY_HEADER_LENGTH, partitionIdLength);
     }
 
     @Override
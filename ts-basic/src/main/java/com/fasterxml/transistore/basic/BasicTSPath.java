@@ -9,6 +9,7 @@ public enum BasicTSPath
     STORE_ENTRY, // single-entry CRUD
     STORE_ENTRY_INFO, // metadata about single entry
     STORE_ENTRIES, // multi-entry listings
+    STORE_ENTRIES_BATCH, // multi-entry GET for given set of keys (no batch PUT/DELETE yet)
     STORE_STATUS, // diagnostics interface
 
     // re-routing store access
@@ -23,6 +24,7 @@ public enum BasicTSPath
     // access to (local) sync information
     SYNC_LIST, // request for change list (ids)
     SYNC_PULL, // request for specific (changed/new) entries
+    SYNC_LAST_ACCESS, // request for last-access timestamps of entries
 
     // access to remote sync information
     REMOTE_STATUS, // alias for "NODE_STATUS"
@@ -14,6 +14,7 @@ import com.fasterxml.clustermate.api.RequestPathStrategy;
  *  <ul>
  *    <li>".../store/entry" for single-entry access</li>
  *    <li>".../store/entries" for range (ordered multi-entry) access</li>
+ *    <li>".../store/batch" for access to multiple entries by key</li>
  *    <li>".../store/status" for store status (admin interface)</li>
  *    <li>".../store/findEntry" for redirecting single-entry</li>
  *    <li>".../store/findList" for redirecting range access</li>
@@ -30,6 +31,7 @@ import com.fasterxml.clustermate.api.RequestPathStrategy;
  *  <ul>
  *    <li>".../sync/list" for accessing metadata for changes</li>
  *    <li>".../sync/pull" for pulling entries to sync</li>
+ *    <li>".../sync/lastAccess" for checking last-access timestamps of entries</li>
  *  </ul>
  * <li>Intra-cluster (remotely-called) entries under ".../remote/":
  *  <ul>
@@ -49,6 +51,7 @@ public class BasicTSPaths extends RequestPathStrategy<BasicTSPath>
     protected final static String SEGMENT_ENTRY = "entry";
     protected final static String SEGMENT_ENTRY_INFO = "entryInfo";
     protected final static String SEGMENT_ENTRIES = "entries";
+    protected final static String SEGMENT_BATCH = "batch";
     protected final static String SEGMENT_STATUS = "status";
     protected final static String SEGMENT_FIND_ENTRY = "findEntry";
     protected final static String SEGMENT_FIND_ENTRIES = "findEntries";
@@ -58,6 +61,7 @@ public class BasicTSPaths extends RequestPathStrategy<BasicTSPath>
 
     protected final static String SEGMENT_LIST = "list";
     protected final static String SEGMENT_PULL = "pull";
+    protected final static String SEGMENT_LAST_ACCESS = "lastAccess";
 
     /*
     /**********************************************************************
@@ -80,6 +84,8 @@ public class BasicTSPaths extends RequestPathStrategy<BasicTSPath>
             return appendStoreEntryInfoPath(basePath);
         case STORE_ENTRIES:
             return appendStoreListPath(basePath);
+        case STORE_ENTRIES_BATCH:
+            return appendStoreBatchPath(basePath);
 
         case STORE_FIND_ENTRY:
             return _storePath(basePath).addPathSegment(SEGMENT_FIND_ENTRY);
@@ -92,6 +98,8 @@ public class BasicTSPaths extends RequestPathStrategy<BasicTSPath>
             return appendSyncListPath(basePath);
         case SYNC_PULL:
             return appendSyncPullPath(basePath);
+        case SYNC_LAST_ACCESS:
+            return appendSyncLastAccessPath(basePath);
 
         case REMOTE_STATUS:
             return appendNodeStatusPath(basePath);
@@ -124,6 +132,14 @@ public class BasicTSPaths extends RequestPathStrategy<BasicTSPath>
         return _storePath(basePath).addPathSegment(SEGMENT_ENTRIES);
     }
 
+    /**
+     * Method for building path used for fetching multiple entries, by key,
+     * with a single request.
+     */
+    public <B extends RequestPathBuilder<B>> B appendStoreBatchPath(B basePath) {
+        return _storePath(basePath).addPathSegment(SEGMENT_BATCH);
+    }
+
     /*
     /**********************************************************************
     /* Path building, server-side sync requests
@@ -140,6 +156,14 @@ public class BasicTSPaths extends RequestPathStrategy<BasicTSPath>
         return _localSyncPath(basePath).addPathSegment(SEGMENT_PULL);
     }
 
+    /**
+     * Method for building path used by peers to check last-access timestamps
+     * of entries, before removing them.
+     */
+    public <B extends RequestPathBuilder<B>> B appendSyncLastAccessPath(B basePath) {
+        return _localSyncPath(basePath).addPathSegment(SEGMENT_LAST_ACCESS);
+    }
+
     @Override
     public <B extends RequestPathBuilder<B>> B appendNodeStatusPath(B basePath) {
         return _nodePath(basePath).addPathSegment(SEGMENT_STATUS);
@@ -185,6 +209,9 @@ public class BasicTSPaths extends RequestPathStrategy<BasicTSPath>
             if (pathDecoder.matchPathSegment(SEGMENT_ENTRY_INFO)) {
                 return BasicTSPath.STORE_ENTRY_INFO;
             }
+            if (pathDecoder.matchPathSegment(SEGMENT_BATCH)) {
+                return BasicTSPath.STORE_ENTRIES_BATCH;
+            }
         } else if (pathDecoder.matchPathSegment(FIRST_SEGMENT_NODE)) {
             if (pathDecoder.matchPathSegment(SEGMENT_STATUS)) {
                 return BasicTSPath.NODE_STATUS;
@@ -199,6 +226,9 @@ public class BasicTSPaths extends RequestPathStrategy<BasicTSPath>
             if (pathDecoder.matchPathSegment(SEGMENT_PULL)) {
                 return BasicTSPath.SYNC_PULL;
             }
+            if (pathDecoder.matchPathSegment(SEGMENT_LAST_ACCESS)) {
+                return BasicTSPath.SYNC_LAST_ACCESS;
+            }
         } else if (pathDecoder.matchPathSegment(FIRST_SEGMENT_REMOTE)) {
             if (pathDecoder.matchPathSegment(SEGMENT_SYNC)) {
                 if (pathDecoder.matchPathSegment(SEGMENT_LIST)) {
@@ -0,0 +1,134 @@
+package com.fasterxml.transistore.basic;
+
+import java.io.*;
+import java.net.*;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import com.fasterxml.storemate.shared.util.IOUtil;
+
+import com.fasterxml.clustermate.api.ContentType;
+
+import static com.fasterxml.clustermate.api.ClusterMateConstants.*;
+
+/**
+ * Helper class for making POST calls with JSON request and response,
+ * using JDK HTTP client. Used for calls that are not supported by
+ * ClusterMate network clients, both between peer nodes (last-access
+ * checks) and from clients to servers (batch GETs).
+ *
+ * @param <REQ> Type of request message
+ * @param <RESP> Type of response message
+ */
+public class JdkJsonPoster<REQ,RESP>
+{
+    protected final ObjectWriter _requestWriter;
+
+    protected final ObjectReader _responseReader;
+
+    public JdkJsonPoster(ObjectWriter requestWriter, ObjectReader responseReader)
+    {
+        _requestWriter = requestWriter;
+        _responseReader = responseReader;
+    }
+
+    /**
+     * Method for sending given request to specified URL, and reading
+     * response sent.
+     *
+     * @param timeoutMsecs Read timeout to use; half of it is used as the
+     *   connect timeout
+     * @param headers Additional request headers to send, if any (may be null)
+     *
+     * @return Response read, if call succeeded
+     *
+     * @throws Failure If call could not be made, server responded with a non-2xx
+     *   status code, or response could not be read
+     */
+    public RESP post(String url, REQ request, long timeoutMsecs, Map<String,String> headers)
+        throws Failure
+    {
+        HttpURLConnection conn;
+        OutputStream out = null;
+        try {
+            byte[] payload = _requestWriter.writeValueAsBytes(request);
+            conn = (HttpURLConnection) new URL(url).openConnection();
+            conn.setRequestMethod("POST");
+            conn.setAllowUserInteraction(false);
+            conn.setUseCaches(false);
+            conn.setDoOutput(true);
+            conn.setDoInput(true);
+            conn.setRequestProperty(HTTP_HEADER_CONTENT_TYPE, ContentType.JSON.toString());
+            if (headers != null) {
+                for (Map.Entry<String,String> entry : headers.entrySet()) {
+                    conn.setRequestProperty(entry.getKey(), entry.getValue());
+                }
+            }
+            // let's give only half to connect; more likely we detect down servers on connect
+            conn.setConnectTimeout((int) (timeoutMsecs/2));
+            conn.setReadTimeout((int) timeoutMsecs);
+            conn.setFixedLengthStreamingMode(payload.length);
+            conn.connect();
+            out = conn.getOutputStream();
+            out.write(payload);
+            out.close();
+            out = null;
+        } catch (Exception e) {
+            throw new Failure(0, "failed on send with Exception ("+e.getClass().getName()+"): "
+                    +e.getMessage());
+        } finally {
+            if (out != null) {
+                try { out.close(); } catch (IOException e) { }
+            }
+        }
+
+        int statusCode;
+        try {
+            statusCode = conn.getResponseCode();
+            if (IOUtil.isHTTPSuccess(statusCode)) {
+                InputStream in = conn.getInputStream();
+                try {
+                    return _responseReader.readValue(in);
+                } finally {
+                    try {
+                        in.close();
+                    } catch (Exception e) { }
+                }
+            }
+        } catch (Exception e) {
+            throw new Failure(0, "failed on response with Exception ("+e.getClass().getName()+"): "
+                    +e.getMessage());
+        }
+        String msg = "N/A";
+        try {
+            msg = IOUtil.getExcerpt(conn.getErrorStream());
+        } catch (Exception e) { }
+        throw new Failure(statusCode, "status code "+statusCode+", response excerpt: "+msg);
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Exception used to indicate that a call failed.
+     */
+    @SuppressWarnings("serial")
+    public static class Failure extends IOException
+    {
+        /**
+         * HTTP status code server responded with; 0 if call failed
+         * before getting a response
+         */
+        public final int statusCode;
+
+        public Failure(int statusCode, String msg) {
+            super(msg);
+            this.statusCode = statusCode;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.fasterxml.transistore.basic;
+
+import java.util.Arrays;
+
+import com.fasterxml.storemate.shared.util.WithBytesAsUTF8String;
+import com.fasterxml.storemate.shared.util.WithBytesCallback;
+
+/**
+ * Table used for interning partition ids decoded from raw keys: since
+ * number of distinct partition ids is typically small (hundreds), and
+ * same ids are decoded over and over again (for listing, sync, throttling),
+ * it makes sense to reuse decoded Strings instead of creating new ones
+ * for every key.
+ *<p>
+ * Table is a fixed-size direct-mapped cache: each UTF-8 byte sequence
+ * maps to a single slot, and a miss (or collision) simply replaces the
+ * slot contents. Lookups for hits do not allocate anything, nor do they
+ * need synchronization, since slots contain immutable entries.
+ */
+public class PartitionIdTable
+    implements WithBytesCallback<String>
+{
+    public final static int DEFAULT_SIZE = 1024;
+
+    private final static PartitionIdTable SHARED = new PartitionIdTable(DEFAULT_SIZE);
+
+    /**
+     * Partition ids longer than this (in bytes) are not interned
+     */
+    protected final static int MAX_LENGTH_TO_INTERN = 100;
+
+    protected final Entry[] _entries;
+
+    protected final int _mask;
+
+    /**
+     * @param size Number of slots; rounded up to the next power of two
+     */
+    public PartitionIdTable(int size)
+    {
+        int actual = 16;
+        while (actual < size) {
+            actual += actual;
+        }
+        _entries = new Entry[actual];
+        _mask = actual - 1;
+    }
+
+    /**
+     * Accessor for the table shared by all keys
+     */
+    public static PartitionIdTable shared() {
+        return SHARED;
+    }
+
+    /**
+     * Method for finding interned partition id for given UTF-8 encoded
+     * byte sequence; decoding and adding it to the table if not yet included.
+     */
+    public String find(byte[] buffer, int offset, int length)
+    {
+        if (length > MAX_LENGTH_TO_INTERN) {
+            return WithBytesAsUTF8String.instance.withBytes(buffer, offset, length);
+        }
+        final int hash = _hash(buffer, offset, length);
+        final int ix = hash & _mask;
+        Entry entry = _entries[ix];
+        if (entry != null && entry.hash == hash && entry.matches(buffer, offset, length)) {
+            return entry.id;
+        }
+        String id = WithBytesAsUTF8String.instance.withBytes(buffer, offset, length);
+        _entries[ix] = new Entry(hash, Arrays.copyOfRange(buffer, offset, offset+length), id);
+        return id;
+    }
+
+    @Override
+    public String withBytes(byte[] buffer, int offset, int length) {
+        return find(buffer, offset, length);
+    }
+
+    protected static int _hash(byte[] buffer, int offset, int length)
+    {
+        int hash = length;
+        for (int i = offset, end = offset+length; i < end; ++i) {
+            hash = (hash * 31) + buffer[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    protected final static class Entry
+    {
+        public final int hash;
+
+        public final byte[] bytes;
+
+        public final String id;
+
+        public Entry(int hash, byte[] bytes, String id) {
+            this.hash = hash;
+            this.bytes = bytes;
+            this.id = id;
+        }
+
+        public boolean matches(byte[] buffer, int offset, int length)
+        {
+            final byte[] b = bytes;
+            if (b.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; ++i) {
+                if (b[i] != buffer[offset+i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package com.fasterxml.transistore.basic;
 
+import java.util.Arrays;
+
 import junit.framework.TestCase;
 
+import com.fasterxml.storemate.shared.StorableKey;
+
 public class BasicTSKeyTest  extends TestCase
 {
     protected final BasicTSKeyConverter _keyConverter = BasicTSKeyConverter.defaultInstance();
@@ -14,7 +18,7 @@ public class BasicTSKeyTest  extends TestCase
         assertNull(key.getPartitionIdAsBytes());
     }
 
-    public void testKeyWithPartition()
+    public void testKeyWithPartition() throws Exception
     {
         final String PARTITION_STR = "gruppo";
         final String PATH = "/another/key";
@@ -22,6 +26,7 @@ public class BasicTSKeyTest  extends TestCase
         
         assertEquals("tstore://"+PARTITION_STR+"@"+PATH, key.toString());
         assertEquals(PARTITION_STR, key.getPartitionId());
+        assertEquals(PARTITION_STR, new String(key.getPartitionIdAsBytes(), "UTF-8"));
         byte[] b = key.asBytes();
         assertEquals(2 + PARTITION_STR.length() + PATH.length(), b.length);
 
@@ -55,4 +60,87 @@ public class BasicTSKeyTest  extends TestCase
         assertNull(key.getPartitionId());
         assertEquals("/dir/file2", key.getPath());
     }
+
+    public void testNonAsciiPartition() throws Exception
+    {
+        // partition id length is in bytes, so must not be used as char index
+        final String PARTITION_STR = "gr\u00FCppe";
+        BasicTSKey key = _keyConverter.construct(PARTITION_STR, "/path");
+        BasicTSKey key2 = _keyConverter.construct(key.asBytes());
+        assertEquals(PARTITION_STR, key2.getPartitionId());
+        assertEquals("/path", key2.getPath());
+        assertEquals(PARTITION_STR+"/path", key2.getPartitionAndPath());
+    }
+
+    public void testPartitionIdInterning() throws Exception
+    {
+        BasicTSKey key1 = _keyConverter.construct(_keyConverter.construct("part1", "/a").asBytes());
+        BasicTSKey key2 = _keyConverter.construct(_keyConverter.construct("part1", "/b").asBytes());
+        assertEquals("part1", key1.getPartitionId());
+        assertSame(key1.getPartitionId(), key2.getPartitionId());
+        assertSame(key1.getPartitionId(), _keyConverter.rawToPartitionId(key2.asStorableKey()));
+
+        // even with collisions, must get right ids
+        PartitionIdTable table = new PartitionIdTable(16);
+        for (int i = 0; i < 100; ++i) {
+            byte[] b = ("p"+i).getBytes("UTF-8");
+            assertEquals("p"+i, table.find(b, 0, b.length));
+            assertEquals("p"+i, table.find(b, 0, b.length));
+        }
+    }
+
+    public void testByteAccessors() throws Exception
+    {
+        BasicTSKey key = _keyConverter.construct("team1", "/dir/file");
+        assertEquals(9, key.getPathLength());
+        assertTrue(key.pathStartsWith("/dir/".getBytes("UTF-8")));
+        assertTrue(key.pathStartsWith(new byte[0]));
+        assertFalse(key.pathStartsWith("/dir/file2".getBytes("UTF-8")));
+        assertFalse(key.pathStartsWith("team1".getBytes("UTF-8")));
+
+        assertTrue(key.hasPartitionId("team1".getBytes("UTF-8")));
+        assertFalse(key.hasPartitionId("team2".getBytes("UTF-8")));
+        assertFalse(key.hasPartitionId(null));
+        assertTrue(_keyConverter.construct("/dir/file").hasPartitionId(null));
+
+        BasicTSKey other = _keyConverter.construct("team1", "/dir/other");
+        assertTrue(key.hasSamePartition(other));
+        assertFalse(key.hasSamePartition(_keyConverter.construct("team2", "/dir/file")));
+        assertFalse(key.hasSamePartition(_keyConverter.construct("/dir/file")));
+
+        assertTrue(key.comparePathTo(other) < 0);
+        assertTrue(other.comparePathTo(key) > 0);
+        assertEquals(0, key.comparePathTo(_keyConverter.construct("team2", "/dir/file")));
+        assertTrue(key.comparePathTo(_keyConverter.construct("/dir/file2")) < 0);
+    }
+
+    public void testRoutingHashes() throws Exception
+    {
+        // sub-classes do not memoize hashes, so can verify against one
+        BasicTSKeyConverter uncached = new BasicTSKeyConverter() { };
+        BasicTSKey[] keys = new BasicTSKey[] {
+                _keyConverter.construct("team1", "/dir/file"),
+                _keyConverter.construct("team1", "/dir/other"),
+                _keyConverter.construct("/dir/file"),
+                _keyConverter.construct("p\u00e4rt", "/caf\u00e9"),
+        };
+        int[] expHashes = new int[keys.length];
+        StorableKey[] rawKeys = new StorableKey[keys.length];
+        for (int i = 0; i < keys.length; ++i) {
+            expHashes[i] = uncached.routingHashFor(keys[i]);
+            assertEquals(0, keys[i].cachedRoutingHash());
+            rawKeys[i] = keys[i].asStorableKey();
+        }
+        // same partition, same hash
+        assertEquals(expHashes[0], expHashes[1]);
+
+        assertTrue(Arrays.equals(expHashes, _keyConverter.routingHashesFor(keys, null)));
+        for (int i = 0; i < keys.length; ++i) {
+            // memoized now
+            assertEquals(expHashes[i], keys[i].cachedRoutingHash());
+            assertEquals(expHashes[i], _keyConverter.routingHashFor(keys[i]));
+        }
+        assertTrue(Arrays.equals(expHashes, _keyConverter.rawRoutingHashesFor(rawKeys)));
+        assertTrue(Arrays.equals(expHashes, uncached.rawRoutingHashesFor(rawKeys)));
+    }
 }
@@ -0,0 +1,60 @@
+package com.fasterxml.transistore.benchmark;
+
+import java.util.Random;
+
+import com.fasterxml.storemate.shared.ByteContainer;
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.shared.compress.Compression;
+import com.fasterxml.storemate.store.Storable;
+import com.fasterxml.storemate.store.StorableCreationMetadata;
+import com.fasterxml.storemate.store.impl.StorableConverter;
+
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSKeyConverter;
+
+/**
+ * Helper class for generating reproducible sets of keys and entries
+ * for benchmarks; keys resemble ones used in production: partition id
+ * followed by a hierarchic path.
+ */
+public class BenchmarkData
+{
+    /**
+     * Number of distinct keys benchmarks cycle through; big enough
+     * to avoid measuring just cache-hot single-key access.
+     */
+    public final static int KEY_COUNT = 1024;
+
+    private BenchmarkData() { }
+
+    public static BasicTSKey[] keys(BasicTSKeyConverter conv, int count)
+    {
+        Random rnd = new Random(count);
+        BasicTSKey[] result = new BasicTSKey[count];
+        for (int i = 0; i < count; ++i) {
+            String partition = "partition"+(i % 16);
+            String path = "data/"+Integer.toHexString(rnd.nextInt())
+                    +"/item-"+i+"/"+Long.toHexString(rnd.nextLong())+".json";
+            result[i] = conv.construct(partition, path);
+        }
+        return result;
+    }
+
+    /**
+     * Method for constructing an entry with inlined (uncompressed) data,
+     * as store would for small content. Entry is round-tripped through
+     * its serialized form, since that is how entries are read from
+     * backends (and offsets of freshly encoded instance are not usable
+     * for reading metadata).
+     */
+    public static Storable inlinedEntry(StorableConverter conv, StorableKey key,
+            long modtime, int contentHash, ByteContainer customMetadata, byte[] data)
+    {
+        StorableCreationMetadata stdMetadata = new StorableCreationMetadata(Compression.NONE,
+                contentHash, 0);
+        stdMetadata.storageSize = data.length;
+        Storable entry = conv.encodeInlined(key, modtime, stdMetadata, customMetadata,
+                ByteContainer.simple(data));
+        return conv.decode(key, entry.asBytes());
+    }
+}
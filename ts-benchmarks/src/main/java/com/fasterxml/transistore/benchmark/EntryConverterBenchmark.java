@@ -0,0 +1,78 @@
+package com.fasterxml.transistore.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.fasterxml.storemate.shared.ByteContainer;
+import com.fasterxml.storemate.store.Storable;
+import com.fasterxml.storemate.store.impl.StorableConverter;
+
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSKeyConverter;
+import com.fasterxml.transistore.service.BasicTSEntry;
+import com.fasterxml.transistore.service.BasicTSEntryConverter;
+import com.fasterxml.transistore.service.BasicTSMetadataCursor;
+import com.fasterxml.transistore.service.TSLastAccess;
+
+/**
+ * Benchmarks for encoding and decoding of TransiStore-specific
+ * metadata section; decoding is done for every entry cleanup
+ * and listing go through.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntryConverterBenchmark
+{
+    protected final BasicTSEntryConverter _converter = new BasicTSEntryConverter();
+
+    protected final BasicTSMetadataCursor _cursor = _converter.metadataCursor();
+
+    protected Storable[] _entries;
+
+    protected int _index;
+
+    @Setup
+    public void setup()
+    {
+        BasicTSKey[] keys = BenchmarkData.keys(BasicTSKeyConverter.defaultInstance(),
+                BenchmarkData.KEY_COUNT);
+        StorableConverter storableConv = new StorableConverter();
+        byte[] data = new byte[200];
+        final long now = System.currentTimeMillis();
+        _entries = new Storable[keys.length];
+        for (int i = 0; i < keys.length; ++i) {
+            ByteContainer metadata = _converter.createMetadata(now - i,
+                    TSLastAccess.SIMPLE.asByte(), 3600, 86400);
+            _entries[i] = BenchmarkData.inlinedEntry(storableConv, keys[i].asStorableKey(),
+                    now - i, i, metadata, data);
+        }
+    }
+
+    protected final int _next() {
+        return (_index = (_index + 1) & (BenchmarkData.KEY_COUNT - 1));
+    }
+
+    @Benchmark
+    public ByteContainer createMetadata() {
+        return _converter.createMetadata(_index++, TSLastAccess.SIMPLE.asByte(), 3600, 86400);
+    }
+
+    @Benchmark
+    public BasicTSEntry entryFromStorable() {
+        return _converter.entryFromStorable(_entries[_next()]);
+    }
+
+    /**
+     * Alternative to {@link #entryFromStorable}, for use cases where only
+     * metadata is needed.
+     */
+    @Benchmark
+    public long decodeMetadata() {
+        return _cursor.read(_entries[_next()]).getCreationTime();
+    }
+}
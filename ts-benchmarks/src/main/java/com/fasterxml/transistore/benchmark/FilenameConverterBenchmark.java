@@ -0,0 +1,85 @@
+package com.fasterxml.transistore.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.fasterxml.storemate.shared.StorableKey;
+
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSKeyConverter;
+import com.fasterxml.transistore.service.cfg.BasicTSFilenameConverter;
+
+/**
+ * Benchmark for construction of file names for entries stored
+ * outside of the database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilenameConverterBenchmark
+{
+    protected final BasicTSFilenameConverter _converter
+        = new BasicTSFilenameConverter(BasicTSKeyConverter.defaultInstance());
+
+    protected final BasicTSKeyConverter _keyConverter = BasicTSKeyConverter.defaultInstance();
+
+    protected final StringBuilder _builder = new StringBuilder(100);
+
+    protected final char[] _buffer = new char[300];
+
+    protected StorableKey[] _rawKeys;
+
+    protected int _index;
+
+    @Setup
+    public void setup()
+    {
+        BasicTSKey[] keys = BenchmarkData.keys(BasicTSKeyConverter.defaultInstance(),
+                BenchmarkData.KEY_COUNT);
+        _rawKeys = new StorableKey[keys.length];
+        for (int i = 0; i < keys.length; ++i) {
+            _rawKeys[i] = keys[i].asStorableKey();
+        }
+    }
+
+    @Benchmark
+    public int appendFilename() {
+        _index = (_index + 1) & (BenchmarkData.KEY_COUNT - 1);
+        StringBuilder sb = _builder;
+        sb.setLength(0);
+        return _converter.appendFilename(_rawKeys[_index], sb).length();
+    }
+
+    @Benchmark
+    public int appendFilenameToBuffer() {
+        _index = (_index + 1) & (BenchmarkData.KEY_COUNT - 1);
+        return _converter.appendFilename(_rawKeys[_index], _buffer, 0, _buffer.length);
+    }
+
+    /**
+     * Baseline: earlier implementation that constructed the key and
+     * decoded path before escaping it.
+     */
+    @Benchmark
+    public int appendFilenameDecoded() {
+        _index = (_index + 1) & (BenchmarkData.KEY_COUNT - 1);
+        StringBuilder sb = _builder;
+        sb.setLength(0);
+        BasicTSKey key = _keyConverter.rawToEntryKey(_rawKeys[_index]);
+        final String fullPath = key.getPartitionAndPath();
+        final int groupLen = key.getPartitionIdLength();
+        if (groupLen > 0) {
+            sb.append(groupLen);
+        }
+        sb.append(':');
+        for (int i = 0, len = fullPath.length(); i < len; ++i) {
+            char c = fullPath.charAt(i);
+            sb.append((c > 0x20 && c < 0x7F && c != '/' && c != '"' && c != '\\') ? c : '_');
+        }
+        return sb.length();
+    }
+}
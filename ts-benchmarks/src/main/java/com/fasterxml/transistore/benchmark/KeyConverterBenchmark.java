@@ -0,0 +1,113 @@
+package com.fasterxml.transistore.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.fasterxml.storemate.shared.StorableKey;
+
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSKeyConverter;
+
+/**
+ * Benchmarks for conversions {@link BasicTSKeyConverter} does for every
+ * request (external String form, raw key bytes) and during iteration
+ * (raw key into {@link BasicTSKey}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyConverterBenchmark
+{
+    protected final BasicTSKeyConverter _converter = BasicTSKeyConverter.defaultInstance();
+
+    protected String[] _partitions, _paths, _external;
+
+    protected StorableKey[] _rawKeys;
+
+    protected BasicTSKey[] _keys;
+
+    protected final int[] _hashes = new int[BenchmarkData.KEY_COUNT];
+
+    protected int _index;
+
+    @Setup
+    public void setup()
+    {
+        BasicTSKey[] keys = BenchmarkData.keys(_converter, BenchmarkData.KEY_COUNT);
+        final int count = keys.length;
+        _partitions = new String[count];
+        _paths = new String[count];
+        _external = new String[count];
+        _rawKeys = new StorableKey[count];
+        _keys = keys;
+        for (int i = 0; i < count; ++i) {
+            BasicTSKey key = keys[i];
+            _partitions[i] = key.getPartitionId();
+            _paths[i] = key.getPath();
+            _external[i] = _converter.keyToString(key);
+            _rawKeys[i] = key.asStorableKey();
+        }
+    }
+
+    protected final int _next() {
+        return (_index = (_index + 1) & (BenchmarkData.KEY_COUNT - 1));
+    }
+
+    @Benchmark
+    public BasicTSKey construct() {
+        final int ix = _next();
+        return _converter.construct(_partitions[ix], _paths[ix]);
+    }
+
+    @Benchmark
+    public BasicTSKey rawToEntryKey() {
+        return _converter.rawToEntryKey(_rawKeys[_next()]);
+    }
+
+    @Benchmark
+    public String rawToPartitionId() {
+        return _converter.rawToPartitionId(_rawKeys[_next()]);
+    }
+
+    @Benchmark
+    public String rawToPath() {
+        return _converter.rawToEntryKey(_rawKeys[_next()]).getPath();
+    }
+
+    @Benchmark
+    public BasicTSKey stringToKey() {
+        return _converter.stringToKey(_external[_next()]);
+    }
+
+    /**
+     * Routing hash of a freshly constructed key: not memoized yet
+     */
+    @Benchmark
+    public int routingHashForNewKey() {
+        return _converter.routingHashFor(_converter.rawToEntryKey(_rawKeys[_next()]));
+    }
+
+    /**
+     * Routing hash of a key for which it has been calculated before
+     */
+    @Benchmark
+    public int routingHashForSameKey() {
+        return _converter.routingHashFor(_keys[_next()]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.KEY_COUNT)
+    public int[] rawRoutingHashes() {
+        return _converter.rawRoutingHashesFor(_rawKeys);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.KEY_COUNT)
+    public int[] routingHashes() {
+        return _converter.routingHashesFor(_keys, _hashes);
+    }
+}
@@ -0,0 +1,274 @@
+package com.fasterxml.transistore.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.store.Storable;
+import com.fasterxml.storemate.store.StoreException;
+import com.fasterxml.storemate.store.backend.*;
+import com.fasterxml.storemate.store.impl.StorableConverter;
+import com.fasterxml.storemate.store.util.OverwriteChecker;
+
+/**
+ * Simple non-persistent {@link StoreBackend} implementation, used so that
+ * benchmarks can exercise store-level code (cleanup, deletion) without
+ * measuring performance of actual disk-based backends.
+ * Entries are kept in serialized form, same as with persistent backends,
+ * so that reads include decoding overhead.
+ *<p>
+ * Iteration by last-modified time is implemented by sorting a snapshot of
+ * entries, so it is not efficient; but it is not used by benchmarks.
+ */
+public class MemoryStoreBackend extends StoreBackend
+{
+    protected final ConcurrentSkipListMap<StorableKey,byte[]> _entries
+        = new ConcurrentSkipListMap<StorableKey,byte[]>();
+
+    public MemoryStoreBackend(StorableConverter conv) {
+        super(conv);
+    }
+
+    /*
+    /**********************************************************************
+    /* Life-cycle, metadata
+    /**********************************************************************
+     */
+
+    @Override
+    public void start() { }
+
+    @Override
+    public void prepareForStop() { }
+
+    @Override
+    public void stop() {
+        _entries.clear();
+    }
+
+    @Override
+    public boolean hasEfficientEntryCount() { return false; }
+
+    @Override
+    public boolean hasEfficientIndexCount() { return false; }
+
+    @Override
+    public BackendStats getEntryStatistics(BackendStatsConfig config) {
+        return new Stats(config, _entries.size());
+    }
+
+    @Override
+    public BackendStats getIndexStatistics(BackendStatsConfig config) {
+        return new Stats(config, _entries.size());
+    }
+
+    @Override
+    public File getStorageDirectory() {
+        return null;
+    }
+
+    /*
+    /**********************************************************************
+    /* API Impl, counts, lookups
+    /**********************************************************************
+     */
+
+    @Override
+    public long getEntryCount() {
+        return _entries.size();
+    }
+
+    @Override
+    public long getIndexedCount() {
+        return _entries.size();
+    }
+
+    @Override
+    public long countEntries() {
+        return _entries.size();
+    }
+
+    @Override
+    public long countIndexed() {
+        return _entries.size();
+    }
+
+    @Override
+    public boolean hasEntry(StorableKey key) {
+        return _entries.containsKey(key);
+    }
+
+    @Override
+    public Storable findEntry(StorableKey key) {
+        return _decode(key, _entries.get(key));
+    }
+
+    /*
+    /**********************************************************************
+    /* API Impl, iteration
+    /**********************************************************************
+     */
+
+    @Override
+    public IterationResult scanEntries(StorableIterationCallback cb) throws StoreException {
+        return _iterate(cb, _entries.entrySet());
+    }
+
+    @Override
+    public IterationResult iterateEntriesByKey(StorableIterationCallback cb,
+            StorableKey firstKey) throws StoreException
+    {
+        if (firstKey == null) {
+            return _iterate(cb, _entries.entrySet());
+        }
+        return _iterate(cb, _entries.tailMap(firstKey, true).entrySet());
+    }
+
+    @Override
+    public IterationResult iterateEntriesAfterKey(StorableIterationCallback cb,
+            StorableKey lastSeen) throws StoreException
+    {
+        return _iterate(cb, _entries.tailMap(lastSeen, false).entrySet());
+    }
+
+    @Override
+    public IterationResult iterateEntriesByModifiedTime(StorableLastModIterationCallback cb,
+            long firstTimestamp) throws StoreException
+    {
+        if (cb == null) {
+            throw new IllegalArgumentException("Can not pass null 'cb' argument");
+        }
+        List<Storable> entries = new ArrayList<Storable>(_entries.size());
+        for (Map.Entry<StorableKey,byte[]> en : _entries.entrySet()) {
+            entries.add(_decode(en.getKey(), en.getValue()));
+        }
+        Collections.sort(entries, new Comparator<Storable>() {
+            @Override
+            public int compare(Storable s1, Storable s2) {
+                long t1 = s1.getLastModified();
+                long t2 = s2.getLastModified();
+                if (t1 == t2) {
+                    return s1.getKey().compareTo(s2.getKey());
+                }
+                return (t1 < t2) ? -1 : 1;
+            }
+        });
+        main_loop:
+        for (Storable entry : entries) {
+            final long timestamp = entry.getLastModified();
+            if (timestamp < firstTimestamp) {
+                continue;
+            }
+            switch (cb.verifyTimestamp(timestamp)) {
+            case TERMINATE_ITERATION:
+                return IterationResult.TERMINATED_FOR_TIMESTAMP;
+            case PROCESS_ENTRY:
+                break;
+            default: // SKIP_ENTRY
+                continue main_loop;
+            }
+            switch (cb.verifyKey(entry.getKey())) {
+            case TERMINATE_ITERATION:
+                return IterationResult.TERMINATED_FOR_KEY;
+            case PROCESS_ENTRY:
+                if (cb.processEntry(entry) == IterationAction.TERMINATE_ITERATION) {
+                    return IterationResult.TERMINATED_FOR_ENTRY;
+                }
+                break;
+            default: // SKIP_ENTRY
+            }
+        }
+        return IterationResult.FULLY_ITERATED;
+    }
+
+    protected IterationResult _iterate(StorableIterationCallback cb,
+            Set<Map.Entry<StorableKey,byte[]>> entries) throws StoreException
+    {
+        for (Map.Entry<StorableKey,byte[]> en : entries) {
+            switch (cb.verifyKey(en.getKey())) {
+            case TERMINATE_ITERATION:
+                return IterationResult.TERMINATED_FOR_KEY;
+            case PROCESS_ENTRY:
+                if (cb.processEntry(_decode(en.getKey(), en.getValue())) == IterationAction.TERMINATE_ITERATION) {
+                    return IterationResult.TERMINATED_FOR_ENTRY;
+                }
+                break;
+            default: // SKIP_ENTRY
+            }
+        }
+        return IterationResult.FULLY_ITERATED;
+    }
+
+    /*
+    /**********************************************************************
+    /* API Impl, insert/update/delete
+    /**********************************************************************
+     */
+
+    @Override
+    public Storable createEntry(StorableKey key, Storable storable) {
+        return _decode(key, _entries.putIfAbsent(key, storable.asBytes()));
+    }
+
+    @Override
+    public Storable putEntry(StorableKey key, Storable storable) {
+        return _decode(key, _entries.put(key, storable.asBytes()));
+    }
+
+    @Override
+    public void ovewriteEntry(StorableKey key, Storable storable) {
+        _entries.put(key, storable.asBytes());
+    }
+
+    @Override
+    public synchronized boolean upsertEntry(StorableKey key, Storable storable,
+            OverwriteChecker checker, AtomicReference<Storable> oldEntryRef)
+        throws IOException, StoreException
+    {
+        Storable old = _decode(key, _entries.get(key));
+        if (oldEntryRef != null) {
+            oldEntryRef.set(old);
+        }
+        if ((old != null) && !checker.mayOverwrite(key, old, storable)) {
+            return false;
+        }
+        _entries.put(key, storable.asBytes());
+        return true;
+    }
+
+    @Override
+    public boolean deleteEntry(StorableKey key) {
+        return (_entries.remove(key) != null);
+    }
+
+    protected Storable _decode(StorableKey key, byte[] raw) {
+        return (raw == null) ? null : _storableConverter.decode(key, raw);
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper types
+    /**********************************************************************
+     */
+
+    static class Stats extends BackendStats
+    {
+        protected final long _count;
+
+        public Stats(BackendStatsConfig config, long count) {
+            super("memory", System.currentTimeMillis(), config);
+            _count = count;
+        }
+
+        public long getCount() { return _count; }
+
+        @Override
+        public Map<String,Object> extraStats(Map<String,Object> base) {
+            base.put("count", _count);
+            return base;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.fasterxml.transistore.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.transistore.service.ReadWriteOperationPrioritizer;
+import com.fasterxml.transistore.service.cfg.FileThrottlingConfig;
+
+/**
+ * Benchmarks for cost of obtaining and returning leases from
+ * {@link ReadWriteOperationPrioritizer}, both without contention and
+ * with more threads than there are leases (so that some need to queue).
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrioritizerBenchmark
+{
+    /**
+     * Amount of simulated work (in JMH "tokens") done while holding a lease.
+     */
+    @Param({"0", "200"})
+    public int work;
+
+    protected ReadWriteOperationPrioritizer _prioritizer;
+
+    @Setup
+    public void setup() {
+        _prioritizer = new ReadWriteOperationPrioritizer(new FileThrottlingConfig());
+    }
+
+    @Benchmark
+    @Group("uncontended")
+    @GroupThreads(1)
+    public void uncontendedRead() throws InterruptedException {
+        _lease(_prioritizer.obtainReadLease());
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(6)
+    public void contendedRead() throws InterruptedException {
+        _lease(_prioritizer.obtainReadLease());
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public void contendedWrite() throws InterruptedException {
+        _lease(_prioritizer.obtainWriteLease());
+    }
+
+    protected void _lease(ReadWriteOperationPrioritizer.Lease lease) {
+        try {
+            if (work > 0) {
+                Blackhole.consumeCPU(work);
+            }
+        } finally {
+            lease.returnLease();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.fasterxml.transistore.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.fasterxml.storemate.shared.ByteContainer;
+import com.fasterxml.storemate.shared.TimeMaster;
+import com.fasterxml.storemate.store.*;
+import com.fasterxml.storemate.store.file.FileManagerConfig;
+import com.fasterxml.storemate.store.impl.StorableConverter;
+import com.fasterxml.storemate.store.impl.StorableStoreImpl;
+
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSKeyConverter;
+import com.fasterxml.transistore.service.BasicTSEntryConverter;
+import com.fasterxml.transistore.service.TSLastAccess;
+import com.fasterxml.transistore.service.cfg.BasicTSFileManager;
+import com.fasterxml.transistore.service.cleanup.LocalCleanupStats;
+import com.fasterxml.transistore.service.cleanup.ThrottlingDeleter;
+
+/**
+ * Benchmark for deleting batches of expired entries using
+ * {@link ThrottlingDeleter}, against an in-memory store so that
+ * results reflect overhead of the deletion path itself and not
+ * that of the backend.
+ *<p>
+ * Note that breaks deleter takes are disabled, since those would
+ * dominate measurements; pacing is a configuration concern, not
+ * a per-entry cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, batchSize = 1)
+@Measurement(iterations = 20, batchSize = 1)
+@Fork(1)
+public class ThrottlingDeleterBenchmark
+{
+    /**
+     * Number of entries to delete per invocation
+     */
+    @Param({"10000"})
+    public int entries;
+
+    protected final BasicTSEntryConverter _entryConverter = new BasicTSEntryConverter();
+
+    protected MemoryStoreBackend _backend;
+
+    protected StorableStore _store;
+
+    protected Storable[] _storables;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws Exception
+    {
+        File dataDir = File.createTempFile("ts-bench", "");
+        dataDir.delete();
+        dataDir.mkdirs();
+        dataDir.deleteOnExit();
+
+        TimeMaster timeMaster = TimeMaster.nonTestInstance();
+        StorableConverter storableConv = new StorableConverter();
+        _backend = new MemoryStoreBackend(storableConv);
+        _store = new StorableStoreImpl(new StoreConfig(), _backend, timeMaster,
+                new BasicTSFileManager(new FileManagerConfig(dataDir), timeMaster),
+                null, null);
+        _store.start();
+
+        BasicTSKey[] keys = BenchmarkData.keys(BasicTSKeyConverter.defaultInstance(), entries);
+        byte[] data = new byte[100];
+        final long created = timeMaster.currentTimeMillis() - 3600000L;
+        _storables = new Storable[entries];
+        for (int i = 0; i < entries; ++i) {
+            ByteContainer metadata = _entryConverter.createMetadata(created,
+                    TSLastAccess.NONE.asByte(), 1, 60);
+            _storables[i] = BenchmarkData.inlinedEntry(storableConv, keys[i].asStorableKey(),
+                    created, i, metadata, data);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws Exception {
+        _store.stop();
+    }
+
+    @Setup(Level.Invocation)
+    public void populate() throws Exception
+    {
+        for (Storable s : _storables) {
+            _backend.putEntry(s.getKey(), s);
+        }
+    }
+
+    @Benchmark
+    public LocalCleanupStats deleteExpired() throws Exception
+    {
+        LocalCleanupStats stats = new LocalCleanupStats();
+        ThrottlingDeleter deleter = new NoBreaksDeleter(_store, stats);
+        // entries are in creation, not key order; deleter sorts each batch
+        for (Storable s : _storables) {
+            deleter.deleteExpired(_entryConverter.entryFromStorable(s));
+        }
+        deleter.finish();
+        return stats;
+    }
+
+    static class NoBreaksDeleter extends ThrottlingDeleter
+    {
+        public NoBreaksDeleter(StorableStore store, LocalCleanupStats stats) {
+            super(null, store, stats, new AtomicBoolean(false), null);
+        }
+
+        @Override
+        protected void _takeABreak() { }
+    }
+}
@@ -1,27 +1,51 @@
 package com.fasterxml.transistore.client;
 
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 import com.fasterxml.clustermate.api.ClusterStatusAccessor;
 import com.fasterxml.clustermate.api.msg.ItemInfo;
+import com.fasterxml.clustermate.client.ClusterServerNode;
 import com.fasterxml.clustermate.client.ClusterViewByClient;
 import com.fasterxml.clustermate.client.NetworkClient;
 import com.fasterxml.clustermate.client.StoreClient;
+import com.fasterxml.clustermate.client.call.ReadCallParameters;
 
+import com.fasterxml.transistore.basic.BasicTSBatchResponse;
 import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSKeyConverter;
 import com.fasterxml.transistore.basic.BasicTSListItem;
 
 public class BasicTSClient
     extends StoreClient<BasicTSKey, BasicTSClientConfig, ItemInfo>
 {
+    /**
+     * Maximum number of keys to request from a server node with a single
+     * batch GET; larger groups are split into multiple requests.
+     */
+    protected final static int MAX_KEYS_PER_BATCH = 500;
+
+    /**
+     * Executor used for sending batch GETs to multiple server nodes in
+     * parallel; created when first needed, and shared by all instances
+     * created with {@link #withConfig}.
+     */
+    protected final AtomicReference<ExecutorService> _batchExecutor;
+
     public BasicTSClient(BasicTSClientConfig config,
             ClusterStatusAccessor statusAccessor, ClusterViewByClient<BasicTSKey> clusterView,
             NetworkClient<BasicTSKey> httpClientImpl)
     {
         super(config, BasicTSListItem.class, statusAccessor, clusterView, httpClientImpl,
                 _stdItemInfoConverter(config, ItemInfo.class));
+        _batchExecutor = new AtomicReference<ExecutorService>();
     }
 
     protected BasicTSClient(BasicTSClient base, BasicTSClientConfig newConfig) {
         super(base, newConfig);
+        _batchExecutor = base._batchExecutor;
     }
     
     public BasicTSClient withConfig(BasicTSClientConfig config)
@@ -31,4 +55,257 @@ public class BasicTSClient
         }
         return new BasicTSClient(this, config);
     }
+
+    @Override
+    public void stop()
+    {
+        super.stop();
+        ExecutorService exec = _batchExecutor.getAndSet(null);
+        if (exec != null) {
+            exec.shutdownNow();
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Multi-entry access
+    /**********************************************************************
+     */
+
+    public Map<BasicTSKey,byte[]> getContents(Collection<BasicTSKey> keys)
+        throws InterruptedException
+    {
+        return getContents(null, keys);
+    }
+
+    /**
+     * Method for fetching contents of multiple entries: keys are grouped by
+     * the server node that owns them, and each group is fetched with a
+     * single batch GET, groups for different nodes in parallel.
+     *<p>
+     * If a batch GET fails as a whole (server not reachable, or overloaded
+     * and responding with 503), it is retried once, as batch GET(s) to the
+     * next enabled node(s) that own the keys; failed batches are never
+     * expanded into per-entry calls, to avoid adding load to a cluster
+     * that is already struggling. Entries that a server could not include
+     * in an otherwise successful batch (entry too big to include, not found
+     * on the first node, read error) are fetched individually, same as with
+     * {@link #getContentAsBytes}.
+     *
+     * @return Map of contents of entries found, in the same order as keys
+     *    were given; missing entries (as well as ones whose batches failed
+     *    on all nodes tried) are not included
+     */
+    public Map<BasicTSKey,byte[]> getContents(ReadCallParameters params, Collection<BasicTSKey> keys)
+        throws InterruptedException
+    {
+        final BasicTSClientConfig config = _getConfig(params);
+        final TSBatchGetter getter = new TSBatchGetter(config);
+        final Map<BasicTSKey,byte[]> found = new ConcurrentHashMap<BasicTSKey,byte[]>();
+        final Set<BasicTSKey> retries = Collections.synchronizedSet(new LinkedHashSet<BasicTSKey>());
+
+        // Routing hashes of all keys calculated in one go: they are memoized in keys,
+        // so node lookups need not recalculate them (nor retries of failed batches)
+        if (_keyConverter instanceof BasicTSKeyConverter) {
+            ((BasicTSKeyConverter) _keyConverter).routingHashesFor(keys.toArray(new BasicTSKey[keys.size()]), null);
+        }
+
+        // First things first: group keys by the first enabled node that owns them
+        Map<ClusterServerNode,List<BasicTSKey>> byNode = new LinkedHashMap<ClusterServerNode,List<BasicTSKey>>();
+        for (BasicTSKey key : keys) {
+            ClusterServerNode node = _findBatchNode(key, null);
+            if (node == null) {
+                retries.add(key);
+            } else {
+                _addToGroup(byNode, node, key);
+            }
+        }
+        Map<ClusterServerNode,List<BasicTSKey>> failed = _getBatches(config, getter, byNode, found, retries);
+
+        // Batches that failed as a whole are retried once, on next owning nodes
+        if (!failed.isEmpty()) {
+            byNode = new LinkedHashMap<ClusterServerNode,List<BasicTSKey>>();
+            for (Map.Entry<ClusterServerNode,List<BasicTSKey>> entry : failed.entrySet()) {
+                for (BasicTSKey key : entry.getValue()) {
+                    ClusterServerNode node = _findBatchNode(key, entry.getKey());
+                    if (node != null) {
+                        _addToGroup(byNode, node, key);
+                    }
+                }
+            }
+            _getBatches(config, getter, byNode, found, retries);
+        }
+
+        // Then fetch entries that batches could not include one by one
+        List<BasicTSKey> toRetry;
+        synchronized (retries) {
+            toRetry = new ArrayList<BasicTSKey>(retries);
+        }
+        for (BasicTSKey key : toRetry) {
+            if (!found.containsKey(key)) {
+                byte[] data = getContentAsBytes(params, key);
+                if (data != null) {
+                    found.put(key, data);
+                }
+            }
+        }
+
+        Map<BasicTSKey,byte[]> result = new LinkedHashMap<BasicTSKey,byte[]>();
+        for (BasicTSKey key : keys) {
+            byte[] data = found.get(key);
+            if (data != null) {
+                result.put(key, data);
+            }
+        }
+        return result;
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    /**
+     * Helper method for sending batch GETs for given groups of keys,
+     * groups for different nodes in parallel.
+     *
+     * @param found Map to add contents of entries fetched to
+     * @param retries Set to add keys of entries that batches did not include
+     *    to (to be fetched individually)
+     *
+     * @return Keys of batches that failed as a whole, grouped by node that
+     *    batch was sent to
+     */
+    protected Map<ClusterServerNode,List<BasicTSKey>> _getBatches(BasicTSClientConfig config,
+            final TSBatchGetter getter, Map<ClusterServerNode,List<BasicTSKey>> byNode,
+            final Map<BasicTSKey,byte[]> found, final Set<BasicTSKey> retries)
+        throws InterruptedException
+    {
+        final long timeoutMsecs = config.getOperationConfig().getGetOperationTimeoutMsecs();
+        final Map<ClusterServerNode,List<BasicTSKey>> failed = new LinkedHashMap<ClusterServerNode,List<BasicTSKey>>();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        final List<ClusterServerNode> chunkNodes = new ArrayList<ClusterServerNode>();
+        final List<List<BasicTSKey>> chunks = new ArrayList<List<BasicTSKey>>();
+        for (Map.Entry<ClusterServerNode,List<BasicTSKey>> entry : byNode.entrySet()) {
+            final ClusterServerNode node = entry.getKey();
+            final List<BasicTSKey> group = entry.getValue();
+            for (int i = 0, len = group.size(); i < len; i += MAX_KEYS_PER_BATCH) {
+                final List<BasicTSKey> chunk = group.subList(i, Math.min(len, i + MAX_KEYS_PER_BATCH));
+                chunkNodes.add(node);
+                chunks.add(chunk);
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        BasicTSBatchResponse resp = getter.getEntries(node.getAddress(), chunk, timeoutMsecs);
+                        if (resp == null) {
+                            _addFailed(failed, node, chunk);
+                            return null;
+                        }
+                        for (int ix = 0, end = chunk.size(); ix < end; ++ix) {
+                            BasicTSBatchResponse.Item item = resp.entries.get(ix);
+                            if (item.status == BasicTSBatchResponse.STATUS_OK && item.data != null) {
+                                found.put(chunk.get(ix), item.data);
+                            } else {
+                                retries.add(chunk.get(ix));
+                            }
+                        }
+                        return null;
+                    }
+                });
+            }
+        }
+
+        if (tasks.size() == 1) { // no need to bother with executor for a single call
+            try {
+                tasks.get(0).call();
+            } catch (Exception e) { // should never occur
+                _addFailed(failed, chunkNodes.get(0), chunks.get(0));
+            }
+        } else if (!tasks.isEmpty()) {
+            List<Future<Void>> futures = _batchExecutor().invokeAll(tasks,
+                    timeoutMsecs, TimeUnit.MILLISECONDS);
+            for (int i = 0, end = futures.size(); i < end; ++i) {
+                Future<Void> future = futures.get(i);
+                try {
+                    future.get();
+                } catch (CancellationException e) { // timed out
+                    _addFailed(failed, chunkNodes.get(i), chunks.get(i));
+                } catch (ExecutionException e) { // should never occur
+                    _addFailed(failed, chunkNodes.get(i), chunks.get(i));
+                }
+            }
+        }
+        // timed out calls may still be running, so need a copy
+        synchronized (failed) {
+            Map<ClusterServerNode,List<BasicTSKey>> result = new LinkedHashMap<ClusterServerNode,List<BasicTSKey>>();
+            for (Map.Entry<ClusterServerNode,List<BasicTSKey>> entry : failed.entrySet()) {
+                result.put(entry.getKey(), new ArrayList<BasicTSKey>(entry.getValue()));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @param failedNode Node that has already failed for the key, if any;
+     *    if given, only nodes after it in the list of owning nodes are considered
+     */
+    protected ClusterServerNode _findBatchNode(BasicTSKey key, ClusterServerNode failedNode)
+    {
+        boolean skip = (failedNode != null);
+        for (ClusterServerNode node : _clusterView.getNodesFor(key)) {
+            if (skip) {
+                skip = (node != failedNode);
+            } else if (!node.isDisabled()) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    protected static void _addToGroup(Map<ClusterServerNode,List<BasicTSKey>> byNode,
+            ClusterServerNode node, BasicTSKey key)
+    {
+        List<BasicTSKey> group = byNode.get(node);
+        if (group == null) {
+            group = new ArrayList<BasicTSKey>();
+            byNode.put(node, group);
+        }
+        group.add(key);
+    }
+
+    protected static void _addFailed(Map<ClusterServerNode,List<BasicTSKey>> failed,
+            ClusterServerNode node, List<BasicTSKey> chunk)
+    {
+        synchronized (failed) {
+            List<BasicTSKey> keys = failed.get(node);
+            if (keys == null) {
+                keys = new ArrayList<BasicTSKey>();
+                failed.put(node, keys);
+            }
+            keys.addAll(chunk);
+        }
+    }
+
+    protected ExecutorService _batchExecutor()
+    {
+        ExecutorService exec = _batchExecutor.get();
+        if (exec == null) {
+            exec = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger _count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "BasicTSClient-batch-"+_count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            if (!_batchExecutor.compareAndSet(null, exec)) {
+                exec.shutdown();
+                exec = _batchExecutor.get();
+            }
+        }
+        return exec;
+    }
 }
@@ -0,0 +1,88 @@
+package com.fasterxml.transistore.client;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.fasterxml.clustermate.api.EntryKeyConverter;
+import com.fasterxml.clustermate.std.JdkHttpClientPathBuilder;
+import com.fasterxml.storemate.shared.IpAndPort;
+
+import com.fasterxml.transistore.basic.BasicTSBatchRequest;
+import com.fasterxml.transistore.basic.BasicTSBatchResponse;
+import com.fasterxml.transistore.basic.BasicTSConstants;
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSPaths;
+import com.fasterxml.transistore.basic.JdkJsonPoster;
+
+/**
+ * Helper class used by {@link BasicTSClient} for fetching contents of
+ * multiple entries from a single server node, using batch GET
+ * (see {@link com.fasterxml.transistore.basic.BasicTSPath#STORE_ENTRIES_BATCH}).
+ * Uses JDK HTTP client (see {@link JdkJsonPoster}) regardless of network
+ * client used for other calls, same as peer nodes do for last-access checks.
+ */
+public class TSBatchGetter
+{
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    protected final EntryKeyConverter<BasicTSKey> _keyConverter;
+
+    protected final String[] _basePath;
+
+    protected final BasicTSPaths _pathStrategy;
+
+    protected final JdkJsonPoster<BasicTSBatchRequest,BasicTSBatchResponse> _poster;
+
+    public TSBatchGetter(BasicTSClientConfig config)
+    {
+        _keyConverter = config.getKeyConverter();
+        _basePath = config.getBasePath();
+        _pathStrategy = (BasicTSPaths) config.getPathStrategy();
+        ObjectMapper mapper = config.getJsonMapper();
+        _poster = new JdkJsonPoster<BasicTSBatchRequest,BasicTSBatchResponse>(
+                mapper.writerWithType(BasicTSBatchRequest.class), mapper.reader(BasicTSBatchResponse.class));
+    }
+
+    /**
+     * Method for requesting contents of given entries from specified server.
+     *
+     * @return Response from server, if request succeeded; null if it failed
+     *   (or response is not valid)
+     */
+    public BasicTSBatchResponse getEntries(IpAndPort endpoint, List<BasicTSKey> keys,
+            long timeoutMsecs)
+    {
+        final String urlStr = _buildBatchUrl(endpoint);
+        BasicTSBatchRequest request = new BasicTSBatchRequest();
+        for (BasicTSKey key : keys) {
+            request.addKey(_keyConverter.keyToString(key));
+        }
+        BasicTSBatchResponse resp;
+        try {
+            resp = _poster.post(urlStr, request, timeoutMsecs, Collections.singletonMap(
+                    BasicTSConstants.TS_HTTP_HEADER_TIMEOUT_MSECS, String.valueOf(timeoutMsecs)));
+        } catch (JdkJsonPoster.Failure e) {
+            LOG.warn("getEntries request to {} failed: {}", urlStr, e.getMessage());
+            return null;
+        }
+        if (resp.size() != request.size()) {
+            LOG.warn("Invalid response to getEntries from {}: requested {} entries, got {}",
+                    urlStr, request.size(), resp.size());
+            return null;
+        }
+        return resp;
+    }
+
+    protected String _buildBatchUrl(IpAndPort endpoint)
+    {
+        JdkHttpClientPathBuilder pathBuilder = new JdkHttpClientPathBuilder(endpoint)
+            .addPathSegments(_basePath);
+        pathBuilder = _pathStrategy.appendStoreBatchPath(pathBuilder);
+        return pathBuilder.toString();
+    }
+}
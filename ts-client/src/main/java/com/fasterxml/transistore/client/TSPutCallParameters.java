@@ -8,27 +8,39 @@ import com.fasterxml.clustermate.api.RequestPathBuilder;
 import com.fasterxml.clustermate.client.StoreClientConfig;
 import com.fasterxml.clustermate.client.call.PutCallParameters;
 
+import com.fasterxml.transistore.basic.BasicTSConstants;
+
 public class TSPutCallParameters extends PutCallParameters
 {
     protected final static int NOT_DEFINED = -1;
 	
     protected final int _maxTTLInSeconds;
 
+    /**
+     * Optional absolute expiration time (in milliseconds since epoch);
+     * 0L if not defined.
+     */
+    protected final long _expirationTime;
+
     public TSPutCallParameters() {
         super((StoreClientConfig<?,?>) null);
         _maxTTLInSeconds = NOT_DEFINED;
+        _expirationTime = 0L;
     }
 
-    protected TSPutCallParameters(TSPutCallParameters base, int maxTTLSecs)
+    protected TSPutCallParameters(TSPutCallParameters base, int maxTTLSecs,
+            long expirationTime)
     {
         super(base);
         _maxTTLInSeconds = maxTTLSecs;
+        _expirationTime = expirationTime;
     }
 
     protected TSPutCallParameters(TSPutCallParameters base, StoreClientConfig<?,?> config)
     {
         super(base, config);
         _maxTTLInSeconds = base._maxTTLInSeconds;
+        _expirationTime = base._expirationTime;
     }
     
     /*
@@ -38,12 +50,26 @@ public class TSPutCallParameters extends PutCallParameters
      */
 
     public TSPutCallParameters withTTL(int ttlSecs) {
-        return (ttlSecs == _maxTTLInSeconds) ? this : new TSPutCallParameters(this, ttlSecs);
+        return (ttlSecs == _maxTTLInSeconds) ? this
+                : new TSPutCallParameters(this, ttlSecs, _expirationTime);
     }
 
     public TSPutCallParameters withTTL(TimeSpan ttl) {
         int ttlSecs = (ttl == null) ? NOT_DEFINED : (int) (ttl.getMillis() / 1000L);
-        return (ttlSecs == _maxTTLInSeconds) ? this : new TSPutCallParameters(this, ttlSecs);
+        return (ttlSecs == _maxTTLInSeconds) ? this
+                : new TSPutCallParameters(this, ttlSecs, _expirationTime);
+    }
+
+    /**
+     * Method for specifying absolute expiration time for entry: if earlier than
+     * expiration based on maximum TTL, entry expires at this time instead.
+     *
+     * @param time Expiration time in milliseconds since epoch; 0L to indicate
+     *    that only maximum TTL is used
+     */
+    public TSPutCallParameters withExpirationTime(long time) {
+        return (time == _expirationTime) ? this
+                : new TSPutCallParameters(this, _maxTTLInSeconds, time);
     }
 
     @Override
@@ -63,6 +89,10 @@ public class TSPutCallParameters extends PutCallParameters
         if (_maxTTLInSeconds > 0) {
             pathBuilder = (B) pathBuilder.addParameter(ClusterMateConstants.QUERY_PARAM_MAX_TTL, _maxTTLInSeconds);
         }
+        if (_expirationTime > 0L) {
+            pathBuilder = (B) pathBuilder.addParameter(BasicTSConstants.TS_QUERY_PARAM_EXPIRES,
+                    String.valueOf(_expirationTime));
+        }
         return pathBuilder;
     }
 }
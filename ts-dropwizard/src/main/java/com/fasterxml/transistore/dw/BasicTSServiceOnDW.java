@@ -9,9 +9,12 @@ import com.fasterxml.storemate.shared.IpAndPort;
 import com.fasterxml.storemate.shared.TimeMaster;
 import com.fasterxml.storemate.store.StorableStore;
 import com.fasterxml.storemate.store.StoreOperationThrottler;
+import com.fasterxml.storemate.store.backend.StoreBackendBuilder;
+import com.fasterxml.storemate.store.backend.StoreBackendConfig;
 import com.fasterxml.storemate.store.file.FileManager;
 import com.fasterxml.storemate.store.file.FileManagerConfig;
 import com.fasterxml.storemate.store.state.NodeStateStore;
+import com.fasterxml.storemate.store.util.PartitionedWriteMutex;
 
 import com.fasterxml.clustermate.dw.DWBasedService;
 import com.fasterxml.clustermate.dw.HealthCheckForCluster;
@@ -20,9 +23,8 @@ import com.fasterxml.clustermate.dw.RunMode;
 import com.fasterxml.clustermate.service.SharedServiceStuff;
 import com.fasterxml.clustermate.service.cfg.ServiceConfig;
 import com.fasterxml.clustermate.service.cleanup.CleanupTask;
-import com.fasterxml.clustermate.service.cleanup.DiskUsageTracker;
-import com.fasterxml.clustermate.service.cleanup.FileCleaner;
 import com.fasterxml.clustermate.service.state.ActiveNodeState;
+import com.fasterxml.clustermate.service.state.JacksonBasedConverter;
 import com.fasterxml.clustermate.service.store.*;
 import com.fasterxml.clustermate.servlet.CMServletFactory;
 
@@ -33,9 +35,18 @@ import com.fasterxml.transistore.service.BasicTSOperationThrottler;
 import com.fasterxml.transistore.service.SharedTSStuffImpl;
 import com.fasterxml.transistore.service.cfg.BasicTSFileManager;
 import com.fasterxml.transistore.service.cfg.BasicTSServiceConfig;
+import com.fasterxml.transistore.service.cfg.CleanupConfig;
+import com.fasterxml.transistore.service.cfg.FileReclaimerConfig;
+import com.fasterxml.transistore.service.cleanup.BasicTSDiskUsageTracker;
+import com.fasterxml.transistore.service.cleanup.BasicTSFileCleaner;
+import com.fasterxml.transistore.service.cleanup.CleanupState;
+import com.fasterxml.transistore.service.cleanup.ExpirationIndex;
+import com.fasterxml.transistore.service.cleanup.FileReclaimer;
+import com.fasterxml.transistore.service.cleanup.LocalCleanupHistory;
 import com.fasterxml.transistore.service.cleanup.LocalEntryCleaner;
 import com.fasterxml.transistore.service.store.BasicTSStoreHandler;
 import com.fasterxml.transistore.service.store.BasicTSStores;
+import com.fasterxml.transistore.service.store.BatchWriteMutex;
 import com.fasterxml.transistore.servlet.BasicTSServletFactory;
 
 /**
@@ -48,6 +59,18 @@ public class BasicTSServiceOnDW
         BasicTSServiceConfig, BasicTSServiceConfigForDW
     >
 {
+    /**
+     * Write mutex we construct for the entry store, so that it can also
+     * be used by background tasks that rewrite entries.
+     */
+    protected PartitionedWriteMutex _writeMutex;
+
+    /**
+     * Index of expiration times, if enabled; updated by throttler (for
+     * all writes), used by local entry cleanup.
+     */
+    protected ExpirationIndex _expirationIndex;
+
     /*
     /**********************************************************************
     /* Construction
@@ -105,7 +128,7 @@ public class BasicTSServiceOnDW
     {
         return new BasicTSFileManager(
                 new FileManagerConfig(serviceConfig().storeConfig.dataRootForFiles),
-                _timeMaster);
+                serviceConfig().fileLayout, serviceConfig().fileTiers, _timeMaster);
     }
 
     @Override
@@ -124,9 +147,59 @@ public class BasicTSServiceOnDW
     {
         StoredEntryConverter<BasicTSKey, StoredEntry<BasicTSKey>,BasicTSListItem> entryConv = _serviceStuff.getEntryConverter();
         return new BasicTSStores(serviceConfig(),
-                _timeMaster, _serviceStuff.jsonMapper(), entryConv, store, nodeStates, remoteNodeStates);
+                _timeMaster, _serviceStuff.jsonMapper(), entryConv, store, nodeStates, remoteNodeStates)
+            .setWriteMutex(_writeMutex)
+            .setExpirationIndex(_expirationIndex)
+            .setCleanupStateStore(constructCleanupStateStore(constructBackendBuilder()))
+            .setFileReclaimer(constructFileReclaimer())
+            .setCleanupHistory(new LocalCleanupHistory(serviceConfig().cleanup.historySize));
+    }
+
+    /**
+     * Factory method for constructing helper used for deleting external
+     * files asynchronously; null if not enabled.
+     */
+    protected FileReclaimer constructFileReclaimer()
+    {
+        FileReclaimerConfig config = serviceConfig().fileReclaimer;
+        if (!config.enabled) {
+            return null;
+        }
+        FileManager files = _serviceStuff.getFileManager();
+        if (files instanceof BasicTSFileManager) { // need to cover all storage tiers
+            return new FileReclaimer(config, ((BasicTSFileManager) files).getDataRoots(), _timeMaster);
+        }
+        return new FileReclaimer(config, serviceConfig().storeConfig.dataRootForFiles, _timeMaster);
     }
     
+    /**
+     * Factory method for constructing store used for persisting progress
+     * of local entry cleanup, using given (fully configured) backend builder.
+     */
+    protected NodeStateStore<String, CleanupState> constructCleanupStateStore(StoreBackendBuilder<?> bb)
+    {
+        return bb.buildSecondaryNodeStateStore(serviceConfig().metadataDirectory, "cleanup",
+                new JacksonBasedConverter<String>(_serviceStuff.jsonMapper(), String.class),
+                new JacksonBasedConverter<CleanupState>(_serviceStuff.jsonMapper(), CleanupState.class));
+    }
+
+    /**
+     * Helper method for constructing a backend builder configured the same
+     * way as the one base class uses for the entry and node state stores;
+     * needed since base class does not expose its builder.
+     */
+    protected StoreBackendBuilder<?> constructBackendBuilder()
+    {
+        final BasicTSServiceConfig sconfig = serviceConfig();
+        StoreBackendBuilder<?> b = sconfig.instantiateBackendBuilder();
+        StoreBackendConfig backendConfig = sconfig._storeBackendConfigOverride;
+        if (backendConfig == null) {
+            backendConfig = _serviceStuff.jsonMapper().convertValue(sconfig.storeBackendConfig, b.getConfigClass());
+        }
+        return b.with(sconfig.storeConfig)
+                .with(backendConfig);
+    }
+
     @Override
     protected StoreHandler<BasicTSKey, StoredEntry<BasicTSKey>,BasicTSListItem> constructStoreHandler() {
         // false -> no updating of last-accessed timestamps by default
@@ -160,9 +233,9 @@ public class BasicTSServiceOnDW
         // start with main entries
         tasks.add(new LocalEntryCleaner());
         // then remove orphan dirs
-        tasks.add(new FileCleaner());
+        tasks.add(new BasicTSFileCleaner());
         // and finally disk space usage tracker
-        tasks.add(new DiskUsageTracker());
+        tasks.add(new BasicTSDiskUsageTracker());
 
         return tasks;
     }
@@ -172,7 +245,25 @@ public class BasicTSServiceOnDW
      */
     @Override
     protected StoreOperationThrottler constructThrottler() {
-        return new BasicTSOperationThrottler();
+        BasicTSOperationThrottler throttler = new BasicTSOperationThrottler(serviceConfig().throttling);
+        CleanupConfig cleanupConfig = serviceConfig().cleanup;
+        if (cleanupConfig.useExpirationIndex) {
+            _expirationIndex = new ExpirationIndex(cleanupConfig, _serviceStuff.getEntryConverter(),
+                    serviceConfig().cfgTombstoneTTL.getMillis());
+            throttler.setExpirationIndex(_expirationIndex);
+        }
+        return throttler;
+    }
+
+    /**
+     * Method is overridden to retain the mutex, so that it can be shared
+     * with background tasks (metadata migration, batch deletion).
+     */
+    @Override
+    protected PartitionedWriteMutex constructWriteMutex() {
+        // 'true' for fairness, same as the default implementation
+        _writeMutex = new BatchWriteMutex(serviceConfig().storeConfig.lockPartitions, true);
+        return _writeMutex;
     }
 
     /*
@@ -0,0 +1,70 @@
+package com.fasterxml.transistore.dw.backend;
+
+import java.io.File;
+
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.EnvironmentConfig;
+
+import com.fasterxml.storemate.backend.bdbje.BDBJEBuilder;
+import com.fasterxml.storemate.backend.bdbje.BDBJEConfig;
+import com.fasterxml.storemate.backend.bdbje.BDBJEStoreBackend;
+import com.fasterxml.storemate.store.StoreConfig;
+import com.fasterxml.storemate.store.impl.StorableConverter;
+
+/**
+ * {@link BDBJEBuilder} that builds {@link BatchingBDBJEStoreBackend}s,
+ * which allow clean up to delete expired entries in batches, one transaction
+ * per batch. Not used by default: needs to be enabled by configuring
+ * <code>storeBackendType</code> as
+ * <code>com.fasterxml.transistore.dw.backend.BatchingBDBJEBuilder</code>.
+ *<p>
+ * Since batches can only be deleted atomically with transactions, this
+ * builder always enables transactions (<code>useTransactions</code>)
+ * for the entry store, regardless of configuration. Note that this also
+ * makes all other writes of the entry store transactional, which adds
+ * some overhead for them (but is recommended by StoreMate anyway, to keep
+ * secondary index in sync).
+ */
+public class BatchingBDBJEBuilder extends BDBJEBuilder
+{
+    public BatchingBDBJEBuilder() { this(null, null); }
+
+    public BatchingBDBJEBuilder(StoreConfig storeConfig, BDBJEConfig bdbConfig) {
+        super(storeConfig, bdbConfig);
+    }
+
+    @Override
+    protected BDBJEStoreBackend _buildAndInit(boolean canCreate, boolean canWrite)
+    {
+        verifyConfigs();
+        // batch deletions need to be atomic, so transactions are required
+        _bdbConfig.useTransactions = true;
+        File dbRoot = _bdbConfig.dataRoot;
+        if (dbRoot == null) {
+            throw new IllegalStateException("Missing BDBJEConfig.dataRoot");
+        }
+        if (!dbRoot.exists() || !dbRoot.isDirectory()) {
+            if (!canCreate) {
+                throw new IllegalArgumentException("Directory '"+dbRoot.getAbsolutePath()+"' does not exist, not allowed to (try to) create");
+            }
+            if (!dbRoot.mkdirs()) {
+                throw new IllegalArgumentException("Directory '"+dbRoot.getAbsolutePath()+"' did not exist: failed to create it");
+            }
+        }
+
+        StorableConverter storableConv = _storeConfig.createStorableConverter();
+        EnvironmentConfig envConfig = envConfigForStore(canCreate, canWrite);
+        BDBJEStoreBackend physicalStore;
+        try {
+            physicalStore = new BatchingBDBJEStoreBackend(storableConv, dbRoot, _bdbConfig, envConfig);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to construct BatchingBDBJEStoreBackend: "+e.getMessage(), e);
+        }
+        try {
+            physicalStore.start();
+        } catch (DatabaseException e) {
+            throw new IllegalStateException("Failed to start BatchingBDBJEStoreBackend: "+e.getMessage(), e);
+        }
+        return physicalStore;
+    }
+}
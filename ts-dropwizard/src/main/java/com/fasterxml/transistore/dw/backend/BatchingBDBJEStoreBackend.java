@@ -0,0 +1,82 @@
+package com.fasterxml.transistore.dw.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sleepycat.je.*;
+
+import com.fasterxml.storemate.backend.bdbje.BDBJEConfig;
+import com.fasterxml.storemate.backend.bdbje.BDBJEStoreBackend;
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.store.Storable;
+import com.fasterxml.storemate.store.StoreException;
+import com.fasterxml.storemate.store.impl.StorableConverter;
+
+import com.fasterxml.transistore.service.store.BatchDeletingBackend;
+
+/**
+ * {@link BDBJEStoreBackend} extension that can delete batches of entries
+ * within a single transaction, so that cost of commits (and syncs)
+ * is only incurred once per batch.
+ */
+public class BatchingBDBJEStoreBackend
+    extends BDBJEStoreBackend
+    implements BatchDeletingBackend
+{
+    public BatchingBDBJEStoreBackend(StorableConverter conv, File dbRoot,
+            BDBJEConfig bdbConfig, EnvironmentConfig envConfig)
+        throws DatabaseException
+    {
+        super(conv, dbRoot, bdbConfig, envConfig);
+    }
+
+    @Override
+    public boolean canDeleteInBatches() {
+        // without transactions, could not roll back partial deletions
+        return _bdbConfig.useTransactions;
+    }
+
+    @Override
+    public List<Storable> deleteEntries(List<StorableKey> keys)
+        throws IOException, StoreException
+    {
+        if (!canDeleteInBatches()) {
+            throw new IllegalStateException("Can not delete entries in batches without transactions");
+        }
+        final List<Storable> deleted = new ArrayList<Storable>(keys.size());
+        StorableKey key = null;
+        Transaction tx = null;
+        try {
+            tx = _env.beginTransaction(null, null);
+            for (StorableKey k : keys) {
+                key = k;
+                final DatabaseEntry dbKey = dbKey(key);
+                final DatabaseEntry result = new DatabaseEntry();
+                // need to read entry to know which external file to delete, if any
+                OperationStatus status = _entries.get(tx, dbKey, result, LockMode.RMW);
+                if (status != OperationStatus.SUCCESS) {
+                    continue;
+                }
+                Storable value = _storableConverter.decode(key,
+                        result.getData(), result.getOffset(), result.getSize());
+                status = _entries.delete(tx, dbKey);
+                if (status == OperationStatus.SUCCESS) {
+                    deleted.add(value);
+                }
+            }
+            tx.commit();
+            tx = null;
+        } catch (DatabaseException de) {
+            return _convertDBE(key, de);
+        } finally {
+            if (tx != null) {
+                try {
+                    tx.abort();
+                } catch (DatabaseException e) { }
+            }
+        }
+        return deleted;
+    }
+}
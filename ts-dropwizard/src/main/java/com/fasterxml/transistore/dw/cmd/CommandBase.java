@@ -12,6 +12,7 @@ import com.fasterxml.storemate.shared.IpAndPort;
 import com.fasterxml.storemate.shared.TimeMaster;
 import com.fasterxml.storemate.store.StorableStore;
 import com.fasterxml.storemate.store.backend.StoreBackend;
+import com.fasterxml.storemate.store.backend.StoreBackendBuilder;
 import com.fasterxml.storemate.store.file.FileManager;
 import com.fasterxml.storemate.store.file.FileManagerConfig;
 import com.fasterxml.storemate.store.impl.StorableStoreImpl;
@@ -83,8 +84,11 @@ public abstract class CommandBase<T extends Configuration> extends ConfiguredCom
         TimeMaster tm = TimeMaster.nonTestInstance();
         final BasicTSServiceConfig v = configuration.getServiceConfig();
 
-        FileManager files = new BasicTSFileManager(new FileManagerConfig(v.storeConfig.dataRootForFiles), tm);
-        BDBJEBuilder b = new BDBJEBuilder();
+        FileManager files = new BasicTSFileManager(new FileManagerConfig(v.storeConfig.dataRootForFiles),
+                v.fileLayout, v.fileTiers, tm);
+        // tools only work with BDB-JE; but need to use configured variant, if any
+        StoreBackendBuilder<?> configured = v.instantiateBackendBuilder();
+        BDBJEBuilder b = (configured instanceof BDBJEBuilder) ? (BDBJEBuilder) configured : new BDBJEBuilder();
         StoreBackend backend = b.with(v.storeConfig)
                 .with(_mapper.convertValue(v.storeBackendConfig, b.getConfigClass()))
                 .buildCreateAndInit();
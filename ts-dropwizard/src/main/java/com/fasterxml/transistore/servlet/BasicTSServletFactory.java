@@ -16,6 +16,9 @@ import com.fasterxml.clustermate.servlet.*;
 
 import com.fasterxml.transistore.basic.BasicTSKey;
 import com.fasterxml.transistore.basic.BasicTSPath;
+import com.fasterxml.transistore.service.cfg.BasicTSServiceConfig;
+import com.fasterxml.transistore.service.metrics.BasicTSMetricsAccessor;
+import com.fasterxml.transistore.service.store.BasicTSStoreHandler;
 
 /**
  * Implementation of {@link CMServletFactory} used by standard TransiStore.
@@ -100,10 +103,12 @@ public class BasicTSServletFactory
 
         _add(servlets, BasicTSPath.SYNC_LIST, constructSyncListServlet());
         _add(servlets, BasicTSPath.SYNC_PULL, constructSyncPullServlet());
+        _add(servlets, BasicTSPath.SYNC_LAST_ACCESS, constructLastAccessServlet());
 
         _add(servlets, BasicTSPath.STORE_ENTRY, constructStoreEntryServlet());
         _add(servlets, BasicTSPath.STORE_ENTRY_INFO, constructStoreEntryInfoServlet());
         _add(servlets, BasicTSPath.STORE_ENTRIES, constructStoreListServlet());
+        _add(servlets, BasicTSPath.STORE_ENTRIES_BATCH, constructStoreBatchServlet());
 
         // remote sync/pull does differ from local ones, to some degree
         _add(servlets, BasicTSPath.REMOTE_SYNC_LIST, constructRemoteSyncListServlet());
@@ -133,7 +138,11 @@ public class BasicTSServletFactory
 
     protected BackgroundMetricsAccessor constructMetricsAccessor(List<AllOperationMetrics.Provider> metrics) {
         AllOperationMetrics.Provider[] providers = metrics.toArray(new AllOperationMetrics.Provider[metrics.size()]);
-        return new BackgroundMetricsAccessor(_serviceStuff, _stores, providers);
+        BasicTSMetricsAccessor accessor = new BasicTSMetricsAccessor(_serviceStuff, _stores, providers);
+        if (_storeHandler instanceof BasicTSStoreHandler) {
+            accessor.setLastAccessBuffer(((BasicTSStoreHandler) _storeHandler).getLastAccessBuffer());
+        }
+        return accessor;
     }
 
     /*
@@ -184,6 +193,23 @@ public class BasicTSServletFactory
     protected ServletWithMetricsBase constructStoreEntryServlet() {
         return new BasicTSStoreEntryServlet(_serviceStuff, _cluster, _storeHandler);
     }
+
+    protected ServletBase constructLastAccessServlet() {
+        // only supported with the standard store handler
+        if (_storeHandler instanceof BasicTSStoreHandler) {
+            return new LastAccessServlet(_serviceStuff, _cluster, (BasicTSStoreHandler) _storeHandler);
+        }
+        return null;
+    }
+
+    protected ServletBase constructStoreBatchServlet() {
+        // only supported with the standard store handler
+        if ((_storeHandler instanceof BasicTSStoreHandler)
+                && ((BasicTSServiceConfig) _config).batchGet.enabled) {
+            return new StoreBatchServlet(_serviceStuff, _cluster, (BasicTSStoreHandler) _storeHandler);
+        }
+        return null;
+    }
     
     /*
     /**********************************************************************
@@ -6,6 +6,7 @@ import com.fasterxml.storemate.store.util.OperationDiagnostics;
 import com.fasterxml.storemate.store.util.TotalTime;
 import com.fasterxml.storemate.store.util.TotalTimeAndBytes;
 
+import com.fasterxml.clustermate.api.ClusterMateConstants;
 import com.fasterxml.clustermate.service.SharedServiceStuff;
 import com.fasterxml.clustermate.service.cluster.ClusterViewByServer;
 import com.fasterxml.clustermate.service.store.StoreHandler;
@@ -14,8 +15,11 @@ import com.fasterxml.clustermate.servlet.ServletServiceRequest;
 import com.fasterxml.clustermate.servlet.ServletServiceResponse;
 import com.fasterxml.clustermate.servlet.StoreEntryServlet;
 
+import com.fasterxml.transistore.basic.BasicTSConstants;
 import com.fasterxml.transistore.basic.BasicTSKey;
 import com.fasterxml.transistore.service.cfg.BasicTSServiceConfig;
+import com.fasterxml.transistore.service.throttle.TSOperationDiagnostics;
+import com.fasterxml.transistore.service.throttle.ThrottlingContext;
 
 @SuppressWarnings("serial")
 public class BasicTSStoreEntryServlet
@@ -44,7 +48,12 @@ public class BasicTSStoreEntryServlet
     public void handleGet(ServletServiceRequest request, ServletServiceResponse response,
             OperationDiagnostics stats) throws IOException
     {
-        super.handleGet(request, response, stats);
+        _bindContext(request, stats);
+        try {
+            super.handleGet(request, response, stats);
+        } finally {
+            ThrottlingContext.unbind();
+        }
         if (_printTimings) {
             _printTiming("GET", request, response, stats);
         }
@@ -54,7 +63,12 @@ public class BasicTSStoreEntryServlet
     public void handleHead(ServletServiceRequest request, ServletServiceResponse response,
             OperationDiagnostics stats) throws IOException
     {
-        super.handleHead(request, response, stats);
+        _bindContext(request, stats);
+        try {
+            super.handleHead(request, response, stats);
+        } finally {
+            ThrottlingContext.unbind();
+        }
         if (_printTimings) {
             _printTiming("HEAD", request, response, stats);
         }
@@ -64,7 +78,12 @@ public class BasicTSStoreEntryServlet
     public void handlePut(ServletServiceRequest request, ServletServiceResponse response,
             OperationDiagnostics stats) throws IOException
     {
-        super.handlePut(request, response, stats);
+        _bindContext(request, stats);
+        try {
+            super.handlePut(request, response, stats);
+        } finally {
+            ThrottlingContext.unbind();
+        }
         if (_printTimings) {
             _printTiming("PUT", request, response, stats);
         }
@@ -74,18 +93,120 @@ public class BasicTSStoreEntryServlet
     public void handleDelete(ServletServiceRequest request, ServletServiceResponse response,
             OperationDiagnostics stats) throws IOException
     {
-        super.handleDelete(request, response, stats);
+        _bindContext(request, stats);
+        try {
+            super.handleDelete(request, response, stats);
+        } finally {
+            ThrottlingContext.unbind();
+        }
         if (_printTimings) {
             _printTiming("DELETE", request, response, stats);
         }
     }
 
+    /*
+    /**********************************************************************
+    /* Handler overrides for throttling
+    /**********************************************************************
+     */
+
+    @Override
+    protected ServletServiceResponse _handleGet(ServletServiceRequest request, ServletServiceResponse response,
+            OperationDiagnostics stats, BasicTSKey key)
+        throws IOException
+    {
+        _setEntryKey(key);
+        return _checkRejected(super._handleGet(request, response, stats, key));
+    }
+
+    @Override
+    protected ServletServiceResponse _handleHead(ServletServiceRequest request, ServletServiceResponse response,
+            OperationDiagnostics stats, BasicTSKey key)
+        throws IOException
+    {
+        _setEntryKey(key);
+        return _checkRejected(super._handleHead(request, response, stats, key));
+    }
+
+    @Override
+    protected ServletServiceResponse _handlePut(ServletServiceRequest request, ServletServiceResponse response,
+            OperationDiagnostics stats, BasicTSKey key)
+        throws IOException
+    {
+        _setEntryKey(key);
+        return _checkRejected(super._handlePut(request, response, stats, key));
+    }
+
+    @Override
+    protected ServletServiceResponse _handleDelete(ServletServiceRequest request, ServletServiceResponse response,
+            OperationDiagnostics stats, BasicTSKey key)
+        throws IOException
+    {
+        _setEntryKey(key);
+        return _checkRejected(super._handleDelete(request, response, stats, key));
+    }
+
     /*
     /**********************************************************************
     /* Internal methods
     /**********************************************************************
      */
 
+    @Override
+    protected OperationDiagnostics constructMetadata() {
+        return new TSOperationDiagnostics(_timeMaster.nanosForDiagnostics());
+    }
+
+    protected void _bindContext(ServletServiceRequest request, OperationDiagnostics stats)
+    {
+        long timeoutMsecs = 0L;
+        String str = request.getHeader(BasicTSConstants.TS_HTTP_HEADER_TIMEOUT_MSECS);
+        if (str != null) {
+            try {
+                timeoutMsecs = Long.parseLong(str.trim());
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Invalid value for header '{}': '{}'; ignoring",
+                        BasicTSConstants.TS_HTTP_HEADER_TIMEOUT_MSECS, str);
+            }
+        }
+        ThrottlingContext ctxt = ThrottlingContext.bind(timeoutMsecs,
+                (stats instanceof TSOperationDiagnostics) ? (TSOperationDiagnostics) stats : null);
+        // declared content length (for PUTs) is used for choosing throttling lane
+        str = request.getHeader(ClusterMateConstants.HTTP_HEADER_CONTENT_LENGTH);
+        if (str != null) {
+            try {
+                ctxt.setContentLength(Long.parseLong(str.trim()));
+            } catch (IllegalArgumentException e) { } // just ignore
+        }
+    }
+
+    /**
+     * Helper method for making key of the entry accessed available to
+     * throttler, so that it can use partition id key has (possibly) already
+     * decoded, instead of decoding it from raw key.
+     */
+    protected void _setEntryKey(BasicTSKey key)
+    {
+        ThrottlingContext ctxt = ThrottlingContext.current();
+        if (ctxt != null) {
+            ctxt.setEntryKey(key);
+        }
+    }
+
+    /**
+     * Helper method for ensuring that operations rejected by throttler
+     * due to request deadline result in 503 response, regardless of how
+     * store handler reported the failure.
+     */
+    protected ServletServiceResponse _checkRejected(ServletServiceResponse response)
+    {
+        ThrottlingContext ctxt = ThrottlingContext.current();
+        if (ctxt != null && ctxt.wasRejected()) {
+            response = (ServletServiceResponse) response.serverOverload();
+        }
+        return response;
+    }
+
     protected void _printTiming(String verb,
             ServletServiceRequest request, ServletServiceResponse response,
             OperationDiagnostics stats)
@@ -94,8 +215,11 @@ public class BasicTSStoreEntryServlet
             System.out.printf("PERF/%s -> NO-STATS", verb);
             return;
         }
-        String msg = String.format("PERF/%s -> DB=%s, File=%s, Req/Resp=%.2f, TOTAL=%.2f msec; %d/%d bytes r/w",
+        long queueTime = (stats instanceof TSOperationDiagnostics)
+                ? ((TSOperationDiagnostics) stats).getQueueTime() : 0L;
+        String msg = String.format("PERF/%s -> Queue=%.2f, DB=%s, File=%s, Req/Resp=%.2f, TOTAL=%.2f msec; %d/%d bytes r/w",
                 verb,
+                (queueTime >> 10) / 1000.0,
                 _time(stats.getDbAccess()),
                 _time(stats.getFileAccess()),
                 (stats.getRequestResponseTotal()>>10) / 1000.0,
@@ -0,0 +1,69 @@
+package com.fasterxml.transistore.servlet;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import com.fasterxml.storemate.store.util.OperationDiagnostics;
+
+import com.fasterxml.clustermate.service.SharedServiceStuff;
+import com.fasterxml.clustermate.service.cluster.ClusterViewByServer;
+import com.fasterxml.clustermate.servlet.ServletBase;
+import com.fasterxml.clustermate.servlet.ServletServiceRequest;
+import com.fasterxml.clustermate.servlet.ServletServiceResponse;
+
+import com.fasterxml.transistore.service.lastaccess.LastAccessRequest;
+import com.fasterxml.transistore.service.lastaccess.LastAccessResponse;
+import com.fasterxml.transistore.service.store.BasicTSStoreHandler;
+
+/**
+ * Servlet that handles "last-access" requests by peer nodes of the same (local)
+ * cluster: peers call it before removing entries whose last-access TTL has
+ * expired, to verify that entries have not been accessed via this node
+ * either.
+ */
+@SuppressWarnings("serial")
+public class LastAccessServlet extends ServletBase
+{
+    protected final BasicTSStoreHandler _storeHandler;
+
+    protected final ObjectReader _requestReader;
+
+    protected final ObjectWriter _responseWriter;
+
+    public LastAccessServlet(SharedServiceStuff stuff, ClusterViewByServer clusterView,
+            BasicTSStoreHandler storeHandler)
+    {
+        // null -> use servlet path base as-is
+        super(stuff, clusterView, null);
+        _storeHandler = storeHandler;
+        _requestReader = stuff.jsonReader(LastAccessRequest.class);
+        _responseWriter = stuff.jsonWriter(LastAccessResponse.class);
+    }
+
+    @Override
+    public void handlePost(ServletServiceRequest request, ServletServiceResponse response,
+            OperationDiagnostics stats) throws IOException
+    {
+        LastAccessRequest lastAccessRequest;
+        try {
+            lastAccessRequest = _requestReader.readValue(request.getInputStream());
+            final int methodCount = (lastAccessRequest.methods == null) ? 0 : lastAccessRequest.methods.size();
+            if (methodCount != lastAccessRequest.size()) {
+                throw new IllegalArgumentException("Number of methods ("+methodCount
+                        +") does not match number of entries ("+lastAccessRequest.size()+")");
+            }
+        } catch (Exception e) {
+            String msg = "Invalid last-access request: "+e.getMessage();
+            response = (ServletServiceResponse) response.badRequest(msg)
+                    .setContentTypeText();
+            response.writeText(msg);
+            return;
+        }
+        LastAccessResponse result = _storeHandler.findLastAccessTimes(lastAccessRequest);
+        response = (ServletServiceResponse) response.ok(result)
+                .setContentTypeJson();
+        response.writeOut(_responseWriter);
+    }
+}
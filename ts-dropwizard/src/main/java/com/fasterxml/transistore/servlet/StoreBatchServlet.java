@@ -0,0 +1,118 @@
+package com.fasterxml.transistore.servlet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import com.fasterxml.storemate.store.util.OperationDiagnostics;
+
+import com.fasterxml.clustermate.api.EntryKeyConverter;
+import com.fasterxml.clustermate.service.SharedServiceStuff;
+import com.fasterxml.clustermate.service.cluster.ClusterViewByServer;
+import com.fasterxml.clustermate.servlet.ServletBase;
+import com.fasterxml.clustermate.servlet.ServletServiceRequest;
+import com.fasterxml.clustermate.servlet.ServletServiceResponse;
+
+import com.fasterxml.transistore.basic.BasicTSBatchRequest;
+import com.fasterxml.transistore.basic.BasicTSBatchResponse;
+import com.fasterxml.transistore.basic.BasicTSConstants;
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.service.cfg.BasicTSServiceConfig;
+import com.fasterxml.transistore.service.store.BasicTSStoreHandler;
+import com.fasterxml.transistore.service.store.BatchGetResponseContent;
+import com.fasterxml.transistore.service.throttle.DeadlineExceededException;
+import com.fasterxml.transistore.service.throttle.TSOperationDiagnostics;
+import com.fasterxml.transistore.service.throttle.ThrottlingContext;
+
+/**
+ * Servlet that handles batch GETs, in which client requests contents of
+ * multiple (small) entries, all owned by this node, with a single POST;
+ * contents are streamed as a single JSON document
+ * (see {@link BasicTSBatchResponse}).
+ */
+@SuppressWarnings("serial")
+public class StoreBatchServlet extends ServletBase
+{
+    protected final BasicTSStoreHandler _storeHandler;
+
+    protected final EntryKeyConverter<BasicTSKey> _keyConverter;
+
+    protected final ObjectReader _requestReader;
+
+    protected final int _maxKeys;
+
+    public StoreBatchServlet(SharedServiceStuff stuff, ClusterViewByServer clusterView,
+            BasicTSStoreHandler storeHandler)
+    {
+        // null -> use servlet path base as-is
+        super(stuff, clusterView, null);
+        _storeHandler = storeHandler;
+        _keyConverter = stuff.getKeyConverter();
+        _requestReader = stuff.jsonReader(BasicTSBatchRequest.class);
+        BasicTSServiceConfig config = stuff.getServiceConfig();
+        _maxKeys = config.batchGet.maxKeys;
+    }
+
+    @Override
+    public void handlePost(ServletServiceRequest request, ServletServiceResponse response,
+            OperationDiagnostics stats) throws IOException
+    {
+        List<BasicTSKey> keys;
+        try {
+            BasicTSBatchRequest batchRequest = _requestReader.readValue(request.getInputStream());
+            if (batchRequest.size() > _maxKeys) {
+                throw new IllegalArgumentException("Too many keys ("+batchRequest.size()
+                        +"); maximum is "+_maxKeys);
+            }
+            keys = new ArrayList<BasicTSKey>(batchRequest.size());
+            for (int i = 0, end = batchRequest.size(); i < end; ++i) {
+                keys.add(_keyConverter.stringToKey(batchRequest.keys.get(i)));
+            }
+        } catch (Exception e) {
+            String msg = "Invalid batch request: "+e.getMessage();
+            response = (ServletServiceResponse) response.badRequest(msg)
+                    .setContentTypeText();
+            response.writeText(msg);
+            return;
+        }
+        ThrottlingContext.bind(_findTimeout(request),
+                (stats instanceof TSOperationDiagnostics) ? (TSOperationDiagnostics) stats : null);
+        BatchGetResponseContent result;
+        try {
+            result = _storeHandler.getEntries(request, keys, stats);
+        } catch (DeadlineExceededException e) {
+            // expected under overload; client should retry entries individually later
+            response = (ServletServiceResponse) response.serverOverload()
+                    .setContentTypeText();
+            response.writeText(e.getMessage());
+            return;
+        } finally {
+            ThrottlingContext.unbind();
+        }
+        response = (ServletServiceResponse) response.ok(result)
+                .setContentTypeJson();
+        response.writeOut(null);
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    protected long _findTimeout(ServletServiceRequest request)
+    {
+        String str = request.getHeader(BasicTSConstants.TS_HTTP_HEADER_TIMEOUT_MSECS);
+        if (str != null) {
+            try {
+                return Long.parseLong(str.trim());
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Invalid value for header '{}': '{}'; ignoring",
+                        BasicTSConstants.TS_HTTP_HEADER_TIMEOUT_MSECS, str);
+            }
+        }
+        return 0L;
+    }
+}
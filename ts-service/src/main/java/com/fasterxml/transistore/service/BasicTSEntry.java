@@ -57,7 +57,14 @@ public class BasicTSEntry
     public final int minTTLSinceAccessSecs;
 
     public final LastAccessUpdateMethod lastAccessUpdateMethod;
-    
+
+    /**
+     * Optional absolute expiration time, if one was specified separate from
+     * {@link #maxTTLSecs} (and is earlier than time indicated by it);
+     * 0L if none.
+     */
+    public final long explicitExpirationTime;
+
     /*
     /**********************************************************************
     /* Construction
@@ -70,6 +77,13 @@ public class BasicTSEntry
     protected BasicTSEntry(BasicTSKey key, Storable rawEntry,
             long creationTime, int minTTLSecs, int maxTTLSecs,
             LastAccessUpdateMethod lastAccessUpdatedMethod)
+    {
+        this(key, rawEntry, creationTime, minTTLSecs, maxTTLSecs, lastAccessUpdatedMethod, 0L);
+    }
+
+    protected BasicTSEntry(BasicTSKey key, Storable rawEntry,
+            long creationTime, int minTTLSecs, int maxTTLSecs,
+            LastAccessUpdateMethod lastAccessUpdatedMethod, long explicitExpirationTime)
     {
         this.key = key;
         this.rawEntry = rawEntry;
@@ -77,6 +91,7 @@ public class BasicTSEntry
         this.minTTLSinceAccessSecs = minTTLSecs;
         this.maxTTLSecs = maxTTLSecs;
         this.lastAccessUpdateMethod = lastAccessUpdatedMethod;
+        this.explicitExpirationTime = explicitExpirationTime;
     }
 
     /*
@@ -116,6 +131,15 @@ public class BasicTSEntry
         return creationTime;
     }
 
+    /**
+     * Accessor for getting time at which entry expires, regardless of
+     * access: either explicit expiration time, or creation time plus
+     * max TTL, whichever is earlier.
+     */
+    public long getExpirationTime() {
+        return BasicTSMetadataCursor.expirationTime(creationTime, maxTTLSecs, explicitExpirationTime);
+    }
+
     /*
     /**********************************************************************
     /* Derived accessor implementations
@@ -125,7 +149,7 @@ public class BasicTSEntry
     @Override
     public boolean hasExceededMaxTTL(long currentTime) 
     {
-        return (currentTime >= (creationTime + 1000L * maxTTLSecs));
+        return (currentTime >= getExpirationTime());
     }
 
     @Override
@@ -147,7 +171,7 @@ public class BasicTSEntry
         // first: if no last-access info found, assume creation time is to be used
         // (or, if somehow last-access timestamp was corrupt?)
         long lastAccessMsecs = Math.max(creationTime, lastAccess);
-        return (currentTime >= (lastAccessMsecs + minTTLSinceAccessSecs*1000));
+        return (currentTime >= (lastAccessMsecs + 1000L * minTTLSinceAccessSecs));
     }
 
     @Override
@@ -1,5 +1,7 @@
 package com.fasterxml.transistore.service;
 
+import java.util.Arrays;
+
 import com.fasterxml.storemate.shared.ByteContainer;
 import com.fasterxml.storemate.shared.StorableKey;
 import com.fasterxml.storemate.shared.util.WithBytesCallback;
@@ -15,12 +17,34 @@ import com.fasterxml.transistore.basic.BasicTSKey;
 import com.fasterxml.transistore.basic.BasicTSKeyConverter;
 import com.fasterxml.transistore.basic.BasicTSListItem;
 
+/**
+ * Converter for TransiStore-specific metadata section of entries.
+ * Two formats are supported for reading:
+ *<ul>
+ * <li>Version 1: fixed-length (20 bytes) format with version, last-access method,
+ *   creation time (8 bytes), minimum and maximum TTLs (4 bytes each)
+ *  </li>
+ * <li>Version 2: variable-length format with version, flags (including last-access
+ *   method), creation time as variable-length delta from {@link #V2_EPOCH},
+ *   TTLs as variable-length ints, and optional absolute expiration time.
+ *   Typically 12-14 bytes long.
+ *  </li>
+ *</ul>
+ * Version used for writing is configurable (see {@link #withMetadataVersion}),
+ * and defaults to version 1, since nodes running older versions can not read
+ * version 2 entries (which get copied as-is during synchronization).
+ */
 public class BasicTSEntryConverter
     extends StoredEntryConverter<BasicTSKey, StoredEntry<BasicTSKey>, BasicTSListItem>
 {
     public final static byte V_METADATA_VERSION_1 = 0x11;
-    
+
+    public final static byte V_METADATA_VERSION_2 = 0x12;
+
     public final static int OFFSET_VERSION = 0;
+
+    // // // Version 1 layout
+
     public final static int OFFSET_LAST_ACCESS = 1;
 
     public final static int OFFSET_CREATE_TIME = 4;
@@ -29,8 +53,45 @@ public class BasicTSEntryConverter
 
     public final static int METADATA_LENGTH = 20;
 
+    // // // Version 2 layout
+
+    public final static int OFFSET_V2_FLAGS = 1;
+
+    /**
+     * Creation times are encoded as (signed) offsets from this timestamp
+     * (2014-01-01T00:00:00Z), to reduce their length.
+     */
+    public final static long V2_EPOCH = 1388534400000L;
+
+    /**
+     * Mask for flag bits that contain id of last-access update method
+     */
+    public final static int V2_FLAG_MASK_LAST_ACCESS = 0x07;
+
+    /**
+     * Flag that indicates that an absolute expiration time follows TTLs.
+     */
+    public final static int V2_FLAG_HAS_EXPIRATION = 0x08;
+
+    /**
+     * Flag that indicates that minimum TTL is same as maximum TTL, and is
+     * thereby omitted.
+     */
+    public final static int V2_FLAG_SAME_TTLS = 0x10;
+
+    /**
+     * Maximum length of version 2 metadata: version, flags, two variable-length
+     * longs (10 bytes max) and two variable-length ints (5 bytes max)
+     */
+    protected final static int V2_MAX_LENGTH = 2 + 10 + 5 + 5 + 10;
+
     protected final EntryKeyConverter<BasicTSKey> _keyConverter;
 
+    /**
+     * Version of metadata format to use for writing: either 1 or 2.
+     */
+    protected final int _metadataVersion;
+
     /*
     /**********************************************************************
     /* Life-cycle
@@ -40,9 +101,42 @@ public class BasicTSEntryConverter
     public BasicTSEntryConverter() {
         this(BasicTSKeyConverter.defaultInstance());
     }
-    
+
     public BasicTSEntryConverter(EntryKeyConverter<BasicTSKey> keyConverter) {
+        this(keyConverter, 1);
+    }
+
+    public BasicTSEntryConverter(EntryKeyConverter<BasicTSKey> keyConverter,
+            int metadataVersion)
+    {
+        if (metadataVersion != 1 && metadataVersion != 2) {
+            throw new IllegalArgumentException("Unsupported metadata version "+metadataVersion+"; only 1 and 2 supported");
+        }
         _keyConverter = keyConverter;
+        _metadataVersion = metadataVersion;
+    }
+
+    /**
+     * "Mutant factory" for constructing a converter that writes metadata
+     * using specified format version. Sub-classes need to override this method.
+     */
+    public BasicTSEntryConverter withMetadataVersion(int version) {
+        if (version == _metadataVersion) {
+            return this;
+        }
+        return new BasicTSEntryConverter(_keyConverter, version);
+    }
+
+    public int getMetadataVersion() {
+        return _metadataVersion;
+    }
+
+    /**
+     * @return Identifier (first byte of metadata section) of the format
+     *    version this converter writes
+     */
+    public int getMetadataVersionId() {
+        return (_metadataVersion == 2) ? V_METADATA_VERSION_2 : V_METADATA_VERSION_1;
     }
 
     /*
@@ -55,13 +149,13 @@ public class BasicTSEntryConverter
     public EntryKeyConverter<BasicTSKey> keyConverter() {
         return _keyConverter;
     }
-    
+
     /*
     /**********************************************************************
     /* Conversions for metadata section
     /**********************************************************************
      */
-    
+
     /**
      * Method called to construct "custom metadata" section to be
      * used for constructing a new <code>Storable</code> instance.
@@ -69,6 +163,35 @@ public class BasicTSEntryConverter
     @Override
     public ByteContainer createMetadata(long creationTime,
             byte lastAccessUpdateMethod, int minTTLSecs, int maxTTLSecs)
+    {
+        return createMetadata(creationTime, lastAccessUpdateMethod, minTTLSecs, maxTTLSecs, 0L);
+    }
+
+    /**
+     * Method called to construct "custom metadata" section, with optional
+     * absolute expiration time.
+     *
+     * @param expirationTime Absolute time at which entry expires, if earlier than
+     *    one indicated by <code>maxTTLSecs</code>; or 0L to indicate that
+     *    only max TTL is used
+     */
+    public ByteContainer createMetadata(long creationTime,
+            byte lastAccessUpdateMethod, int minTTLSecs, int maxTTLSecs,
+            long expirationTime)
+    {
+        if (_metadataVersion == 1) {
+            // no place for expiration time: need to fold it in max TTL
+            if (expirationTime > 0L) {
+                maxTTLSecs = (int) Math.min(maxTTLSecs, (expirationTime - creationTime + 999L) / 1000L);
+            }
+            return _createMetadataV1(creationTime, lastAccessUpdateMethod, minTTLSecs, maxTTLSecs);
+        }
+        return _createMetadataV2(creationTime, lastAccessUpdateMethod, minTTLSecs, maxTTLSecs,
+                expirationTime);
+    }
+
+    protected ByteContainer _createMetadataV1(long creationTime,
+            byte lastAccessUpdateMethod, int minTTLSecs, int maxTTLSecs)
     {
         byte[] buffer = new byte[METADATA_LENGTH];
         buffer[OFFSET_VERSION] = V_METADATA_VERSION_1;
@@ -76,16 +199,57 @@ public class BasicTSEntryConverter
         _putLongBE(buffer, OFFSET_CREATE_TIME, creationTime);
         _putIntBE(buffer, OFFSET_MIN_TTL, minTTLSecs);
         _putIntBE(buffer, OFFSET_MAX_TTL, maxTTLSecs);
-     
+
         return ByteContainer.simple(buffer, 0, METADATA_LENGTH);
     }
 
+    protected ByteContainer _createMetadataV2(long creationTime,
+            byte lastAccessUpdateMethod, int minTTLSecs, int maxTTLSecs,
+            long expirationTime)
+    {
+        byte[] buffer = new byte[V2_MAX_LENGTH];
+        int flags = lastAccessUpdateMethod & V2_FLAG_MASK_LAST_ACCESS;
+        if (lastAccessUpdateMethod != flags) {
+            throw new IllegalArgumentException("Invalid last-access-update-method 0x"
+                    +Integer.toHexString(lastAccessUpdateMethod)+" for metadata version 2");
+        }
+        if (expirationTime > 0L) {
+            flags |= V2_FLAG_HAS_EXPIRATION;
+        }
+        if (minTTLSecs == maxTTLSecs) {
+            flags |= V2_FLAG_SAME_TTLS;
+        }
+        buffer[OFFSET_VERSION] = V_METADATA_VERSION_2;
+        buffer[OFFSET_V2_FLAGS] = (byte) flags;
+        int ptr = _putVLong(buffer, OFFSET_V2_FLAGS+1, _zigzag(creationTime - V2_EPOCH));
+        ptr = _putVLong(buffer, ptr, maxTTLSecs & 0xFFFFFFFFL);
+        if ((flags & V2_FLAG_SAME_TTLS) == 0) {
+            ptr = _putVLong(buffer, ptr, minTTLSecs & 0xFFFFFFFFL);
+        }
+        if (expirationTime > 0L) {
+            ptr = _putVLong(buffer, ptr, _zigzag(expirationTime - creationTime));
+        }
+        return ByteContainer.simple(Arrays.copyOf(buffer, ptr), 0, ptr);
+    }
+
+    /**
+     * Method for constructing metadata section for given decoded metadata,
+     * using current output format version; used for migrating entries
+     * to a new format.
+     */
+    public ByteContainer createMetadata(BasicTSMetadataCursor md)
+    {
+        LastAccessUpdateMethod acc = md.getLastAccessUpdateMethod();
+        return createMetadata(md.getCreationTime(), (acc == null) ? 0 : acc.asByte(),
+                md.getMinTTLSinceAccessSecs(), md.getMaxTTLSecs(), md.getExplicitExpirationTime());
+    }
+
     /*
     /**********************************************************************
     /* Actual Entry conversions
     /**********************************************************************
      */
-    
+
     @Override
     public final BasicTSEntry entryFromStorable(final Storable raw) {
         if (raw == null) {
@@ -109,34 +273,108 @@ public class BasicTSEntryConverter
     public BasicTSEntry entryFromStorable(BasicTSKey key, Storable raw,
             byte[] buffer, int offset, int length)
     {
-        int version = _extractVersion(key, buffer, offset, length);
-        if (version != V_METADATA_VERSION_1) {
-            _badData(key, "version 0x"+Integer.toHexString(version));
-        }
+        BasicTSMetadataCursor md = new BasicTSMetadataCursor(this);
+        _decodeMetadata(key, null, buffer, offset, length, md);
+        return new BasicTSEntry(key, raw, md.getCreationTime(),
+                md.getMinTTLSinceAccessSecs(), md.getMaxTTLSecs(),
+                md.getLastAccessUpdateMethod(), md.getExplicitExpirationTime());
+    }
+
+    /**
+     * Method for constructing entry from already decoded metadata
+     * (see {@link BasicTSMetadataCursor}).
+     */
+    public BasicTSEntry entryFromMetadata(Storable raw, BasicTSMetadataCursor md)
+    {
+        return new BasicTSEntry(_key(raw.getKey()), raw, md.getCreationTime(),
+                md.getMinTTLSinceAccessSecs(), md.getMaxTTLSecs(),
+                md.getLastAccessUpdateMethod(), md.getExplicitExpirationTime());
+    }
+
+    /*
+    /**********************************************************************
+    /* Metadata decoding without entry construction
+    /**********************************************************************
+     */
+
+    /**
+     * Factory method for constructing a reusable cursor for decoding metadata
+     * of entries without constructing entry instances. Cursor is not thread-safe.
+     */
+    public BasicTSMetadataCursor metadataCursor() {
+        return new BasicTSMetadataCursor(this);
+    }
 
-        LastAccessUpdateMethod acc = _extractLastAccessUpdatedMethod(key, buffer, offset, length);
-        final long creationTime = _extractCreationTime(buffer, offset, length);
-        final int minTTLSecs = _extractMinTTLSecs(buffer, offset, length);
-        final int maxTTLSecs = _extractMaxTTLSecs(buffer, offset, length);
+    /**
+     * Method for decoding metadata section of an entry into given cursor.
+     * Key is only needed for error reporting.
+     */
+    public void decodeMetadata(StorableKey rawKey, byte[] buffer, int offset, int length,
+            BasicTSMetadataCursor cursor)
+    {
+        _decodeMetadata(null, rawKey, buffer, offset, length, cursor);
+    }
 
-        return new BasicTSEntry(key, raw, creationTime, minTTLSecs, maxTTLSecs, acc);
+    protected void _decodeMetadata(BasicTSKey key, StorableKey rawKey,
+            byte[] buffer, int offset, int length, BasicTSMetadataCursor cursor)
+    {
+        final int version = (length > 0) ? buffer[offset+OFFSET_VERSION] : 0;
+        if (version == V_METADATA_VERSION_1) {
+            if (length < METADATA_LENGTH) {
+                _badData(key, rawKey, "metadata length "+length+" (expected "+METADATA_LENGTH+")");
+            }
+            int accCode = buffer[offset+OFFSET_LAST_ACCESS];
+            cursor._set(version, _extractCreationTime(buffer, offset, length),
+                    _extractMinTTLSecs(buffer, offset, length),
+                    _extractMaxTTLSecs(buffer, offset, length),
+                    _lastAccess(key, rawKey, accCode), 0L);
+            return;
+        }
+        if (version != V_METADATA_VERSION_2) {
+            _badData(key, rawKey, "version 0x"+Integer.toHexString(version));
+        }
+        if (length < 4) {
+            _badData(key, rawKey, "metadata length "+length+" (expected at least 4)");
+        }
+        final int end = offset+length;
+        final int flags = buffer[offset+OFFSET_V2_FLAGS];
+        int ptr = offset+OFFSET_V2_FLAGS+1;
+
+        final long creationTime = _unzigzag(_getVLong(key, rawKey, buffer, ptr, end, "creation time"))
+                + V2_EPOCH;
+        ptr = _skipVLong(buffer, ptr);
+        final int maxTTLSecs = (int) _getVLong(key, rawKey, buffer, ptr, end, "max TTL");
+        ptr = _skipVLong(buffer, ptr);
+        int minTTLSecs = maxTTLSecs;
+        if ((flags & V2_FLAG_SAME_TTLS) == 0) {
+            minTTLSecs = (int) _getVLong(key, rawKey, buffer, ptr, end, "min TTL");
+            ptr = _skipVLong(buffer, ptr);
+        }
+        long expirationTime = 0L;
+        if ((flags & V2_FLAG_HAS_EXPIRATION) != 0) {
+            expirationTime = creationTime
+                    + _unzigzag(_getVLong(key, rawKey, buffer, ptr, end, "expiration time"));
+        }
+        cursor._set(version, creationTime, minTTLSecs, maxTTLSecs,
+                _lastAccess(key, rawKey, flags & V2_FLAG_MASK_LAST_ACCESS), expirationTime);
     }
 
     @Override
     public ListItem minimalListItemFromStorable(Storable raw) {
         return defaultMinimalListItemFromStorable(raw);
     }
-    
+
     @Override
     public BasicTSListItem fullListItemFromStorable(Storable raw) {
-        BasicTSEntry entry = entryFromStorable(raw);
+        // no need for key or entry, just metadata
+        BasicTSMetadataCursor md = metadataCursor().read(raw);
         return new BasicTSListItem(raw.getKey(), raw.getContentHash(), raw.getActualUncompressedLength(),
-                entry.creationTime, entry.maxTTLSecs);
+                md.getCreationTime(), md.getMaxTTLSecs());
     }
 
     /*
     /**********************************************************************
-    /* Internal methods, data extraction
+    /* Internal methods, data extraction (version 1)
     /**********************************************************************
      */
 
@@ -155,13 +393,17 @@ public class BasicTSEntryConverter
     protected int _extractMaxTTLSecs(byte[] buffer, int offset, int length) {
         return _getIntBE(buffer, offset+OFFSET_MAX_TTL);
     }
-    
+
     protected LastAccessUpdateMethod _extractLastAccessUpdatedMethod(BasicTSKey key, byte[] buffer, int offset, int length)
     {
-        int accCode = buffer[offset+OFFSET_LAST_ACCESS];
+        return _lastAccess(key, null, buffer[offset+OFFSET_LAST_ACCESS]);
+    }
+
+    protected LastAccessUpdateMethod _lastAccess(BasicTSKey key, StorableKey rawKey, int accCode)
+    {
         LastAccessUpdateMethod acc = TSLastAccess.valueOf(accCode);
         if (acc == null) {
-            _badData(key, "invalid last-access-update-method 0x"+Integer.toHexString(accCode));
+            _badData(key, rawKey, "invalid last-access-update-method 0x"+Integer.toHexString(accCode));
         }
         return acc;
     }
@@ -171,7 +413,7 @@ public class BasicTSEntryConverter
         _putIntBE(buffer, offset, (int) (value >> 32));
         _putIntBE(buffer, offset+4, (int) value);
     }
-    
+
     private final static void _putIntBE(byte[] buffer, int offset, int value)
     {
         buffer[offset] = (byte) (value >> 24);
@@ -186,7 +428,7 @@ public class BasicTSEntryConverter
         long l2 = _getIntBE(buffer, offset+4);
         return (l1 << 32) | ((l2 << 32) >>> 32);
     }
-    
+
     private final static int _getIntBE(byte[] buffer, int offset)
     {
         return (buffer[offset] << 24)
@@ -196,16 +438,82 @@ public class BasicTSEntryConverter
              ;
     }
 
+    /*
+    /**********************************************************************
+    /* Internal methods, variable-length encoding (version 2)
+    /**********************************************************************
+     */
+
+    /**
+     * Method for appending unsigned variable-length value, 7 bits per byte,
+     * least-significant bits first; high bit set for all but the last byte.
+     *
+     * @return Offset after the last byte written
+     */
+    private final static int _putVLong(byte[] buffer, int ptr, long value)
+    {
+        while ((value & ~0x7FL) != 0L) {
+            buffer[ptr++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[ptr++] = (byte) value;
+        return ptr;
+    }
+
+    /**
+     * Method for decoding variable-length value starting at given offset;
+     * fails if value is not complete before <code>end</code>.
+     */
+    private final long _getVLong(BasicTSKey key, StorableKey rawKey,
+            byte[] buffer, int ptr, int end, String desc)
+    {
+        long value = 0L;
+        for (int shift = 0; ptr < end; shift += 7) {
+            int b = buffer[ptr++];
+            value |= ((long) (b & 0x7F)) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        _badData(key, rawKey, "truncated "+desc);
+        return 0L; // never gets here
+    }
+
+    /**
+     * Method for skipping a variable-length value that has already been
+     * successfully decoded.
+     */
+    private final static int _skipVLong(byte[] buffer, int ptr)
+    {
+        while (buffer[ptr++] < 0) { }
+        return ptr;
+    }
+
+    private final static long _zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private final static long _unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1L);
+    }
+
     /*
     /**********************************************************************
     /* Internal methods
     /**********************************************************************
      */
-    
+
     protected void _badData(final BasicTSKey key, String msg) {
         throw new IllegalArgumentException("Bad BasicTSKey metadata (key "+key+"): "+msg);
     }
-    
+
+    protected void _badData(BasicTSKey key, StorableKey rawKey, String msg) {
+        if ((key == null) && (rawKey != null)) {
+            key = _key(rawKey);
+        }
+        _badData(key, msg);
+    }
+
     protected BasicTSKey _key(StorableKey rawKey) {
         return _keyConverter.rawToEntryKey(rawKey);
     }
@@ -0,0 +1,212 @@
+package com.fasterxml.transistore.service;
+
+import com.fasterxml.storemate.shared.util.WithBytesCallback;
+import com.fasterxml.storemate.store.Storable;
+import com.fasterxml.storemate.store.lastaccess.LastAccessUpdateMethod;
+
+import com.fasterxml.clustermate.service.store.StoredEntry;
+import com.fasterxml.clustermate.service.store.StoredEntryConverter;
+
+import com.fasterxml.transistore.basic.BasicTSKey;
+
+/**
+ * Reusable "flyweight" accessor for TransiStore-specific metadata of
+ * a {@link Storable}: decodes creation time, TTLs and last-access method
+ * directly from the raw entry, without constructing key or entry objects.
+ * Used by processes that go through all entries of a store (like cleanup),
+ * for which only a small subset of entries need to be fully materialized.
+ *<p>
+ * Instances are NOT thread-safe: each thread (or iteration) needs to use
+ * its own instance.
+ */
+public final class BasicTSMetadataCursor
+    implements WithBytesCallback<BasicTSMetadataCursor>
+{
+    /**
+     * Converter used for decoding metadata, if it is of expected type;
+     * null if not.
+     */
+    private final BasicTSEntryConverter _tsConverter;
+
+    /**
+     * Converter used for constructing entries, and for decoding metadata
+     * if not {@link BasicTSEntryConverter}.
+     */
+    private final StoredEntryConverter<BasicTSKey,?,?> _converter;
+
+    /*
+    /**********************************************************************
+    /* Current state
+    /**********************************************************************
+     */
+
+    private Storable _raw;
+
+    /**
+     * Version of metadata format of the current entry; 0 if not known
+     * (custom converter)
+     */
+    private int _version;
+
+    /**
+     * Entry that was constructed, if any (either when asked, or when
+     * using a non-TransiStore converter).
+     */
+    private StoredEntry<BasicTSKey> _entry;
+
+    private long _creationTime;
+
+    private int _minTTLSinceAccessSecs, _maxTTLSecs;
+
+    private LastAccessUpdateMethod _lastAccessUpdateMethod;
+
+    private long _explicitExpirationTime;
+
+    /*
+    /**********************************************************************
+    /* Construction
+    /**********************************************************************
+     */
+
+    public BasicTSMetadataCursor(StoredEntryConverter<BasicTSKey,?,?> conv)
+    {
+        _converter = conv;
+        _tsConverter = (conv instanceof BasicTSEntryConverter) ? (BasicTSEntryConverter) conv : null;
+    }
+
+    /**
+     * Method for binding this cursor to given entry, decoding its metadata.
+     *
+     * @return This cursor, for call chaining
+     */
+    public BasicTSMetadataCursor read(Storable raw)
+    {
+        _raw = raw;
+        _entry = null;
+        if (_tsConverter != null) {
+            return raw.withMetadata(this);
+        }
+        // Custom converter; need to go through full entry
+        StoredEntry<BasicTSKey> entry = _entry(raw);
+        _set(0, entry.getCreationTime(), entry.getMinTTLSinceAccessSecs(), entry.getMaxTTLSecs(),
+                entry.getLastAccessUpdateMethod(), 0L);
+        _entry = entry;
+        return this;
+    }
+
+    @Override
+    public BasicTSMetadataCursor withBytes(byte[] buffer, int offset, int length) {
+        _tsConverter.decodeMetadata(_raw.getKey(), buffer, offset, length, this);
+        return this;
+    }
+
+    void _set(int version, long creationTime, int minTTLSecs, int maxTTLSecs,
+            LastAccessUpdateMethod acc, long explicitExpirationTime)
+    {
+        _version = version;
+        _creationTime = creationTime;
+        _minTTLSinceAccessSecs = minTTLSecs;
+        _maxTTLSecs = maxTTLSecs;
+        _lastAccessUpdateMethod = acc;
+        _explicitExpirationTime = explicitExpirationTime;
+    }
+
+    /*
+    /**********************************************************************
+    /* Accessors
+    /**********************************************************************
+     */
+
+    public Storable getRaw() { return _raw; }
+
+    /**
+     * @return Metadata format version identifier (like
+     *   {@link BasicTSEntryConverter#V_METADATA_VERSION_1}); or 0 if not known
+     */
+    public int getVersion() { return _version; }
+
+    public long getCreationTime() { return _creationTime; }
+
+    public int getMinTTLSinceAccessSecs() { return _minTTLSinceAccessSecs; }
+
+    public int getMaxTTLSecs() { return _maxTTLSecs; }
+
+    public LastAccessUpdateMethod getLastAccessUpdateMethod() { return _lastAccessUpdateMethod; }
+
+    /**
+     * @return Absolute expiration time, if explicitly specified; 0L if not
+     */
+    public long getExplicitExpirationTime() { return _explicitExpirationTime; }
+
+    /**
+     * @return Time at which entry expires regardless of access: either explicit
+     *    expiration time, or creation time plus max TTL, whichever is earlier
+     */
+    public long getExpirationTime() {
+        return expirationTime(_creationTime, _maxTTLSecs, _explicitExpirationTime);
+    }
+
+    /**
+     * Method for accessing the full entry for current raw entry; constructed
+     * on first call (for given entry) and retained.
+     */
+    public StoredEntry<BasicTSKey> toEntry()
+    {
+        if (_entry == null) {
+            _entry = _tsConverter.entryFromMetadata(_raw, this);
+        }
+        return _entry;
+    }
+
+    /*
+    /**********************************************************************
+    /* Derived accessors; same semantics as ones in BasicTSEntry
+    /**********************************************************************
+     */
+
+    public boolean isDeleted() {
+        return _raw.isDeleted();
+    }
+
+    public boolean hasExceededMaxTTL(long currentTime) {
+        return (currentTime >= getExpirationTime());
+    }
+
+    public boolean hasExceededMinTTL(long currentTime) {
+        return (currentTime >= (_creationTime + 1000L * _minTTLSinceAccessSecs));
+    }
+
+    public boolean usesLastAccessTime() {
+        LastAccessUpdateMethod method = _lastAccessUpdateMethod;
+        return (method != null) && !method.meansNoUpdate();
+    }
+
+    public boolean hasExceededLastAccessTTL(long currentTime, long lastAccess) {
+        long lastAccessMsecs = Math.max(_creationTime, lastAccess);
+        return (currentTime >= (lastAccessMsecs + 1000L * _minTTLSinceAccessSecs));
+    }
+
+    public boolean insertedBefore(long timestamp) {
+        return _raw.getLastModified() < timestamp;
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper methods
+    /**********************************************************************
+     */
+
+    public static long expirationTime(long creationTime, int maxTTLSecs, long explicitExpirationTime)
+    {
+        long expiration = creationTime + 1000L * maxTTLSecs;
+        if ((explicitExpirationTime > 0L) && (explicitExpirationTime < expiration)) {
+            return explicitExpirationTime;
+        }
+        return expiration;
+    }
+
+    @SuppressWarnings("unchecked")
+    private StoredEntry<BasicTSKey> _entry(Storable raw) {
+        return (StoredEntry<BasicTSKey>) _converter.entryFromStorable(raw);
+    }
+}
@@ -2,18 +2,39 @@ package com.fasterxml.transistore.service;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.Semaphore;
-
 
 //import com.fasterxml.clustermate.service.StartAndStoppable;
 import com.fasterxml.storemate.shared.StorableKey;
 import com.fasterxml.storemate.store.*;
 import com.fasterxml.storemate.store.backend.IterationResult;
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSKeyConverter;
 import com.fasterxml.transistore.service.ReadWriteOperationPrioritizer.Lease;
+import com.fasterxml.transistore.service.cleanup.ExpirationIndex;
+import com.fasterxml.transistore.service.cfg.ThrottlingConfig;
+import com.fasterxml.transistore.service.throttle.AdaptiveConcurrencyLimiter;
+import com.fasterxml.transistore.service.throttle.BackgroundLane;
+import com.fasterxml.transistore.service.throttle.BackgroundMetrics;
+import com.fasterxml.transistore.service.throttle.BackgroundShareController;
+import com.fasterxml.transistore.service.throttle.BandwidthLimitedLane;
+import com.fasterxml.transistore.service.throttle.DeadlineExceededException;
+import com.fasterxml.transistore.service.throttle.ThrottlingContext;
+import com.fasterxml.transistore.service.throttle.ThrottlingMetrics;
 
 /**
  * This is the standard {@link StoreOperationThrottler} to use with
  * TransiStore.
+ *<p>
+ * All throttled operations have a deadline: either one specified by the
+ * request (see {@link ThrottlingContext}), or configured per-operation default.
+ * Operations that can not proceed before their deadline are rejected with
+ * {@link DeadlineExceededException}.
+ *<p>
+ * Operations by background sources (sync, cleanup) are limited to a share
+ * of the capacity available for client requests; share is reduced if latency
+ * of client requests grows too high. Background operations also take their
+ * permits from the same limiters as client requests (without deadline), so
+ * that the total concurrency never exceeds configured limits.
  */
 public class BasicTSOperationThrottler
     extends StoreOperationThrottler
@@ -21,25 +42,32 @@ public class BasicTSOperationThrottler
     private final static boolean DISABLED = false;
 
     /**
-     * Let's start with a very simple mutex for local DB operations
-     * done as part of PUT operations. Since they should be quick,
-     * can start with a simple mutex.
-     * But allow two concurrent updates, not just one.
+     * Permit used for unthrottled background file operations
      */
-    protected final Semaphore _putLock = new Semaphore(2, true);
+    private final static ThrottlingContext.Permit NO_PERMIT = new ThrottlingContext.Permit() {
+        @Override
+        public void release() { }
+    };
+
+    /**
+     * Concurrency limiter for local DB operations done as part of PUT
+     * operations. Starts with small limit (by default, two concurrent
+     * updates), but may adjust it based on observed latencies.
+     */
+    protected final AdaptiveConcurrencyLimiter _putLimiter;
 
     /**
      * We may want to throttle reads slightly as well. But should be
      * able to support much higher concurrency than with writes
      */
-    protected final Semaphore _getLock = new Semaphore(6, true);
+    protected final AdaptiveConcurrencyLimiter _getLimiter;
 
     /**
      * Listings can be pricey as well, so let's throttle to... say,
-     * eight as well. But make this fair, since it may take longer
-     * than other read access.
+     * eight initially. Queuing is fair (FIFO), since it may take longer
+     * than other read access; partition is not known for listings.
      */
-    protected final Semaphore _listLock = new Semaphore(8, true);
+    protected final AdaptiveConcurrencyLimiter _listLimiter;
 
     /**
      * For file-system operations, use a more advanced lock that will
@@ -48,6 +76,48 @@ public class BasicTSOperationThrottler
      */
     protected final ReadWriteOperationPrioritizer _fsReadWrites;
 
+    /**
+     * Transfers of files bigger than this threshold are throttled using
+     * {@link #_largeFiles}; smaller ones (as well as ones with unknown size)
+     * by {@link #_fsReadWrites}, which is thereby reserved for shorter
+     * operations.
+     */
+    protected final long _largeFileThreshold;
+
+    /**
+     * Lane for large file transfers, with bandwidth-based budgeting.
+     */
+    protected final BandwidthLimitedLane _largeFiles;
+
+    /**
+     * Controller for the share of capacity given to operations by background
+     * sources; null if background operations are not throttled.
+     */
+    protected final BackgroundShareController _background;
+
+    protected final BackgroundLane _bgGets, _bgPuts, _bgLists, _bgFiles;
+
+    /**
+     * Whether operations are queued fairly between partitions; if so,
+     * partition id needs to be extracted from keys.
+     */
+    protected final boolean _partitionFairQueuing;
+
+    protected final BasicTSKeyConverter _keyConverter;
+
+    /**
+     * Default maximum wait times for operations, used unless request
+     * has its own deadline.
+     */
+    protected final long _getTimeoutNanos, _putTimeoutNanos, _listTimeoutNanos,
+        _fileTimeoutNanos;
+
+    /**
+     * Index of expiration times to update for writes, if any. Since all
+     * writes go through throttler, this is the place to keep it up to date.
+     */
+    protected ExpirationIndex _expirationIndex;
+
     /*
     /**********************************************************************
     /* Life-cycle
@@ -55,7 +125,101 @@ public class BasicTSOperationThrottler
      */
 
     public BasicTSOperationThrottler() {
-        _fsReadWrites = new ReadWriteOperationPrioritizer();
+        this(new ThrottlingConfig());
+    }
+
+    public BasicTSOperationThrottler(ThrottlingConfig config)
+    {
+        _getLimiter = AdaptiveConcurrencyLimiter.construct("GET", config, config.get);
+        _putLimiter = AdaptiveConcurrencyLimiter.construct("PUT", config, config.put);
+        _listLimiter = AdaptiveConcurrencyLimiter.construct("LIST", config, config.list);
+        _fsReadWrites = new ReadWriteOperationPrioritizer(config.files);
+        _largeFileThreshold = config.files.largeFileThreshold.getNumberOfBytes();
+        _largeFiles = new BandwidthLimitedLane("large files", config.files.maxConcurrentLarge,
+                config.files.largeFileBytesPerSecond.getNumberOfBytes(),
+                config.files.largeFileBurst.getNumberOfBytes());
+        if (config.background.enabled) {
+            _background = new BackgroundShareController(config.background);
+            _bgGets = _backgroundLane(_getLimiter);
+            _bgPuts = _backgroundLane(_putLimiter);
+            _bgLists = _backgroundLane(_listLimiter);
+            final int fileCapacity = config.files.maxConcurrent;
+            _bgFiles = new BackgroundLane(_background) {
+                @Override
+                protected int capacity() {
+                    return fileCapacity;
+                }
+            };
+            _background.addLane(_bgFiles);
+        } else {
+            _background = null;
+            _bgGets = _bgPuts = _bgLists = _bgFiles = null;
+        }
+        _partitionFairQueuing = config.partitionFairQueuing;
+        _keyConverter = BasicTSKeyConverter.defaultInstance();
+
+        _getTimeoutNanos = _nanos(config.get.defaultDeadline.getMillis());
+        _putTimeoutNanos = _nanos(config.put.defaultDeadline.getMillis());
+        _listTimeoutNanos = _nanos(config.list.defaultDeadline.getMillis());
+        _fileTimeoutNanos = _nanos(config.files.defaultDeadline.getMillis());
+    }
+
+    private final static long _nanos(long msecs) {
+        return msecs * 1000L * 1000L;
+    }
+
+    private BackgroundLane _backgroundLane(final AdaptiveConcurrencyLimiter limiter)
+    {
+        BackgroundLane lane = new BackgroundLane(_background) {
+            @Override
+            protected int capacity() {
+                return limiter.getLimit();
+            }
+        };
+        _background.addLane(lane);
+        return lane;
+    }
+
+    /*
+    /**********************************************************************
+    /* Metrics
+    /**********************************************************************
+     */
+
+    public void setExpirationIndex(ExpirationIndex index) {
+        _expirationIndex = index;
+    }
+
+    /**
+     * Accessor for controller of background operation share, which also
+     * keeps track of client request latencies; null if background
+     * operations are not throttled.
+     */
+    public BackgroundShareController getBackgroundController() {
+        return _background;
+    }
+
+    /**
+     * Accessor for current state of concurrency limits, queue lengths
+     * of throttled operations.
+     */
+    public ThrottlingMetrics getMetrics()
+    {
+        ThrottlingMetrics metrics = new ThrottlingMetrics();
+        metrics.GET = _getLimiter.metrics();
+        metrics.PUT = _putLimiter.metrics();
+        metrics.LIST = _listLimiter.metrics();
+        metrics.FILES = _fsReadWrites.metrics();
+        metrics.LARGE_FILES = _largeFiles.metrics();
+        if (_background != null) {
+            BackgroundMetrics bg = _background.metrics();
+            bg.GET = _bgGets.metrics();
+            bg.PUT = _bgPuts.metrics();
+            bg.LIST = _bgLists.metrics();
+            bg.FILES = _bgFiles.metrics();
+            metrics.BACKGROUND = bg;
+        }
+        return metrics;
     }
 
     /*
@@ -79,19 +243,27 @@ public class BasicTSOperationThrottler
             StoreOperationCallback<Storable> cb)
         throws IOException, StoreException
     {
-        if (DISABLED || source != StoreOperationSource.REQUEST) {
+        if (DISABLED) {
             return cb.perform(operationTime, key, null);
         }
-
-        try {
-            _getLock.acquire();
-        } catch (InterruptedException e) {
-            throw new StoreException.ServerTimeout(key, "GET operation interrupted");
+        if (source != StoreOperationSource.REQUEST) {
+            _acquireBackground(_bgGets, _getLimiter, key);
+            try {
+                return cb.perform(operationTime, key, null);
+            } finally {
+                _releaseBackground(_bgGets, _getLimiter);
+            }
         }
+        final String partition = _partitionFor(key);
+        final long queueStart = System.nanoTime();
+        _acquire(_getLimiter, _getTimeoutNanos, key, partition);
+        final long start = System.nanoTime();
         try {
             return cb.perform(operationTime, key, null);
         } finally {
-            _getLock.release();
+            final long end = System.nanoTime();
+            _getLimiter.release(partition, end - start);
+            _foregroundCompleted(end - queueStart);
         }
     }
 
@@ -100,19 +272,26 @@ public class BasicTSOperationThrottler
             long operationTime, StoreOperationCallback<IterationResult> cb)
         throws IOException, StoreException
     {
-        if (DISABLED || source != StoreOperationSource.REQUEST) {
+        if (DISABLED) {
             return cb.perform(operationTime, null, null);
         }
-
-        try {
-            _listLock.acquire();
-        } catch (InterruptedException e) {
-            throw new StoreException.ServerTimeout(null, "List operation interrupted");
+        if (source != StoreOperationSource.REQUEST) {
+            _acquireBackground(_bgLists, _listLimiter, null);
+            try {
+                return cb.perform(operationTime, null, null);
+            } finally {
+                _releaseBackground(_bgLists, _listLimiter);
+            }
         }
+        final long queueStart = System.nanoTime();
+        _acquire(_listLimiter, _listTimeoutNanos, null, null);
+        final long start = System.nanoTime();
         try {
             return cb.perform(operationTime, null, null);
         } finally {
-            _listLock.release();
+            final long end = System.nanoTime();
+            _listLimiter.release(end - start);
+            _foregroundCompleted(end - queueStart);
         }
     }
     
@@ -122,19 +301,27 @@ public class BasicTSOperationThrottler
             StoreOperationCallback<StorableCreationResult> cb)
         throws IOException, StoreException
     {
-        if (DISABLED || source != StoreOperationSource.REQUEST) {
-            return cb.perform(operationTime, key, value);
+        if (DISABLED) {
+            return _putCompleted(cb.perform(operationTime, key, value));
         }
-
-        try {
-            _putLock.acquire();
-        } catch (InterruptedException e) {
-            throw new StoreException.ServerTimeout(key, "PUT operation interrupted");
+        if (source != StoreOperationSource.REQUEST) {
+            _acquireBackground(_bgPuts, _putLimiter, key);
+            try {
+                return _putCompleted(cb.perform(operationTime, key, value));
+            } finally {
+                _releaseBackground(_bgPuts, _putLimiter);
+            }
         }
+        final String partition = _partitionFor(key);
+        final long queueStart = System.nanoTime();
+        _acquire(_putLimiter, _putTimeoutNanos, key, partition);
+        final long start = System.nanoTime();
         try {
-            return cb.perform(operationTime, key, value);
+            return _putCompleted(cb.perform(operationTime, key, value));
         } finally {
-            _putLock.release();
+            final long end = System.nanoTime();
+            _putLimiter.release(partition, end - start);
+            _foregroundCompleted(end - queueStart);
         }
     }
 
@@ -148,12 +335,18 @@ public class BasicTSOperationThrottler
             StoreOperationCallback<Storable> cb)
         throws IOException, StoreException
     {
-        return cb.perform(operationTime, key, null);
+        Storable tombstone = cb.perform(operationTime, key, null);
+        if (_expirationIndex != null) {
+            _expirationIndex.entryWritten(tombstone);
+        }
+        return tombstone;
     }
 
     /**
      * No additional throttling for hard deletions because they are only
-     * done by background batch processes (clean up tasks).
+     * done by background batch processes (clean up tasks), which pace
+     * deletions themselves (see
+     * {@link com.fasterxml.transistore.service.cleanup.DeletionPacer}).
      */
     @Override
     public Storable performHardDelete(StoreOperationSource source,
@@ -176,42 +369,325 @@ public class BasicTSOperationThrottler
             FileOperationCallback<T> cb)
         throws IOException, StoreException
     {
-        if (DISABLED || source != StoreOperationSource.REQUEST) {
-            return cb.perform(operationTime, (value == null) ? null : value.getKey(), value, externalFile);
+        final StorableKey key = (value == null) ? null : value.getKey();
+        if (DISABLED) {
+            return cb.perform(operationTime, key, value, externalFile);
         }
-        Lease l;  
-        try {
-            l = _fsReadWrites.obtainReadLease();
-        } catch (InterruptedException e) {
-            throw new StoreException.ServerTimeout((value == null) ? null : value.getKey(),
-                    "File read operation interrupted");
+        final long size = (value == null) ? -1L : value.getStorageLength();
+        if (source != StoreOperationSource.REQUEST) {
+            ThrottlingContext.Permit permit = _acquireBackgroundFile(false, size, key);
+            try {
+                return cb.perform(operationTime, key, value, externalFile);
+            } finally {
+                permit.release();
+            }
+        }
+        // Permit may have been reserved before response was committed
+        final ThrottlingContext ctxt = ThrottlingContext.current();
+        final ThrottlingContext.Permit permit = (ctxt == null) ? null : ctxt.takeFileReadPermit();
+        if (permit != null) {
+            try {
+                return cb.perform(operationTime, key, value, externalFile);
+            } finally {
+                permit.release();
+            }
+        }
+        if (size > _largeFileThreshold) {
+            _acquireLarge(size, key, "File read");
+            try {
+                return cb.perform(operationTime, key, value, externalFile);
+            } finally {
+                _largeFiles.release();
+            }
         }
+        Lease l = _obtainLease(false, key);
         try {
-            return cb.perform(operationTime, (value == null) ? null : value.getKey(), value, externalFile);
+            return cb.perform(operationTime, key, value, externalFile);
         } finally {
             l.returnLease();
         }
     }
 
+    /**
+     * Method that may be called for a request that is to read an external
+     * file later on, when streaming response: this obtains permit for
+     * the read before response is committed, so that rejection due to
+     * deadline can still be reported properly (as 503). Permit is bound
+     * to the current {@link ThrottlingContext}, and used by the next file
+     * read; if there is no context, nothing is reserved.
+     *
+     * @throws DeadlineExceededException If permit could not be obtained
+     *    before deadline of the request
+     */
+    public void reserveFileRead(Storable value) throws StoreException
+    {
+        final ThrottlingContext ctxt = ThrottlingContext.current();
+        if (DISABLED || ctxt == null) {
+            return;
+        }
+        // release earlier one, if any, first; shouldn't hold two
+        ThrottlingContext.Permit old = ctxt.takeFileReadPermit();
+        if (old != null) {
+            old.release();
+        }
+        final StorableKey key = value.getKey();
+        final long size = value.getStorageLength();
+        if (size > _largeFileThreshold) {
+            _acquireLarge(size, key, "File read");
+            ctxt.setFileReadPermit(new ThrottlingContext.Permit() {
+                @Override
+                public void release() {
+                    _largeFiles.release();
+                }
+            });
+        } else {
+            final Lease l = _obtainLease(false, key);
+            ctxt.setFileReadPermit(new ThrottlingContext.Permit() {
+                @Override
+                public void release() {
+                    l.returnLease();
+                }
+            });
+        }
+    }
+
     @Override
     public <T> T performFileWrite(StoreOperationSource source,
             long operationTime, StorableKey key, File externalFile,
             FileOperationCallback<T> cb)
         throws IOException, StoreException
     {
-        if (DISABLED || source != StoreOperationSource.REQUEST) {
+        if (DISABLED) {
             return cb.perform(operationTime, key, null, externalFile);
         }
-        Lease l;  
-        try {
-        	l = _fsReadWrites.obtainWriteLease();
-        } catch (InterruptedException e) {
-            throw new StoreException.ServerTimeout(key, "File write operation interrupted");
+        if (source != StoreOperationSource.REQUEST) {
+            // size of files written by background sources is not known
+            ThrottlingContext.Permit permit = _acquireBackgroundFile(true, -1L, key);
+            try {
+                return cb.perform(operationTime, key, null, externalFile);
+            } finally {
+                permit.release();
+            }
+        }
+        // Size only known if request declared its length
+        final ThrottlingContext ctxt = ThrottlingContext.current();
+        final long size = (ctxt == null) ? -1L : ctxt.getContentLength();
+        if (size > _largeFileThreshold) {
+            _acquireLarge(size, key, "File write");
+            try {
+                return cb.perform(operationTime, key, null, externalFile);
+            } finally {
+                _largeFiles.release();
+            }
         }
+        Lease l = _obtainLease(true, key);
         try {
             return cb.perform(operationTime, key, null, externalFile);
         } finally {
-        	l.returnLease();
+            l.returnLease();
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    protected StorableCreationResult _putCompleted(StorableCreationResult result)
+    {
+        if ((_expirationIndex != null) && (result != null) && result.succeeded()) {
+            _expirationIndex.entryWritten(result.getNewEntry());
+        }
+        return result;
+    }
+
+    /**
+     * Helper method for obtaining permit for a background DB operation:
+     * first from the background lane (which limits background operations
+     * to their share), then from the limiter shared with client requests.
+     * Background operations have no deadline, so neither wait is timed.
+     * If background throttling is disabled (no lane), operations are not
+     * throttled at all.
+     */
+    protected void _acquireBackground(BackgroundLane lane, AdaptiveConcurrencyLimiter limiter,
+            StorableKey key)
+        throws StoreException
+    {
+        if (lane == null) {
+            return;
+        }
+        try {
+            lane.acquire();
+            try {
+                limiter.acquire();
+            } catch (InterruptedException e) {
+                lane.release();
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            throw new StoreException.ServerTimeout(key, "Background operation interrupted");
+        }
+    }
+
+    protected void _releaseBackground(BackgroundLane lane, AdaptiveConcurrencyLimiter limiter)
+    {
+        if (lane != null) {
+            // background latencies must not drive the limit for client requests
+            limiter.releaseWithoutSample(null);
+            lane.release();
+        }
+    }
+
+    /**
+     * Helper method for obtaining permit for a background file operation:
+     * similar to {@link #_acquireBackground}, file lease (or slot in large
+     * file lane) comes from the same budget as for client requests.
+     */
+    protected ThrottlingContext.Permit _acquireBackgroundFile(boolean write, long size,
+            StorableKey key)
+        throws StoreException
+    {
+        final BackgroundLane lane = _bgFiles;
+        if (lane == null) {
+            return NO_PERMIT;
+        }
+        try {
+            lane.acquire();
+            try {
+                if (size > _largeFileThreshold) {
+                    _largeFiles.acquire(size);
+                    return new ThrottlingContext.Permit() {
+                        @Override
+                        public void release() {
+                            _largeFiles.release();
+                            lane.release();
+                        }
+                    };
+                }
+                final Lease l = write ? _fsReadWrites.obtainWriteLease()
+                        : _fsReadWrites.obtainReadLease();
+                return new ThrottlingContext.Permit() {
+                    @Override
+                    public void release() {
+                        l.returnLease();
+                        lane.release();
+                    }
+                };
+            } catch (InterruptedException e) {
+                lane.release();
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            throw new StoreException.ServerTimeout(key, "Background operation interrupted");
+        }
+    }
+
+    protected void _foregroundCompleted(long latencyNanos) {
+        if (_background != null) {
+            _background.foregroundCompleted(latencyNanos);
+        }
+    }
+
+    /**
+     * Helper method for finding partition to use for fair queuing, if any.
+     */
+    protected String _partitionFor(StorableKey key)
+    {
+        if (!_partitionFairQueuing || key == null) {
+            return null;
+        }
+        // if request is for this key, use partition id it has (possibly) already decoded
+        final ThrottlingContext ctxt = ThrottlingContext.current();
+        if (ctxt != null) {
+            final BasicTSKey entryKey = ctxt.getEntryKey();
+            if ((entryKey != null) && (entryKey.asStorableKey() == key)) {
+                return entryKey.getPartitionId();
+            }
+        }
+        return _keyConverter.rawToPartitionId(key);
+    }
+
+    /**
+     * Helper method for calculating how long an operation may wait:
+     * request-specific deadline if one is bound, otherwise given default.
+     */
+    protected long _timeoutNanos(ThrottlingContext ctxt, long defaultTimeoutNanos, long now)
+    {
+        if (ctxt != null && ctxt.hasDeadline()) {
+            return ctxt.getDeadlineNanos() - now;
+        }
+        return defaultTimeoutNanos;
+    }
+
+    protected void _acquire(AdaptiveConcurrencyLimiter limiter, long defaultTimeoutNanos,
+            StorableKey key, String partition)
+        throws StoreException
+    {
+        final ThrottlingContext ctxt = ThrottlingContext.current();
+        final long start = System.nanoTime();
+        boolean ok;
+        try {
+            ok = limiter.tryAcquire(partition, _timeoutNanos(ctxt, defaultTimeoutNanos, start));
+        } catch (InterruptedException e) {
+            throw new StoreException.ServerTimeout(key, "Operation interrupted, for "+limiter);
+        }
+        if (ctxt != null) {
+            ctxt.addQueueTime(System.nanoTime() - start);
+            if (!ok) {
+                ctxt.markRejected();
+            }
+        }
+        if (!ok) {
+            throw new DeadlineExceededException(key, "Deadline exceeded while waiting, for "+limiter);
+        }
+    }
+
+    protected void _acquireLarge(long size, StorableKey key, String desc)
+        throws StoreException
+    {
+        final ThrottlingContext ctxt = ThrottlingContext.current();
+        final long start = System.nanoTime();
+        boolean ok;
+        try {
+            ok = _largeFiles.tryAcquire(size, _timeoutNanos(ctxt, _fileTimeoutNanos, start));
+        } catch (InterruptedException e) {
+            throw new StoreException.ServerTimeout(key, desc+" operation interrupted");
+        }
+        if (ctxt != null) {
+            ctxt.addQueueTime(System.nanoTime() - start);
+            if (!ok) {
+                ctxt.markRejected();
+            }
+        }
+        if (!ok) {
+            throw new DeadlineExceededException(key, "Deadline exceeded while waiting for large "+desc+" operation");
+        }
+    }
+
+    protected Lease _obtainLease(boolean write, StorableKey key)
+        throws StoreException
+    {
+        final ThrottlingContext ctxt = ThrottlingContext.current();
+        final long start = System.nanoTime();
+        final long timeout = _timeoutNanos(ctxt, _fileTimeoutNanos, start);
+        final String desc = write ? "File write" : "File read";
+        Lease l;
+        try {
+            l = write ? _fsReadWrites.obtainWriteLease(timeout)
+                    : _fsReadWrites.obtainReadLease(timeout);
+        } catch (InterruptedException e) {
+            throw new StoreException.ServerTimeout(key, desc+" operation interrupted");
+        }
+        if (ctxt != null) {
+            ctxt.addQueueTime(System.nanoTime() - start);
+            if (l == null) {
+                ctxt.markRejected();
+            }
+        }
+        if (l == null) {
+            throw new DeadlineExceededException(key, "Deadline exceeded while waiting for "+desc+" operation");
         }
+        return l;
     }
 }
@@ -1,9 +1,13 @@
 package com.fasterxml.transistore.service;
 
-import java.util.Random;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.transistore.service.cfg.FileThrottlingConfig;
+import com.fasterxml.transistore.service.throttle.PrioritizerMetrics;
 
 /**
  * Helper class used by {@link BasicTSOperationThrottler} to implement
@@ -15,36 +19,76 @@ import java.util.concurrent.atomic.AtomicInteger;
  * without throttling. But if limit on either is reached, queuing is
  * used to apply specific ratio to try to avoid starving of either
  * reads or writes, by basically fixing ratio in which queue is drained.
+ * Optionally ratio may be auto-tuned, based on observed queuing times
+ * of reads and writes.
+ *<p>
+ * Implementation does not use locks: counts of active operations are
+ * packed in a single atomic int (reads in low 16 bits, writes in high 16 bits)
+ * so that reservations can be done with a single CAS; and queued operations
+ * are parked threads in non-blocking queues. Any thread that either
+ * returns a lease or queues an operation will try to release queued
+ * operations, which guarantees that no wake-ups are lost.
  *<p>
  * NOTE: wouldn't it be nice to actually test that ratios work with
  * load testing? :-)
  */
 public final class ReadWriteOperationPrioritizer
 {
-	// By default, we will use 2:1 ratio between allowing queued reads vs writes
-    private final static double READ_RATIO = 2.0 / (2.0 + 1.0);
+    /**
+     * When auto-tuning, ratio is re-calculated after this many queued
+     * operations have been released.
+     */
+    private final static int TUNE_INTERVAL = 64;
 
-    private final static double WRITE_RATIO = 1.0 - READ_RATIO;
+    private final static int COUNT_MASK = 0xFFFF;
 
     protected final Lease READ_LEASE;
 
     protected final Lease WRITE_LEASE;
-    
-    public ReadWriteOperationPrioritizer()
+
+    protected final Operation _reads;
+
+    protected final Operation _writes;
+
+    protected final int _maxConcurrentThreads;
+
+    /**
+     * Active counts of both reads and writes, packed in one int
+     */
+    protected final AtomicInteger _activeCounts = new AtomicInteger(0);
+
+    protected final boolean _autoTune;
+
+    protected final double _minReadShare, _maxReadShare;
+
+    /**
+     * Share of queued operations (between 0.0 and 1.0) to release as reads;
+     * remainder is released as writes.
+     */
+    protected volatile double _readShare;
+
+    protected final AtomicInteger _releasedSinceTune = new AtomicInteger(0);
+
+    public ReadWriteOperationPrioritizer() {
+        this(new FileThrottlingConfig());
+    }
+
+    public ReadWriteOperationPrioritizer(FileThrottlingConfig config)
     {
-        // allow up to 3 concurrent reads without contest; at most 6 (with contest)
-        final Operation reads = new Operation("Read", 3, 6, READ_RATIO);
-        // and up to 2 no-contest concurrent writes; above which up to 5 total
-        final Operation writes = new Operation("Write", 2, 5, WRITE_RATIO);
-
-        final int _maxConcurrentThreads = 8;
-
-        // We will use a global lock for updating state of currently
-        // active entries; it is shared by this class and {@link Lease}.
-        final Object SCHEDULE_LOCK = new Object();
-        
-        READ_LEASE = new Lease(SCHEDULE_LOCK, _maxConcurrentThreads, reads, writes, 1);
-        WRITE_LEASE = new Lease(SCHEDULE_LOCK, _maxConcurrentThreads, writes, reads, 2);
+        if (config.maxReads > COUNT_MASK || config.maxWrites > COUNT_MASK) {
+            throw new IllegalArgumentException("Maximum read/write counts can not exceed "+COUNT_MASK);
+        }
+        _reads = new Operation("Read", 0, config.guaranteedReads, config.maxReads);
+        _writes = new Operation("Write", 16, config.guaranteedWrites, config.maxWrites);
+        _maxConcurrentThreads = config.maxConcurrent;
+
+        _readShare = config.readWeight / (config.readWeight + config.writeWeight);
+        _autoTune = config.autoTune;
+        _minReadShare = config.minReadShare;
+        _maxReadShare = config.maxReadShare;
+
+        READ_LEASE = new Lease(this, _reads, _writes);
+        WRITE_LEASE = new Lease(this, _writes, _reads);
     }
 
     public final Lease obtainReadLease() throws InterruptedException {
@@ -54,217 +98,340 @@ public final class ReadWriteOperationPrioritizer
     public final Lease obtainWriteLease() throws InterruptedException {
         return WRITE_LEASE.obtainLease();
     }
-    
+
+    /**
+     * Method for obtaining a read lease, waiting at most specified amount
+     * of time.
+     *
+     * @return Lease obtained, if any; null if timeout expired first
+     */
+    public final Lease obtainReadLease(long timeoutNanos) throws InterruptedException {
+        return READ_LEASE.obtainLease(timeoutNanos);
+    }
+
+    /**
+     * Method for obtaining a write lease, waiting at most specified amount
+     * of time.
+     *
+     * @return Lease obtained, if any; null if timeout expired first
+     */
+    public final Lease obtainWriteLease(long timeoutNanos) throws InterruptedException {
+        return WRITE_LEASE.obtainLease(timeoutNanos);
+    }
+
+    public PrioritizerMetrics metrics()
+    {
+        PrioritizerMetrics m = new PrioritizerMetrics();
+        int counts = _activeCounts.get();
+        m.activeReads = _reads.activeCount(counts);
+        m.activeWrites = _writes.activeCount(counts);
+        m.queuedReads = _reads.queueLength();
+        m.queuedWrites = _writes.queueLength();
+        m.readShare = _readShare;
+        m.avgReadWaitMsecs = _reads.averageWaitMsecs();
+        m.avgWriteWaitMsecs = _writes.averageWaitMsecs();
+        m.rejectedReads = _reads._rejected.get();
+        m.rejectedWrites = _writes._rejected.get();
+        return m;
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods: reservations
+    /**********************************************************************
+     */
+
+    /**
+     * Method for trying to reserve a slot for an operation of given type:
+     * guaranteed slots are free for taking; "at-large" slots only if there is
+     * room within both per-operation and total maximums.
+     */
+    protected boolean _tryReserve(Operation op)
+    {
+        for (;;) {
+            final int counts = _activeCounts.get();
+            final int count = op.activeCount(counts);
+            if (count >= op._guaranteedOperations) {
+                if (count >= op._maxOperations) {
+                    return false;
+                }
+                int total = _reads.activeCount(counts) + _writes.activeCount(counts);
+                if (total >= _maxConcurrentThreads) {
+                    return false;
+                }
+            }
+            if (_activeCounts.compareAndSet(counts, counts + op._increment)) {
+                return true;
+            }
+        }
+    }
+
+    protected void _release(Operation op) {
+        _activeCounts.addAndGet(-op._increment);
+    }
+
+    /**
+     * Method called to release as many queued operations as there is
+     * room for, choosing between reads and writes with configured bias.
+     */
+    protected void _releaseQueued()
+    {
+        for (;;) {
+            final boolean hasReads = !_reads.isQueueEmpty();
+            final boolean hasWrites = !_writes.isQueueEmpty();
+            Operation op;
+            if (hasReads) {
+                if (hasWrites) { // choose one, with bias
+                    op = (ThreadLocalRandom.current().nextDouble() < _readShare) ? _reads : _writes;
+                } else {
+                    op = _reads;
+                }
+            } else if (hasWrites) {
+                op = _writes;
+            } else {
+                return;
+            }
+            if (!_tryReserve(op)) {
+                // no room for chosen one; but perhaps for the other type?
+                op = (op == _reads) ? (hasWrites ? _writes : null) : (hasReads ? _reads : null);
+                if (op == null || !_tryReserve(op)) {
+                    return;
+                }
+            }
+            Waiter w = op._queued.poll();
+            if (w == null || !w.grant()) { // raced with another releaser, or cancelled
+                _release(op);
+                continue;
+            }
+            LockSupport.unpark(w.thread);
+            if (_autoTune && (_releasedSinceTune.incrementAndGet() % TUNE_INTERVAL) == 0) {
+                _tuneRatio();
+            }
+        }
+    }
+
+    /**
+     * Method for adjusting share of reads based on average queuing times
+     * since last adjustment: the longer the wait, the bigger the share.
+     * Ratio is only adjusted once both reads and writes have been queued;
+     * until then previous ratio is kept (and waits keep accumulating), since
+     * lack of queued operations of one type says nothing about its needs.
+     */
+    protected void _tuneRatio()
+    {
+        if (!_reads.hasWaits() || !_writes.hasWaits()) {
+            return;
+        }
+        double readWait = _reads.drainAverageWait();
+        double writeWait = _writes.drainAverageWait();
+        if (readWait <= 0.0 && writeWait <= 0.0) {
+            return;
+        }
+        double target = readWait / (readWait + writeWait);
+        // smooth out changes
+        double share = (0.75 * _readShare) + (0.25 * target);
+        _readShare = Math.max(_minReadShare, Math.min(_maxReadShare, share));
+    }
+
     /*
     /**********************************************************************
     /* Helper classes: lease handling
     /**********************************************************************
      */
-    
+
     /**
      * Objects used for returning leases.
      */
-    final static class Lease
+    public final static class Lease
     {
-        protected final Object _lock;
+        protected final ReadWriteOperationPrioritizer _parent;
 
-        protected final int _maxConcurrentThreads;
-        
-        /**
-         * To get statistical distribution based on ratios, we need to use
-         * (pseudo)random numbers.
-         */
-        protected final Random _rnd;
-        
         protected final Operation _primary;
 
         protected final Operation _secondary;
 
-        public Lease(Object lock, int maxConc, Operation prim, Operation sec, long rndSeed)
+        public Lease(ReadWriteOperationPrioritizer parent, Operation prim, Operation sec)
         {
-            _lock = lock;
-            _maxConcurrentThreads = maxConc;
-            _rnd = new Random(rndSeed);
+            _parent = parent;
             _primary = prim;
             _secondary = sec;
         }
 
-        public Lease obtainLease() throws InterruptedException
+        public Lease obtainLease() throws InterruptedException {
+            return _obtain(false, 0L);
+        }
+
+        public Lease obtainLease(long timeoutNanos) throws InterruptedException
         {
-            CountDownLatch latch;
+            if (timeoutNanos <= 0L) {
+                _primary._rejected.incrementAndGet();
+                return null;
+            }
+            return _obtain(true, timeoutNanos);
+        }
 
-            synchronized (_lock) {
-                // First: perhaps we have uncontested operations?
-                if (_primary.canProceedWithoutQueueing(_maxConcurrentThreads, _secondary)) {
-                    return this;
+        protected Lease _obtain(boolean timed, long timeoutNanos) throws InterruptedException
+        {
+            // First: perhaps we have uncontested operations? Both queues must be empty
+            if (_primary.isQueueEmpty() && _secondary.isQueueEmpty()
+                    && _parent._tryReserve(_primary)) {
+                return this;
+            }
+            // If not, queue it up...
+            final Waiter w = new Waiter(Thread.currentThread());
+            final long start = System.nanoTime();
+            _primary._queued.add(w);
+            // ... and make sure we didn't miss a release that happened concurrently
+            _parent._releaseQueued();
+            while (!w.isGranted()) {
+                if (timed) {
+                    final long left = timeoutNanos - (System.nanoTime() - start);
+                    if (left <= 0L) {
+                        if (w.cancel()) {
+                            _primary._queued.remove(w);
+                            _primary._rejected.incrementAndGet();
+                            return null;
+                        }
+                        // granted just before timing out
+                        break;
+                    }
+                    LockSupport.parkNanos(this, left);
+                } else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    if (w.cancel()) {
+                        _primary._queued.remove(w);
+                        throw new InterruptedException();
+                    }
+                    // granted just before interrupt: keep lease, retain interrupt status
+                    Thread.currentThread().interrupt();
                 }
-                // If not, queue it up...
-                latch = _primary.queueOperation();
             }
-            // ... and wait for it to obtain the lease that way...
-            latch.await();
+            _primary.addWait(System.nanoTime() - start);
             return this;
         }
-        
+
         public void returnLease() {
-            synchronized (_lock) {
-            	int primaryCount = _primary.markCompleted();
-
-            	boolean q1 = _primary.couldReleaseQueued(primaryCount);
-            	boolean q2 = _secondary.couldReleaseQueued();
-            	
-            	/* 23-Jul-2013, tatu: I don't think there's strict need to loop here;
-            	 *  but let's play it safe and do that.
-            	 */
-            	do {
-	
-	                if (q1) { // has an entry in primary queue
-	                	if (q2) { // and in secondary -- choose one, with bias:
-	                		double rnd = _rnd.nextDouble();
-	                		if (rnd < _primary.getWeight()) {
-	                    		_primary.releaseFromQueue();
-	                		} else {
-	                			_secondary.releaseFromQueue();
-	                		}
-	                	} else { // no, just primary
-	                		_primary.releaseFromQueue();
-	                	}
-	                } else if (q2) { // none in primary, but got secondary
-	                	_secondary.releaseFromQueue();
-	                } else {
-	                	break;
-	                }
-	                q1 = _primary.couldReleaseQueued();
-	                q2 = _secondary.couldReleaseQueued();
-            	} while (q1 | q2);
-            }
+            _parent._release(_primary);
+            _parent._releaseQueued();
         }
     }
-    
+
+    final static class Waiter
+    {
+        private final static int WAITING = 0;
+        private final static int GRANTED = 1;
+        private final static int CANCELLED = 2;
+
+        public final Thread thread;
+
+        private final AtomicInteger _state = new AtomicInteger(WAITING);
+
+        public Waiter(Thread t) {
+            thread = t;
+        }
+
+        public boolean grant() {
+            return _state.compareAndSet(WAITING, GRANTED);
+        }
+
+        public boolean cancel() {
+            return _state.compareAndSet(WAITING, CANCELLED);
+        }
+
+        public boolean isGranted() {
+            return _state.get() == GRANTED;
+        }
+    }
+
     /*
     /**********************************************************************
     /* Helper classes: operation modelling
     /**********************************************************************
      */
-    
+
     final static class Operation
     {
+        public final String _desc;
+
         /**
-         * Just need to have enough room for any number of elements ever.
+         * Bit offset of active count for this operation type, within packed counts
          */
-        private final static int MAX_QUEUED = 600;
+        public final int _shift;
+
+        /**
+         * Amount to add to packed counts to increment count of this type by one
+         */
+        public final int _increment;
 
-        public final String _desc;
-        
         public final int _guaranteedOperations;
-        
+
         public final int _maxOperations;
 
+        protected final ConcurrentLinkedQueue<Waiter> _queued = new ConcurrentLinkedQueue<Waiter>();
+
+        /**
+         * Accumulated queuing time and count since last auto-tuning
+         */
+        protected final AtomicLong _waitNanos = new AtomicLong();
+        protected final AtomicInteger _waitCount = new AtomicInteger();
+
         /**
-         * Relative weight of operations of this type, normalized to be
-         * within range of 0.0 and 1.0.
+         * Exponentially smoothed average of queuing time, for metrics
          */
-        public final double _weight;
-        
+        protected volatile double _avgWaitNanos;
+
         /**
-         * Number of operations being actively executed currently.
+         * Number of operations that timed out before getting a lease
          */
-        protected final AtomicInteger _activeCount = new AtomicInteger(0);
+        protected final AtomicLong _rejected = new AtomicLong();
 
-        protected final ArrayBlockingQueue<CountDownLatch> _queued;
-        
-        public Operation(String desc, int guar, int max, double w)
+        public Operation(String desc, int shift, int guar, int max)
         {
             _desc = desc;
+            _shift = shift;
+            _increment = 1 << shift;
             _guaranteedOperations = guar;
             _maxOperations = max;
-            _weight = w;
-            _queued = new ArrayBlockingQueue<CountDownLatch>(MAX_QUEUED);
         }
 
-        public double getWeight() {
-        	return _weight;
+        public int activeCount(int packedCounts) {
+            return (packedCounts >>> _shift) & COUNT_MASK;
         }
 
-        public int getActive() {
-            return _activeCount.get();
+        public boolean isQueueEmpty() {
+            return _queued.isEmpty();
         }
 
-        public CountDownLatch queueOperation()
-        {
-            CountDownLatch latch = new CountDownLatch(1);
-            if (!_queued.offer(latch)) { // should never occur
-                throw new IllegalStateException("INTERNAL ERROR: Can not queue more "
-                        +_desc+" operations, queue full: "+_queued);
-            }
-            return latch;
+        public int queueLength() {
+            return _queued.size();
         }
 
-        /**
-         * Method called when Operation of this type completed; just needs to
-         * subtract counter.
-         */
-        public int markCompleted() {
-        	return _activeCount.addAndGet(-1);
-        }
-        
-        public boolean isQueueEmpty() {
-        	return _queued.isEmpty();
+        public void addWait(long nanos) {
+            _waitNanos.addAndGet(nanos);
+            _waitCount.incrementAndGet();
+            // racy but good enough for diagnostics
+            _avgWaitNanos = (0.9 * _avgWaitNanos) + (0.1 * nanos);
         }
 
-        public boolean couldReleaseQueued(int currentCount) {
-        	if (isQueueEmpty()) { // nothing queued, nothing to release
-        		return false;
-        	}
-        	// but also need to have room for one more:
-        	return currentCount < _maxOperations;
+        public boolean hasWaits() {
+            return _waitCount.get() > 0;
         }
 
-        public boolean couldReleaseQueued()
-        {
-        	if (isQueueEmpty()) { // nothing queued, nothing to release
-        		return false;
-        	}
-        	// but also need to have room for one more:
-        	return _activeCount.get() < _maxOperations;
+        public double drainAverageWait() {
+            int count = _waitCount.getAndSet(0);
+            long nanos = _waitNanos.getAndSet(0L);
+            return (count == 0) ? 0.0 : ((double) nanos / count);
         }
 
-        public boolean canProceedWithoutQueueing(int maxConcurrent,
-                Operation otherQueue)
-        {
-        	// First rule: both queues must be empty, before proceeding
-            if (isQueueEmpty() && otherQueue.isQueueEmpty()) {
-                int count = _activeCount.get();
-
-                // guaranteed slots are free for taking
-                if (count >= _guaranteedOperations) {
-	                // otherwise, perhaps we can just use "at-large" slots?
-	                // but not beyond max per operation
-	                if (count >= _maxOperations) {
-	                    return false;
-	                }
-	                int total = count + otherQueue.getActive();
-	                if (total >= maxConcurrent) {
-	                    return false;
-	                }
-                }
-                // Either way, yes, we are ready to proceed:
-                _activeCount.addAndGet(1);
-                return true;
-            }
-            return false;
+        public double averageWaitMsecs() {
+            return _avgWaitNanos / (1000.0 * 1000.0);
         }
 
-        public int releaseFromQueue()
-        {
-        	CountDownLatch l = _queued.poll();
-        	if (l == null) { // sanity check; should never occur
-                throw new IllegalStateException("INTERNAL ERROR: failed to release from queue of "
-                        +_desc+" operations, queue empty");
-        	}
-        	int count = _activeCount.addAndGet(1);
-        	l.countDown();
-        	return count;
+        @Override
+        public String toString() {
+            return "[Operation "+_desc+"]";
         }
     }
 }
@@ -4,16 +4,15 @@ import com.fasterxml.storemate.store.lastaccess.LastAccessUpdateMethod;
 
 /**
  * Standard set of {@link LastAccessUpdateMethod} choices that "Basic"
- * TransiStore implementation supports -- simply just "none" or "simple";
- * latter meaning that there is one-to-one mapping between stored entries
- * and matching last-access timestamps.
- *<p>
- * NOTE: no real support is implemented for using last-accessed
- * functionality.
+ * TransiStore implementation supports: "none", "simple" or "grouped".
+ * "Simple" means that there is one-to-one mapping between stored entries
+ * and matching last-access timestamps; "grouped" that all entries with
+ * the same partition id share a single last-access timestamp (so that
+ * access to any one of them keeps all of them alive).
  */
 public enum TSLastAccess implements LastAccessUpdateMethod
 {
-    NONE(0), SIMPLE(1);
+    NONE(0), SIMPLE(1), GROUPED(2);
     
     private final int _index;
 
@@ -33,6 +32,9 @@ public enum TSLastAccess implements LastAccessUpdateMethod
         if (v == SIMPLE._index) {
             return SIMPLE;
         }
+        if (v == GROUPED._index) {
+            return GROUPED;
+        }
         return null;
     }
 }
@@ -0,0 +1,65 @@
+package com.fasterxml.transistore.service.cfg;
+
+import org.skife.config.TimeSpan;
+
+/**
+ * Configuration settings for throttling of operations by background
+ * sources (sync, cleanup, admin tools): such operations get a share of
+ * the capacity configured for client requests, and this share is
+ * reduced when latency of client requests grows. Deletions are not
+ * throttled this way: clean up paces them itself (see {@link DeletionThrottlingConfig}).
+ */
+public class BackgroundThrottlingConfig
+{
+    /**
+     * Whether background operations are throttled at all; if false,
+     * they are never throttled.
+     *<p>
+     * Default value is true.
+     */
+    public boolean enabled = true;
+
+    /**
+     * Share (0.0 - 1.0) of capacity given to background operations
+     * initially, as well as the highest share they may have.
+     */
+    public double maxShare = 0.5;
+
+    /**
+     * Lowest share (0.0 - 1.0) of capacity background operations may be
+     * reduced to; regardless of share, at least one background operation
+     * of each type is always allowed.
+     */
+    public double minShare = 0.1;
+
+    /**
+     * Latency target for client requests: if the observed latency percentile
+     * of client requests exceeds this, background share is reduced;
+     * otherwise it is gradually increased back.
+     */
+    public TimeSpan foregroundLatencyTarget = new TimeSpan("100ms");
+
+    /**
+     * Percentile of client request latencies (within window) that is compared
+     * to {@link #foregroundLatencyTarget}.
+     *<p>
+     * Default value is 0.99 (99th percentile).
+     */
+    public double foregroundPercentile = 0.99;
+
+    /**
+     * Number of client request latency samples to collect before considering
+     * adjustment of the share.
+     */
+    public int latencyWindow = 200;
+
+    /**
+     * Multiplier applied to the share when latency target is exceeded
+     */
+    public double shareBackoffRatio = 0.5;
+
+    /**
+     * Amount by which share is increased when latency is within target
+     */
+    public double shareIncrease = 0.05;
+}
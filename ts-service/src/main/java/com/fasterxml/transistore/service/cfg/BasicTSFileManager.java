@@ -1,14 +1,77 @@
 package com.fasterxml.transistore.service.cfg;
 
+import java.io.File;
+import java.util.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.storemate.shared.StorableKey;
 import com.fasterxml.storemate.shared.TimeMaster;
+import com.fasterxml.storemate.shared.compress.Compression;
 import com.fasterxml.storemate.store.file.FileManager;
 import com.fasterxml.storemate.store.file.FileManagerConfig;
+import com.fasterxml.storemate.store.file.FileReference;
 import com.fasterxml.storemate.store.file.FilenameConverter;
 
 import com.fasterxml.transistore.basic.BasicTSKeyConverter;
+import com.fasterxml.transistore.service.store.FileTier;
+import com.fasterxml.transistore.service.throttle.ThrottlingContext;
 
+/**
+ * {@link FileManager} that, in addition to the default data root, may store
+ * files in additional storage tiers (see {@link FileTierConfig}): tier is
+ * chosen based on maximum TTL and declared content length of the entry
+ * being stored, as passed via {@link ThrottlingContext}. If no tier
+ * matches (or there is no context, as with entries copied by
+ * synchronization), the default data root is used.
+ *<p>
+ * References to files of additional tiers are prefixed with
+ * "@[tier-name]/", so that they can be resolved regardless of
+ * placement rules; references to files under the default data root
+ * are not modified.
+ *<p>
+ * Files may also be placed in hash-based sub-directories of the
+ * time-based data directories (see {@link FileLayoutConfig}), to keep
+ * number of files per directory low even under heavy write load.
+ *<p>
+ * When used with {@link BasicTSFilenameConverter}, filenames are also
+ * built using a per-thread buffer, directly from raw key bytes, instead
+ * of going through a {@link StringBuilder}.
+ */
 public class BasicTSFileManager extends FileManager
 {
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    protected final static char TIER_PREFIX = '@';
+
+    /**
+     * Maximum length of the sequence number, separator and the compression
+     * suffix; matches overhead reserved by the base class
+     */
+    protected final static int FILENAME_OVERHEAD = 32;
+
+    protected final FileTier _defaultTier;
+
+    /**
+     * Additional tiers, in order in which they are to be checked.
+     */
+    protected final FileTier[] _tiers;
+
+    protected final Map<String,FileTier> _tiersByName;
+
+    /**
+     * Names of hash-based sub-directories, if hash layout is used;
+     * null if not
+     */
+    protected final String[] _hashDirNames;
+
+    /**
+     * Which hash-based sub-directories of the active branch have
+     * been created; only accessed when holding lock on this manager.
+     */
+    protected final BitSet _createdHashDirs;
+
     public BasicTSFileManager(FileManagerConfig config, TimeMaster timeMaster)
     {
         this(config, timeMaster,
@@ -17,7 +80,260 @@ public class BasicTSFileManager extends FileManager
 
     public BasicTSFileManager(FileManagerConfig config, TimeMaster timeMaster,
             FilenameConverter conv)
+    {
+        this(config, null, timeMaster, conv);
+    }
+
+    public BasicTSFileManager(FileManagerConfig config, List<FileTierConfig> tiers,
+            TimeMaster timeMaster)
+    {
+        this(config, tiers, timeMaster,
+                new BasicTSFilenameConverter(BasicTSKeyConverter.defaultInstance()));
+    }
+
+    public BasicTSFileManager(FileManagerConfig config, List<FileTierConfig> tiers,
+            TimeMaster timeMaster, FilenameConverter conv)
+    {
+        this(config, null, tiers, timeMaster, conv);
+    }
+
+    public BasicTSFileManager(FileManagerConfig config, FileLayoutConfig layout,
+            List<FileTierConfig> tiers, TimeMaster timeMaster)
+    {
+        this(config, layout, tiers, timeMaster,
+                new BasicTSFilenameConverter(BasicTSKeyConverter.defaultInstance()));
+    }
+
+    /**
+     * @param layout Directory layout to use; if null, default (time-based) one
+     * @param tiers Additional storage tiers, if any
+     */
+    public BasicTSFileManager(FileManagerConfig config, FileLayoutConfig layout,
+            List<FileTierConfig> tiers, TimeMaster timeMaster, FilenameConverter conv)
     {
         super(config, timeMaster, conv);
+        if (layout != null && layout.type == FileLayoutConfig.Type.HASH) {
+            final int count = layout.hashDirsPerLevel;
+            if (count < 1 || count > 256) {
+                throw new IllegalArgumentException("Invalid 'hashDirsPerLevel' ("+count
+                        +"): must be between 1 and 256");
+            }
+            _hashDirNames = new String[count];
+            for (int i = 0; i < count; ++i) {
+                _hashDirNames[i] = String.format("%02x", i);
+            }
+            _createdHashDirs = new BitSet(count * count);
+        } else {
+            _hashDirNames = null;
+            _createdHashDirs = null;
+        }
+        _defaultTier = new FileTier(FileTier.DEFAULT_NAME, config.dataRoot, this);
+        _tiersByName = new LinkedHashMap<String,FileTier>();
+        List<FileTier> list = new ArrayList<FileTier>();
+        if (tiers != null) {
+            for (FileTierConfig tierConfig : tiers) {
+                String name = FileTier.validateName(tierConfig.name);
+                if (FileTier.DEFAULT_NAME.equals(name) || _tiersByName.containsKey(name)) {
+                    throw new IllegalArgumentException("Duplicate file tier name '"+name+"'");
+                }
+                if (tierConfig.dataRoot == null) {
+                    throw new IllegalArgumentException("Missing 'dataRoot' for file tier '"+name+"'");
+                }
+                FileManagerConfig tierFiles = new FileManagerConfig(tierConfig.dataRoot);
+                tierFiles.maxFilesPerDirectory = config.maxFilesPerDirectory;
+                tierFiles.maxFilenameLength = config.maxFilenameLength;
+                FileTier tier = new FileTier(tierConfig,
+                        new BasicTSFileManager(tierFiles, layout, null, timeMaster, conv));
+                list.add(tier);
+                _tiersByName.put(name, tier);
+            }
+        }
+        _tiers = list.toArray(new FileTier[list.size()]);
+    }
+
+    /*
+    /**********************************************************************
+    /* Accessors
+    /**********************************************************************
+     */
+
+    public boolean usesHashLayout() {
+        return _hashDirNames != null;
+    }
+
+    /**
+     * @return All storage tiers, starting with the default one
+     */
+    public List<FileTier> getTiers()
+    {
+        List<FileTier> result = new ArrayList<FileTier>(_tiers.length + 1);
+        result.add(_defaultTier);
+        result.addAll(Arrays.asList(_tiers));
+        return result;
+    }
+
+    /**
+     * @return Data roots of all storage tiers, starting with the default one
+     */
+    public List<File> getDataRoots()
+    {
+        List<File> result = new ArrayList<File>(_tiers.length + 1);
+        for (FileTier tier : getTiers()) {
+            result.add(tier.getDataRoot());
+        }
+        return result;
+    }
+
+    /*
+    /**********************************************************************
+    /* Overrides
+    /**********************************************************************
+     */
+
+    @Override
+    public FileReference createStorageFile(StorableKey extKey, Compression compressed,
+            long creationTime)
+    {
+        FileTier tier = findTier(ThrottlingContext.current());
+        if (tier == null) {
+            return _createStorageFile(extKey, compressed, creationTime);
+        }
+        FileReference ref = tier.getFileManager().createStorageFile(extKey, compressed, creationTime);
+        return new FileReference(ref.getFile(),
+                TIER_PREFIX + tier.getName() + "/" + ref.getReference());
+    }
+
+    @Override
+    public File derefenceFile(String relativePath)
+    {
+        if (relativePath != null && relativePath.length() > 0
+                && relativePath.charAt(0) == TIER_PREFIX) {
+            int ix = relativePath.indexOf('/');
+            if (ix > 0) {
+                FileTier tier = _tiersByName.get(relativePath.substring(1, ix));
+                // if tier is no longer configured, can not resolve; will be missing file
+                if (tier != null) {
+                    return tier.getFileManager().derefenceFile(relativePath.substring(ix+1));
+                }
+            }
+        }
+        return super.derefenceFile(relativePath);
+    }
+
+    @Override
+    protected void _calculateActivePath()
+    {
+        super._calculateActivePath();
+        // called for every new active branch (and from base constructor, before init)
+        if (_createdHashDirs != null) {
+            _createdHashDirs.clear();
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    /**
+     * Replacement for base class implementation of
+     * {@link FileManager#createStorageFile}: directory handling is the same
+     * except for optional hash-based sub-directories, and if
+     * {@link BasicTSFilenameConverter} is used, filename is built in a
+     * per-thread buffer, so that the resulting String is the only allocation.
+     */
+    protected FileReference _createStorageFile(StorableKey extKey, Compression comp,
+            long creationTime)
+    {
+        final String[] hashDirs = _hashDirNames;
+        // with hash layout, roll over once sub-directories are full on average
+        final int maxFiles = (hashDirs == null) ? _maxFilesPerDir
+                : (_maxFilesPerDir * hashDirs.length * hashDirs.length);
+        int index;
+        File dir;
+        String relativePath;
+        synchronized (this) {
+            if (creationTime > _nextDateCheck) {
+                _calculateDateBranch(creationTime);
+            }
+            if (_fileIndex >= maxFiles) {
+                _fileIndex = 0;
+                ++_activeBranchId;
+                _activeBranch = new File(_dateBranch, String.format("%03d", _activeBranchId));
+                if (_activeBranch.exists()) {
+                    LOG.warn("Directory {} already exists: will still use as a Data dir...",
+                            _activeBranch.getAbsolutePath());
+                } else {
+                    _activeBranch.mkdirs();
+                }
+                _calculateActivePath();
+            }
+            index = _fileIndex;
+            ++_fileIndex;
+            dir = _activeBranch;
+            relativePath = _relativeActivePath;
+            if (hashDirs != null) {
+                // low bits of full key hash: routing is based on high bits (and partition id)
+                final int hash = extKey.hashCode();
+                final int first = ((hash >>> 8) & 0xFF) % hashDirs.length;
+                final int second = (hash & 0xFF) % hashDirs.length;
+                dir = new File(new File(dir, hashDirs[first]), hashDirs[second]);
+                relativePath = relativePath + hashDirs[first] + '/' + hashDirs[second] + '/';
+                final int dirIndex = (first * hashDirs.length) + second;
+                if (!_createdHashDirs.get(dirIndex)) {
+                    dir.mkdirs();
+                    _createdHashDirs.set(dirIndex);
+                }
+            }
+        }
+        String cleanName = (_filenameConverter instanceof BasicTSFilenameConverter)
+                ? _buildFilename(extKey, index, comp, (BasicTSFilenameConverter) _filenameConverter)
+                : buildFilename(extKey, index, comp);
+        return new FileReference(new File(dir, cleanName), relativePath + cleanName);
+    }
+
+    /**
+     * Method that builds filename like "[seqNr]:[mangled key].[comprType]",
+     * truncating the part before suffix the same way base class does.
+     */
+    protected String _buildFilename(StorableKey key, int index, Compression comp,
+            BasicTSFilenameConverter conv)
+    {
+        if (comp == null) {
+            comp = Compression.NONE;
+        }
+        final int maxBase = _maxFilenameBaseLength;
+        final char[] buffer = BasicTSFilenameConverter.buffer(maxBase + FILENAME_OVERHEAD);
+        // sequence number first (at least 4 digits), to ensure uniqueness
+        int ptr = BasicTSFilenameConverter.appendInt(buffer, 0, maxBase, index, 4);
+        if (ptr < maxBase) {
+            buffer[ptr++] = ':';
+            ptr = conv.appendFilename(key, buffer, ptr, maxBase);
+        }
+        buffer[ptr++] = '.';
+        buffer[ptr++] = comp.asChar();
+        return new String(buffer, 0, ptr);
+    }
+
+    /**
+     * Method for finding storage tier (other than default) to use for an entry
+     * being stored.
+     *
+     * @return Tier to use, if any; null to use the default data root
+     */
+    protected FileTier findTier(ThrottlingContext ctxt)
+    {
+        if (_tiers.length == 0) {
+            return null;
+        }
+        final long maxTTLSecs = (ctxt == null) ? -1L : ctxt.getMaxTTLSecs();
+        final long size = (ctxt == null) ? -1L : ctxt.getContentLength();
+        for (FileTier tier : _tiers) {
+            if (tier.matches(maxTTLSecs, size)) {
+                return tier;
+            }
+        }
+        return null;
     }
 }
@@ -5,43 +5,124 @@ import com.fasterxml.storemate.shared.StorableKey;
 import com.fasterxml.storemate.store.file.DefaultFilenameConverter;
 
 import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSKeyConverter;
 
 /**
  * We need a custom converter since basic <code>EntryKey</code> does not
  * have functionality for generic "as String" functionality.
  * Plus we could make filenames bit more aesthetically pleasing...
+ *<p>
+ * Filenames are produced directly from raw UTF-8 key bytes, without
+ * constructing a {@link BasicTSKey} or decoding the path: since all
+ * non-ASCII characters are replaced by the safe character anyway, it
+ * is enough to output one safe character per multi-byte UTF-8 sequence
+ * (two for sequences that decode into surrogate pairs).
  */
 public class BasicTSFilenameConverter extends DefaultFilenameConverter
 {
+    /**
+     * Per-thread buffer used for building filenames
+     */
+    private final static ThreadLocal<char[]> _buffers = new ThreadLocal<char[]>();
+
     protected final EntryKeyConverter<BasicTSKey> _keyConverter;
-    
+
     public BasicTSFilenameConverter(EntryKeyConverter<BasicTSKey> keyConverter)
     {
         _keyConverter = keyConverter;
     }
-    
+
     @Override
     public StringBuilder appendFilename(StorableKey rawKey, final StringBuilder sb)
     {
-        BasicTSKey key = _keyConverter.rawToEntryKey(rawKey);
-        final char safeChar = _safeChar;
+        // partition id length takes at most 5 digits, plus separator
+        final int maxLen = rawKey.length() + 6;
+        final char[] buffer = buffer(maxLen);
+        return sb.append(buffer, 0, appendFilename(rawKey, buffer, 0, maxLen));
+    }
 
+    /**
+     * Method for appending filename created from given raw key into given
+     * buffer, without intermediate allocations. Output is truncated if
+     * it would extend beyond <code>end</code>.
+     *
+     * @return Offset after the last character appended
+     */
+    public int appendFilename(StorableKey rawKey, char[] buffer, int ptr, final int end)
+    {
+        final int length = rawKey.length();
+        final int offset = BasicTSKeyConverter.DEFAULT_KEY_HEADER_LENGTH;
+        if (length < offset) {
+            throw new IllegalArgumentException("Key too short ("+length+" bytes) to contain header");
+        }
+        final int groupLen = ((rawKey.byteAt(0) & 0xFF) << 8) | (rawKey.byteAt(1) & 0xFF);
+        if (groupLen > (length - offset)) {
+            throw new IllegalArgumentException("Invalid partition id length ("+groupLen
+                    +"): total key length only "+length+")");
+        }
         // Start with partition id, if any
-        final String fullPath = key.getPartitionAndPath();
-        final int groupLen = key.getPartitionIdLength();
         if (groupLen > 0) {
-            sb.append(groupLen);
-        }
-        sb.append(':');
-        
-        for (int i = 0, len = fullPath.length(); i < len; ++i) {
-            char c = fullPath.charAt(i);
-            if ((c <= 0xFF) && isSafe((byte) c)) {
-                sb.append(c);
-            } else {
-                sb.append(safeChar);
+            ptr = appendInt(buffer, ptr, end, groupLen, 1);
+        }
+        if (ptr < end) {
+            buffer[ptr++] = ':';
+        }
+        final char safeChar = _safeChar;
+        for (int i = offset; (i < length) && (ptr < end); ++i) {
+            final int b = rawKey.byteAt(i);
+            if (b >= 0) { // ASCII
+                buffer[ptr++] = isSafe((byte) b) ? (char) b : safeChar;
+            } else if ((b & 0xC0) != 0x80) { // lead byte; continuation bytes are skipped
+                buffer[ptr++] = safeChar;
+                // 4-byte sequences decode into surrogate pairs
+                if (((b & 0xF8) == 0xF0) && (ptr < end)) {
+                    buffer[ptr++] = safeChar;
+                }
+            }
+        }
+        return ptr;
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper methods
+    /**********************************************************************
+     */
+
+    /**
+     * Accessor for the per-thread buffer, which is to be used within
+     * a single call: buffer is (re)allocated if it is shorter than
+     * requested.
+     */
+    static char[] buffer(int minLength)
+    {
+        char[] buffer = _buffers.get();
+        if (buffer == null || buffer.length < minLength) {
+            buffer = new char[Math.max(minLength, 256)];
+            _buffers.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Helper method for appending non-negative int value, zero-padded to
+     * at least <code>minDigits</code> digits; digits at or beyond
+     * <code>end</code> are dropped.
+     */
+    static int appendInt(char[] buffer, int ptr, int end, int value, int minDigits)
+    {
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            ++digits;
+        }
+        if (digits < minDigits) {
+            digits = minDigits;
+        }
+        for (int i = digits-1, v = value; i >= 0; --i, v /= 10) {
+            if (ptr + i < end) {
+                buffer[ptr+i] = (char) ('0' + (v % 10));
             }
         }
-        return sb;
+        return Math.min(ptr + digits, end);
     }
 }
@@ -1,5 +1,8 @@
 package com.fasterxml.transistore.service.cfg;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.fasterxml.storemate.store.backend.StoreBackendConfig;
 
 import com.fasterxml.clustermate.api.RequestPathStrategy;
@@ -33,6 +36,43 @@ public class BasicTSServiceConfig
      * we don't do it.
      */
     public boolean printTimings = false;
+
+    /**
+     * Settings for throttling of local database operations.
+     */
+    public ThrottlingConfig throttling = new ThrottlingConfig();
+
+    /**
+     * Settings for local entry clean up.
+     */
+    public CleanupConfig cleanup = new CleanupConfig();
+
+    /**
+     * Settings for buffering of updates to last-access timestamps.
+     */
+    public LastAccessBufferConfig lastAccessBuffer = new LastAccessBufferConfig();
+
+    /**
+     * Settings for asynchronous deletion of external files of deleted entries.
+     */
+    public FileReclaimerConfig fileReclaimer = new FileReclaimerConfig();
+
+    /**
+     * Additional storage tiers for external files, if any; entries are
+     * stored in the first tier whose placement rules match, or, if none
+     * do, under the default data root.
+     */
+    public List<FileTierConfig> fileTiers = new ArrayList<FileTierConfig>();
+
+    /**
+     * Directory layout used for external files, for all storage tiers.
+     */
+    public FileLayoutConfig fileLayout = new FileLayoutConfig();
+
+    /**
+     * Settings for batch GETs of multiple entries.
+     */
+    public BatchGetConfig batchGet = new BatchGetConfig();
     
     /*
     /**********************************************************************
@@ -77,6 +117,29 @@ public class BasicTSServiceConfig
     /**********************************************************************
      */
 
+    /**
+     * Method for specifying version of TransiStore metadata format to use for
+     * writing entries (1 or 2); reading is supported for all versions
+     * regardless. Version 2 is more compact, but can not be read by older
+     * nodes, so it should only be enabled once all nodes of a cluster
+     * have been upgraded. When enabled, entries using older format are
+     * gradually rewritten by local entry cleanup.
+     *<p>
+     * Only has effect if entry converter is {@link BasicTSEntryConverter}.
+     */
+    public void setMetadataVersion(int version) {
+        if (_entryConverter instanceof BasicTSEntryConverter) {
+            _entryConverter = ((BasicTSEntryConverter) _entryConverter).withMetadataVersion(version);
+        }
+    }
+
+    public int getMetadataVersion() {
+        if (_entryConverter instanceof BasicTSEntryConverter) {
+            return ((BasicTSEntryConverter) _entryConverter).getMetadataVersion();
+        }
+        return 0;
+    }
+
     @Override
     public BasicTSServiceConfig overrideStoreBackendConfig(StoreBackendConfig cfg) {
         _storeBackendConfigOverride = cfg;
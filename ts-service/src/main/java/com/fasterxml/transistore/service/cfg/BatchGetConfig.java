@@ -0,0 +1,35 @@
+package com.fasterxml.transistore.service.cfg;
+
+/**
+ * Configuration settings for batch GETs, with which clients fetch
+ * contents of multiple (small) entries with a single request
+ * (see {@link com.fasterxml.transistore.basic.BasicTSPath#STORE_ENTRIES_BATCH}).
+ * Entries not included due to size limits are marked as such, and
+ * clients then fetch them individually.
+ */
+public class BatchGetConfig
+{
+    /**
+     * Whether batch GETs are enabled or not.
+     *<p>
+     * Default value is true.
+     */
+    public boolean enabled = true;
+
+    /**
+     * Maximum number of keys accepted for a single request; requests with
+     * more keys are rejected.
+     */
+    public int maxKeys = 1000;
+
+    /**
+     * Maximum (uncompressed) length of an entry to include in response.
+     */
+    public long maxEntryLength = 64 * 1024;
+
+    /**
+     * Maximum total length of contents of entries included in a response;
+     * once reached, remaining entries are not included.
+     */
+    public long maxResponseLength = 8 * 1024 * 1024;
+}
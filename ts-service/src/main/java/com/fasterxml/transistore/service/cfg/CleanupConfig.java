@@ -0,0 +1,136 @@
+package com.fasterxml.transistore.service.cfg;
+
+import org.skife.config.TimeSpan;
+
+/**
+ * Configuration container for settings of
+ * {@link com.fasterxml.transistore.service.cleanup.LocalEntryCleaner},
+ * which is used for removing expired entries and tombstones.
+ */
+public class CleanupConfig
+{
+    /**
+     * Number of threads to use for full scans over all entries: if more
+     * than one, range of last-modified timestamps is split into this many
+     * segments, processed concurrently. Each thread paces its own work
+     * (see {@link #deletion}), and total number of entries processed
+     * (read or deleted) by all threads may be limited using
+     * {@link #maxEntriesPerSecond}. Reads of all threads also go through the
+     * same background lanes of the store operation throttler; deletions
+     * do not, being paced as described above.
+     *<p>
+     * Default value is 1, meaning that entries are processed sequentially.
+     */
+    public int threads = 1;
+
+    /**
+     * Maximum number of entries (read or deleted) that clean up may process
+     * per second, over all threads; or 0 to indicate that no such limit is
+     * used (in which case each thread is only paced separately).
+     *<p>
+     * Default value is 0 (no limit).
+     */
+    public int maxEntriesPerSecond = 0;
+
+    /**
+     * Minimum interval between persisting progress of full scans, so that
+     * scans interrupted (by shutdown, for example) can be resumed.
+     */
+    public TimeSpan checkpointInterval = new TimeSpan("1m");
+
+    /**
+     * Maximum number of times an incomplete full scan is resumed from
+     * its checkpoints; after this, a new full scan is started from the
+     * beginning to catch any entries that may have been missed.
+     */
+    public int maxResumes = 3;
+
+    /**
+     * Settings for pacing of deletions
+     */
+    public DeletionThrottlingConfig deletion = new DeletionThrottlingConfig();
+
+    /**
+     * Number of most recent clean up runs to retain statistics of, for
+     * node metrics.
+     */
+    public int historySize = 10;
+
+    /*
+    /**********************************************************************
+    /* Global last-access checks
+    /**********************************************************************
+     */
+
+    /**
+     * Maximum number of entries (whose local last-access TTL has been
+     * exceeded) to check with a single last-access request to each peer.
+     */
+    public int lastAccessBatchSize = 500;
+
+    /**
+     * Timeout for last-access requests to peers; if a peer does not
+     * respond in time, entries it stores are retained until next run.
+     */
+    public TimeSpan lastAccessTimeout = new TimeSpan("10s");
+
+    /*
+    /**********************************************************************
+    /* Expiration index
+    /**********************************************************************
+     */
+
+    /**
+     * Whether an in-memory index of expiration times is maintained, to
+     * let most clean up runs only check entries that have expired, instead
+     * of scanning all entries of the store.
+     *<p>
+     * Default value is true.
+     */
+    public boolean useExpirationIndex = true;
+
+    /**
+     * Granularity of expiration index: entries are grouped in buckets of
+     * this size, and a bucket is only processed once all of its time
+     * span has passed.
+     */
+    public TimeSpan expirationBucketSize = new TimeSpan("1m");
+
+    /**
+     * Maximum number of entries to keep in expiration index; or 0 to
+     * determine maximum from heap size (see {@link #expirationIndexHeapShare}).
+     *<p>
+     * Index is kept in memory, and takes about 130 bytes per entry (with
+     * 40-byte keys): so with 8 GB heap and default settings, up to about 6
+     * million entries are indexed. If a full scan finds more entries than
+     * this, index is disabled (and its memory freed) until service is
+     * restarted, and every clean up run does a full scan instead; full scans
+     * are split in segments, and resume from checkpoints, so this is the
+     * expected mode of operation for nodes with hundreds of millions of
+     * entries, for which <code>useExpirationIndex</code> may as well be
+     * disabled. If index only fills up due to new entries being written,
+     * it is cleared, and re-populated by the next full scan.
+     *<p>
+     * Default value is 0, to base maximum on heap size.
+     */
+    public int maxIndexedEntries = 0;
+
+    /**
+     * Share (0.0 - 1.0) of maximum heap size that expiration index may use,
+     * if {@link #maxIndexedEntries} is not explicitly specified.
+     *<p>
+     * Default value is 0.1 (10% of heap).
+     */
+    public double expirationIndexHeapShare = 0.1;
+
+    /**
+     * Number of clean up runs that may use expiration index, between full
+     * scans of all entries. Full scans are needed to index entries that were
+     * stored before service was started, as well as to catch any entries
+     * that index may have missed.
+     *<p>
+     * Default value is 18; with default delay between clean up runs this
+     * means a full scan about twice a day.
+     */
+    public int fullScanInterval = 18;
+}
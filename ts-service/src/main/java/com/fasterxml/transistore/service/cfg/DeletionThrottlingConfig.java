@@ -0,0 +1,126 @@
+package com.fasterxml.transistore.service.cfg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.skife.config.TimeSpan;
+
+/**
+ * Configuration settings for pacing deletions done by clean up
+ * (see {@link com.fasterxml.transistore.service.cleanup.DeletionPacer}):
+ * deletions are done in batches, with breaks in between. Both batch
+ * size and length of breaks are adjusted based on observed latency of
+ * client requests and time taken by deletions themselves.
+ */
+public class DeletionThrottlingConfig
+{
+    /**
+     * Whether batch sizes and breaks are adjusted based on observed
+     * latencies (true), or kept at their initial values (false).
+     *<p>
+     * Default value is true.
+     */
+    public boolean adaptive = true;
+
+    /*
+    /**********************************************************************
+    /* Batching
+    /**********************************************************************
+     */
+
+    /**
+     * Number of deletions to batch initially (as well as when not adaptive)
+     */
+    public int initialBatchSize = 500;
+
+    public int minBatchSize = 50;
+
+    public int maxBatchSize = 2000;
+
+    /*
+    /**********************************************************************
+    /* Breaks
+    /**********************************************************************
+     */
+
+    /**
+     * Amount of time to process entries before taking a break
+     */
+    public TimeSpan workPeriod = new TimeSpan("200ms");
+
+    /**
+     * Regardless of how long things take, a break is taken after reading
+     * this number of entries.
+     */
+    public int maxReadsBeforeBreak = 5000;
+
+    /**
+     * Length of breaks relative to time spent processing since the previous
+     * break, initially (as well as when not adaptive).
+     */
+    public double initialBreakRatio = 0.25;
+
+    public double minBreakRatio = 0.05;
+
+    public double maxBreakRatio = 2.0;
+
+    public TimeSpan minBreak = new TimeSpan("20ms");
+
+    public TimeSpan maxBreak = new TimeSpan("500ms");
+
+    /*
+    /**********************************************************************
+    /* Feedback
+    /**********************************************************************
+     */
+
+    /**
+     * Latency target for client requests: if observed latency percentile (as
+     * calculated by background throttling; see
+     * {@link BackgroundThrottlingConfig#foregroundPercentile}) exceeds this,
+     * deletions are slowed down.
+     */
+    public TimeSpan foregroundLatencyTarget = new TimeSpan("100ms");
+
+    /**
+     * If no client request latencies have been observed for this long,
+     * node is considered idle, and only deletion times are considered.
+     */
+    public TimeSpan foregroundIdleTime = new TimeSpan("30s");
+
+    /**
+     * Target for average time a single deletion (database commit) takes:
+     * if exceeded, deletions are slowed down.
+     */
+    public TimeSpan commitTimeTarget = new TimeSpan("5ms");
+
+    /**
+     * Multiplier applied to the batch size (and divisor for break ratio)
+     * when either target is exceeded.
+     */
+    public double backoffRatio = 0.5;
+
+    /**
+     * Multiplier applied to the batch size (and divisor for break ratio)
+     * when both targets are met.
+     */
+    public double increaseRatio = 1.25;
+
+    /*
+    /**********************************************************************
+    /* Off-peak windows
+    /**********************************************************************
+     */
+
+    /**
+     * Optional time windows during which deletions are not throttled at
+     * all: expressed as "HH:mm-HH:mm" (like "01:00-05:30"); windows may
+     * span midnight (like "22:00-04:00").
+     */
+    public List<String> offPeakWindows = new ArrayList<String>();
+
+    /**
+     * Time zone used for {@link #offPeakWindows}.
+     */
+    public String offPeakTimeZone = "UTC";
+}
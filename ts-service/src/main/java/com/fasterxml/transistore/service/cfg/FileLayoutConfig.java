@@ -0,0 +1,43 @@
+package com.fasterxml.transistore.service.cfg;
+
+/**
+ * Configuration of directory layout used for external files (content not
+ * inlined in the database). Regardless of layout, files are stored under
+ * time-based "YYYY-MM-DD/HH:MM/NNN" directories, so that clean up can
+ * remove expired data directory by directory; layout only determines
+ * whether files go directly in the "NNN" directory, or in hash-based
+ * sub-directories under it.
+ *<p>
+ * Since file references stored with entries contain the full relative
+ * path, layout may be changed at any point: existing files are still
+ * found using their references.
+ */
+public class FileLayoutConfig
+{
+    public enum Type {
+        /**
+         * Files are stored directly in "NNN" directories, which are
+         * rolled over after {@link com.fasterxml.storemate.store.file.FileManagerConfig#maxFilesPerDirectory}
+         * files.
+         */
+        TIME,
+
+        /**
+         * Files are stored in two levels of sub-directories under "NNN"
+         * directories, chosen using hash of the key; "NNN" directories
+         * are rolled over once there are (on average)
+         * {@link com.fasterxml.storemate.store.file.FileManagerConfig#maxFilesPerDirectory}
+         * files per sub-directory.
+         */
+        HASH
+    }
+
+    public Type type = Type.TIME;
+
+    /**
+     * Number of sub-directories at each level, when using {@link Type#HASH};
+     * between 1 and 256, and should be a power of two. Default of 16 gives
+     * 256 sub-directories for each "NNN" directory.
+     */
+    public int hashDirsPerLevel = 16;
+}
@@ -0,0 +1,49 @@
+package com.fasterxml.transistore.service.cfg;
+
+import org.skife.config.TimeSpan;
+
+/**
+ * Configuration settings for
+ * {@link com.fasterxml.transistore.service.cleanup.FileReclaimer},
+ * used for deleting external files of entries removed by clean up
+ * asynchronously.
+ */
+public class FileReclaimerConfig
+{
+    /**
+     * Whether external files of deleted entries are deleted asynchronously
+     * (true), or directly when entries are deleted (false).
+     *<p>
+     * Default value is true.
+     */
+    public boolean enabled = true;
+
+    /**
+     * Maximum number of files queued for deletion; if queue is full,
+     * files are deleted directly by the clean up thread.
+     */
+    public int maxQueuedFiles = 100000;
+
+    /**
+     * Maximum number of files to delete as a batch; files of a batch are
+     * deleted in path order, so that files of the same directory are
+     * deleted together.
+     */
+    public int batchSize = 1000;
+
+    /**
+     * Minimum age of a time-based data directory (based on the time encoded
+     * in its name) before it may be removed when it becomes empty; needed
+     * to avoid removing directories that may still get new files.
+     */
+    public TimeSpan minDirectoryAge = new TimeSpan("1h");
+
+    /**
+     * Since empty directories are removed as files are deleted, file
+     * clean up (which walks through all data directories) only needs to
+     * be run occasionally, to catch files that were never deleted: it is
+     * run for every Nth clean up run, as well as for the first one after
+     * start up.
+     */
+    public int fileCleanerRunInterval = 36;
+}
@@ -0,0 +1,116 @@
+package com.fasterxml.transistore.service.cfg;
+
+import org.skife.config.DataAmount;
+import org.skife.config.TimeSpan;
+
+/**
+ * Configuration container for settings of
+ * {@link com.fasterxml.transistore.service.ReadWriteOperationPrioritizer}
+ * which is used for throttling file system reads and writes.
+ */
+public class FileThrottlingConfig
+{
+    /**
+     * Relative weight of queued reads, compared to {@link #writeWeight};
+     * used to determine ratio in which queued operations are released.
+     *<p>
+     * Default is 2, meaning that by default 2:1 ratio is used between
+     * queued reads and writes.
+     */
+    public double readWeight = 2.0;
+
+    /**
+     * Relative weight of queued writes, compared to {@link #readWeight}.
+     */
+    public double writeWeight = 1.0;
+
+    /**
+     * Number of concurrent reads allowed without contest
+     */
+    public int guaranteedReads = 3;
+
+    /**
+     * Maximum number of concurrent reads, if there is room
+     */
+    public int maxReads = 6;
+
+    /**
+     * Number of concurrent writes allowed without contest
+     */
+    public int guaranteedWrites = 2;
+
+    /**
+     * Maximum number of concurrent writes, if there is room
+     */
+    public int maxWrites = 5;
+
+    /**
+     * Maximum number of concurrent reads and writes combined, for
+     * operations beyond guaranteed ones.
+     */
+    public int maxConcurrent = 8;
+
+    /**
+     * Whether ratio between queued reads and writes is to be adjusted
+     * dynamically, based on observed queuing times: if enabled, operation
+     * type whose queued operations wait longer gets higher share.
+     *<p>
+     * Default is false, meaning that ratio is fixed.
+     */
+    public boolean autoTune = false;
+
+    /**
+     * When auto-tuning, minimum share (0.0 - 1.0) of queued operations
+     * to give to reads.
+     */
+    public double minReadShare = 0.2;
+
+    /**
+     * When auto-tuning, maximum share (0.0 - 1.0) of queued operations
+     * to give to reads.
+     */
+    public double maxReadShare = 0.9;
+
+    /**
+     * Maximum time a file read or write may wait for its turn, unless
+     * request specifies its own deadline.
+     */
+    public TimeSpan defaultDeadline = new TimeSpan("30s");
+
+    /*
+    /**********************************************************************
+    /* Large file lane
+    /**********************************************************************
+     */
+
+    /**
+     * Files bigger than this size are considered "large", and instead of
+     * leases (see above settings) are throttled by a separate lane that
+     * limits their concurrency and bandwidth. This keeps long streaming
+     * transfers from holding leases that short interactive reads need.
+     *<p>
+     * Default is 1 megabyte.
+     */
+    public DataAmount largeFileThreshold = new DataAmount("1MB");
+
+    /**
+     * Maximum number of concurrent large file transfers (reads and
+     * writes combined).
+     */
+    public int maxConcurrentLarge = 2;
+
+    /**
+     * Bandwidth budget for large file transfers, in bytes per second:
+     * transfers are admitted at a rate that keeps their total size within
+     * this budget, on average.
+     *<p>
+     * Default is 100 megabytes (per second).
+     */
+    public DataAmount largeFileBytesPerSecond = new DataAmount("100MB");
+
+    /**
+     * Amount of bandwidth budget that can be accumulated while there are no
+     * large transfers, to allow short bursts.
+     */
+    public DataAmount largeFileBurst = new DataAmount("16MB");
+}
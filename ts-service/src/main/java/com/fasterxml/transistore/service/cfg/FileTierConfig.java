@@ -0,0 +1,56 @@
+package com.fasterxml.transistore.service.cfg;
+
+import java.io.File;
+
+import org.skife.config.TimeSpan;
+
+/**
+ * Configuration of an additional storage tier for external files
+ * (content not inlined in the database): entries whose maximum TTL and
+ * size match the placement rules of a tier have their files stored under
+ * its data root, instead of the default one
+ * ({@link com.fasterxml.storemate.store.StoreConfig#dataRootForFiles}).
+ *<p>
+ * Tiers are checked in order in which they are listed, and the first
+ * matching tier is used. Bounds that are not defined are not checked;
+ * but if a bound is defined and the value to check is not known (for
+ * example, content length was not declared), tier is not used.
+ */
+public class FileTierConfig
+{
+    /**
+     * Name of the tier; stored as part of file references of entries,
+     * so it must not be changed once files have been stored. May only
+     * contain ASCII letters, digits, underscores and hyphens.
+     */
+    public String name;
+
+    /**
+     * Root directory under which data directories of the tier are created.
+     */
+    public File dataRoot;
+
+    /**
+     * If defined, only entries with maximum TTL at least this long
+     * are stored in the tier.
+     */
+    public TimeSpan minEntryTTL;
+
+    /**
+     * If defined, only entries with maximum TTL shorter than this are
+     * stored in the tier.
+     */
+    public TimeSpan maxEntryTTL;
+
+    /**
+     * If non-negative, only entries with (declared) content length of at
+     * least this many bytes are stored in the tier.
+     */
+    public long minSize = -1L;
+
+    /**
+     * If non-negative, only entries with (declared) content length below
+     * this many bytes are stored in the tier.
+     */
+    public long maxSize = -1L;
+}
@@ -0,0 +1,37 @@
+package com.fasterxml.transistore.service.cfg;
+
+import org.skife.config.TimeSpan;
+
+/**
+ * Configuration settings for
+ * {@link com.fasterxml.transistore.service.lastaccess.LastAccessBuffer},
+ * used for buffering and coalescing updates to last-access timestamps.
+ */
+public class LastAccessBufferConfig
+{
+    /**
+     * Whether updates to last-access timestamps are buffered (and written
+     * asynchronously in batches), or written directly for each access.
+     *<p>
+     * Default value is true.
+     */
+    public boolean enabled = true;
+
+    /**
+     * Number of stripes (separately locked parts) to use for buffer;
+     * rounded up to the next power of two.
+     */
+    public int stripes = 16;
+
+    /**
+     * Maximum time between flushes of buffered timestamps; this is also
+     * the upper bound for updates lost if process crashes.
+     */
+    public TimeSpan flushInterval = new TimeSpan("5s");
+
+    /**
+     * Number of buffered (distinct) entries after which buffer is flushed
+     * without waiting for {@link #flushInterval} to pass.
+     */
+    public int maxPendingEntries = 20000;
+}
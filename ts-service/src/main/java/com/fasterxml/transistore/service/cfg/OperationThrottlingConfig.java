@@ -0,0 +1,58 @@
+package com.fasterxml.transistore.service.cfg;
+
+import java.util.concurrent.TimeUnit;
+
+import org.skife.config.TimeSpan;
+
+/**
+ * Configuration container for throttling settings of a single type of
+ * local database operation (GET, PUT, LIST) by
+ * {@link com.fasterxml.transistore.service.BasicTSOperationThrottler}.
+ */
+public class OperationThrottlingConfig
+{
+    /**
+     * Number of concurrent operations allowed when the service starts;
+     * if adaptive limits are disabled, this is the fixed limit.
+     */
+    public int initialLimit;
+
+    /**
+     * Lowest concurrency limit adaptive logic may reduce limit to.
+     */
+    public int minLimit;
+
+    /**
+     * Highest concurrency limit adaptive logic may increase limit to.
+     */
+    public int maxLimit;
+
+    /**
+     * Latency target for operations: if the observed latency percentile
+     * (see {@link ThrottlingConfig#latencyPercentile}) exceeds this value,
+     * concurrency limit is reduced; otherwise it may be increased if
+     * limit is being reached.
+     */
+    public TimeSpan targetLatency;
+
+    /**
+     * Maximum time an operation may wait for its turn, unless request specifies
+     * its own deadline: operations that can not proceed before deadline are
+     * rejected (resulting in 503 response), instead of being executed after
+     * caller has likely given up on them.
+     */
+    public TimeSpan defaultDeadline;
+
+    // for deserialization
+    protected OperationThrottlingConfig() { }
+
+    public OperationThrottlingConfig(int initialLimit, int minLimit, int maxLimit,
+            long targetLatencyMsecs, long defaultDeadlineMsecs)
+    {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        targetLatency = new TimeSpan(targetLatencyMsecs, TimeUnit.MILLISECONDS);
+        defaultDeadline = new TimeSpan(defaultDeadlineMsecs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,30 @@
+package com.fasterxml.transistore.service.cfg;
+
+/**
+ * Configuration settings for throttling operations of a single partition
+ * (see {@link com.fasterxml.transistore.basic.BasicTSKey#getPartitionId()}),
+ * when queuing is needed.
+ */
+public class PartitionThrottlingConfig
+{
+    /**
+     * Relative weight of the partition: when operations of multiple partitions
+     * are queued, they are released in proportion to their weights.
+     *<p>
+     * Default value is 1.0.
+     */
+    public double weight = 1.0;
+
+    /**
+     * Maximum number of concurrent operations of a single type (GET, PUT, LIST)
+     * for the partition; 0 means that no partition-specific limit is used.
+     */
+    public int maxConcurrent = 0;
+
+    public PartitionThrottlingConfig() { }
+
+    public PartitionThrottlingConfig(double weight, int maxConcurrent) {
+        this.weight = weight;
+        this.maxConcurrent = maxConcurrent;
+    }
+}
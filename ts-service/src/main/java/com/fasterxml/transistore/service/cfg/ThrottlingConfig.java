@@ -0,0 +1,93 @@
+package com.fasterxml.transistore.service.cfg;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Configuration container for settings of
+ * {@link com.fasterxml.transistore.service.BasicTSOperationThrottler}:
+ * concurrency limits for local database operations, and settings for
+ * adjusting these limits based on observed latencies.
+ */
+public class ThrottlingConfig
+{
+    /**
+     * Whether concurrency limits are adjusted dynamically based on observed
+     * latencies (true), or kept fixed at their initial values (false).
+     *<p>
+     * Default value is true.
+     */
+    public boolean adaptiveLimits = true;
+
+    /**
+     * Number of latency samples collected before considering adjustment of
+     * concurrency limit of an operation type.
+     */
+    public int latencyWindow = 100;
+
+    /**
+     * Percentile of latency samples (within window) that is compared to
+     * target latency; expressed as a fraction between 0.0 and 1.0.
+     *<p>
+     * Default value is 0.95 (95th percentile).
+     */
+    public double latencyPercentile = 0.95;
+
+    /**
+     * Multiplier applied to the current concurrency limit when latency target
+     * is exceeded; additive increase (by one) is used when within target.
+     */
+    public double backoffRatio = 0.75;
+
+    /**
+     * Whether operations that need to be queued are released using weighted
+     * fair queuing between partitions (true), or in plain FIFO order (false).
+     * Fair queuing prevents a single partition with heavy load from starving
+     * other partitions.
+     *<p>
+     * Default value is true.
+     */
+    public boolean partitionFairQueuing = true;
+
+    /**
+     * Settings for partitions that have no explicit settings in
+     * {@link #partitions}.
+     */
+    public PartitionThrottlingConfig partitionDefaults = new PartitionThrottlingConfig();
+
+    /**
+     * Optional per-partition settings (weights, concurrency caps), keyed
+     * by partition id.
+     */
+    public Map<String,PartitionThrottlingConfig> partitions
+        = new LinkedHashMap<String,PartitionThrottlingConfig>();
+
+    /**
+     * Settings for GET operations: we can allow higher concurrency for reads
+     * than for writes.
+     */
+    public OperationThrottlingConfig get = new OperationThrottlingConfig(6, 2, 64, 20L, 10000L);
+
+    /**
+     * Settings for PUT operations; start with just two concurrent updates,
+     * which should be safe for slower disks.
+     */
+    public OperationThrottlingConfig put = new OperationThrottlingConfig(2, 1, 16, 50L, 30000L);
+
+    /**
+     * Settings for List operations; these can be pricey, but also
+     * expected to take longer than single-entry reads.
+     */
+    public OperationThrottlingConfig list = new OperationThrottlingConfig(8, 2, 32, 250L, 15000L);
+
+    /**
+     * Settings for throttling of file system reads and writes.
+     */
+    public FileThrottlingConfig files = new FileThrottlingConfig();
+
+    /**
+     * Settings for throttling of operations by background sources
+     * (sync, cleanup) instead of client requests.
+     */
+    public BackgroundThrottlingConfig background = new BackgroundThrottlingConfig();
+}
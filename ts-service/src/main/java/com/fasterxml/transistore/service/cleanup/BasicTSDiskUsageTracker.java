@@ -0,0 +1,88 @@
+package com.fasterxml.transistore.service.cleanup;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.storemate.store.file.FileManager;
+
+import com.fasterxml.clustermate.service.SharedServiceStuff;
+import com.fasterxml.clustermate.service.Stores;
+import com.fasterxml.clustermate.service.cleanup.DiskUsageStats;
+import com.fasterxml.clustermate.service.cleanup.DiskUsageTracker;
+import com.fasterxml.clustermate.service.cluster.ClusterViewByServer;
+import com.fasterxml.clustermate.service.util.SizeUtil;
+
+import com.fasterxml.transistore.service.cfg.BasicTSFileManager;
+import com.fasterxml.transistore.service.store.FileTier;
+import com.fasterxml.transistore.service.store.FileTierMetrics;
+
+/**
+ * {@link DiskUsageTracker} extension that also calculates disk usage of
+ * storage tiers of external files (see {@link FileTier}): since data
+ * directories may contain large number of files, usage is that of the
+ * file system each data root is on. Results are attached to tiers, to be
+ * exposed as node metrics.
+ */
+public class BasicTSDiskUsageTracker extends DiskUsageTracker
+{
+    protected final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    protected List<FileTier> _tiers = Collections.emptyList();
+
+    public BasicTSDiskUsageTracker() { }
+
+    @Override
+    protected void init(SharedServiceStuff stuff, Stores<?,?> stores,
+            ClusterViewByServer cluster, AtomicBoolean shutdown)
+    {
+        super.init(stuff, stores, cluster, shutdown);
+        FileManager files = stuff.getFileManager();
+        if (files instanceof BasicTSFileManager) {
+            _tiers = ((BasicTSFileManager) files).getTiers();
+        }
+    }
+
+    @Override
+    public DiskUsageStats _cleanUp()
+    {
+        // tiers first, as base class reports results at the end
+        final long now = _timeMaster.currentTimeMillis();
+        for (FileTier tier : _tiers) {
+            tier.setUsage(measure(tier, now));
+        }
+        return super._cleanUp();
+    }
+
+    public static FileTierMetrics measure(FileTier tier, long now)
+    {
+        File root = tier.getDataRoot();
+        FileTierMetrics usage = new FileTierMetrics();
+        usage.name = tier.getName();
+        usage.dataRoot = root.getAbsolutePath();
+        usage.measured = now;
+        usage.totalBytes = root.getTotalSpace();
+        usage.usedBytes = usage.totalBytes - root.getFreeSpace();
+        usage.usableBytes = root.getUsableSpace();
+        return usage;
+    }
+
+    @Override
+    protected void _reportEnd(DiskUsageStats stats)
+    {
+        if (LOG != null) {
+            LOG.info("Disk usage: {}", stats);
+            for (FileTier tier : _tiers) {
+                FileTierMetrics usage = tier.getUsage();
+                if (usage != null) {
+                    LOG.info("File tier '{}' ({}): {} used, {} available", usage.name, usage.dataRoot,
+                            SizeUtil.sizeDesc(usage.usedBytes), SizeUtil.sizeDesc(usage.usableBytes));
+                }
+            }
+        }
+    }
+}
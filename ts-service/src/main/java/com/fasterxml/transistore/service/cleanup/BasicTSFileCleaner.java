@@ -0,0 +1,106 @@
+package com.fasterxml.transistore.service.cleanup;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.storemate.store.file.DirByDate;
+import com.fasterxml.storemate.store.file.FileCleanupStats;
+
+import com.fasterxml.clustermate.service.SharedServiceStuff;
+import com.fasterxml.clustermate.service.Stores;
+import com.fasterxml.clustermate.service.cleanup.FileCleaner;
+import com.fasterxml.clustermate.service.cluster.ClusterViewByServer;
+
+import com.fasterxml.transistore.service.cfg.BasicTSFileManager;
+import com.fasterxml.transistore.service.cfg.BasicTSServiceConfig;
+import com.fasterxml.transistore.service.store.BasicTSStores;
+import com.fasterxml.transistore.service.store.FileTier;
+
+/**
+ * {@link FileCleaner} extension that only walks through data directories
+ * occasionally if a {@link FileReclaimer} is used, since reclaimer removes
+ * directories as they become empty. Also walks through data directories
+ * of all storage tiers, if {@link BasicTSFileManager} with additional
+ * tiers is used.
+ */
+public class BasicTSFileCleaner extends FileCleaner
+{
+    /**
+     * Walk through directories is done for every Nth run; if 1 (or less), for
+     * every run.
+     */
+    protected int _runInterval = 1;
+
+    protected int _runsSinceWalk;
+
+    protected boolean _hasWalked;
+
+    public BasicTSFileCleaner() {
+        this(LoggerFactory.getLogger(BasicTSFileCleaner.class));
+    }
+
+    public BasicTSFileCleaner(Logger log) {
+        super(log);
+    }
+
+    @Override
+    protected void init(SharedServiceStuff stuff,
+            Stores<?,?> stores,
+            ClusterViewByServer cluster,
+            AtomicBoolean shutdown)
+    {
+        super.init(stuff, stores, cluster, shutdown);
+        if ((stores instanceof BasicTSStores)
+                && ((BasicTSStores) stores).getFileReclaimer() != null
+                && (stuff.getServiceConfig() instanceof BasicTSServiceConfig)) {
+            _runInterval = ((BasicTSServiceConfig) stuff.getServiceConfig()).fileReclaimer.fileCleanerRunInterval;
+        }
+    }
+
+    @Override
+    public FileCleanupStats _cleanUp()
+    {
+        // always walk on the first run, to catch anything left before restart
+        if (_hasWalked && (++_runsSinceWalk < _runInterval)) {
+            if (LOG != null) {
+                LOG.info("Skipping file cleanup (empty directories removed by file reclaimer); {} runs until next one",
+                        _runInterval - _runsSinceWalk);
+            }
+            return new FileCleanupStats();
+        }
+        _hasWalked = true;
+        _runsSinceWalk = 0;
+        if (!(_fileManager instanceof BasicTSFileManager)) {
+            return super._cleanUp();
+        }
+        final FileCleanupStats stats = new FileCleanupStats();
+        _reportStart();
+        for (FileTier tier : ((BasicTSFileManager) _fileManager).getTiers()) {
+            if (shouldStop()) {
+                break;
+            }
+            _cleanTier(tier, stats);
+        }
+        return stats;
+    }
+
+    protected void _cleanTier(FileTier tier, FileCleanupStats stats)
+    {
+        // iterate over all but the last directory; last considered current
+        List<DirByDate> dateDirs = tier.getFileManager().listMainDataDirs(stats);
+        final int dirCount = dateDirs.size();
+        if (dirCount == 0) {
+            if (LOG != null) {
+                LOG.info("No date directories found for clean up of tier '{}'", tier.getName());
+            }
+            return;
+        }
+        for (int i = 0, end = dirCount-1; i < end; ++i) {
+            _cleanDateDir(dateDirs.get(i), stats);
+        }
+        _reportEndSuccess(stats, dateDirs.get(dirCount-1).getDirectory());
+    }
+}
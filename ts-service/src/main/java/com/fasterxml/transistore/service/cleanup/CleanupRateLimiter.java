@@ -0,0 +1,71 @@
+package com.fasterxml.transistore.service.cleanup;
+
+/**
+ * Simple rate limiter shared by all {@link ThrottlingDeleter}s of a
+ * {@link LocalEntryCleaner}, to limit the total number of entries
+ * (read or deleted) processed per second, regardless of how many
+ * threads are used for clean up.
+ *<p>
+ * Limiter allows bursts of up to one second worth of entries, after
+ * idle periods.
+ */
+public class CleanupRateLimiter
+{
+    protected final static long NANOS_PER_SECOND = 1000L * 1000L * 1000L;
+
+    /**
+     * Time it takes to "earn" permit for a single entry
+     */
+    protected final double _nanosPerEntry;
+
+    /**
+     * Point in time (in nanoseconds) when permits for all entries
+     * granted so far have been earned.
+     */
+    protected long _nextFree;
+
+    public CleanupRateLimiter(int entriesPerSecond)
+    {
+        if (entriesPerSecond <= 0) {
+            throw new IllegalArgumentException("Invalid entriesPerSecond ("+entriesPerSecond
+                    +"): must be positive");
+        }
+        _nanosPerEntry = (double) NANOS_PER_SECOND / entriesPerSecond;
+        _nextFree = System.nanoTime() - NANOS_PER_SECOND;
+    }
+
+    /**
+     * Method called to reserve permits for given number of entries.
+     *
+     * @return Number of nanoseconds caller needs to wait before processing
+     *   entries; 0 if it may proceed right away
+     */
+    public synchronized long reserve(int count)
+    {
+        final long now = System.nanoTime();
+        // only allow limited amount of unused permits to accumulate
+        if (_nextFree < (now - NANOS_PER_SECOND)) {
+            _nextFree = now - NANOS_PER_SECOND;
+        }
+        final long start = _nextFree;
+        _nextFree += (long) (count * _nanosPerEntry);
+        return Math.max(0L, start - now);
+    }
+
+    /**
+     * Method called to reserve permits for given number of entries, and
+     * wait until they may be processed.
+     *
+     * @return Number of milliseconds waited
+     */
+    public long acquire(int count) throws InterruptedException
+    {
+        final long waitNanos = reserve(count);
+        if (waitNanos <= 0L) {
+            return 0L;
+        }
+        final long msecs = waitNanos / (1000L * 1000L);
+        Thread.sleep(msecs, (int) (waitNanos % (1000L * 1000L)));
+        return msecs;
+    }
+}
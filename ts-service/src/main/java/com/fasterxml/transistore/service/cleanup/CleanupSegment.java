@@ -0,0 +1,131 @@
+package com.fasterxml.transistore.service.cleanup;
+
+import com.fasterxml.storemate.shared.StorableKey;
+
+/**
+ * Range of last-modified timestamps that a full scan of
+ * {@link LocalEntryCleaner} processes as a unit, possibly concurrently with
+ * other segments. Keeps track of progress within the range, so that
+ * processing of a segment that was interrupted (or failed) can be resumed
+ * independent of other segments.
+ */
+public class CleanupSegment
+{
+    /**
+     * Timestamp of the first entry included (inclusive)
+     */
+    protected final long _startTime;
+
+    /**
+     * Timestamp of the first entry NOT included (exclusive)
+     */
+    protected final long _endTime;
+
+    /**
+     * Timestamp from which processing is to continue.
+     */
+    protected volatile long _checkpoint;
+
+    /**
+     * Key of the last entry processed (with timestamp {@link #_checkpoint}),
+     * if any.
+     */
+    protected volatile StorableKey _lastKey;
+
+    protected volatile boolean _completed;
+
+    /**
+     * Number of runs during which processing of segment failed
+     */
+    protected volatile int _failures;
+
+    public CleanupSegment(long startTime, long endTime) {
+        _startTime = startTime;
+        _endTime = endTime;
+        _checkpoint = startTime;
+    }
+
+    public CleanupSegment(CleanupState.Segment state) {
+        _startTime = state.startTime;
+        _endTime = state.endTime;
+        _checkpoint = state.checkpoint;
+        _lastKey = (state.lastKey == null) ? null : new StorableKey(state.lastKey);
+        _completed = state.completed;
+        _failures = state.failures;
+    }
+
+    public CleanupState.Segment asState()
+    {
+        CleanupState.Segment state = new CleanupState.Segment();
+        state.startTime = _startTime;
+        state.endTime = _endTime;
+        // must read timestamp first (see 'processed()'): at worst we get
+        // key that is too new (or none), and redo some entries
+        state.checkpoint = _checkpoint;
+        final StorableKey lastKey = _lastKey;
+        state.lastKey = (lastKey == null) ? null : lastKey.asBytes();
+        state.completed = _completed;
+        state.failures = _failures;
+        return state;
+    }
+
+    /*
+    /**********************************************************************
+    /* Accessors
+    /**********************************************************************
+     */
+
+    public long getStartTime() { return _startTime; }
+    public long getEndTime() { return _endTime; }
+    public long getCheckpoint() { return _checkpoint; }
+    public boolean isCompleted() { return _completed; }
+    public int getFailures() { return _failures; }
+
+    public boolean includes(long timestamp) {
+        return (timestamp >= _startTime) && (timestamp < _endTime);
+    }
+
+    /**
+     * Method for checking whether entry with given timestamp and key has
+     * already been processed, when resuming from checkpoint.
+     */
+    public boolean processedAlready(long timestamp, StorableKey key)
+    {
+        if (timestamp != _checkpoint) {
+            return (timestamp < _checkpoint);
+        }
+        StorableKey lastKey = _lastKey;
+        return (lastKey != null) && (key.compareTo(lastKey) <= 0);
+    }
+
+    /*
+    /**********************************************************************
+    /* Mutators
+    /**********************************************************************
+     */
+
+    /**
+     * Method called for each entry processed; timestamp is the last-modified
+     * timestamp of the entry.
+     */
+    public void processed(long timestamp, StorableKey key) {
+        // Since there is no atomic update, clear key first
+        _lastKey = null;
+        _checkpoint = timestamp;
+        _lastKey = key;
+    }
+
+    public void completed() {
+        _completed = true;
+    }
+
+    public void failed() {
+        ++_failures;
+    }
+
+    @Override
+    public String toString() {
+        return "[segment "+_startTime+"-"+_endTime+", checkpoint "+_checkpoint
+                +(_completed ? ", completed" : "")+"]";
+    }
+}
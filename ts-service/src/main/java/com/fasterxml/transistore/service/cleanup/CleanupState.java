@@ -0,0 +1,56 @@
+package com.fasterxml.transistore.service.cleanup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persistent state of a full scan by {@link LocalEntryCleaner}: stored
+ * (as JSON) in a node state store, so that an interrupted scan can be
+ * resumed after restart instead of starting from the beginning.
+ */
+public class CleanupState
+{
+    /**
+     * Key used for storing state in node state store.
+     */
+    public final static String KEY_LOCAL_ENTRY_CLEANUP = "local-entry-cleanup";
+
+    /**
+     * Timestamp when full scan was started
+     */
+    public long started;
+
+    /**
+     * Number of clean up runs during which this scan has been processed
+     * (including the current one)
+     */
+    public int runs;
+
+    public List<Segment> segments = new ArrayList<Segment>();
+
+    public CleanupState() { }
+
+    public CleanupState(long started, int runs) {
+        this.started = started;
+        this.runs = runs;
+    }
+
+    /**
+     * Persistent state of a single {@link CleanupSegment}.
+     */
+    public static class Segment
+    {
+        public long startTime, endTime;
+
+        public long checkpoint;
+
+        /**
+         * Raw key of the last entry processed, if any.
+         */
+        public byte[] lastKey;
+
+        public boolean completed;
+
+        public int failures;
+    }
+}
@@ -0,0 +1,297 @@
+package com.fasterxml.transistore.service.cleanup;
+
+import java.util.*;
+
+import com.fasterxml.transistore.service.cfg.DeletionThrottlingConfig;
+import com.fasterxml.transistore.service.throttle.BackgroundShareController;
+
+/**
+ * Helper class that determines how {@link ThrottlingDeleter}s pace their
+ * work: how many deletions to batch, and how long breaks to take.
+ * After each batch of deletions, observed latency of client requests
+ * (if available) and average time taken by deletions are compared to
+ * configured targets: if either is exceeded, batch size is reduced
+ * and breaks made longer; otherwise batches are grown and breaks shortened.
+ *<p>
+ * During configured off-peak windows no breaks are taken, and maximum
+ * batch size is used.
+ *<p>
+ * A single instance is shared by all deleters of a cleaner, so that
+ * state is retained between clean up runs.
+ */
+public class DeletionPacer
+{
+    protected final static int MINUTES_PER_DAY = 24 * 60;
+
+    /**
+     * Off-peak status is only recalculated this often
+     */
+    protected final static long OFF_PEAK_CHECK_MSECS = 10000L;
+
+    protected final BackgroundShareController _foreground;
+
+    protected final boolean _adaptive;
+
+    protected final int _minBatchSize, _maxBatchSize;
+
+    protected final double _minBreakRatio, _maxBreakRatio;
+
+    protected final long _workMsecs;
+
+    protected final int _maxReadsBeforeBreak;
+
+    protected final long _minBreakMsecs, _maxBreakMsecs;
+
+    protected final long _foregroundTargetNanos;
+
+    protected final long _foregroundIdleMsecs;
+
+    protected final long _commitTargetNanos;
+
+    protected final double _backoffRatio, _increaseRatio;
+
+    /**
+     * Off-peak windows, as pairs of minute-of-day values (start inclusive,
+     * end exclusive)
+     */
+    protected final int[] _offPeakWindows;
+
+    protected final TimeZone _timeZone;
+
+    /*
+    /**********************************************************************
+    /* State
+    /**********************************************************************
+     */
+
+    protected volatile int _batchSize;
+
+    protected volatile double _breakRatio;
+
+    protected volatile boolean _offPeak;
+
+    protected volatile long _offPeakChecked;
+
+    protected long _increaseCount, _decreaseCount;
+
+    /*
+    /**********************************************************************
+    /* Life-cycle
+    /**********************************************************************
+     */
+
+    public DeletionPacer() {
+        this(new DeletionThrottlingConfig(), null);
+    }
+
+    /**
+     * @param foreground Controller that keeps track of client request latencies,
+     *    if any; if null, only deletion times are used for adjustments
+     */
+    public DeletionPacer(DeletionThrottlingConfig config, BackgroundShareController foreground)
+    {
+        _foreground = foreground;
+        _adaptive = config.adaptive;
+        _minBatchSize = Math.max(1, config.minBatchSize);
+        _maxBatchSize = Math.max(_minBatchSize, config.maxBatchSize);
+        _batchSize = _clamp(config.initialBatchSize, _minBatchSize, _maxBatchSize);
+        _minBreakRatio = Math.max(0.0, config.minBreakRatio);
+        _maxBreakRatio = Math.max(_minBreakRatio, config.maxBreakRatio);
+        _breakRatio = Math.max(_minBreakRatio, Math.min(_maxBreakRatio, config.initialBreakRatio));
+        _workMsecs = Math.max(1L, config.workPeriod.getMillis());
+        _maxReadsBeforeBreak = Math.max(1, config.maxReadsBeforeBreak);
+        _minBreakMsecs = Math.max(0L, config.minBreak.getMillis());
+        _maxBreakMsecs = Math.max(_minBreakMsecs, config.maxBreak.getMillis());
+        _foregroundTargetNanos = config.foregroundLatencyTarget.getMillis() * 1000L * 1000L;
+        _foregroundIdleMsecs = config.foregroundIdleTime.getMillis();
+        _commitTargetNanos = config.commitTimeTarget.getMillis() * 1000L * 1000L;
+        _backoffRatio = (config.backoffRatio > 0.0 && config.backoffRatio < 1.0)
+                ? config.backoffRatio : 0.5;
+        _increaseRatio = (config.increaseRatio > 1.0) ? config.increaseRatio : 1.25;
+        _offPeakWindows = parseWindows(config.offPeakWindows);
+        _timeZone = TimeZone.getTimeZone(config.offPeakTimeZone);
+    }
+
+    /**
+     * Helper method for parsing off-peak window definitions.
+     *
+     * @throws IllegalArgumentException If any of definitions is invalid
+     */
+    public static int[] parseWindows(List<String> defs)
+    {
+        if (defs == null) {
+            return new int[0];
+        }
+        int[] result = new int[defs.size() * 2];
+        int ix = 0;
+        for (String def : defs) {
+            String str = def.trim();
+            int sep = str.indexOf('-');
+            if (sep < 0) {
+                throw new IllegalArgumentException("Invalid off-peak window definition '"+def
+                        +"': should be of form 'HH:mm-HH:mm'");
+            }
+            result[ix++] = _parseTime(def, str.substring(0, sep).trim());
+            result[ix++] = _parseTime(def, str.substring(sep+1).trim());
+        }
+        return result;
+    }
+
+    private static int _parseTime(String def, String time)
+    {
+        int sep = time.indexOf(':');
+        try {
+            if (sep > 0) {
+                int h = Integer.parseInt(time.substring(0, sep));
+                int m = Integer.parseInt(time.substring(sep+1));
+                if (h >= 0 && h <= 24 && m >= 0 && m < 60) {
+                    int minutes = h * 60 + m;
+                    if (minutes <= MINUTES_PER_DAY) {
+                        return minutes;
+                    }
+                }
+            }
+        } catch (NumberFormatException e) { }
+        throw new IllegalArgumentException("Invalid time '"+time+"' in off-peak window definition '"
+                +def+"': should be of form 'HH:mm'");
+    }
+
+    /*
+    /**********************************************************************
+    /* Accessors
+    /**********************************************************************
+     */
+
+    /**
+     * Number of deletions to batch before writing them
+     */
+    public int batchSize() {
+        return isOffPeak() ? _maxBatchSize : _batchSize;
+    }
+
+    public int maxBatchSize() {
+        return _maxBatchSize;
+    }
+
+    public long workPeriodMsecs() {
+        return _workMsecs;
+    }
+
+    public int maxReadsBeforeBreak() {
+        return _maxReadsBeforeBreak;
+    }
+
+    public double breakRatio() {
+        return _breakRatio;
+    }
+
+    /**
+     * Method for calculating length of break to take, given time spent
+     * since the end of the previous break; 0 if no break is to be taken.
+     */
+    public long breakMsecs(long workedMsecs)
+    {
+        if (isOffPeak()) {
+            return 0L;
+        }
+        long msecs = (long) (workedMsecs * _breakRatio);
+        if (msecs < _minBreakMsecs) {
+            return _minBreakMsecs;
+        }
+        if (msecs > _maxBreakMsecs) {
+            return _maxBreakMsecs;
+        }
+        return msecs;
+    }
+
+    public boolean isOffPeak() {
+        return isOffPeak(System.currentTimeMillis());
+    }
+
+    public boolean isOffPeak(long now)
+    {
+        if (_offPeakWindows.length == 0) {
+            return false;
+        }
+        if (now - _offPeakChecked >= OFF_PEAK_CHECK_MSECS || now < _offPeakChecked) {
+            _offPeak = isOffPeak(_offPeakWindows, _timeZone, now);
+            _offPeakChecked = now;
+        }
+        return _offPeak;
+    }
+
+    /**
+     * Helper method for checking whether given time is within one of
+     * given off-peak windows.
+     */
+    public static boolean isOffPeak(int[] windows, TimeZone tz, long time)
+    {
+        Calendar cal = Calendar.getInstance(tz);
+        cal.setTimeInMillis(time);
+        final int minute = cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE);
+        for (int i = 0; i < windows.length; i += 2) {
+            int start = windows[i];
+            int end = windows[i+1];
+            if (start <= end) {
+                if (minute >= start && minute < end) {
+                    return true;
+                }
+            } else if (minute >= start || minute < end) { // spans midnight
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+    /**********************************************************************
+    /* Feedback
+    /**********************************************************************
+     */
+
+    /**
+     * Method called by deleters after writing a batch of deletions.
+     *
+     * @param count Number of entries deleted
+     * @param deleteNanos Total time taken by deletions (not including breaks)
+     */
+    public void batchCompleted(int count, long deleteNanos)
+    {
+        if (!_adaptive || count <= 0) {
+            return;
+        }
+        boolean overTarget = (deleteNanos / count) > _commitTargetNanos;
+        if (!overTarget && _foreground != null) {
+            long windowEnded = _foreground.getLastWindowEnded();
+            if (windowEnded > 0L
+                    && (System.currentTimeMillis() - windowEnded) < _foregroundIdleMsecs) {
+                overTarget = _foreground.getForegroundLatencyNanos() > _foregroundTargetNanos;
+            }
+        }
+        synchronized (this) {
+            if (overTarget) {
+                _batchSize = _clamp((int) (_batchSize * _backoffRatio), _minBatchSize, _maxBatchSize);
+                _breakRatio = Math.min(_maxBreakRatio, _breakRatio / _backoffRatio);
+                ++_decreaseCount;
+            } else {
+                // make sure we grow by at least one
+                _batchSize = _clamp(Math.max(_batchSize+1, (int) (_batchSize * _increaseRatio)),
+                        _minBatchSize, _maxBatchSize);
+                _breakRatio = Math.max(_minBreakRatio, _breakRatio / _increaseRatio);
+                ++_increaseCount;
+            }
+        }
+    }
+
+    public synchronized long increaseCount() {
+        return _increaseCount;
+    }
+
+    public synchronized long decreaseCount() {
+        return _decreaseCount;
+    }
+
+    private static int _clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,276 @@
+package com.fasterxml.transistore.service.cleanup;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.store.Storable;
+
+import com.fasterxml.clustermate.service.store.StoredEntryConverter;
+
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.service.BasicTSMetadataCursor;
+import com.fasterxml.transistore.service.cfg.CleanupConfig;
+
+/**
+ * In-memory "expiration wheel": keys of entries grouped in time buckets,
+ * by the time at which entry needs to be checked for expiration next.
+ * Used by {@link LocalEntryCleaner} so that it only needs to check entries
+ * in buckets whose time has passed, instead of all entries.
+ *<p>
+ * Index is maintained for all writes (see
+ * {@link com.fasterxml.transistore.service.BasicTSOperationThrottler}), and
+ * populated with existing entries by full scans. Since it is not persistent
+ * (and keys may be missed in rare race conditions), it can only be used
+ * after a full scan has completed, and full scans still need to be done
+ * periodically.
+ *<p>
+ * Since index is kept in memory, its size is limited (see
+ * {@link CleanupConfig#maxIndexedEntries}); if limit is exceeded during
+ * a full scan, store is too big to index and index is disabled, leaving
+ * clean up to rely on full scans only.
+ */
+public class ExpirationIndex
+{
+    /**
+     * Rough estimate of memory used per indexed entry, for typical key
+     * length of about 40 bytes: key, its byte array, and hash map entry.
+     */
+    public final static int ESTIMATED_BYTES_PER_ENTRY = 130;
+
+    protected final StoredEntryConverter<BasicTSKey,?,?> _entryConverter;
+
+    protected final long _tombstoneTTLMsecs;
+
+    protected final long _bucketMsecs;
+
+    protected final int _maxEntries;
+
+    /**
+     * Buckets of keys, keyed by bucket index (check time divided by
+     * bucket size); each bucket is a concurrent set of keys.
+     */
+    protected final ConcurrentSkipListMap<Long, ConcurrentHashMap<StorableKey,Boolean>> _buckets
+        = new ConcurrentSkipListMap<Long, ConcurrentHashMap<StorableKey,Boolean>>();
+
+    protected final AtomicInteger _size = new AtomicInteger();
+
+    /**
+     * Flag set when a full scan has completed, so that index contains
+     * all entries.
+     */
+    protected volatile boolean _complete;
+
+    /**
+     * Flag set if maximum size was reached and entries had to be left out.
+     */
+    protected volatile boolean _overflow;
+
+    /**
+     * Flag set while a full scan is populating the index.
+     */
+    protected volatile boolean _scanning;
+
+    /**
+     * Flag set if maximum size was reached during a full scan: if so, store
+     * has too many entries to index, and index is not used any more.
+     */
+    protected volatile boolean _disabled;
+
+    /*
+    /**********************************************************************
+    /* Life-cycle
+    /**********************************************************************
+     */
+
+    public ExpirationIndex(CleanupConfig config, StoredEntryConverter<BasicTSKey,?,?> conv,
+            long tombstoneTTLMsecs)
+    {
+        _entryConverter = conv;
+        _tombstoneTTLMsecs = tombstoneTTLMsecs;
+        _bucketMsecs = Math.max(1L, config.expirationBucketSize.getMillis());
+        _maxEntries = maxEntries(config);
+    }
+
+    /**
+     * Helper method for determining maximum number of entries to index,
+     * either as configured, or based on maximum heap size.
+     */
+    public static int maxEntries(CleanupConfig config)
+    {
+        if (config.maxIndexedEntries > 0) {
+            return config.maxIndexedEntries;
+        }
+        double bytes = Runtime.getRuntime().maxMemory() * config.expirationIndexHeapShare;
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0.0, bytes / ESTIMATED_BYTES_PER_ENTRY));
+    }
+
+    /*
+    /**********************************************************************
+    /* Maintenance
+    /**********************************************************************
+     */
+
+    /**
+     * Method called after an entry (or tombstone) has been written in the store.
+     */
+    public void entryWritten(Storable raw)
+    {
+        if (raw == null) {
+            return;
+        }
+        long checkTime;
+        try {
+            checkTime = nextCheckTime(new BasicTSMetadataCursor(_entryConverter).read(raw), 0L);
+        } catch (RuntimeException e) {
+            // must not fail the write; but index is no longer complete
+            _complete = false;
+            return;
+        }
+        add(raw.getKey(), checkTime);
+    }
+
+    /**
+     * Method for adding given key in bucket for specified time. Note that
+     * keys are not removed from earlier buckets, so an entry may be checked
+     * more often than necessary; this is harmless.
+     */
+    public void add(StorableKey key, long checkTime)
+    {
+        if (_overflow) {
+            return;
+        }
+        if (_size.get() >= _maxEntries) {
+            _overflow();
+            return;
+        }
+        final Long index = Long.valueOf(checkTime / _bucketMsecs);
+        ConcurrentHashMap<StorableKey,Boolean> bucket = _buckets.get(index);
+        if (bucket == null) {
+            bucket = new ConcurrentHashMap<StorableKey,Boolean>();
+            ConcurrentHashMap<StorableKey,Boolean> old = _buckets.putIfAbsent(index, bucket);
+            if (old != null) {
+                bucket = old;
+            }
+        }
+        if (bucket.put(key, Boolean.TRUE) == null) {
+            _size.incrementAndGet();
+        }
+    }
+
+    protected void _overflow()
+    {
+        _overflow = true;
+        _complete = false;
+        if (_scanning) {
+            _disabled = true;
+        }
+        // no use for partial contents; better free memory right away
+        _buckets.clear();
+        _size.set(0);
+    }
+
+    /**
+     * Method called by a full scan when it starts: if index has overflowed,
+     * it is re-populated by the scan (unless it has been disabled).
+     */
+    public void fullScanStarted()
+    {
+        if (_disabled) {
+            return;
+        }
+        _scanning = true;
+        _overflow = false;
+    }
+
+    /**
+     * Method called by a full scan when it has gone through all entries.
+     */
+    public void fullScanCompleted() {
+        _scanning = false;
+        _complete = !_overflow;
+    }
+
+    /*
+    /**********************************************************************
+    /* Access
+    /**********************************************************************
+     */
+
+    /**
+     * @return True if index contains all entries of the store, and can be
+     *    used instead of a full scan
+     */
+    public boolean isComplete() {
+        return _complete && !_overflow;
+    }
+
+    /**
+     * @return True if index has been disabled, because store has more
+     *    entries than index may contain
+     */
+    public boolean isDisabled() {
+        return _disabled;
+    }
+
+    public int maxSize() {
+        return _maxEntries;
+    }
+
+    public int size() {
+        return _size.get();
+    }
+
+    /**
+     * Method for removing and returning at most specified number of keys
+     * from buckets that have fully passed by given time; keys of earliest
+     * buckets are returned first. Caller is responsible for re-adding keys
+     * it does not get to process (see {@link #add}).
+     */
+    public List<StorableKey> removeExpired(long currentTime, int maxKeys)
+    {
+        ArrayList<StorableKey> result = new ArrayList<StorableKey>();
+        // note: bucket may only be removed once its time has passed fully
+        final long lastIndex = (currentTime / _bucketMsecs) - 1;
+        Map.Entry<Long, ConcurrentHashMap<StorableKey,Boolean>> first;
+        while ((result.size() < maxKeys)
+                && (first = _buckets.firstEntry()) != null
+                && (first.getKey().longValue() <= lastIndex)) {
+            ConcurrentHashMap<StorableKey,Boolean> bucket = first.getValue();
+            Iterator<StorableKey> it = bucket.keySet().iterator();
+            while (it.hasNext() && (result.size() < maxKeys)) {
+                StorableKey key = it.next();
+                if (bucket.remove(key) != null) {
+                    result.add(key);
+                    _size.decrementAndGet();
+                }
+            }
+            if (bucket.isEmpty()) {
+                _buckets.remove(first.getKey(), bucket);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Helper method for determining time at which given entry may next
+     * need to be removed.
+     *
+     * @param lastAccess Last-access time of entry if known; 0L if not
+     */
+    public long nextCheckTime(BasicTSMetadataCursor md, long lastAccess)
+    {
+        if (md.isDeleted()) {
+            return md.getRaw().getLastModified() + _tombstoneTTLMsecs;
+        }
+        long time = md.getExpirationTime();
+        if (md.usesLastAccessTime()) {
+            long accessBased = Math.max(md.getCreationTime(), lastAccess)
+                    + 1000L * md.getMinTTLSinceAccessSecs();
+            time = Math.min(time, accessBased);
+        }
+        return time;
+    }
+}
@@ -0,0 +1,379 @@
+package com.fasterxml.transistore.service.cleanup;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.storemate.shared.TimeMaster;
+import com.fasterxml.storemate.store.util.SimpleLogThrottler;
+
+import com.fasterxml.transistore.service.cfg.FileReclaimerConfig;
+
+/**
+ * Helper class used for deleting external files of entries removed by
+ * clean up asynchronously, by a background thread. Files are queued
+ * (in a bounded queue) and deleted in batches, in path order; and once
+ * files of a data directory have been deleted, directory is removed if it
+ * is empty, as well as its parent directories (time, date) if they
+ * become empty. This way file clean up rarely needs to walk through
+ * all data directories.
+ *<p>
+ * Data directories are expected to follow layout used by
+ * {@link com.fasterxml.storemate.store.file.FileManager}, that is,
+ * "[data-root]/YYYY-MM-DD/HH:MM/NNN/[file]", with optional hash-based
+ * sub-directories under "NNN" (see
+ * {@link com.fasterxml.transistore.service.cfg.FileLayoutConfig}); either
+ * layout is handled, so layout may be changed without affecting clean up.
+ */
+public class FileReclaimer
+    implements com.fasterxml.storemate.shared.StartAndStoppable
+{
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    protected final SimpleLogThrottler _throttledLogger = new SimpleLogThrottler(LOG, 1000);
+
+    /**
+     * Length of the window used for calculating rate of reclaimed bytes
+     */
+    protected final static long RATE_WINDOW_MSECS = 10000L;
+
+    /**
+     * Maximum time to wait for more files before deleting a partial batch
+     */
+    protected final static long MAX_WAIT_MSECS = 100L;
+
+    /**
+     * Maximum number of directory levels between data root and files:
+     * date, time, "NNN", and two levels of hash-based sub-directories
+     */
+    protected final static int MAX_DIR_DEPTH = 5;
+
+    protected final TimeMaster _timeMaster;
+
+    /**
+     * Absolute paths of data roots (of all storage tiers), each ending
+     * with separator; only directories under these are removed.
+     */
+    protected final Set<String> _dataRootPaths;
+
+    protected final ArrayBlockingQueue<PendingFile> _queue;
+
+    protected final int _batchSize;
+
+    protected final long _minDirAgeMsecs;
+
+    protected final Thread _thread;
+
+    private final AtomicBoolean _active = new AtomicBoolean(true);
+
+    /*
+    /**********************************************************************
+    /* Metrics
+    /**********************************************************************
+     */
+
+    protected final AtomicLong _queuedFiles = new AtomicLong();
+    protected final AtomicLong _rejectedFiles = new AtomicLong();
+    protected final AtomicLong _deletedFiles = new AtomicLong();
+    protected final AtomicLong _deletedBytes = new AtomicLong();
+    protected final AtomicLong _failedFiles = new AtomicLong();
+    protected final AtomicLong _deletedDirs = new AtomicLong();
+
+    /**
+     * Start of the current window for calculating rate; only accessed by
+     * reclaimer thread
+     */
+    protected long _rateWindowStart;
+
+    protected long _rateWindowBytes;
+
+    protected volatile double _bytesPerSecond;
+
+    /*
+    /**********************************************************************
+    /* Life-cycle
+    /**********************************************************************
+     */
+
+    public FileReclaimer(FileReclaimerConfig config, File dataRoot, TimeMaster timeMaster) {
+        this(config, Collections.singletonList(dataRoot), timeMaster);
+    }
+
+    public FileReclaimer(FileReclaimerConfig config, List<File> dataRoots, TimeMaster timeMaster)
+    {
+        _timeMaster = timeMaster;
+        _dataRootPaths = new HashSet<String>();
+        for (File dataRoot : dataRoots) {
+            String path = dataRoot.getAbsolutePath();
+            if (!path.endsWith(File.separator)) {
+                path += File.separator;
+            }
+            _dataRootPaths.add(path);
+        }
+        _queue = new ArrayBlockingQueue<PendingFile>(Math.max(1, config.maxQueuedFiles));
+        _batchSize = Math.max(1, config.batchSize);
+        _minDirAgeMsecs = config.minDirectoryAge.getMillis();
+
+        _thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    _processFiles();
+                } finally {
+                    LOG.info("File reclaimer thread ended.");
+                }
+            }
+        });
+        _thread.setName("FileReclaimer");
+        _thread.setDaemon(true);
+    }
+
+    @Override
+    public void start() {
+        _rateWindowStart = System.currentTimeMillis();
+        _thread.start();
+    }
+
+    @Override
+    public void prepareForStop() {
+        // files are safe to delete any time, so let's just get rid of what we have
+        deleteQueued();
+    }
+
+    @Override
+    public void stop()
+    {
+        _active.set(false);
+        _thread.interrupt();
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API
+    /**********************************************************************
+     */
+
+    /**
+     * Method called to queue given file for deletion.
+     *
+     * @param size Size of the file, if known (for metrics); 0 if not known
+     *
+     * @return True if file was queued; false if queue is full (or reclaimer
+     *   has been stopped), in which case caller should delete file itself
+     */
+    public boolean reclaim(File file, long size)
+    {
+        if (!_active.get() || !_queue.offer(new PendingFile(file, size))) {
+            _rejectedFiles.incrementAndGet();
+            return false;
+        }
+        _queuedFiles.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Method for deleting all currently queued files, in the calling
+     * thread.
+     *
+     * @return Number of files deleted
+     */
+    public int deleteQueued()
+    {
+        List<PendingFile> batch = new ArrayList<PendingFile>();
+        int count = 0;
+        while (_queue.drainTo(batch, _batchSize) > 0) {
+            count += _deleteBatch(batch);
+            batch.clear();
+        }
+        return count;
+    }
+
+    public FileReclaimerMetrics metrics()
+    {
+        FileReclaimerMetrics metrics = new FileReclaimerMetrics();
+        metrics.queued = _queue.size();
+        metrics.queuedFiles = _queuedFiles.get();
+        metrics.rejectedFiles = _rejectedFiles.get();
+        metrics.deletedFiles = _deletedFiles.get();
+        metrics.deletedBytes = _deletedBytes.get();
+        metrics.failedFiles = _failedFiles.get();
+        metrics.deletedDirs = _deletedDirs.get();
+        metrics.bytesPerSecond = _bytesPerSecond;
+        return metrics;
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    protected void _processFiles()
+    {
+        final List<PendingFile> batch = new ArrayList<PendingFile>(Math.min(_batchSize, 1000));
+        while (_active.get()) {
+            try {
+                PendingFile first = _queue.poll(RATE_WINDOW_MSECS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    // give bit of time for batch to fill up, to improve locality
+                    if (_queue.size() < _batchSize) {
+                        Thread.sleep(MAX_WAIT_MSECS);
+                    }
+                    _queue.drainTo(batch, _batchSize - 1);
+                    _deleteBatch(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                if (!_active.get()) {
+                    break;
+                }
+            } catch (Exception e) { // should not occur, but let's not kill the thread
+                LOG.warn("Problem deleting files: {}", e.getMessage());
+                batch.clear();
+            }
+            _updateRate(System.currentTimeMillis());
+        }
+    }
+
+    protected int _deleteBatch(List<PendingFile> batch)
+    {
+        // delete in path order: files of the same directory together
+        Collections.sort(batch);
+        Set<File> dirs = new LinkedHashSet<File>();
+        int count = 0;
+        long bytes = 0L;
+        for (PendingFile pending : batch) {
+            File f = pending.file;
+            if (f.delete() || !f.exists()) {
+                ++count;
+                bytes += pending.size;
+            } else {
+                _failedFiles.incrementAndGet();
+                _throttledLogger.logWarn("Failed to delete data file {}", f.getAbsolutePath());
+            }
+            File dir = f.getParentFile();
+            if (dir != null) {
+                dirs.add(dir);
+            }
+        }
+        _deletedFiles.addAndGet(count);
+        _deletedBytes.addAndGet(bytes);
+        synchronized (this) {
+            _rateWindowBytes += bytes;
+        }
+        final long now = _timeMaster.currentTimeMillis();
+        for (File dir : dirs) {
+            _removeIfEmpty(dir, now);
+        }
+        return count;
+    }
+
+    /**
+     * Method called to remove given data directory if it is empty, and
+     * old enough not to get new files; and if so, also remove its parent
+     * directories if they become empty.
+     */
+    protected void _removeIfEmpty(File dir, long now)
+    {
+        // should be "YYYY-MM-DD/HH:MM/NNN" under one of data roots; possibly
+        // followed by hash-based sub-directories, depending on layout
+        List<File> dirs = new ArrayList<File>(MAX_DIR_DEPTH);
+        File root = dir;
+        while (true) {
+            if (root == null) {
+                return;
+            }
+            if (_dataRootPaths.contains(root.getAbsolutePath()+File.separator)) {
+                break;
+            }
+            if (dirs.size() == MAX_DIR_DEPTH) {
+                return;
+            }
+            dirs.add(root);
+            root = root.getParentFile();
+        }
+        final int count = dirs.size();
+        if (count < 3) {
+            return;
+        }
+        final File dateDir = dirs.get(count-1);
+        final File timeDir = dirs.get(count-2);
+        long created = dirTime(dateDir.getName(), timeDir.getName());
+        if (created <= 0L || (now - created) < _minDirAgeMsecs) {
+            return;
+        }
+        // deletion fails for non-empty dirs, so no need to list contents
+        for (File d : dirs) {
+            if (!d.delete()) {
+                break;
+            }
+            _deletedDirs.incrementAndGet();
+        }
+    }
+
+    /**
+     * Helper method for calculating creation time of a data directory
+     * from names of its date ("YYYY-MM-DD") and time ("HH:MM") directories.
+     *
+     * @return Timestamp (in UTC) if names are valid; 0 if not
+     */
+    public static long dirTime(String date, String time)
+    {
+        if (date.length() != 10 || time.length() != 5
+                || date.charAt(4) != '-' || date.charAt(7) != '-' || time.charAt(2) != ':') {
+            return 0L;
+        }
+        try {
+            Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            cal.clear();
+            cal.set(Integer.parseInt(date.substring(0, 4)),
+                    Integer.parseInt(date.substring(5, 7)) - 1,
+                    Integer.parseInt(date.substring(8, 10)),
+                    Integer.parseInt(time.substring(0, 2)),
+                    Integer.parseInt(time.substring(3, 5)));
+            return cal.getTimeInMillis();
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    protected synchronized void _updateRate(long now)
+    {
+        final long elapsed = now - _rateWindowStart;
+        if (elapsed >= RATE_WINDOW_MSECS) {
+            _bytesPerSecond = (_rateWindowBytes * 1000.0) / elapsed;
+            _rateWindowBytes = 0L;
+            _rateWindowStart = now;
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    protected static class PendingFile implements Comparable<PendingFile>
+    {
+        public final File file;
+
+        public final long size;
+
+        public PendingFile(File file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+
+        @Override
+        public int compareTo(PendingFile other) {
+            return file.compareTo(other.file);
+        }
+    }
+}
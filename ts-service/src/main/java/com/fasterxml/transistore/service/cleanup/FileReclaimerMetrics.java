@@ -0,0 +1,44 @@
+package com.fasterxml.transistore.service.cleanup;
+
+/**
+ * Simple POJO for exposing state of a {@link FileReclaimer}
+ * as part of node metrics.
+ */
+public class FileReclaimerMetrics
+{
+    /**
+     * Number of files currently queued for deletion
+     */
+    public int queued;
+
+    /**
+     * Number of files queued for deletion, total
+     */
+    public long queuedFiles;
+
+    /**
+     * Number of files that could not be queued (due to queue being full),
+     * and were deleted by caller instead
+     */
+    public long rejectedFiles;
+
+    public long deletedFiles;
+
+    public long deletedBytes;
+
+    /**
+     * Number of files that could not be deleted
+     */
+    public long failedFiles;
+
+    /**
+     * Number of emptied data directories removed
+     */
+    public long deletedDirs;
+
+    /**
+     * Rate of reclaiming disk space (as per sizes of deleted files), as
+     * calculated over the last complete measurement window
+     */
+    public double bytesPerSecond;
+}
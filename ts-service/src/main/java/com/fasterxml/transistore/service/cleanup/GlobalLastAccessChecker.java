@@ -0,0 +1,207 @@
+package com.fasterxml.transistore.service.cleanup;
+
+import java.util.*;
+
+import org.skife.config.TimeSpan;
+
+import com.fasterxml.clustermate.api.EntryKeyConverter;
+import com.fasterxml.clustermate.service.cluster.ClusterPeer;
+import com.fasterxml.clustermate.service.cluster.ClusterViewByServer;
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.store.Storable;
+
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSKeyConverter;
+import com.fasterxml.transistore.service.BasicTSMetadataCursor;
+import com.fasterxml.transistore.service.TSLastAccess;
+import com.fasterxml.transistore.service.lastaccess.BasicTSLastAccessConverter;
+import com.fasterxml.transistore.service.lastaccess.LastAccessAccessor;
+import com.fasterxml.transistore.service.lastaccess.LastAccessRequest;
+import com.fasterxml.transistore.service.lastaccess.LastAccessResponse;
+
+/**
+ * Helper class used for collecting entries whose local last-access TTL has
+ * been exceeded, and checking their last-access timestamps from peers that
+ * also store them: entries may only be removed if none of the peers has
+ * accessed them either. Checks are batched so that a single request is
+ * sent to each peer per batch; and entries that share a last-access
+ * timestamp (grouped entries) are only included once per request.
+ */
+public class GlobalLastAccessChecker
+{
+    /**
+     * Value used to indicate that global last-access time could not be
+     * determined (because a peer could not be reached)
+     */
+    public final static long UNKNOWN = -1L;
+
+    protected final ClusterViewByServer _cluster;
+
+    protected final EntryKeyConverter<BasicTSKey> _keyConverter;
+
+    protected final BasicTSLastAccessConverter _lastAccessConverter;
+
+    /**
+     * Accessor for fetching last-access information from peers; null if
+     * not available, in which case entries stored by peers are retained.
+     */
+    protected final LastAccessAccessor _accessor;
+
+    protected final TimeSpan _timeout;
+
+    protected final int _batchSize;
+
+    protected final ArrayList<Candidate> _candidates;
+
+    public GlobalLastAccessChecker(ClusterViewByServer cluster, EntryKeyConverter<BasicTSKey> keyConverter,
+            BasicTSLastAccessConverter lastAccessConverter,
+            LastAccessAccessor accessor, int batchSize, TimeSpan timeout)
+    {
+        _cluster = cluster;
+        _keyConverter = keyConverter;
+        _lastAccessConverter = lastAccessConverter;
+        _accessor = accessor;
+        _batchSize = Math.max(1, batchSize);
+        _timeout = timeout;
+        _candidates = new ArrayList<Candidate>(Math.min(_batchSize, 1000));
+    }
+
+    /**
+     * Method called to add an entry to check.
+     *
+     * @return True if batch is full, and {@link #checkCandidates} should be called
+     */
+    public boolean addCandidate(BasicTSMetadataCursor md, long localLastAccess)
+    {
+        _candidates.add(new Candidate(md.getRaw(), md.getLastAccessUpdateMethod().asInt(),
+                localLastAccess));
+        return (_candidates.size() >= _batchSize);
+    }
+
+    public boolean hasCandidates() {
+        return !_candidates.isEmpty();
+    }
+
+    /**
+     * Method called to find global last-access timestamps for all candidates
+     * added since the last call. Candidates are returned with
+     * {@link Candidate#globalLastAccess} set (or {@link #UNKNOWN} if some of
+     * peers could not be reached), and removed from this checker.
+     */
+    public List<Candidate> checkCandidates()
+    {
+        List<Candidate> candidates = new ArrayList<Candidate>(_candidates);
+        _candidates.clear();
+        for (Candidate c : candidates) {
+            c.globalLastAccess = c.localLastAccess;
+        }
+        List<ClusterPeer> peers = _peers();
+        if (peers.isEmpty()) {
+            return candidates;
+        }
+        // First, find out which peers store which of entries; and keys of last-access entries
+        final BasicTSKey[] keys = new BasicTSKey[candidates.size()];
+        for (int i = 0, len = candidates.size(); i < len; ++i) {
+            keys[i] = _keyConverter.rawToEntryKey(candidates.get(i).raw.getKey());
+        }
+        final int[] hashes = _routingHashesFor(keys);
+        final StorableKey[] lastAccessKeys = new StorableKey[candidates.size()];
+        // candidates are in key order, so grouped ones of same partition are usually adjacent
+        BasicTSKey prevGrouped = null;
+        for (int i = 0, len = candidates.size(); i < len; ++i) {
+            Candidate c = candidates.get(i);
+            BasicTSKey key = keys[i];
+            final TSLastAccess acc = TSLastAccess.valueOf(c.accessMethod);
+            if (acc == TSLastAccess.GROUPED && prevGrouped != null
+                    && _lastAccessConverter.inSameGroup(key, prevGrouped)) {
+                lastAccessKeys[i] = lastAccessKeys[i-1];
+                continue;
+            }
+            byte[] lastAccessKey = _lastAccessConverter.createLastAccessedKey(key, acc);
+            lastAccessKeys[i] = (lastAccessKey == null) ? c.raw.getKey() : new StorableKey(lastAccessKey);
+            prevGrouped = (acc == TSLastAccess.GROUPED) ? key : null;
+        }
+        for (ClusterPeer peer : peers) {
+            LastAccessRequest request = new LastAccessRequest();
+            Map<StorableKey,Integer> requestIndexes = new HashMap<StorableKey,Integer>();
+            List<Candidate> requested = new ArrayList<Candidate>();
+            List<Integer> indexes = new ArrayList<Integer>();
+            for (int i = 0, len = candidates.size(); i < len; ++i) {
+                if (peer.getTotalRange().contains(hashes[i])) {
+                    Candidate c = candidates.get(i);
+                    // only need to request each last-access timestamp once
+                    Integer index = requestIndexes.get(lastAccessKeys[i]);
+                    if (index == null) {
+                        index = request.size();
+                        requestIndexes.put(lastAccessKeys[i], index);
+                        request.addEntry(c.raw.getKey(), c.accessMethod);
+                    }
+                    requested.add(c);
+                    indexes.add(index);
+                }
+            }
+            if (requested.isEmpty()) {
+                continue;
+            }
+            LastAccessResponse resp = _fetch(peer, request);
+            for (int i = 0, len = requested.size(); i < len; ++i) {
+                Candidate c = requested.get(i);
+                if (resp == null) { // can not verify, must retain
+                    c.globalLastAccess = UNKNOWN;
+                } else if (c.globalLastAccess != UNKNOWN) {
+                    c.globalLastAccess = Math.max(c.globalLastAccess, resp.lastAccess[indexes.get(i)]);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    protected int[] _routingHashesFor(BasicTSKey[] keys)
+    {
+        if (_keyConverter instanceof BasicTSKeyConverter) {
+            return ((BasicTSKeyConverter) _keyConverter).routingHashesFor(keys, null);
+        }
+        int[] result = new int[keys.length];
+        for (int i = 0; i < keys.length; ++i) {
+            result[i] = _keyConverter.routingHashFor(keys[i]);
+        }
+        return result;
+    }
+
+    protected List<ClusterPeer> _peers() {
+        return (_cluster == null) ? Collections.<ClusterPeer>emptyList() : _cluster.getPeers();
+    }
+
+    /**
+     * Method called to fetch last-access timestamps from given peer.
+     *
+     * @return Response from peer, if request succeeded; null if not
+     */
+    protected LastAccessResponse _fetch(ClusterPeer peer, LastAccessRequest request)
+    {
+        if (_accessor == null) {
+            return null;
+        }
+        return _accessor.fetchLastAccessTimes(peer.getAddress(), request, _timeout);
+    }
+
+    /**
+     * Container for information about a single entry to check.
+     */
+    public static class Candidate
+    {
+        public final Storable raw;
+
+        public final int accessMethod;
+
+        public final long localLastAccess;
+
+        public long globalLastAccess;
+
+        public Candidate(Storable raw, int accessMethod, long localLastAccess) {
+            this.raw = raw;
+            this.accessMethod = accessMethod;
+            this.localLastAccess = localLastAccess;
+        }
+    }
+}
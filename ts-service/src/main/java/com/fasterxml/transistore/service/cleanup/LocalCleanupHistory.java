@@ -0,0 +1,106 @@
+package com.fasterxml.transistore.service.cleanup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Container for statistics of the local entry clean up run in progress,
+ * if any, as well as a fixed-size ring buffer of the most recent
+ * finished runs. Used for exposing clean up progress as node metrics,
+ * so that it is possible to notice when clean up can not keep up.
+ */
+public class LocalCleanupHistory
+{
+    protected volatile LocalCleanupStats _current;
+
+    /**
+     * Snapshots of finished runs; oldest overwritten first
+     */
+    protected final LocalCleanupMetrics.Run[] _recent;
+
+    /**
+     * Index at which next finished run is to be stored
+     */
+    protected int _next;
+
+    protected long _runs, _failedRuns;
+
+    public LocalCleanupHistory(int size) {
+        _recent = new LocalCleanupMetrics.Run[Math.max(1, size)];
+    }
+
+    /*
+    /**********************************************************************
+    /* Updates
+    /**********************************************************************
+     */
+
+    public void runStarted(LocalCleanupStats stats) {
+        _current = stats;
+    }
+
+    /**
+     * Method called when a run finishes, successfully or not.
+     *
+     * @param now Timestamp to use as end time, if stats do not have one
+     */
+    public void runEnded(LocalCleanupStats stats, LocalCleanupMetrics.Outcome outcome, long now)
+    {
+        LocalCleanupMetrics.Run run = stats.asMetrics(now, outcome);
+        synchronized (this) {
+            _recent[_next] = run;
+            _next = (_next + 1) % _recent.length;
+            ++_runs;
+            if (outcome == LocalCleanupMetrics.Outcome.FAILED) {
+                ++_failedRuns;
+            }
+            if (_current == stats) {
+                _current = null;
+            }
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Accessors
+    /**********************************************************************
+     */
+
+    /**
+     * @return Statistics of the run in progress, if any; null if none
+     */
+    public LocalCleanupStats getCurrent() {
+        return _current;
+    }
+
+    /**
+     * @return Snapshots of finished runs, latest first
+     */
+    public synchronized List<LocalCleanupMetrics.Run> getRecent()
+    {
+        List<LocalCleanupMetrics.Run> result = new ArrayList<LocalCleanupMetrics.Run>(_recent.length);
+        for (int i = 1; i <= _recent.length; ++i) {
+            LocalCleanupMetrics.Run run = _recent[(_next - i + _recent.length) % _recent.length];
+            if (run == null) {
+                break;
+            }
+            result.add(run);
+        }
+        return result;
+    }
+
+    public LocalCleanupMetrics metrics(long now)
+    {
+        LocalCleanupMetrics metrics = new LocalCleanupMetrics();
+        LocalCleanupStats current = _current;
+        if (current != null) {
+            metrics.current = current.asMetrics(now, LocalCleanupMetrics.Outcome.RUNNING);
+        }
+        synchronized (this) {
+            metrics.recent = getRecent();
+            metrics.runs = _runs;
+            metrics.failedRuns = _failedRuns;
+        }
+        return metrics;
+    }
+}
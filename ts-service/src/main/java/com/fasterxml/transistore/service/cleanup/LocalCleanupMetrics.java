@@ -0,0 +1,102 @@
+package com.fasterxml.transistore.service.cleanup;
+
+import java.util.List;
+
+/**
+ * Simple POJO for exposing progress of local entry clean up (see
+ * {@link LocalEntryCleaner}) as part of node metrics: both the run in
+ * progress, if any, and the most recent completed runs.
+ */
+public class LocalCleanupMetrics
+{
+    public enum Outcome {
+        RUNNING,
+        /**
+         * All entries to check were processed
+         */
+        COMPLETED,
+        /**
+         * Run was terminated before all entries were processed (due to
+         * shutdown, for example); will be continued by the next run
+         */
+        PARTIAL,
+        FAILED;
+    }
+
+    /**
+     * Run in progress, if any
+     */
+    public Run current;
+
+    /**
+     * Most recent finished runs, latest first
+     */
+    public List<Run> recent;
+
+    /**
+     * Number of runs finished since start-up
+     */
+    public long runs;
+
+    /**
+     * Number of runs that failed since start-up
+     */
+    public long failedRuns;
+
+    /**
+     * Snapshot of statistics of a single run.
+     */
+    public static class Run
+    {
+        public Outcome outcome;
+
+        /**
+         * Start time of the run
+         */
+        public long started;
+
+        /**
+         * Duration of the run, in milliseconds (so far, if still running)
+         */
+        public long duration;
+
+        /**
+         * Whether only entries from expiration index were checked (true),
+         * or a full scan was done (false)
+         */
+        public boolean indexed;
+
+        public int scanned;
+
+        public int deleted;
+
+        public double scannedPerSecond;
+
+        public double deletedPerSecond;
+
+        public int expiredTombstones;
+
+        public int expiredMaxTTL;
+
+        public int expiredLastAccess;
+
+        public int remainingTombstones;
+
+        public int remainingEntries;
+
+        public int migrated;
+
+        public int corrupt;
+
+        public int unknown;
+
+        public int deleteBatches;
+
+        public int failedDeleteBatches;
+
+        /**
+         * Time spent in breaks taken to throttle deletions
+         */
+        public long sleepMsecs;
+    }
+}
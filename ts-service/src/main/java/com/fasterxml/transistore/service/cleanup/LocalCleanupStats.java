@@ -1,82 +1,226 @@
 package com.fasterxml.transistore.service.cleanup;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.fasterxml.storemate.shared.TimeMaster;
 
 /**
  * Helper class used to keep track of clean up progress
  * for local data store (entry metadata, files) cleanup.
+ *<p>
+ * Counters are thread-safe, so that a single instance may be shared
+ * by all threads of a clean up run, and read (for metrics) while
+ * the run is in progress.
  */
 public class LocalCleanupStats
 {
     // Number tombstones expired
-    protected int expiredTombstones = 0;
+    protected final AtomicInteger expiredTombstones = new AtomicInteger();
     // Number of metadata entries removed due to exceeding max TTL
-    protected int expiredEntriesMaxTTL = 0;
+    protected final AtomicInteger expiredEntriesMaxTTL = new AtomicInteger();
     // Number of metadata entries removed due to exceeding TTL since last access
-    protected int expiredEntriesLastAccess = 0;
+    protected final AtomicInteger expiredEntriesLastAccess = new AtomicInteger();
 
     // Number of skipped (non-expired) tombstones
-    protected int remainingTombstones = 0;
+    protected final AtomicInteger remainingTombstones = new AtomicInteger();
     // Number of skipped (non-expired) non-tombstone entries
-    protected int remainingEntries = 0;
+    protected final AtomicInteger remainingEntries = new AtomicInteger();
+
+    // Number of entries checked based on expiration index; -1 if full scan was done
+    protected volatile int indexedEntries = -1;
+
+    // Number of retained entries rewritten using current metadata format
+    protected final AtomicInteger migratedEntries = new AtomicInteger();
 
     /**
      * Alas, it may be possible for secondary index to get corrupt (should not,
      * if we are using transactions); if so, count.
      */
-    protected int corruptEntries = 0;
-    
+    protected final AtomicInteger corruptEntries = new AtomicInteger();
+
+    // Number of batches of entries deleted as single transactions
+    protected final AtomicInteger deleteBatches = new AtomicInteger();
+
+    // Number of batches that could not be deleted as single transactions
+    protected final AtomicInteger failedDeleteBatches = new AtomicInteger();
+
     // And then "something other"; should not get any hits...
-    protected int unknownEntries = 0;
+    protected final AtomicInteger unknownEntries = new AtomicInteger();
 
     // Extra sleeps issued during cleanup
-    protected long extraSleepMsecs;
-    protected int extraSleepIntervals;
-    
-    public void addExpiredTombstone() { ++expiredTombstones; }
-    public void addExpiredMaxTTLEntry() { ++expiredEntriesMaxTTL; }
-    public void addExpiredLastAccessEntry() { ++expiredEntriesLastAccess; }
+    protected final AtomicLong extraSleepMsecs = new AtomicLong();
+    protected final AtomicInteger extraSleepIntervals = new AtomicInteger();
+
+    // Start and end times of the run, if known; 0 if not
+    protected volatile long startTime, endTime;
 
-    public void addRemainingTombstone() { ++remainingTombstones; }
-    public void addRemainingEntry() { ++remainingEntries; }
+    public void addExpiredTombstone() { expiredTombstones.incrementAndGet(); }
+    public void addExpiredMaxTTLEntry() { expiredEntriesMaxTTL.incrementAndGet(); }
+    public void addExpiredLastAccessEntry() { expiredEntriesLastAccess.incrementAndGet(); }
+
+    public void addRemainingTombstone() { remainingTombstones.incrementAndGet(); }
+    public void addRemainingEntry() { remainingEntries.incrementAndGet(); }
+
+    public void addMigratedEntry() { migratedEntries.incrementAndGet(); }
+
+    public void setIndexedEntries(int count) { indexedEntries = count; }
+
+    /**
+     * @return Number of corrupt entries encountered so far, including this one
+     */
+    public int addCorruptEntry() { return corruptEntries.incrementAndGet(); }
 
-    public void addCorruptEntry() { ++corruptEntries; }
-    
-    public void addUnknownEntry() { ++unknownEntries; }
+    public void addDeleteBatch() { deleteBatches.incrementAndGet(); }
+
+    /**
+     * @return Number of failed batches so far, including this one
+     */
+    public int addFailedDeleteBatch() { return failedDeleteBatches.incrementAndGet(); }
+
+    public void addUnknownEntry() { unknownEntries.incrementAndGet(); }
+
+    public void markStarted(long time) { startTime = time; }
+    public void markEnded(long time) { endTime = time; }
+
+    /**
+     * Method for adding counts from stats of a part of clean up run
+     * (like a segment processed by another thread)
+     */
+    public void merge(LocalCleanupStats other)
+    {
+        expiredTombstones.addAndGet(other.expiredTombstones.get());
+        expiredEntriesMaxTTL.addAndGet(other.expiredEntriesMaxTTL.get());
+        expiredEntriesLastAccess.addAndGet(other.expiredEntriesLastAccess.get());
+        remainingTombstones.addAndGet(other.remainingTombstones.get());
+        remainingEntries.addAndGet(other.remainingEntries.get());
+        migratedEntries.addAndGet(other.migratedEntries.get());
+        corruptEntries.addAndGet(other.corruptEntries.get());
+        deleteBatches.addAndGet(other.deleteBatches.get());
+        failedDeleteBatches.addAndGet(other.failedDeleteBatches.get());
+        unknownEntries.addAndGet(other.unknownEntries.get());
+        extraSleepMsecs.addAndGet(other.extraSleepMsecs.get());
+        extraSleepIntervals.addAndGet(other.extraSleepIntervals.get());
+    }
 
     /**
      * Method called to indicate that bit of sleep was induced to slow down
      * progress (throttle) of cleaner-upper
      */
     public void addSleep(long msecs) {
-        extraSleepMsecs += msecs;
-        ++extraSleepIntervals;
+        extraSleepMsecs.addAndGet(msecs);
+        extraSleepIntervals.incrementAndGet();
     }
-    
+
+    /*
+    /**********************************************************************
+    /* Accessors
+    /**********************************************************************
+     */
+
+    /**
+     * @return Number of entries deleted so far (tombstones and entries)
+     */
+    public int getDeletedEntries() {
+        return expiredTombstones.get() + expiredEntriesMaxTTL.get() + expiredEntriesLastAccess.get();
+    }
+
+    /**
+     * @return Number of entries checked so far, whether deleted or not
+     */
+    public int getScannedEntries() {
+        return getDeletedEntries() + remainingTombstones.get() + remainingEntries.get()
+                + unknownEntries.get();
+    }
+
+    /**
+     * @return Duration of the run so far (or in total, if ended); 0 if not known
+     */
+    public long getDuration(long now) {
+        final long start = startTime;
+        if (start <= 0L) {
+            return 0L;
+        }
+        final long end = endTime;
+        return Math.max(0L, ((end > 0L) ? end : now) - start);
+    }
+
+    /**
+     * Method for constructing a snapshot of current counts, to be exposed
+     * as metrics.
+     */
+    public LocalCleanupMetrics.Run asMetrics(long now, LocalCleanupMetrics.Outcome outcome)
+    {
+        LocalCleanupMetrics.Run run = new LocalCleanupMetrics.Run();
+        run.outcome = outcome;
+        run.started = startTime;
+        run.duration = getDuration(now);
+        run.indexed = (indexedEntries >= 0);
+        run.scanned = getScannedEntries();
+        run.deleted = getDeletedEntries();
+        run.expiredTombstones = expiredTombstones.get();
+        run.expiredMaxTTL = expiredEntriesMaxTTL.get();
+        run.expiredLastAccess = expiredEntriesLastAccess.get();
+        run.remainingTombstones = remainingTombstones.get();
+        run.remainingEntries = remainingEntries.get();
+        run.migrated = migratedEntries.get();
+        run.corrupt = corruptEntries.get();
+        run.unknown = unknownEntries.get();
+        run.deleteBatches = deleteBatches.get();
+        run.failedDeleteBatches = failedDeleteBatches.get();
+        run.sleepMsecs = extraSleepMsecs.get();
+        if (run.duration > 0L) {
+            double secs = run.duration / 1000.0;
+            run.scannedPerSecond = run.scanned / secs;
+            run.deletedPerSecond = run.deleted / secs;
+        }
+        return run;
+    }
+
     @Override
     public String toString()
     {
-        StringBuilder sb = new StringBuilder(60)
-            .append("Removed: ").append(expiredTombstones)
-            .append(" expired tombstones, ").append(expiredEntriesMaxTTL)
-            .append(" (max-TTL) / ").append(expiredEntriesLastAccess)
-            .append(" (last-access) entries; left: ").append(remainingTombstones)
-            .append(" tombstones, ").append(remainingEntries)
+        StringBuilder sb = new StringBuilder(60);
+        if (indexedEntries >= 0) {
+            sb = sb.append("(checked ").append(indexedEntries).append(" entries from expiration index) ");
+        }
+        sb = sb.append("Removed: ").append(expiredTombstones.get())
+            .append(" expired tombstones, ").append(expiredEntriesMaxTTL.get())
+            .append(" (max-TTL) / ").append(expiredEntriesLastAccess.get())
+            .append(" (last-access) entries; left: ").append(remainingTombstones.get())
+            .append(" tombstones, ").append(remainingEntries.get())
             .append(" entries");
-        if (corruptEntries > 0) {
-            sb = sb.append("; had to work around ").append(corruptEntries)
+        final int migrated = migratedEntries.get();
+        if (migrated > 0) {
+            sb = sb.append(" (migrated metadata of ").append(migrated).append(")");
+        }
+        final int batches = deleteBatches.get();
+        final int failedBatches = failedDeleteBatches.get();
+        if (batches > 0 || failedBatches > 0) {
+            sb = sb.append("; deleted ").append(batches).append(" batches");
+            if (failedBatches > 0) {
+                sb = sb.append(" (").append(failedBatches).append(" failed)");
+            }
+        }
+        final int corrupt = corruptEntries.get();
+        if (corrupt > 0) {
+            sb = sb.append("; had to work around ").append(corrupt)
                     .append(" CORRUPT");
         } else {
             sb = sb.append("; had NO corrupt");
         }
-        if (unknownEntries > 0) {
-            sb = sb.append(" skipped over ").append(unknownEntries).append(" unknown");
+        final int unknown = unknownEntries.get();
+        if (unknown > 0) {
+            sb = sb.append(" skipped over ").append(unknown).append(" unknown");
         } else {
             sb = sb.append(", NO unknown");
         }
-        sb = sb.append(" entries; slept extra ").append(extraSleepIntervals)
+        sb = sb.append(" entries; slept extra ").append(extraSleepIntervals.get())
                 .append("x for ")
-                .append(TimeMaster.timeDesc(extraSleepMsecs));
+                .append(TimeMaster.timeDesc(extraSleepMsecs.get()));
+        if (startTime > 0L && endTime > 0L) {
+            sb = sb.append("; took ").append(TimeMaster.timeDesc(endTime - startTime));
+        }
         return sb.toString();
     }
 }
@@ -1,7 +1,13 @@
 package com.fasterxml.transistore.service.cleanup;
 
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.skife.config.TimeSpan;
 import org.slf4j.*;
 
 import com.fasterxml.storemate.shared.StorableKey;
@@ -12,13 +18,28 @@ import com.fasterxml.storemate.store.backend.IterationResult;
 import com.fasterxml.storemate.store.backend.StorableLastModIterationCallback;
 import com.fasterxml.storemate.store.lastaccess.LastAccessStore;
 import com.fasterxml.storemate.store.lastaccess.LastAccessUpdateMethod;
+import com.fasterxml.storemate.store.state.NodeStateStore;
+import com.fasterxml.storemate.store.util.PartitionedWriteMutex;
+import com.fasterxml.clustermate.api.EntryKeyConverter;
 import com.fasterxml.clustermate.service.*;
 import com.fasterxml.clustermate.service.cleanup.CleanupTask;
 import com.fasterxml.clustermate.service.cluster.ClusterViewByServer;
-import com.fasterxml.clustermate.service.store.StoredEntry;
 import com.fasterxml.clustermate.service.store.StoredEntryConverter;
 import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSPaths;
 import com.fasterxml.transistore.service.BasicTSEntry;
+import com.fasterxml.transistore.service.BasicTSEntryConverter;
+import com.fasterxml.transistore.service.BasicTSMetadataCursor;
+import com.fasterxml.transistore.service.BasicTSOperationThrottler;
+import com.fasterxml.transistore.service.TSLastAccess;
+import com.fasterxml.transistore.service.cfg.BasicTSServiceConfig;
+import com.fasterxml.transistore.service.cfg.CleanupConfig;
+import com.fasterxml.transistore.service.lastaccess.BasicTSLastAccessConverter;
+import com.fasterxml.transistore.service.lastaccess.LastAccessAccessor;
+import com.fasterxml.transistore.service.lastaccess.LastAccessBuffer;
+import com.fasterxml.transistore.service.store.BasicTSStores;
+import com.fasterxml.transistore.service.store.BatchWriteMutex;
+import com.fasterxml.transistore.service.throttle.BackgroundShareController;
 
 /**
  * Helper class used to keep track of clean up progress
@@ -27,6 +48,17 @@ import com.fasterxml.transistore.service.BasicTSEntry;
 public class LocalEntryCleaner
     extends CleanupTask<LocalCleanupStats>
 {
+    /**
+     * Maximum number of group last-access timestamps to cache during a
+     * single clean up run.
+     */
+    protected final static int MAX_CACHED_GROUPS = 10000;
+
+    /**
+     * Maximum number of keys taken from expiration index at a time.
+     */
+    protected final static int INDEXED_CHUNK_SIZE = 10000;
+
     protected final Logger LOG;
 
     /**
@@ -38,7 +70,135 @@ public class LocalEntryCleaner
 
     protected LastAccessStore<BasicTSKey,BasicTSEntry,LastAccessUpdateMethod> _lastAccessStore;
 
+    /**
+     * Buffer for last-access timestamps not yet written to
+     * {@link #_lastAccessStore}, if any.
+     */
+    protected LastAccessBuffer _lastAccessBuffer;
+
+    protected final BasicTSLastAccessConverter _lastAccessConverter = new BasicTSLastAccessConverter();
+
+    /**
+     * Last-access timestamps of groups (for entries that use
+     * {@link TSLastAccess#GROUPED}) looked up during current run; cleared
+     * at the start of each run.
+     */
+    protected final ConcurrentHashMap<StorableKey,Long> _groupLastAccess
+        = new ConcurrentHashMap<StorableKey,Long>();
+
+    /**
+     * Last entry (of {@link TSLastAccess#GROUPED} type) whose group
+     * last-access timestamp was looked up, along with the timestamp:
+     * entries are processed in key order, so consecutive entries usually
+     * share the group, and it can be matched without constructing group key.
+     */
+    protected BasicTSKey _lastGroupMember;
+
+    protected long _lastGroupAccess;
+
     protected StoredEntryConverter<BasicTSKey,BasicTSEntry,?> _entryConverter;
+
+    protected EntryKeyConverter<BasicTSKey> _keyConverter;
+
+    protected ClusterViewByServer _cluster;
+
+    /**
+     * Accessor used for checking last-access timestamps of entries from
+     * peers, if available.
+     */
+    protected LastAccessAccessor _lastAccessAccessor;
+
+    protected int _lastAccessBatchSize = 500;
+
+    protected TimeSpan _lastAccessTimeout = new TimeSpan("10s");
+
+    /**
+     * Object used for pacing deletions; shared by all deleters, so that
+     * adjustments are retained between runs.
+     */
+    protected DeletionPacer _deletionPacer = new DeletionPacer();
+
+    /**
+     * Rate limiter shared by all deleters (and thereby all clean up threads),
+     * if total rate of processing entries is limited.
+     */
+    protected CleanupRateLimiter _rateLimiter;
+
+    /**
+     * Helper for deleting external files of deleted entries asynchronously,
+     * if enabled.
+     */
+    protected FileReclaimer _fileReclaimer;
+
+    /**
+     * Statistics of the current and recent runs; shared via stores (if
+     * available) so that they can be exposed as metrics.
+     */
+    protected LocalCleanupHistory _history = new LocalCleanupHistory(10);
+
+    /**
+     * Write mutex of the entry store, if available; needed for migrating
+     * entries to the current metadata format.
+     */
+    protected PartitionedWriteMutex _writeMutex;
+
+    /**
+     * Index of expiration times, if one is maintained; used to avoid
+     * full scans over all entries for most runs.
+     */
+    protected ExpirationIndex _expirationIndex;
+
+    /**
+     * Number of clean up runs (that used expiration index) allowed
+     * between full scans.
+     */
+    protected int _fullScanInterval;
+
+    protected int _runsSinceFullScan;
+
+    /**
+     * Number of threads to use for full scans.
+     */
+    protected int _threads = 1;
+
+    /**
+     * Segments of the full scan in progress, if any: retained between runs
+     * if scan could not be completed.
+     */
+    protected volatile List<CleanupSegment> _scanSegments;
+
+    /**
+     * Store used for persisting state of full scans, if any.
+     */
+    protected NodeStateStore<String, CleanupState> _stateStore;
+
+    /**
+     * Minimum time between persisting of state of full scans
+     */
+    protected long _checkpointIntervalMsecs = 60000L;
+
+    /**
+     * Maximum number of runs to resume a full scan from checkpoints,
+     * after which a new scan is started.
+     */
+    protected int _maxResumes = 3;
+
+    /**
+     * Flag to indicate whether persisted state has been read
+     */
+    protected boolean _stateLoaded;
+
+    /**
+     * Whether current full scan was started by this process (or resumed from
+     * persisted state)
+     */
+    protected boolean _passStartedHere;
+
+    protected long _passStarted;
+
+    protected int _passRuns;
+
+    protected final AtomicLong _lastStateSave = new AtomicLong();
     
     protected boolean _isTesting;
     
@@ -60,9 +220,41 @@ public class LocalEntryCleaner
         super.init(stuff, stores, cluster, shutdown);
         _tombstoneTTLMsecs = stuff.getServiceConfig().cfgTombstoneTTL.getMillis();
         _entryConverter = stuff.getEntryConverter();
+        _keyConverter = stuff.getKeyConverter();
+        _cluster = cluster;
+        if (stuff.getPathStrategy() instanceof BasicTSPaths) {
+            _lastAccessAccessor = new LastAccessAccessor(stuff, (BasicTSPaths) stuff.getPathStrategy());
+        }
         _entryStore = stores.getEntryStore();
         _lastAccessStore = (LastAccessStore<BasicTSKey, BasicTSEntry,LastAccessUpdateMethod>) stores.getLastAccessStore();
         _isTesting = stuff.isRunningTests();
+        if (stores instanceof BasicTSStores) {
+            _writeMutex = ((BasicTSStores) stores).getWriteMutex();
+            _expirationIndex = ((BasicTSStores) stores).getExpirationIndex();
+            _stateStore = ((BasicTSStores) stores).getCleanupStateStore();
+            _fileReclaimer = ((BasicTSStores) stores).getFileReclaimer();
+            _lastAccessBuffer = ((BasicTSStores) stores).getLastAccessBuffer();
+            LocalCleanupHistory h = ((BasicTSStores) stores).getCleanupHistory();
+            if (h != null) {
+                _history = h;
+            }
+        }
+        if (stuff.getServiceConfig() instanceof BasicTSServiceConfig) {
+            CleanupConfig config = ((BasicTSServiceConfig) stuff.getServiceConfig()).cleanup;
+            _fullScanInterval = config.fullScanInterval;
+            _threads = Math.max(1, config.threads);
+            _checkpointIntervalMsecs = config.checkpointInterval.getMillis();
+            _maxResumes = config.maxResumes;
+            _lastAccessBatchSize = config.lastAccessBatchSize;
+            _lastAccessTimeout = config.lastAccessTimeout;
+            StoreOperationThrottler t = _entryStore.getThrottler();
+            BackgroundShareController foreground = (t instanceof BasicTSOperationThrottler)
+                    ? ((BasicTSOperationThrottler) t).getBackgroundController() : null;
+            _deletionPacer = new DeletionPacer(config.deletion, foreground);
+            if (config.maxEntriesPerSecond > 0) {
+                _rateLimiter = new CleanupRateLimiter(config.maxEntriesPerSecond);
+            }
+        }
     }
 
     @Override
@@ -76,16 +268,30 @@ public class LocalEntryCleaner
     protected LocalCleanupStats _cleanUp() throws Exception
     {
         final LocalCleanupStats stats = new LocalCleanupStats();
+        stats.markStarted(_timeMaster.realSystemTimeMillis());
+        _history.runStarted(stats);
         try {
             boolean fullyCompleted = _cleanUp0(stats);
+            stats.markEnded(_timeMaster.realSystemTimeMillis());
+            _history.runEnded(stats, fullyCompleted ? LocalCleanupMetrics.Outcome.COMPLETED
+                    : LocalCleanupMetrics.Outcome.PARTIAL, stats.endTime);
             _reportEndSuccess(stats, fullyCompleted);
             return stats;
         } catch (Exception e) {
+            stats.markEnded(_timeMaster.realSystemTimeMillis());
+            _history.runEnded(stats, LocalCleanupMetrics.Outcome.FAILED, stats.endTime);
             _reportEndFail(stats, e);
             throw e;
         }
     }
 
+    /**
+     * @return Statistics of the current and recent clean up runs
+     */
+    public LocalCleanupHistory getHistory() {
+        return _history;
+    }
+
     protected boolean _cleanUp0(final LocalCleanupStats stats) throws Exception
     {
         if (shouldStop()) { // shouldn't get called if so but...
@@ -99,83 +305,542 @@ public class LocalEntryCleaner
             return false;
         }
         _reportStart();
-
-        final ThrottlingDeleter deleter = _constructDeleter(stats);
+        _groupLastAccess.clear();
+        _lastGroupMember = null;
 
         final long tombstoneThreshold = _timeMaster.currentTimeMillis() - _tombstoneTTLMsecs;
-        IterationResult r = null;
-        try {
-            r = _entryStore.iterateEntriesByModifiedTime(StoreOperationSource.CLEANUP, null,
-                0L, new StorableLastModIterationCallback() {
+
+        // Can we just check entries that expiration index has, or need a full scan?
+        if ((_expirationIndex != null) && _expirationIndex.isComplete()
+                && (_runsSinceFullScan < _fullScanInterval)) {
+            ++_runsSinceFullScan;
+            final ThrottlingDeleter deleter = _constructDeleter(stats);
+            final MetadataMigrator migrator = _constructMigrator(stats);
+            final GlobalLastAccessChecker checker = _constructLastAccessChecker();
+            final BasicTSMetadataCursor metadata = new BasicTSMetadataCursor(_entryConverter);
+            boolean fullyCompleted = _cleanUpIndexed(stats, deleter, migrator, checker, metadata, tombstoneThreshold);
+            if (checker.hasCandidates() && !shouldStop()) {
+                _checkGlobalLastAccess(checker, metadata, stats, deleter, migrator);
+            }
+            deleter.finish();
+            if (migrator != null && !shouldStop()) {
+                migrator.finish();
+            }
+            return fullyCompleted;
+        }
+        return _fullScan(stats, tombstoneThreshold);
+    }
+
+    /**
+     * Method called to go through all entries of the store, split in segments
+     * by last-modified timestamp. Segments are processed using a pool of
+     * {@link #_threads} threads, and each segment keeps track of its progress:
+     * if processing of some segments fails, or is interrupted, only those
+     * segments are processed during the next run.
+     */
+    protected boolean _fullScan(final LocalCleanupStats stats, final long tombstoneThreshold)
+        throws Exception
+    {
+        if (!_stateLoaded) { // first run: may be able to resume scan from before restart
+            _stateLoaded = true;
+            _loadState();
+        }
+        if ((_scanSegments != null) && (_passRuns > _maxResumes)) {
+            _reportProblem("Full scan not completed in "+_passRuns+" runs: will start a new full scan");
+            _scanSegments = null;
+        }
+        if (_scanSegments == null) { // start a new pass
+            _scanSegments = _createSegments(_threads);
+            _passStarted = _timeMaster.currentTimeMillis();
+            _passRuns = 0;
+            _passStartedHere = true;
+            if (_expirationIndex != null) {
+                _expirationIndex.fullScanStarted();
+            }
+        }
+        ++_passRuns;
+        _saveState();
+
+        List<CleanupSegment> todo = new ArrayList<CleanupSegment>();
+        for (CleanupSegment segment : _scanSegments) {
+            if (!segment.isCompleted()) {
+                todo.add(segment);
+            }
+        }
+        // stats are thread-safe, so segments can share them; this way progress is visible mid-run
+        final List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+        for (final CleanupSegment segment : todo) {
+            tasks.add(new Callable<Boolean>() {
                 @Override
-                public IterationAction verifyTimestamp(long timestamp) {
-                    return IterationAction.PROCESS_ENTRY;
+                public Boolean call() throws Exception {
+                    try {
+                        return _scanSegment(segment, stats, tombstoneThreshold);
+                    } catch (Exception e) {
+                        segment.failed();
+                        _reportProblem("Failed to process segment "+segment+" (failure #"+segment.getFailures()
+                                +"), will resume from checkpoint on next run; problem ("+e.getClass().getName()+"): "+e.getMessage());
+                        throw e;
+                    }
                 }
-    
-                @Override
-                public IterationAction verifyKey(StorableKey key)
-                {
-                    // first things first: do we need to quit?
-                    // TODO: maybe consider max runtime?
-                    if (shouldStop()) {
-                        _reportProblem("Stopping "+LocalEntryCleaner.class.getName()+" early due to shutdown");
-                        return IterationAction.TERMINATE_ITERATION;
+            });
+        }
+
+        Exception fail = null;
+        if (tasks.size() <= 1 || _threads <= 1) {
+            for (Callable<Boolean> task : tasks) {
+                try {
+                    task.call();
+                } catch (Exception e) {
+                    if (fail == null) {
+                        fail = e;
                     }
-                    return IterationAction.PROCESS_ENTRY;
                 }
-    
-                @Override
-                public IterationAction processEntry(Storable raw) throws StoreException
-                {
-                    // for tombstones easy, common max-TTL:
-                    final StoredEntry<BasicTSKey> entry = _entryConverter.entryFromStorable(raw);
-                    if (raw.isDeleted()) {
-                        if (entry.insertedBefore(tombstoneThreshold)) {
-                            deleter.deleteTombstone(entry);
-                            stats.addExpiredTombstone();
-                            return IterationAction.PROCESS_ENTRY;
+            }
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(_threads, tasks.size()),
+                    new ThreadFactory() {
+                        private final AtomicInteger _count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "LocalEntryCleaner-"+_count.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
                         }
-                        stats.addRemainingTombstone();
-                    } else {
-                        // for other entries bit more complex; basically checking following possibilities:
-                        // (a) Entry is older than its maxTTL (which varies entry by entry), can be removed
-                        // (b) Entry is younger than its minTTL since creation, can be skipped
-                        // (c) Entry needs to be retained based on local last-access time: skip
-                        // (d) Must check global last-access to determine whether to keep or skip
-                        final long currentTime = _timeMaster.currentTimeMillis();
-                        if (entry.hasExceededMaxTTL(currentTime)) { // (a) remove
-                            stats.addExpiredMaxTTLEntry();
-                            deleter.deleteExpired(entry);
-                            return IterationAction.PROCESS_ENTRY;
+            });
+            try {
+                for (Future<Boolean> future : executor.invokeAll(tasks)) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        if (fail == null) {
+                            Throwable t = e.getCause();
+                            fail = (t instanceof Exception) ? (Exception) t : e;
                         }
-                        if (!entry.hasExceededMinTTL(currentTime)) { // (b) skip
-                            stats.addRemainingEntry();
-                        } else if (!entry.usesLastAccessTime()) { // no last-access time check; retain
-                            stats.addRemainingEntry();
-                        } else { // do need to verify last-access info...
-                            if (!entry.hasExceededLastAccessTTL(currentTime,
-                                    _lastAccessStore.findLastAccessTime(entry.getKey(), entry.getLastAccessUpdateMethod()))) {
-                                stats.addRemainingEntry(); // (c) keep
-                            } else { // (d): add to list of things to check...
-                                // !!! TODO
-                                stats.addRemainingEntry();
-                            }
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        boolean completed = true;
+        for (CleanupSegment segment : _scanSegments) {
+            if (!segment.isCompleted()) {
+                completed = false;
+                break;
+            }
+        }
+        if (!completed) {
+            _saveState();
+        } else { // all done; next full scan to start from scratch
+            _scanSegments = null;
+            _clearState();
+            _runsSinceFullScan = 0;
+            // but index only complete if all segments were processed by this process
+            if ((_expirationIndex != null) && _passStartedHere) {
+                _expirationIndex.fullScanCompleted();
+                if (_expirationIndex.isDisabled()) {
+                    LOG.warn("Store has more entries than expiration index may contain ({}): index disabled, will use full scans",
+                            _expirationIndex.maxSize());
+                    _expirationIndex = null;
+                }
+            }
+        }
+        if (fail != null) {
+            throw fail;
+        }
+        return completed;
+    }
+
+    /**
+     * Method for dividing range of last-modified timestamps of entries into
+     * given number of segments of equal length. Range is determined by
+     * finding the oldest entry; all entries newer than current time are
+     * included in the last segment.
+     */
+    protected List<CleanupSegment> _createSegments(int count) throws StoreException
+    {
+        ArrayList<CleanupSegment> segments = new ArrayList<CleanupSegment>(count);
+        if (count <= 1) {
+            segments.add(new CleanupSegment(0L, Long.MAX_VALUE));
+            return segments;
+        }
+        final long[] oldest = new long[] { -1L };
+        _entryStore.iterateEntriesByModifiedTime(StoreOperationSource.CLEANUP, null,
+                0L, new StorableLastModIterationCallback() {
+            @Override
+            public IterationAction verifyTimestamp(long timestamp) {
+                oldest[0] = timestamp;
+                return IterationAction.TERMINATE_ITERATION;
+            }
+
+            @Override
+            public IterationAction verifyKey(StorableKey key) {
+                return IterationAction.TERMINATE_ITERATION;
+            }
+
+            @Override
+            public IterationAction processEntry(Storable entry) {
+                return IterationAction.TERMINATE_ITERATION;
+            }
+        });
+        final long now = _timeMaster.currentTimeMillis();
+        if (oldest[0] < 0L || oldest[0] >= now) { // empty store (or clock problems)
+            segments.add(new CleanupSegment(0L, Long.MAX_VALUE));
+            return segments;
+        }
+        final long length = Math.max(1L, (now - oldest[0]) / count);
+        long start = 0L;
+        for (int i = 1; i < count; ++i) {
+            long end = oldest[0] + i * length;
+            segments.add(new CleanupSegment(start, end));
+            start = end;
+        }
+        segments.add(new CleanupSegment(start, Long.MAX_VALUE));
+        return segments;
+    }
+
+    /**
+     * Method for processing all remaining entries of a single segment.
+     *
+     * @return True if segment was fully processed; false if not
+     */
+    protected boolean _scanSegment(final CleanupSegment segment, final LocalCleanupStats stats,
+            final long tombstoneThreshold)
+        throws Exception
+    {
+        final ThrottlingDeleter deleter = _constructDeleter(stats);
+        final MetadataMigrator migrator = _constructMigrator(stats);
+        final GlobalLastAccessChecker checker = _constructLastAccessChecker();
+        final BasicTSMetadataCursor metadata = new BasicTSMetadataCursor(_entryConverter);
+        final long endTime = segment.getEndTime();
+
+        // set when a batch of entries to check with peers fills up: iteration is
+        // then stopped, since peers must not be called with cursor open
+        final boolean[] checkNeeded = new boolean[1];
+        final StorableLastModIterationCallback cb = new StorableLastModIterationCallback() {
+            private long _timestamp;
+
+            @Override
+            public IterationAction verifyTimestamp(long timestamp) {
+                if (timestamp >= endTime) {
+                    return IterationAction.TERMINATE_ITERATION;
+                }
+                _timestamp = timestamp;
+                return IterationAction.PROCESS_ENTRY;
+            }
+
+            @Override
+            public IterationAction verifyKey(StorableKey key)
+            {
+                // first things first: do we need to quit?
+                // TODO: maybe consider max runtime?
+                if (shouldStop()) {
+                    _reportProblem("Stopping "+LocalEntryCleaner.class.getName()+" early due to shutdown");
+                    return IterationAction.TERMINATE_ITERATION;
+                }
+                // when resuming, need to skip entries processed before checkpoint
+                if (segment.processedAlready(_timestamp, key)) {
+                    return IterationAction.SKIP_ENTRY;
+                }
+                return IterationAction.PROCESS_ENTRY;
+            }
+
+            @Override
+            public IterationAction processEntry(Storable raw) throws StoreException
+            {
+                // Decode just the metadata; full entry only constructed if needed
+                checkNeeded[0] = _processEntry(metadata.read(raw), stats, deleter, migrator, checker,
+                        tombstoneThreshold);
+                segment.processed(raw.getLastModified(), raw.getKey());
+                _checkpointIfNeeded();
+                return checkNeeded[0] ? IterationAction.TERMINATE_ITERATION : IterationAction.PROCESS_ENTRY;
+            }
+        };
+        IterationResult r;
+        while (true) {
+            checkNeeded[0] = false;
+            r = _entryStore.iterateEntriesByModifiedTime(StoreOperationSource.CLEANUP, null,
+                    segment.getCheckpoint(), cb);
+            if (checker.hasCandidates() && !shouldStop()) {
+                _checkGlobalLastAccess(checker, metadata, stats, deleter, migrator);
+            }
+            // stopped just to check batch? If so, resume from checkpoint
+            if (!checkNeeded[0] || shouldStop()) {
+                break;
+            }
+        }
+        deleter.finish();
+        // migration only after iteration, to avoid modifying entries under cursor
+        if (migrator != null && !shouldStop()) {
+            migrator.finish();
+        }
+        if ((r == IterationResult.FULLY_ITERATED) || (r == IterationResult.TERMINATED_FOR_TIMESTAMP)) {
+            segment.completed();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Method called to only check entries that expiration index indicates
+     * may have expired, instead of scanning through all entries.
+     * Keys are taken from the index in chunks of bounded size; if processing
+     * stops before all keys of a chunk are checked, remaining keys are put
+     * back in index, to be checked during the next run.
+     */
+    protected boolean _cleanUpIndexed(LocalCleanupStats stats, ThrottlingDeleter deleter,
+            MetadataMigrator migrator, GlobalLastAccessChecker checker,
+            BasicTSMetadataCursor metadata, long tombstoneThreshold)
+        throws IOException, StoreException
+    {
+        // all keys expired by start of run are checked; but none added during it
+        final long runStart = _timeMaster.currentTimeMillis();
+        int total = 0;
+        while (true) {
+            List<StorableKey> keys = _expirationIndex.removeExpired(runStart, INDEXED_CHUNK_SIZE);
+            if (keys.isEmpty()) {
+                return true;
+            }
+            total += keys.size();
+            stats.setIndexedEntries(total);
+            // sort to get closer to optimal access order for lookups
+            Collections.sort(keys);
+            int i = 0;
+            try {
+                for (final int end = keys.size(); i < end; ++i) {
+                    if (shouldStop()) {
+                        _reportProblem("Stopping "+LocalEntryCleaner.class.getName()+" early due to shutdown");
+                        return false;
+                    }
+                    Storable raw = _entryStore.findEntry(StoreOperationSource.CLEANUP, null, keys.get(i));
+                    if (raw != null) { // if null, already deleted, fine
+                        if (_processEntry(metadata.read(raw), stats, deleter, migrator, checker,
+                                tombstoneThreshold)) {
+                            _checkGlobalLastAccess(checker, metadata, stats, deleter, migrator);
                         }
                     }
-                    // to effect throttling, need to denote read-only entry
-                    deleter.skippedEntry(entry);
-                    return IterationAction.PROCESS_ENTRY;
                 }
-            });
-            deleter.finish();
+            } finally {
+                // anything not processed (due to stop, or failure) needs to go back
+                for (final int end = keys.size(); i < end; ++i) {
+                    _expirationIndex.add(keys.get(i), runStart);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method called to check a single entry, and either delete or retain it.
+     * Retained entries are added in expiration index (if one is used).
+     * Entries that need to be checked with peers are added to given checker;
+     * caller is responsible for checking them once batch is full, since
+     * it may not be safe to call peers from within iteration.
+     *
+     * @return True if batch of entries to check with peers is full, and
+     *   {@link #_checkGlobalLastAccess} needs to be called; false if not
+     */
+    protected boolean _processEntry(BasicTSMetadataCursor md, LocalCleanupStats stats,
+            ThrottlingDeleter deleter, MetadataMigrator migrator, GlobalLastAccessChecker checker,
+            long tombstoneThreshold)
+        throws StoreException
+    {
+        long lastAccess = 0L;
+        // for tombstones easy, common max-TTL:
+        if (md.isDeleted()) {
+            if (md.insertedBefore(tombstoneThreshold)) {
+                deleter.deleteTombstone(md.toEntry());
+                stats.addExpiredTombstone();
+                return false;
+            }
+            stats.addRemainingTombstone();
+        } else {
+            // for other entries bit more complex; basically checking following possibilities:
+            // (a) Entry is older than its maxTTL (which varies entry by entry), can be removed
+            // (b) Entry is younger than its minTTL since creation, can be skipped
+            // (c) Entry needs to be retained based on local last-access time: skip
+            // (d) Must check global last-access to determine whether to keep or skip
+            final long currentTime = _timeMaster.currentTimeMillis();
+            if (md.hasExceededMaxTTL(currentTime)) { // (a) remove
+                stats.addExpiredMaxTTLEntry();
+                deleter.deleteExpired(md.toEntry());
+                return false;
+            }
+            if (!md.hasExceededMinTTL(currentTime)) { // (b) skip
+                stats.addRemainingEntry();
+            } else if (!md.usesLastAccessTime()) { // no last-access time check; retain
+                stats.addRemainingEntry();
+            } else { // do need to verify last-access info...
+                lastAccess = _findLastAccessTime(md);
+                if (!md.hasExceededLastAccessTTL(currentTime, lastAccess)) {
+                    stats.addRemainingEntry(); // (c) keep
+                } else { // (d): add to list of things to check with peers
+                    deleter.skippedEntry();
+                    return checker.addCandidate(md, lastAccess);
+                }
+            }
+            // retained; may need to be rewritten using current metadata format
+            if (migrator != null) {
+                migrator.checkEntry(md);
+            }
+        }
+        if (_expirationIndex != null) {
+            _expirationIndex.add(md.getRaw().getKey(), _expirationIndex.nextCheckTime(md, lastAccess));
+        }
+        // to effect throttling, need to denote read-only entry
+        deleter.skippedEntry();
+        return false;
+    }
+
+    /**
+     * Method for finding local last-access timestamp for given entry; for
+     * grouped entries, stored timestamps are cached so that they are only
+     * looked up once per group during a run. Timestamps still buffered
+     * (not yet written to the store) are also considered.
+     */
+    protected long _findLastAccessTime(BasicTSMetadataCursor md)
+    {
+        final LastAccessUpdateMethod method = md.getLastAccessUpdateMethod();
+        final BasicTSKey key = md.toEntry().getKey();
+        long lastAccess = _findStoredLastAccessTime(key, method);
+        if (_lastAccessBuffer != null) {
+            lastAccess = Math.max(lastAccess, _lastAccessBuffer.pendingAccessTime(key, method));
+        }
+        return lastAccess;
+    }
+
+    protected long _findStoredLastAccessTime(BasicTSKey key, LastAccessUpdateMethod method)
+    {
+        // no group without partition id, nor benefit from caching
+        if (method != TSLastAccess.GROUPED || !key.hasPartitionId()) {
+            return _lastAccessStore.findLastAccessTime(key, method);
+        }
+        if (_lastGroupMember != null && _lastAccessConverter.inSameGroup(key, _lastGroupMember)) {
+            return _lastGroupAccess;
+        }
+        final StorableKey groupKey = new StorableKey(_lastAccessConverter.createGroupKey(key));
+        Long cached = _groupLastAccess.get(groupKey);
+        long lastAccess;
+        if (cached != null) {
+            lastAccess = cached.longValue();
+        } else {
+            lastAccess = _lastAccessStore.findLastAccessTime(key, method);
+            if (_groupLastAccess.size() >= MAX_CACHED_GROUPS) {
+                _groupLastAccess.clear();
+            }
+            _groupLastAccess.put(groupKey, lastAccess);
+        }
+        _lastGroupMember = key;
+        _lastGroupAccess = lastAccess;
+        return lastAccess;
+    }
+
+    /**
+     * Method called to check global last-access timestamps of entries whose
+     * local last-access TTL has been exceeded: entries are only removed if
+     * TTL has been exceeded on all nodes that store them. If this can not be
+     * verified (some peers can not be reached), entries are retained.
+     */
+    protected void _checkGlobalLastAccess(GlobalLastAccessChecker checker, BasicTSMetadataCursor md,
+            LocalCleanupStats stats, ThrottlingDeleter deleter, MetadataMigrator migrator)
+        throws StoreException
+    {
+        final List<GlobalLastAccessChecker.Candidate> candidates = checker.checkCandidates();
+        final long currentTime = _timeMaster.currentTimeMillis();
+        for (GlobalLastAccessChecker.Candidate c : candidates) {
+            md.read(c.raw);
+            final boolean verified = (c.globalLastAccess != GlobalLastAccessChecker.UNKNOWN);
+            if (verified && md.hasExceededLastAccessTTL(currentTime, c.globalLastAccess)) {
+                stats.addExpiredLastAccessEntry();
+                deleter.deleteExpired(md.toEntry());
+                continue;
+            }
+            stats.addRemainingEntry();
+            if (migrator != null) {
+                migrator.checkEntry(md);
+            }
+            if (_expirationIndex != null) {
+                // if peers could not be checked, retry when next checking expired entries
+                long checkTime = verified ? _expirationIndex.nextCheckTime(md, c.globalLastAccess)
+                        : currentTime;
+                _expirationIndex.add(c.raw.getKey(), checkTime);
+            }
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Persisting state of full scans
+    /**********************************************************************
+     */
+
+    protected void _checkpointIfNeeded()
+    {
+        final long now = _timeMaster.currentTimeMillis();
+        final long last = _lastStateSave.get();
+        if ((now - last) >= _checkpointIntervalMsecs
+                && _lastStateSave.compareAndSet(last, now)) {
+            _saveState();
+        }
+    }
+
+    protected void _loadState()
+    {
+        if (_stateStore == null) {
+            return;
+        }
+        CleanupState state;
+        try {
+            state = _stateStore.findEntry(CleanupState.KEY_LOCAL_ENTRY_CLEANUP);
         } catch (Exception e) {
-            _reportEndFail(stats, e);
-            throw e;
+            _reportProblem("Failed to read persisted clean up state, will start from beginning: "+e.getMessage());
+            return;
+        }
+        if ((state == null) || (state.segments == null) || state.segments.isEmpty()) {
+            return;
+        }
+        List<CleanupSegment> segments = new ArrayList<CleanupSegment>(state.segments.size());
+        for (CleanupState.Segment segState : state.segments) {
+            segments.add(new CleanupSegment(segState));
+        }
+        _scanSegments = segments;
+        _passStarted = state.started;
+        _passRuns = state.runs;
+        _passStartedHere = false;
+        if (LOG != null) {
+            LOG.info("Will resume full scan (started at {}, {} runs) from checkpoints: {}",
+                    state.started, state.runs, segments);
+        }
+    }
+
+    protected synchronized void _saveState()
+    {
+        final List<CleanupSegment> segments = _scanSegments;
+        if ((_stateStore == null) || (segments == null)) {
+            return;
+        }
+        CleanupState state = new CleanupState(_passStarted, _passRuns);
+        for (CleanupSegment segment : segments) {
+            state.segments.add(segment.asState());
+        }
+        try {
+            _stateStore.upsertEntry(CleanupState.KEY_LOCAL_ENTRY_CLEANUP, state);
+        } catch (Exception e) {
+            _reportProblem("Failed to persist clean up state: "+e.getMessage());
+        }
+        _lastStateSave.set(_timeMaster.currentTimeMillis());
+    }
+
+    protected synchronized void _clearState()
+    {
+        if (_stateStore == null) {
+            return;
+        }
+        try {
+            _stateStore.deleteEntry(CleanupState.KEY_LOCAL_ENTRY_CLEANUP);
+        } catch (Exception e) {
+            _reportProblem("Failed to remove persisted clean up state: "+e.getMessage());
         }
-        final boolean fullyCompleted = (r == IterationResult.FULLY_ITERATED);
-        _reportEndSuccess(stats, fullyCompleted);
-        
-        return (r == IterationResult.FULLY_ITERATED);
     }
 
     /*
@@ -185,7 +850,39 @@ public class LocalEntryCleaner
      */
 
     protected ThrottlingDeleter _constructDeleter(LocalCleanupStats stats) {
-        return new ThrottlingDeleter(LOG, _entryStore, stats, _shutdown);
+        ThrottlingDeleter.Helpers helpers = new ThrottlingDeleter.Helpers();
+        helpers.pacer = _deletionPacer;
+        helpers.reclaimer = _fileReclaimer;
+        helpers.rateLimiter = _rateLimiter;
+        if (_writeMutex instanceof BatchWriteMutex) {
+            helpers.writeMutex = (BatchWriteMutex) _writeMutex;
+        }
+        return new ThrottlingDeleter(LOG, _entryStore, stats, _shutdown, helpers);
+    }
+
+    protected GlobalLastAccessChecker _constructLastAccessChecker() {
+        return new GlobalLastAccessChecker(_cluster, _keyConverter, _lastAccessConverter,
+                _lastAccessAccessor, _lastAccessBatchSize, _lastAccessTimeout);
+    }
+
+    /**
+     * Factory method for constructing migrator for rewriting entries that use
+     * an older metadata format, if any; null if migration is not needed
+     * or not possible.
+     */
+    protected MetadataMigrator _constructMigrator(LocalCleanupStats stats)
+    {
+        // (declared type of converter is not compatible; need to cast via Object)
+        final Object c = _entryConverter;
+        if ((_writeMutex == null) || !(c instanceof BasicTSEntryConverter)) {
+            return null;
+        }
+        BasicTSEntryConverter conv = (BasicTSEntryConverter) c;
+        // Only migrate "up"; since v1 is the default format, nothing to do for it
+        if (conv.getMetadataVersion() < 2) {
+            return null;
+        }
+        return new MetadataMigrator(LOG, _entryStore, conv, _writeMutex, stats, _shutdown);
     }
     
     protected void _reportStart()
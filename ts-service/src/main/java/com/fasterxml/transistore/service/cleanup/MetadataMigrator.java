@@ -0,0 +1,207 @@
+package com.fasterxml.transistore.service.cleanup;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+
+import com.fasterxml.storemate.shared.ByteContainer;
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.store.*;
+import com.fasterxml.storemate.store.backend.StoreBackend;
+import com.fasterxml.storemate.store.file.FileReference;
+import com.fasterxml.storemate.store.impl.StorableConverter;
+import com.fasterxml.storemate.store.util.PartitionedWriteMutex;
+
+import com.fasterxml.transistore.service.BasicTSEntryConverter;
+import com.fasterxml.transistore.service.BasicTSMetadataCursor;
+
+/**
+ * Helper class used for lazily rewriting entries that use an older
+ * TransiStore metadata format (see {@link BasicTSEntryConverter}) using
+ * the format that converter currently writes. Used by
+ * {@link LocalEntryCleaner}: keys of entries to migrate are collected
+ * during iteration, and rewritten once iteration has completed, so that
+ * no writes are made to entries under the iteration cursor.
+ *<p>
+ * Rewrites are done under the partitioned write mutex of the store, and
+ * only if entry has not been modified since it was read. Last-modified
+ * timestamp of the entry is retained, so that rewriting does not
+ * trigger resynchronization between nodes.
+ */
+public class MetadataMigrator
+{
+    /**
+     * Maximum number of entries to migrate during a single clean up
+     * run, to limit both memory usage and additional write load.
+     */
+    private final int MAX_MIGRATIONS_PER_RUN = 10000;
+
+    /*
+    /**********************************************************************
+    /* Basic configuration
+    /**********************************************************************
+     */
+
+    private final Logger LOG;
+
+    private final StorableStore _entryStore;
+
+    private final BasicTSEntryConverter _entryConverter;
+
+    private final PartitionedWriteMutex _writeMutex;
+
+    private final LocalCleanupStats _stats;
+
+    private final AtomicBoolean _shutdown;
+
+    /*
+    /**********************************************************************
+    /* State
+    /**********************************************************************
+     */
+
+    private final List<StorableKey> _toMigrate = new ArrayList<StorableKey>();
+
+    /*
+    /**********************************************************************
+    /* Life-cycle
+    /**********************************************************************
+     */
+
+    public MetadataMigrator(Logger log, StorableStore store,
+            BasicTSEntryConverter conv, PartitionedWriteMutex writeMutex,
+            LocalCleanupStats stats, AtomicBoolean shutdown)
+    {
+        LOG = log;
+        _entryStore = store;
+        _entryConverter = conv;
+        _writeMutex = writeMutex;
+        _stats = stats;
+        _shutdown = shutdown;
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API
+    /**********************************************************************
+     */
+
+    /**
+     * Method called for a retained entry, to check whether it should
+     * be migrated; and if so, to schedule migration.
+     *
+     * @return True if entry was scheduled for migration; false if not
+     */
+    public boolean checkEntry(BasicTSMetadataCursor md)
+    {
+        final int version = md.getVersion();
+        if ((version == 0) // unknown format, custom converter
+                || (version == _entryConverter.getMetadataVersionId())
+                || (_toMigrate.size() >= MAX_MIGRATIONS_PER_RUN)) {
+            return false;
+        }
+        _toMigrate.add(md.getRaw().getKey());
+        return true;
+    }
+
+    /**
+     * Method called once iteration over entries is complete, to rewrite
+     * entries scheduled for migration.
+     */
+    public void finish() throws StoreException
+    {
+        final StoreBackend backend = _entryStore.getBackend();
+        final BasicTSMetadataCursor md = new BasicTSMetadataCursor(_entryConverter);
+        for (StorableKey key : _toMigrate) {
+            if (_shutdown.get()) {
+                break;
+            }
+            try {
+                if (_migrate(backend, md, key)) {
+                    _stats.addMigratedEntry();
+                }
+            } catch (IOException e) {
+                throw new StoreException.IO(key, e);
+            }
+        }
+        _toMigrate.clear();
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    protected boolean _migrate(final StoreBackend backend, final BasicTSMetadataCursor md,
+            final StorableKey key)
+        throws IOException, StoreException
+    {
+        final long now = _entryStore.getTimeMaster().currentTimeMillis();
+        Boolean b = _writeMutex.partitionedWrite(now, key,
+                new PartitionedWriteMutex.Callback<Boolean>() {
+            @Override
+            public Boolean performWrite(StorableKey key) throws IOException, StoreException {
+                // Must re-read under lock: may have been modified or deleted since
+                Storable old = backend.findEntry(key);
+                if ((old == null) || old.isDeleted()) {
+                    return Boolean.FALSE;
+                }
+                md.read(old);
+                if ((md.getVersion() == 0)
+                        || md.getVersion() == _entryConverter.getMetadataVersionId()) {
+                    return Boolean.FALSE;
+                }
+                Storable updated = _rewrite(backend.getStorableConverter(), old,
+                        _entryConverter.createMetadata(md));
+                if (updated == null) {
+                    return Boolean.FALSE;
+                }
+                backend.ovewriteEntry(key, updated);
+                return Boolean.TRUE;
+            }
+        });
+        return b.booleanValue();
+    }
+
+    /**
+     * Helper method for constructing a copy of given entry, with all other
+     * settings the same except for custom metadata.
+     *
+     * @return Rewritten entry, if rewrite is possible; null if not
+     */
+    protected Storable _rewrite(StorableConverter conv, Storable old, ByteContainer customMetadata)
+    {
+        final StorableKey key = old.getKey();
+        StorableCreationMetadata stdMetadata = new StorableCreationMetadata(old.getCompression(),
+                old.getContentHash(), old.getCompressedHash());
+        stdMetadata.uncompressedSize = old.getOriginalLength();
+        stdMetadata.storageSize = old.getStorageLength();
+        stdMetadata.deleted = old.isDeleted();
+        stdMetadata.replicated = old.isReplicated();
+        final long modtime = old.getLastModified();
+
+        Storable encoded;
+        if (old.hasExternalData()) {
+            FileReference ref = new FileReference(old.getExternalFile(_entryStore.getFileManager()),
+                    old.getExternalFilePath());
+            encoded = conv.encodeOfflined(key, modtime, stdMetadata, customMetadata, ref);
+        } else if (old.hasInlineData()) {
+            encoded = conv.encodeInlined(key, modtime, stdMetadata, customMetadata,
+                    old.getInlinedData());
+        } else { // should not occur for non-deleted entries; but if so, leave as is
+            return null;
+        }
+        // encoders do not produce fully consistent instances; need to decode
+        return conv.decode(key, encoded.asBytes());
+    }
+
+    protected void _reportProblem(String msg)
+    {
+        if (LOG != null) {
+            LOG.warn(msg);
+        }
+    }
+}
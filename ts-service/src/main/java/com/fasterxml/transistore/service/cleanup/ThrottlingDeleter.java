@@ -1,5 +1,6 @@
 package com.fasterxml.transistore.service.cleanup;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -9,23 +10,19 @@ import org.slf4j.Logger;
 import com.fasterxml.clustermate.service.store.StoredEntry;
 import com.fasterxml.storemate.shared.StorableKey;
 import com.fasterxml.storemate.store.*;
+import com.fasterxml.storemate.store.backend.StoreBackend;
+
+import com.fasterxml.transistore.service.store.BatchDeletingBackend;
+import com.fasterxml.transistore.service.store.BatchWriteMutex;
 
 /**
  * Helper class to encapsulate details of throttling process of deleting local
  * entries, to try to reduce negative performance effects of background
- * processing.
+ * processing. Batch sizes and lengths of breaks are determined by
+ * {@link DeletionPacer}.
  */
 public class ThrottlingDeleter
 {
-    // // // Configs: may want to make externally configurable?
-
-    /**
-     * We shall batch writes (deletions) to make them more efficient;
-     * but cap maximum batch size so that a break is taken after
-     * a batch is written (if none taken during batch)
-     */
-    private final int WRITES_TO_BATCH = 500;
-
     /**
      * Beyond "expected" failures due to secondary index corruption
      * (which BDB-JE can cause with non-clean shutdowns), let's also
@@ -33,22 +30,13 @@ public class ThrottlingDeleter
      * clean up thread.
      */
     private final int EXCEPTIONS_TO_SKIP = 50;
-    
-    /**
-     * Regardless of how long things take, we'll take a break
-     * after reading this number of entries.
-     */
-    private final int MAX_READS_BEFORE_BREAK = 5000;
 
     /**
-     * Amount of time that we should process until taking a brief
-     * break.
+     * Number of entries for which permits are obtained from shared rate
+     * limiter at a time.
      */
-    private final long MSECS_UNTIL_BREAK = 200L;
+    private final static int RATE_LIMIT_CHUNK = 16;
 
-    private final long MIN_BREAK_MSECS = 20L;
-    private final long MAX_BREAK_MSECS = 500L;
-    
     /*
     /**********************************************************************
     /* Basic configuration
@@ -63,6 +51,35 @@ public class ThrottlingDeleter
     
     private final AtomicBoolean _shutdown;
 
+    /**
+     * Object that determines batch sizes and lengths of breaks
+     */
+    private final DeletionPacer _pacer;
+
+    /**
+     * Backend to use for deleting batches of entries as single transactions,
+     * if store backend supports it (and {@link #_writeMutex} is available);
+     * null if not.
+     */
+    private final BatchDeletingBackend _batchBackend;
+
+    /**
+     * Write mutex used by the entry store, needed to lock partitions of
+     * all entries of a batch, if batch deletion is to be used.
+     */
+    private final BatchWriteMutex _writeMutex;
+
+    /**
+     * Helper for deleting external files asynchronously, if enabled; if
+     * null, files are deleted along with entries.
+     */
+    private final FileReclaimer _reclaimer;
+
+    /**
+     * Rate limiter shared by all deleters of the cleaner, if any.
+     */
+    private final CleanupRateLimiter _rateLimiter;
+
     /*
     /**********************************************************************
     /* Throttling state
@@ -75,6 +92,12 @@ public class ThrottlingDeleter
     
     private int _caughtExceptions;
 
+    /**
+     * Number of entries processed since permits were last obtained from
+     * rate limiter.
+     */
+    private int _unlimitedEntries;
+
     private final StoredEntry<?>[] _toDelete;
 
     private int _toDeleteSize;
@@ -84,17 +107,38 @@ public class ThrottlingDeleter
     /* Life-cycle
     /**********************************************************************
      */
-    
+
+    /**
+     * @param helpers Optional helper objects to use; if null, defaults
+     *    (see {@link Helpers}) are used
+     */
     public ThrottlingDeleter(Logger log, StorableStore store,
-            LocalCleanupStats stats, AtomicBoolean shutdown)
+            LocalCleanupStats stats, AtomicBoolean shutdown, Helpers helpers)
     {
+        if (helpers == null) {
+            helpers = new Helpers();
+        }
         LOG = log;
+        _reclaimer = helpers.reclaimer;
+        _rateLimiter = helpers.rateLimiter;
         _entryStore = store;
         _stats = stats;
-        _nextBreak = System.currentTimeMillis() + MSECS_UNTIL_BREAK;
-        _toDelete = new StoredEntry<?>[WRITES_TO_BATCH];
+        _pacer = (helpers.pacer == null) ? new DeletionPacer() : helpers.pacer;
+        _nextBreak = System.currentTimeMillis() + _pacer.workPeriodMsecs();
+        _toDelete = new StoredEntry<?>[_pacer.maxBatchSize()];
         _shutdown = shutdown;
-}
+        StoreBackend backend = store.getBackend();
+        final BatchWriteMutex writeMutex = helpers.writeMutex;
+        // can only bypass store if we can also lock entries like it does
+        if ((writeMutex != null) && (backend instanceof BatchDeletingBackend)
+                && ((BatchDeletingBackend) backend).canDeleteInBatches()) {
+            _batchBackend = (BatchDeletingBackend) backend;
+            _writeMutex = writeMutex;
+        } else {
+            _batchBackend = null;
+            _writeMutex = null;
+        }
+    }
 
     public void finish() throws StoreException {
         _flushDeletes();
@@ -110,7 +154,16 @@ public class ThrottlingDeleter
      * Method called for entry that is not being deleted
      */
     public void skippedEntry(StoredEntry<?> entry) {
-        if (++_readsSinceBreak < MAX_READS_BEFORE_BREAK) {
+        skippedEntry();
+    }
+
+    /**
+     * Method called for an entry that is not being deleted, when caller
+     * has not constructed entry instance.
+     */
+    public void skippedEntry() {
+        _entryProcessed();
+        if (++_readsSinceBreak < _pacer.maxReadsBeforeBreak()) {
             if (((_readsSinceBreak % 16) != 0)
                     || System.currentTimeMillis() < _nextBreak) {
                 return;
@@ -134,32 +187,48 @@ public class ThrottlingDeleter
      */
 
     protected void _scheduleDeletion(StoredEntry<?> entry) throws StoreException {
+        _entryProcessed();
         _toDelete[_toDeleteSize++] = entry;
-        if (_toDeleteSize >= WRITES_TO_BATCH) {
+        if (_toDeleteSize >= _pacer.batchSize() || _toDeleteSize == _toDelete.length) {
             _flushDeletes();
         }
     }
 
-    protected void _takeABreak() {
-        final long since = (System.currentTimeMillis() - _nextBreak) + MSECS_UNTIL_BREAK;
-        
-        // sleep for 25% of time since last break, but with constraints
-        long breakMsecs = (since / 4);
-
-        if (breakMsecs < MIN_BREAK_MSECS) {
-            breakMsecs = MIN_BREAK_MSECS;
-        } else if (breakMsecs > MAX_BREAK_MSECS) {
-            breakMsecs = MAX_BREAK_MSECS;
+    /**
+     * Method called for every entry read or deleted, to keep total rate
+     * (over all deleters) within limits, if rate limiter is used.
+     */
+    protected void _entryProcessed()
+    {
+        if ((_rateLimiter != null) && (++_unlimitedEntries >= RATE_LIMIT_CHUNK)) {
+            _unlimitedEntries = 0;
+            try {
+                long msecs = _rateLimiter.acquire(RATE_LIMIT_CHUNK);
+                if (msecs > 0L) {
+                    _stats.addSleep(msecs);
+                }
+            } catch (InterruptedException e) {
+                if (!_shouldStop()) {
+                    _reportProblem("Unexpected InterruptedException during cleanup; ignoring");
+                }
+            }
         }
-        _stats.addSleep(breakMsecs);
-        try {
-            Thread.sleep(breakMsecs);
-        } catch (InterruptedException e) {
-            if (!_shouldStop()) {
-                _reportProblem("Unexpected InterruptedException during cleanup; ignoring");
+    }
+
+    protected void _takeABreak() {
+        final long since = (System.currentTimeMillis() - _nextBreak) + _pacer.workPeriodMsecs();
+        final long breakMsecs = _pacer.breakMsecs(since);
+        if (breakMsecs > 0L) {
+            _stats.addSleep(breakMsecs);
+            try {
+                Thread.sleep(breakMsecs);
+            } catch (InterruptedException e) {
+                if (!_shouldStop()) {
+                    _reportProblem("Unexpected InterruptedException during cleanup; ignoring");
+                }
             }
         }
-        _nextBreak = System.currentTimeMillis() + MSECS_UNTIL_BREAK;
+        _nextBreak = System.currentTimeMillis() + _pacer.workPeriodMsecs();
         _readsSinceBreak = 0;    
     }
     
@@ -174,7 +243,25 @@ public class ThrottlingDeleter
          * make much difference but...
          */
         Arrays.sort(_toDelete, 0, len);
-        
+
+        // If possible, delete the whole batch with (per-partition) transactions
+        if ((_batchBackend != null) && (len > 1) && !_shouldStop()) {
+            final long start = System.nanoTime();
+            boolean ok = _deleteBatch(len);
+            if (ok) {
+                _pacer.batchCompleted(len, System.nanoTime() - start);
+                Arrays.fill(_toDelete, 0, len, null);
+                if (System.currentTimeMillis() >= _nextBreak) {
+                    _takeABreak();
+                }
+                return;
+            }
+            // if not, fall back to deleting entries one by one (those already
+            // deleted are simply not found)
+        }
+
+        // keep track of time spent deleting (but not on breaks), for pacing
+        long deleteNanos = 0L;
         try {
             for (; i < len; ++i) {
                 StoredEntry<?> entry = _toDelete[i];
@@ -182,11 +269,14 @@ public class ThrottlingDeleter
                 if (_shouldStop()) {
                     break;
                 }
+                final long start = System.nanoTime();
                 _delete(entry);
-                if (System.currentTimeMillis() < _nextBreak) {
+                deleteNanos += (System.nanoTime() - start);
+                if (System.currentTimeMillis() >= _nextBreak) {
                     _takeABreak();
                 }
             }
+            _pacer.batchCompleted(i, deleteNanos);
         } catch (StoreException e) {
             // Let's try to skip poison pills, but up to some maximum
             if (++_caughtExceptions > EXCEPTIONS_TO_SKIP) {
@@ -197,14 +287,110 @@ public class ThrottlingDeleter
             String key = entry.getKey().toString();
             _reportProblem("Caught an exception during deletion of entry "+key+"; will skip "
                     +(len - i)+" remaining entries; problem: "+e);
+        } finally {
+            // no need to keep references to entries
+            Arrays.fill(_toDelete, 0, len, null);
         }
     }
     
+    /**
+     * Method for deleting first <code>len</code> entries of the current batch
+     * in backend transactions: entries are divided in sub-batches by write
+     * lock partition, and each sub-batch is deleted in a transaction of its
+     * own, holding just the lock of its partition; this way foreground
+     * writes are only blocked for entries of one sub-batch at a time.
+     *
+     * @return True if deletion succeeded; false if not (in which case entries
+     *    of the failed sub-batch, and those after it, were not deleted)
+     */
+    protected boolean _deleteBatch(final int len)
+    {
+        final Map<Integer,List<StorableKey>> byPartition = new TreeMap<Integer,List<StorableKey>>();
+        for (int i = 0; i < len; ++i) {
+            final StorableKey key = _toDelete[i].getStorableKey();
+            final Integer partition = _writeMutex.partitionFor(key);
+            List<StorableKey> keys = byPartition.get(partition);
+            if (keys == null) {
+                keys = new ArrayList<StorableKey>();
+                byPartition.put(partition, keys);
+            }
+            keys.add(key);
+        }
+        final List<Storable> deleted = new ArrayList<Storable>(len);
+        try {
+            // One store operation for the whole batch (pacing done by us, not throttler)
+            _entryStore.getThrottler().performHardDelete(StoreOperationSource.CLEANUP,
+                    System.currentTimeMillis(), _toDelete[0].getStorableKey(), new StoreOperationCallback<Storable>() {
+                @Override
+                public Storable perform(long operationTime, StorableKey key, Storable value)
+                        throws IOException, StoreException {
+                    for (List<StorableKey> keys : byPartition.values()) {
+                        // must hold write lock of entries, same as store would for single ones
+                        _writeMutex.partitionedWrite(operationTime, keys,
+                                new BatchWriteMutex.BatchCallback<Storable>() {
+                            @Override
+                            public Storable performWrite(List<StorableKey> lockedKeys)
+                                    throws IOException, StoreException {
+                                deleted.addAll(_batchBackend.deleteEntries(lockedKeys));
+                                return null;
+                            }
+                        });
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            if (_stats.addFailedDeleteBatch() == 1) { // report only first occurrence
+                _reportProblem("Failed to delete a batch of "+len+" entries, will delete entries one by one"
+                        +" (will only report aggregates after first fail); problem: "+e);
+            }
+            // sub-batches that were committed still need their files deleted
+            _deleteExternalFiles(deleted);
+            return false;
+        }
+        _stats.addDeleteBatch();
+        // And since transactions have been committed, can delete external files
+        _deleteExternalFiles(deleted);
+        return true;
+    }
+
+    protected void _deleteExternalFiles(List<Storable> entries)
+    {
+        for (Storable entry : entries) {
+            _deleteExternalFile(entry);
+        }
+    }
+
+    protected void _deleteExternalFile(Storable entry)
+    {
+        if ((entry == null) || !entry.hasExternalData()) {
+            return;
+        }
+        File f = entry.getExternalFile(_entryStore.getFileManager());
+        if (f == null) {
+            return;
+        }
+        if ((_reclaimer != null) && _reclaimer.reclaim(f, entry.getStorageLength())) {
+            return;
+        }
+        if (!f.delete() && f.exists()) {
+            _reportProblem("Failed to delete backing data file of key "+entry.getKey()
+                    +", path: "+f.getAbsolutePath());
+        }
+    }
+
     protected void _delete(StoredEntry<?> entry) throws StoreException
     {
         final StorableKey key = entry.getStorableKey();
         try {
-            _entryStore.hardDelete(StoreOperationSource.CLEANUP, null, key, true);
+            if (_reclaimer == null) {
+                _entryStore.hardDelete(StoreOperationSource.CLEANUP, null, key, true);
+            } else {
+                // leave deletion of external file to reclaimer
+                StorableDeletionResult result = _entryStore.hardDelete(StoreOperationSource.CLEANUP,
+                        null, key, false);
+                _deleteExternalFile(result.getEntry());
+            }
         } catch (StoreException.DB e) {
             /* 26-Sep-2013, tatu: We got some of these in production (for BDB-JE);
              * need to be able to gracefully skip.
@@ -212,7 +398,7 @@ public class ThrottlingDeleter
             if (e.getType() != StoreException.DBProblem.SECONDARY_INDEX_CORRUPTION) {
                 throw e;
             }
-            if (++_stats.corruptEntries == 1) { // report only first occurrence
+            if (_stats.addCorruptEntry() == 1) { // report only first occurrence
                 String keyStr = String.valueOf(entry.getKey());
                 _reportProblem("Corrupt entry (key '"+keyStr+"'): need to skip (will only report aggregates after first fail");
             }
@@ -233,4 +419,41 @@ public class ThrottlingDeleter
             LOG.warn(msg);
         }
     }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Container for optional helper objects deleter uses; all fields
+     * may be left null to use defaults.
+     */
+    public static class Helpers
+    {
+        /**
+         * Object that determines batch sizes and lengths of breaks; if null,
+         * a {@link DeletionPacer} with default settings is used.
+         */
+        public DeletionPacer pacer;
+
+        /**
+         * Helper for deleting external files asynchronously; if null,
+         * files are deleted along with entries.
+         */
+        public FileReclaimer reclaimer;
+
+        /**
+         * Rate limiter shared by all deleters of the cleaner; if null,
+         * no rate limiting is done.
+         */
+        public CleanupRateLimiter rateLimiter;
+
+        /**
+         * Write mutex used by the entry store; batch deletion is only used
+         * if it is given (and backend supports it).
+         */
+        public BatchWriteMutex writeMutex;
+    }
 }
@@ -3,15 +3,37 @@ package com.fasterxml.transistore.service.lastaccess;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.storemate.shared.util.WithBytesCallback;
 import com.fasterxml.storemate.store.lastaccess.LastAccessUpdateMethod;
 import com.fasterxml.clustermate.service.lastaccess.LastAccessConverterBase;
 import com.fasterxml.clustermate.service.store.StoredEntry;
 import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSKeyConverter;
 import com.fasterxml.transistore.service.TSLastAccess;
 
 public class BasicTSLastAccessConverter
     extends LastAccessConverterBase<BasicTSKey, StoredEntry<BasicTSKey>>
 {
+    /**
+     * Marker byte used as the first byte of keys for grouped last-access
+     * entries, to keep them distinct from keys of "simple" entries (which
+     * start with the high byte of partition id length, always zero
+     * for valid keys)
+     */
+    public final static byte GROUP_KEY_MARKER = (byte) 0xFF;
+
+    private final static WithBytesCallback<byte[]> GROUP_KEY_BUILDER = new WithBytesCallback<byte[]>() {
+        @Override
+        public byte[] withBytes(byte[] buffer, int offset, int length) {
+            // skip partition id length; replace with marker
+            final int header = BasicTSKeyConverter.DEFAULT_KEY_HEADER_LENGTH;
+            byte[] result = new byte[length - header + 1];
+            result[0] = GROUP_KEY_MARKER;
+            System.arraycopy(buffer, offset + header, result, 1, length - header);
+            return result;
+        }
+    };
+
     private final Logger LOG = LoggerFactory.getLogger(getClass());
 
     // Default impl ought to be ok here:
@@ -39,9 +61,38 @@ public class BasicTSLastAccessConverter
                 return null;
             case SIMPLE: // whole key, for one-to-one match
                 return key.asStorableKey().asBytes();
+            case GROUPED: // partition id, shared by all entries of partition (if any)
+                return createGroupKey(key);
             }
         }
         LOG.warn("Missing or unrecognized 'accessMethod' value: {}", acc);
         return null;
     }
+
+    /**
+     * Method for constructing key of the grouped last-access entry for given
+     * key: marker byte followed by partition id. Entries without partition id
+     * have no group to share, so they are tracked individually, same as
+     * with {@link TSLastAccess#SIMPLE}: otherwise all such entries would
+     * share a single timestamp, and none would ever expire as long as any
+     * one of them was being accessed.
+     */
+    public byte[] createGroupKey(BasicTSKey key)
+    {
+        if (!key.hasPartitionId()) {
+            return key.asStorableKey().asBytes();
+        }
+        // copy partition id directly, to avoid intermediate copy
+        return key.withPartitionPrefix(GROUP_KEY_BUILDER);
+    }
+
+    /**
+     * Method for checking whether given keys share the grouped last-access
+     * entry (see {@link #createGroupKey}); comparison is done on raw key
+     * bytes, without constructing group keys.
+     */
+    public boolean inSameGroup(BasicTSKey key1, BasicTSKey key2)
+    {
+        return key1.hasPartitionId() && key1.hasSamePartition(key2);
+    }
 }
@@ -0,0 +1,70 @@
+package com.fasterxml.transistore.service.lastaccess;
+
+import org.skife.config.TimeSpan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.clustermate.service.SharedServiceStuff;
+import com.fasterxml.clustermate.std.JdkHttpClientPathBuilder;
+import com.fasterxml.storemate.shared.IpAndPort;
+
+import com.fasterxml.transistore.basic.BasicTSPaths;
+import com.fasterxml.transistore.basic.JdkJsonPoster;
+
+/**
+ * Helper class used for fetching last-access timestamps of entries
+ * from peer nodes, using JDK HTTP client (see {@link JdkJsonPoster}),
+ * similar to {@link com.fasterxml.clustermate.service.sync.SyncListAccessor}.
+ */
+public class LastAccessAccessor
+{
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    protected final SharedServiceStuff _stuff;
+
+    protected final BasicTSPaths _pathStrategy;
+
+    protected final JdkJsonPoster<LastAccessRequest,LastAccessResponse> _poster;
+
+    public LastAccessAccessor(SharedServiceStuff stuff, BasicTSPaths pathStrategy)
+    {
+        _stuff = stuff;
+        _pathStrategy = pathStrategy;
+        _poster = new JdkJsonPoster<LastAccessRequest,LastAccessResponse>(
+                stuff.jsonWriter(LastAccessRequest.class), stuff.jsonReader(LastAccessResponse.class));
+    }
+
+    /**
+     * Method for requesting last-access timestamps for given entries from
+     * specified peer.
+     *
+     * @return Response from peer, if request succeeded; null if it failed
+     *   (or response is not valid)
+     */
+    public LastAccessResponse fetchLastAccessTimes(IpAndPort endpoint, LastAccessRequest request,
+            TimeSpan timeout)
+    {
+        final String urlStr = _buildLastAccessUrl(endpoint);
+        LastAccessResponse resp;
+        try {
+            resp = _poster.post(urlStr, request, timeout.getMillis(), null);
+        } catch (JdkJsonPoster.Failure e) {
+            LOG.warn("fetchLastAccessTimes request to {} failed: {}", urlStr, e.getMessage());
+            return null;
+        }
+        if (resp.size() != request.size()) {
+            LOG.warn("Invalid response to fetchLastAccessTimes from {}: requested {} entries, got {}",
+                    urlStr, request.size(), resp.size());
+            return null;
+        }
+        return resp;
+    }
+
+    protected String _buildLastAccessUrl(IpAndPort endpoint)
+    {
+        JdkHttpClientPathBuilder pathBuilder = new JdkHttpClientPathBuilder(endpoint)
+            .addPathSegments(_stuff.getServiceConfig().servicePathRoot);
+        pathBuilder = _pathStrategy.appendSyncLastAccessPath(pathBuilder);
+        return pathBuilder.toString();
+    }
+}
@@ -0,0 +1,369 @@
+package com.fasterxml.transistore.service.lastaccess;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.store.lastaccess.LastAccessStore;
+import com.fasterxml.storemate.store.lastaccess.LastAccessUpdateMethod;
+import com.fasterxml.storemate.store.util.SimpleLogThrottler;
+
+import com.fasterxml.clustermate.service.store.StoredEntry;
+
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.service.cfg.LastAccessBufferConfig;
+
+/**
+ * Helper class used for buffering updates to last-access timestamps,
+ * so that they need not be written for every read access. Repeated accesses
+ * to the same entry (or, for {@link com.fasterxml.transistore.service.TSLastAccess#GROUPED},
+ * to entries of the same group) are coalesced (retaining the latest timestamp), and
+ * buffered timestamps are written in key order by a background thread,
+ * either periodically or when enough of them have accumulated.
+ *<p>
+ * Buffer is divided in stripes, each guarded by its own lock, to reduce
+ * contention between request threads.
+ */
+public class LastAccessBuffer
+    implements com.fasterxml.storemate.shared.StartAndStoppable
+{
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    protected final SimpleLogThrottler _throttledLogger = new SimpleLogThrottler(LOG, 1000);
+
+    protected final LastAccessStore<BasicTSKey,StoredEntry<BasicTSKey>,LastAccessUpdateMethod> _lastAccessStore;
+
+    protected final BasicTSLastAccessConverter _lastAccessConverter = new BasicTSLastAccessConverter();
+
+    protected final Stripe[] _stripes;
+
+    protected final long _flushIntervalMsecs;
+
+    protected final int _maxPending;
+
+    protected final Thread _flushThread;
+
+    /**
+     * Lock used for signalling flush thread
+     */
+    protected final Object _flushLock = new Object();
+
+    /**
+     * Lock used to prevent concurrent flushes
+     */
+    protected final Object _writeLock = new Object();
+
+    private final AtomicBoolean _active = new AtomicBoolean(true);
+
+    /**
+     * Timestamps drained from stripes by the flush in progress (if any),
+     * but not yet (all) written; kept visible for
+     * {@link #pendingAccessTime} until write completes.
+     */
+    protected volatile List<Map<StorableKey,PendingAccess>> _flushing = Collections.emptyList();
+
+    /*
+    /**********************************************************************
+    /* Metrics
+    /**********************************************************************
+     */
+
+    protected final AtomicInteger _pending = new AtomicInteger();
+
+    protected final AtomicLong _hits = new AtomicLong();
+    protected final AtomicLong _coalesced = new AtomicLong();
+    protected final AtomicLong _flushes = new AtomicLong();
+    protected final AtomicLong _flushedEntries = new AtomicLong();
+    protected final AtomicLong _failures = new AtomicLong();
+
+    /*
+    /**********************************************************************
+    /* Life-cycle
+    /**********************************************************************
+     */
+
+    public LastAccessBuffer(LastAccessStore<BasicTSKey,StoredEntry<BasicTSKey>,LastAccessUpdateMethod> store,
+            LastAccessBufferConfig config)
+    {
+        _lastAccessStore = store;
+        int count = 1;
+        while (count < config.stripes) {
+            count += count;
+        }
+        _stripes = new Stripe[count];
+        for (int i = 0; i < count; ++i) {
+            _stripes[i] = new Stripe();
+        }
+        _flushIntervalMsecs = Math.max(1L, config.flushInterval.getMillis());
+        _maxPending = Math.max(1, config.maxPendingEntries);
+
+        _flushThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    _processFlushes();
+                } finally {
+                    LOG.info("Last-access buffer flush thread ended.");
+                }
+            }
+        });
+        _flushThread.setName("LastAccessBuffer");
+        _flushThread.setDaemon(true);
+    }
+
+    @Override
+    public void start() {
+        _flushThread.start();
+    }
+
+    @Override
+    public void prepareForStop() {
+        // write whatever we have, while store is still open
+        flush();
+    }
+
+    @Override
+    public void stop()
+    {
+        _active.set(false);
+        _flushThread.interrupt();
+        flush();
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API
+    /**********************************************************************
+     */
+
+    /**
+     * Method called to record access to given entry; timestamp will be
+     * written to the last-access store during one of the next flushes,
+     * unless replaced by a later access before that.
+     */
+    public void recordAccess(StoredEntry<BasicTSKey> entry, long accessTime)
+    {
+        // coalesce by key of last-access entry, not entry key
+        final byte[] rawKey = _lastAccessConverter.createLastAccessedKey(entry.getKey(),
+                entry.getLastAccessUpdateMethod());
+        if (rawKey == null) {
+            return;
+        }
+        _hits.incrementAndGet();
+        final StorableKey key = new StorableKey(rawKey);
+        final Stripe stripe = _stripes[key.hashCode() & (_stripes.length - 1)];
+        boolean added;
+        synchronized (stripe) {
+            added = stripe.add(key, entry, accessTime);
+        }
+        if (added) {
+            if (_pending.incrementAndGet() >= _maxPending) {
+                synchronized (_flushLock) {
+                    _flushLock.notify();
+                }
+            }
+        } else {
+            _coalesced.incrementAndGet();
+        }
+    }
+
+    /**
+     * Method for finding the latest buffered (not yet written) access time
+     * for given entry, if any: needed by code that checks last-access
+     * timestamps, since the last-access store itself may not yet have it.
+     *
+     * @return Buffered last-access timestamp, if any; 0L if none
+     */
+    public long pendingAccessTime(BasicTSKey key, LastAccessUpdateMethod method)
+    {
+        final byte[] rawKey = _lastAccessConverter.createLastAccessedKey(key, method);
+        if (rawKey == null) {
+            return 0L;
+        }
+        final StorableKey accKey = new StorableKey(rawKey);
+        long result = 0L;
+        /* Order matters: stripe must be checked first. If flush drained it,
+         * drained entries were published in (or before) matching
+         * '_flushing' under the stripe lock, so they are visible below;
+         * whereas checking '_flushing' first could miss entries drained
+         * between the two checks.
+         */
+        final Stripe stripe = _stripes[accKey.hashCode() & (_stripes.length - 1)];
+        synchronized (stripe) {
+            PendingAccess acc = stripe.find(accKey);
+            if (acc != null) {
+                result = acc.accessTime;
+            }
+        }
+        // if no longer in '_flushing' either, flush has written it to the store
+        for (Map<StorableKey,PendingAccess> entries : _flushing) {
+            PendingAccess acc = entries.get(accKey);
+            if (acc != null) {
+                result = Math.max(result, acc.accessTime);
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Method for writing out all buffered timestamps.
+     *
+     * @return Number of timestamps written
+     */
+    public int flush()
+    {
+        synchronized (_writeLock) {
+            List<PendingAccess> batch = new ArrayList<PendingAccess>();
+            // drained timestamps must remain visible to readers until written
+            List<Map<StorableKey,PendingAccess>> drained = new CopyOnWriteArrayList<Map<StorableKey,PendingAccess>>();
+            _flushing = drained;
+            for (Stripe stripe : _stripes) {
+                Map<StorableKey,PendingAccess> entries;
+                synchronized (stripe) {
+                    entries = stripe.drain();
+                    if (entries != null) {
+                        drained.add(entries);
+                    }
+                }
+                if (entries != null) {
+                    batch.addAll(entries.values());
+                }
+            }
+            if (batch.isEmpty()) {
+                _flushing = Collections.emptyList();
+                return 0;
+            }
+            _pending.addAndGet(-batch.size());
+            // write in key order, for better locality
+            Collections.sort(batch);
+            int count = 0;
+            for (PendingAccess acc : batch) {
+                try {
+                    _lastAccessStore.updateLastAccess(acc.entry, acc.accessTime);
+                    ++count;
+                } catch (Exception e) {
+                    _failures.incrementAndGet();
+                    _throttledLogger.logWarn("Failed to update last-access time of entry {}: {}",
+                            acc.key, e.getMessage());
+                }
+            }
+            _flushing = Collections.emptyList();
+            _flushes.incrementAndGet();
+            _flushedEntries.addAndGet(count);
+            return count;
+        }
+    }
+
+    public LastAccessBufferMetrics metrics()
+    {
+        LastAccessBufferMetrics metrics = new LastAccessBufferMetrics();
+        metrics.hits = _hits.get();
+        metrics.coalesced = _coalesced.get();
+        metrics.flushes = _flushes.get();
+        metrics.flushedEntries = _flushedEntries.get();
+        metrics.failures = _failures.get();
+        metrics.pending = _pending.get();
+        return metrics;
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    protected void _processFlushes()
+    {
+        while (_active.get()) {
+            try {
+                synchronized (_flushLock) {
+                    if (_pending.get() < _maxPending) {
+                        _flushLock.wait(_flushIntervalMsecs);
+                    }
+                }
+            } catch (InterruptedException e) {
+                if (!_active.get()) {
+                    break;
+                }
+            }
+            try {
+                flush();
+            } catch (Exception e) { // should not occur, but let's not kill the thread
+                LOG.warn("Problem flushing last-access timestamps: {}", e.getMessage());
+            }
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    /**
+     * Part of buffer guarded by its own lock; buffered timestamps are kept
+     * in a map that is replaced when flushing.
+     */
+    protected static class Stripe
+    {
+        protected Map<StorableKey,PendingAccess> _entries;
+
+        /**
+         * @return True if a new entry was added; false if coalesced with existing one
+         */
+        public boolean add(StorableKey key, StoredEntry<BasicTSKey> entry, long accessTime)
+        {
+            if (_entries == null) {
+                _entries = new HashMap<StorableKey,PendingAccess>();
+            } else {
+                PendingAccess acc = _entries.get(key);
+                if (acc != null) {
+                    if (accessTime > acc.accessTime) {
+                        acc.entry = entry;
+                        acc.accessTime = accessTime;
+                    }
+                    return false;
+                }
+            }
+            _entries.put(key, new PendingAccess(key, entry, accessTime));
+            return true;
+        }
+
+        public PendingAccess find(StorableKey key) {
+            return (_entries == null) ? null : _entries.get(key);
+        }
+
+        public Map<StorableKey,PendingAccess> drain() {
+            Map<StorableKey,PendingAccess> result = _entries;
+            _entries = null;
+            return result;
+        }
+    }
+
+    protected static class PendingAccess implements Comparable<PendingAccess>
+    {
+        public final StorableKey key;
+
+        public StoredEntry<BasicTSKey> entry;
+
+        public long accessTime;
+
+        public PendingAccess(StorableKey key, StoredEntry<BasicTSKey> entry, long accessTime) {
+            this.key = key;
+            this.entry = entry;
+            this.accessTime = accessTime;
+        }
+
+        @Override
+        public int compareTo(PendingAccess other) {
+            return key.compareTo(other.key);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.fasterxml.transistore.service.lastaccess;
+
+/**
+ * Simple POJO for exposing state of a {@link LastAccessBuffer}
+ * as part of node metrics.
+ */
+public class LastAccessBufferMetrics
+{
+    /**
+     * Number of last-access updates recorded
+     */
+    public long hits;
+
+    /**
+     * Number of updates coalesced with an earlier, not yet written, update
+     */
+    public long coalesced;
+
+    /**
+     * Number of flushes of the buffer
+     */
+    public long flushes;
+
+    /**
+     * Number of timestamps written to the last-access store
+     */
+    public long flushedEntries;
+
+    /**
+     * Number of timestamps that failed to be written
+     */
+    public long failures;
+
+    /**
+     * Number of distinct timestamps buffered, waiting to be written
+     */
+    public int pending;
+}
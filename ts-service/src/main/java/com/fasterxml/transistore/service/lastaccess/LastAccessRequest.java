@@ -0,0 +1,38 @@
+package com.fasterxml.transistore.service.lastaccess;
+
+import java.util.*;
+
+import com.fasterxml.clustermate.api.msg.ExtensibleType;
+import com.fasterxml.storemate.shared.StorableKey;
+
+/**
+ * Simple value class used for containing information for
+ * a "last-access" request, with which a node asks its peers for
+ * last-access timestamps of entries it is about to remove.
+ */
+public class LastAccessRequest extends ExtensibleType
+{
+    public List<StorableKey> entries;
+
+    /**
+     * Last-access update methods (as returned by
+     * {@link com.fasterxml.storemate.store.lastaccess.LastAccessUpdateMethod#asInt})
+     * of entries, in the same order as {@link #entries}.
+     */
+    public List<Integer> methods;
+
+    public LastAccessRequest() { }
+
+    public void addEntry(StorableKey key, int method) {
+        if (entries == null) {
+            entries = new ArrayList<StorableKey>();
+            methods = new ArrayList<Integer>();
+        }
+        entries.add(key);
+        methods.add(method);
+    }
+
+    public int size() {
+        return (entries == null) ? 0 : entries.size();
+    }
+}
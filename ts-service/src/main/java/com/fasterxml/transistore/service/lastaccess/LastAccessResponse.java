@@ -0,0 +1,23 @@
+package com.fasterxml.transistore.service.lastaccess;
+
+import com.fasterxml.clustermate.api.msg.ExtensibleType;
+
+/**
+ * Response for a {@link LastAccessRequest}: contains last-access
+ * timestamps of requested entries, in the same order as in request;
+ * 0L for entries for which node has no last-access information.
+ */
+public class LastAccessResponse extends ExtensibleType
+{
+    public long[] lastAccess;
+
+    public LastAccessResponse() { }
+
+    public LastAccessResponse(long[] lastAccess) {
+        this.lastAccess = lastAccess;
+    }
+
+    public int size() {
+        return (lastAccess == null) ? 0 : lastAccess.length;
+    }
+}
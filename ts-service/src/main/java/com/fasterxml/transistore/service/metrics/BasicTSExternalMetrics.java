@@ -0,0 +1,51 @@
+package com.fasterxml.transistore.service.metrics;
+
+import java.util.List;
+
+import com.fasterxml.clustermate.service.metrics.ExternalMetrics;
+
+import com.fasterxml.transistore.service.cleanup.FileReclaimerMetrics;
+import com.fasterxml.transistore.service.cleanup.LocalCleanupMetrics;
+import com.fasterxml.transistore.service.lastaccess.LastAccessBufferMetrics;
+import com.fasterxml.transistore.service.store.FileTierMetrics;
+import com.fasterxml.transistore.service.throttle.ThrottlingMetrics;
+
+/**
+ * Extension of standard {@link ExternalMetrics} that adds TransiStore
+ * specific metrics.
+ */
+public class BasicTSExternalMetrics extends ExternalMetrics
+{
+    /**
+     * State of throttling of local database operations, if available.
+     */
+    public ThrottlingMetrics throttling;
+
+    /**
+     * State of buffering of last-access timestamp updates, if enabled.
+     */
+    public LastAccessBufferMetrics lastAccessBuffer;
+
+    /**
+     * State of asynchronous deletion of external files, if enabled.
+     */
+    public FileReclaimerMetrics fileReclaimer;
+
+    /**
+     * Progress of local entry clean up: current and recent runs.
+     */
+    public LocalCleanupMetrics localCleanup;
+
+    /**
+     * Disk usage of storage tiers of external files, as of the latest
+     * measurement.
+     */
+    public List<FileTierMetrics> fileTiers;
+
+    // for deserialization
+    protected BasicTSExternalMetrics() { }
+
+    public BasicTSExternalMetrics(long created) {
+        super(created);
+    }
+}
@@ -0,0 +1,141 @@
+package com.fasterxml.transistore.service.metrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import com.fasterxml.storemate.store.StoreOperationThrottler;
+import com.fasterxml.storemate.store.file.FileManager;
+
+import com.fasterxml.clustermate.service.SharedServiceStuff;
+import com.fasterxml.clustermate.service.Stores;
+import com.fasterxml.clustermate.service.metrics.AllOperationMetrics;
+import com.fasterxml.clustermate.service.metrics.BackgroundMetricsAccessor;
+import com.fasterxml.clustermate.service.metrics.ExternalMetrics;
+import com.fasterxml.clustermate.service.metrics.SerializedMetrics;
+
+import com.fasterxml.transistore.service.BasicTSOperationThrottler;
+import com.fasterxml.transistore.service.cfg.BasicTSFileManager;
+import com.fasterxml.transistore.service.cleanup.FileReclaimer;
+import com.fasterxml.transistore.service.cleanup.LocalCleanupHistory;
+import com.fasterxml.transistore.service.lastaccess.LastAccessBuffer;
+import com.fasterxml.transistore.service.store.BasicTSStores;
+import com.fasterxml.transistore.service.store.FileTier;
+import com.fasterxml.transistore.service.store.FileTierMetrics;
+
+/**
+ * Extended {@link BackgroundMetricsAccessor} that adds TransiStore-specific
+ * metrics (see {@link BasicTSExternalMetrics}) to the standard set.
+ */
+public class BasicTSMetricsAccessor extends BackgroundMetricsAccessor
+{
+    /**
+     * Base class writer is bound to {@link ExternalMetrics}, so we need
+     * our own to include additional properties.
+     */
+    protected final ObjectWriter _tsJsonWriter;
+
+    protected final BasicTSOperationThrottler _throttler;
+
+    protected LastAccessBuffer _lastAccessBuffer;
+
+    protected final FileReclaimer _fileReclaimer;
+
+    protected final LocalCleanupHistory _cleanupHistory;
+
+    protected final List<FileTier> _fileTiers;
+
+    public BasicTSMetricsAccessor(SharedServiceStuff stuff, Stores<?,?> stores,
+            AllOperationMetrics.Provider[] metricsProviders)
+    {
+        super(stuff, stores, metricsProviders);
+        StoreOperationThrottler t = stores.getEntryStore().getThrottler();
+        _throttler = (t instanceof BasicTSOperationThrottler) ? (BasicTSOperationThrottler) t : null;
+        FileManager files = stuff.getFileManager();
+        _fileTiers = (files instanceof BasicTSFileManager) ? ((BasicTSFileManager) files).getTiers()
+                : Collections.<FileTier>emptyList();
+        if (stores instanceof BasicTSStores) {
+            _fileReclaimer = ((BasicTSStores) stores).getFileReclaimer();
+            _cleanupHistory = ((BasicTSStores) stores).getCleanupHistory();
+        } else {
+            _fileReclaimer = null;
+            _cleanupHistory = null;
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+        _tsJsonWriter = mapper.writerWithType(BasicTSExternalMetrics.class)
+                .without(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+    }
+
+    /**
+     * Method for registering last-access buffer to include metrics of, if any.
+     */
+    public BasicTSMetricsAccessor setLastAccessBuffer(LastAccessBuffer buffer) {
+        _lastAccessBuffer = buffer;
+        return this;
+    }
+
+    @Override
+    public SerializedMetrics getMetrics(boolean forceRefresh, boolean full)
+        throws IOException
+    {
+        SerializedMetrics ser = _cachedMetrics.get();
+        final long now = _timeMaster.currentTimeMillis();
+        if (_shouldRefreshTS(forceRefresh, now, ser)) {
+            ExternalMetrics metrics = _gatherMetrics(now, full);
+            ser = new SerializedMetrics(_tsJsonWriter.getFactory(), now,
+                    _tsJsonWriter.writeValueAsBytes(metrics));
+            _cachedMetrics.set(ser);
+        }
+        return ser;
+    }
+
+    @Override
+    protected BasicTSExternalMetrics _gatherMetrics(long creationTime, boolean fullStats)
+    {
+        ExternalMetrics std = super._gatherMetrics(creationTime, fullStats);
+        BasicTSExternalMetrics metrics = new BasicTSExternalMetrics(creationTime);
+        metrics.stores = std.stores;
+        metrics.operations = std.operations;
+        if (_throttler != null) {
+            metrics.throttling = _throttler.getMetrics();
+        }
+        if (_lastAccessBuffer != null) {
+            metrics.lastAccessBuffer = _lastAccessBuffer.metrics();
+        }
+        if (_fileReclaimer != null) {
+            metrics.fileReclaimer = _fileReclaimer.metrics();
+        }
+        if (_cleanupHistory != null) {
+            metrics.localCleanup = _cleanupHistory.metrics(_timeMaster.realSystemTimeMillis());
+        }
+        if (!_fileTiers.isEmpty()) {
+            List<FileTierMetrics> tiers = new ArrayList<FileTierMetrics>(_fileTiers.size());
+            for (FileTier tier : _fileTiers) {
+                FileTierMetrics usage = tier.getUsage();
+                if (usage != null) {
+                    tiers.add(usage);
+                }
+            }
+            metrics.fileTiers = tiers;
+        }
+        return metrics;
+    }
+
+    // alas, base class method is private so need a copy
+    private static boolean _shouldRefreshTS(boolean forced, long now, SerializedMetrics metrics)
+    {
+        if (metrics == null) {
+            return true;
+        }
+        long wait = forced ? MINIMUM_MSECS_BETWEEN_RECALC : UPDATE_PERIOD_MSECS;
+        return now >= (metrics.created + wait);
+    }
+}
@@ -1,14 +1,36 @@
 package com.fasterxml.transistore.service.store;
 
+import java.io.IOException;
+import java.util.List;
+
+import org.skife.config.TimeSpan;
+
+import com.fasterxml.storemate.shared.ByteContainer;
+import com.fasterxml.storemate.store.Storable;
+import com.fasterxml.storemate.store.StoreException;
+import com.fasterxml.storemate.store.StoreOperationThrottler;
+import com.fasterxml.storemate.store.util.OperationDiagnostics;
+
 import com.fasterxml.clustermate.service.*;
 import com.fasterxml.clustermate.service.cluster.ClusterViewByServer;
 import com.fasterxml.clustermate.service.store.DeferredDeleter;
 import com.fasterxml.clustermate.service.store.StoreHandler;
 import com.fasterxml.clustermate.service.store.StoredEntry;
 
+import com.fasterxml.transistore.basic.BasicTSBatchResponse;
+import com.fasterxml.transistore.basic.BasicTSConstants;
 import com.fasterxml.transistore.basic.BasicTSKey;
 import com.fasterxml.transistore.basic.BasicTSListItem;
+import com.fasterxml.transistore.service.BasicTSEntryConverter;
+import com.fasterxml.transistore.service.BasicTSOperationThrottler;
 import com.fasterxml.transistore.service.TSLastAccess;
+import com.fasterxml.transistore.service.cfg.BasicTSServiceConfig;
+import com.fasterxml.transistore.service.cfg.BatchGetConfig;
+import com.fasterxml.transistore.service.lastaccess.LastAccessBuffer;
+import com.fasterxml.transistore.service.lastaccess.LastAccessRequest;
+import com.fasterxml.transistore.service.lastaccess.LastAccessResponse;
+import com.fasterxml.transistore.service.throttle.DeadlineExceededException;
+import com.fasterxml.transistore.service.throttle.ThrottlingContext;
 
 public class BasicTSStoreHandler extends StoreHandler<BasicTSKey,
     StoredEntry<BasicTSKey>, BasicTSListItem>
@@ -17,6 +39,18 @@ public class BasicTSStoreHandler extends StoreHandler<BasicTSKey,
      * Flag mostly used by tests to force updates of last-accessed time stamps.
      */
     protected boolean _defaultUpdateLastAccess = false;
+
+    /**
+     * Last-access update method to use when updating of last-access
+     * timestamps is enabled.
+     */
+    protected TSLastAccess _defaultLastAccessMethod = TSLastAccess.SIMPLE;
+
+    /**
+     * Buffer used for coalescing updates to last-access timestamps, if enabled;
+     * if not, updates are written directly.
+     */
+    protected final LastAccessBuffer _lastAccessBuffer;
     
     public BasicTSStoreHandler(SharedServiceStuff stuff,
             Stores<BasicTSKey, StoredEntry<BasicTSKey>> stores,
@@ -25,6 +59,83 @@ public class BasicTSStoreHandler extends StoreHandler<BasicTSKey,
     {
         super(stuff, stores, cluster);
         _defaultUpdateLastAccess = defaultUpdateLastAccess;
+        _lastAccessBuffer = constructLastAccessBuffer(stuff, stores);
+        // clean up needs to see buffered timestamps too
+        if (_lastAccessBuffer != null && (stores instanceof BasicTSStores)) {
+            ((BasicTSStores) stores).setLastAccessBuffer(_lastAccessBuffer);
+        }
+    }
+
+    /**
+     * Alternate constructor that allows specifying last-access update method
+     * to use (like {@link TSLastAccess#GROUPED}); {@link TSLastAccess#NONE}
+     * disables updating of last-access timestamps.
+     */
+    public BasicTSStoreHandler(SharedServiceStuff stuff,
+            Stores<BasicTSKey, StoredEntry<BasicTSKey>> stores,
+            ClusterViewByServer cluster,
+            TSLastAccess defaultLastAccessMethod)
+    {
+        this(stuff, stores, cluster, !defaultLastAccessMethod.meansNoUpdate());
+        if (_defaultUpdateLastAccess) {
+            _defaultLastAccessMethod = defaultLastAccessMethod;
+        }
+    }
+
+    protected LastAccessBuffer constructLastAccessBuffer(SharedServiceStuff stuff,
+            Stores<BasicTSKey, StoredEntry<BasicTSKey>> stores)
+    {
+        // Similar to DELETEs, better keep last-access updates synchronous for tests
+        if (stuff.isRunningTests() || (stores.getLastAccessStore() == null)
+                || !(stuff.getServiceConfig() instanceof BasicTSServiceConfig)) {
+            return null;
+        }
+        BasicTSServiceConfig config = (BasicTSServiceConfig) stuff.getServiceConfig();
+        if (!config.lastAccessBuffer.enabled) {
+            return null;
+        }
+        return new LastAccessBuffer(stores.getLastAccessStore(), config.lastAccessBuffer);
+    }
+
+    /*
+    /**********************************************************************
+    /* Life-cycle
+    /**********************************************************************
+     */
+
+    @Override
+    public void start() throws Exception
+    {
+        super.start();
+        if (_lastAccessBuffer != null) {
+            _lastAccessBuffer.start();
+        }
+    }
+
+    @Override
+    public void prepareForStop() throws Exception
+    {
+        if (_lastAccessBuffer != null) {
+            _lastAccessBuffer.prepareForStop();
+        }
+        super.prepareForStop();
+    }
+
+    @Override
+    public void stop() throws Exception
+    {
+        if (_lastAccessBuffer != null) {
+            _lastAccessBuffer.stop();
+        }
+        super.stop();
+    }
+
+    /**
+     * @return Buffer used for last-access updates, if any; null if updates
+     *    are written directly
+     */
+    public LastAccessBuffer getLastAccessBuffer() {
+        return _lastAccessBuffer;
     }
 
     @Override
@@ -53,11 +164,104 @@ public class BasicTSStoreHandler extends StoreHandler<BasicTSKey,
          *   overhead without benefits (for now)
          */
         if (_defaultUpdateLastAccess) {
-            return TSLastAccess.SIMPLE;
+            return _defaultLastAccessMethod;
         }
         return TSLastAccess.NONE;
     }
 
+    /*
+    /**********************************************************************
+    /* Entry access
+    /**********************************************************************
+     */
+
+    /**
+     * Method is overridden to obtain permit for reading external file (if
+     * entry has one) before response is committed: actual read is only
+     * done when streaming response, at which point rejection due to
+     * request deadline could not be reported as 503 any more.
+     */
+    @Override
+    public Storable findRawEntryForGet(BasicTSKey key, OperationDiagnostics diag)
+        throws IOException, StoreException
+    {
+        Storable raw = super.findRawEntryForGet(key, diag);
+        if ((raw != null) && raw.hasExternalData() && !raw.isDeleted()) {
+            StoreOperationThrottler throttler = _stores.getEntryStore().getThrottler();
+            if (throttler instanceof BasicTSOperationThrottler) {
+                ((BasicTSOperationThrottler) throttler).reserveFileRead(raw);
+            }
+        }
+        return raw;
+    }
+
+    /*
+    /**********************************************************************
+    /* Metadata for PUTs
+    /**********************************************************************
+     */
+
+    /**
+     * Method is overridden to make maximum TTL of the entry being stored
+     * available (via {@link ThrottlingContext}) to the file manager, for
+     * choosing storage tier for its external file, if any; as well as
+     * to store optional absolute expiration time
+     * (see {@link BasicTSConstants#TS_QUERY_PARAM_EXPIRES}).
+     */
+    @Override
+    protected ByteContainer constructPutMetadata(ServiceRequest request, BasicTSKey key,
+            long creationTime, TimeSpan minTTLSinceAccess, TimeSpan maxTTL)
+    {
+        if (maxTTL == null) {
+            maxTTL = findMaxTTLParameter(request, key);
+        }
+        final int maxTTLSecs = (maxTTL == null) ? findMaxTTLDefaultSecs(request, key)
+                : (int) (maxTTL.getMillis() / 1000L);
+        final long expirationTime = findExpirationTimeParameter(request, key);
+        ThrottlingContext ctxt = ThrottlingContext.current();
+        if (ctxt != null) {
+            long ttlSecs = maxTTLSecs;
+            if (expirationTime > 0L) {
+                ttlSecs = Math.min(ttlSecs, Math.max(0L, (expirationTime - creationTime) / 1000L));
+            }
+            ctxt.setMaxTTLSecs(ttlSecs);
+        }
+        if ((expirationTime <= 0L) || !(_entryConverter instanceof BasicTSEntryConverter)) {
+            return super.constructPutMetadata(request, key, creationTime, minTTLSinceAccess, maxTTL);
+        }
+        if (minTTLSinceAccess == null) {
+            minTTLSinceAccess = findMinTTLParameter(request, key);
+        }
+        final int minTTLSecs = (minTTLSinceAccess == null) ? findMinTTLDefaultSecs(request, key)
+                : (int) (minTTLSinceAccess.getMillis() / 1000L);
+        TSLastAccess lastAcc = _findLastAccessUpdateMethod(request, key);
+        return ((BasicTSEntryConverter) _entryConverter).createMetadata(creationTime,
+                ((lastAcc == null) ? 0 : lastAcc.asByte()),
+                minTTLSecs, maxTTLSecs, expirationTime);
+    }
+
+    /**
+     * Helper method for finding optional absolute expiration time passed with
+     * PUT request.
+     *
+     * @return Expiration time in milliseconds since epoch, if one passed;
+     *    0L if not
+     */
+    protected long findExpirationTimeParameter(ServiceRequest request, BasicTSKey key)
+    {
+        final String paramKey = BasicTSConstants.TS_QUERY_PARAM_EXPIRES;
+        String value = request.getQueryParameter(paramKey);
+        if (value == null || (value = value.trim()).isEmpty()) {
+            return 0L;
+        }
+        try {
+            return Math.max(0L, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for '"+paramKey+"': \""+value
+                    +"\": needs to be a timestamp (milliseconds since epoch)");
+        }
+    }
+
     /*
     /**********************************************************************
     /* Updates to last-accessed/updated info
@@ -89,19 +293,156 @@ public class BasicTSStoreHandler extends StoreHandler<BasicTSKey,
         }
     }
     
+    /*
+    /**********************************************************************
+    /* Access to last-accessed info by peers
+    /**********************************************************************
+     */
+
+    /**
+     * Method called to find local last-access timestamps for entries that a
+     * peer is considering to remove; 0L is returned for entries for which
+     * there is no last-access information (including case of no last-access
+     * store being configured). Timestamps still buffered are also considered.
+     */
+    public LastAccessResponse findLastAccessTimes(LastAccessRequest request)
+    {
+        final int count = request.size();
+        long[] result = new long[count];
+        if (_stores.getLastAccessStore() == null) {
+            return new LastAccessResponse(result);
+        }
+        for (int i = 0; i < count; ++i) {
+            TSLastAccess acc = TSLastAccess.valueOf(request.methods.get(i));
+            if (acc != null && !acc.meansNoUpdate()) {
+                BasicTSKey key = _keyConverter.rawToEntryKey(request.entries.get(i));
+                result[i] = _stores.getLastAccessStore().findLastAccessTime(key, acc);
+                // may also have a more recent access not yet flushed
+                if (_lastAccessBuffer != null) {
+                    result[i] = Math.max(result[i], _lastAccessBuffer.pendingAccessTime(key, acc));
+                }
+            }
+        }
+        return new LastAccessResponse(result);
+    }
+
+    /*
+    /**********************************************************************
+    /* Batch access
+    /**********************************************************************
+     */
+
+    /**
+     * Method called to find entries to include in response for a batch GET:
+     * entries are looked up one by one, in order, and included until size
+     * limits (see {@link BatchGetConfig}) are reached. Contents are only read
+     * when streaming the returned response content, one entry at a time.
+     * Failure to read an entry is reported in its item, so that client can
+     * retry it individually; only rejection due to request deadline
+     * (see {@link DeadlineExceededException}) is reported as an exception,
+     * since it applies to all remaining entries as well.
+     */
+    public BatchGetResponseContent getEntries(ServiceRequest request, List<BasicTSKey> keys,
+            OperationDiagnostics diag)
+        throws DeadlineExceededException
+    {
+        final BatchGetConfig config = (_serviceConfig instanceof BasicTSServiceConfig)
+                ? ((BasicTSServiceConfig) _serviceConfig).batchGet : new BatchGetConfig();
+        final long accessTime = _timeMaster.currentTimeMillis();
+        BatchGetResponseContent response = new BatchGetResponseContent(_objectMapper.getFactory(),
+                _fileManager, _stores.getEntryStore().getThrottler(), accessTime, keys.size());
+        long bytesLeft = config.maxResponseLength;
+        final ThrottlingContext ctxt = ThrottlingContext.current();
+
+        for (BasicTSKey key : keys) {
+            Storable rawEntry;
+            if (ctxt != null) { // to let throttler use partition id key has
+                ctxt.setEntryKey(key);
+            }
+            try {
+                rawEntry = findRawEntryForGet(key, diag);
+            } catch (DeadlineExceededException e) {
+                throw e;
+            } catch (IOException e) {
+                LOG.warn("Problem trying to read entry '{}' for batch GET: {}", key, e.getMessage());
+                response.addMissing(BasicTSBatchResponse.STATUS_ERROR);
+                continue;
+            } finally {
+                // reservation only verifies that read gets admitted; actual read done when streaming
+                _releaseFileReadPermit();
+            }
+            if (rawEntry == null || rawEntry.isDeleted()) {
+                response.addMissing(BasicTSBatchResponse.STATUS_NOT_FOUND);
+                continue;
+            }
+            final long length = rawEntry.getActualUncompressedLength();
+            if (length > config.maxEntryLength || length > bytesLeft) {
+                response.addMissing(BasicTSBatchResponse.STATUS_TOO_LARGE);
+                continue;
+            }
+            bytesLeft -= length;
+            _updateLastAccessed(request, _entryConverter.entryFromStorable(rawEntry), accessTime);
+            response.addEntry(rawEntry);
+        }
+        return response;
+    }
+
+    /*
+    /**********************************************************************
+    /* Error handling
+    /**********************************************************************
+     */
+
+    /**
+     * Rejections due to request deadline are expected under overload, and
+     * should be reported as such (503), without logging stack traces.
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    protected <OUT extends ServiceResponse> OUT _storeError(ServiceResponse response,
+            BasicTSKey key, IOException e)
+    {
+        if (e instanceof DeadlineExceededException) {
+            return (OUT) response.serverOverload()
+                    .setContentTypeText()
+                    .setEntity(e.getMessage());
+        }
+        return super._storeError(response, key, e);
+    }
+
     /*
     /**********************************************************************
     /* Internal methods
     /**********************************************************************
      */
     
+    /**
+     * Helper method for releasing file read permit reserved by
+     * {@link #findRawEntryForGet}, if any, when the read is not to be
+     * done using it.
+     */
+    private void _releaseFileReadPermit()
+    {
+        ThrottlingContext ctxt = ThrottlingContext.current();
+        if (ctxt != null) {
+            ThrottlingContext.Permit p = ctxt.takeFileReadPermit();
+            if (p != null) {
+                p.release();
+            }
+        }
+    }
+
     private void _updateLastAccessed(ServiceRequest request, 
             StoredEntry<BasicTSKey> entry, long accessTime)
     {
         BasicTSKey key = entry.getKey();
         TSLastAccess acc = _findLastAccessUpdateMethod(request, key);
         if (acc != null && !acc.meansNoUpdate()) {
-            _stores.getLastAccessStore().updateLastAccess(entry, accessTime);
+            if (_lastAccessBuffer != null) {
+                _lastAccessBuffer.recordAccess(entry, accessTime);
+            } else {
+                _stores.getLastAccessStore().updateLastAccess(entry, accessTime);
+            }
         }
     }
 }
@@ -1,6 +1,7 @@
 package com.fasterxml.transistore.service.store;
 
 import java.io.File;
+import java.io.IOException;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -8,15 +9,54 @@ import com.fasterxml.storemate.shared.IpAndPort;
 import com.fasterxml.storemate.shared.TimeMaster;
 import com.fasterxml.storemate.store.StorableStore;
 import com.fasterxml.storemate.store.state.NodeStateStore;
+import com.fasterxml.storemate.store.util.PartitionedWriteMutex;
 
 import com.fasterxml.clustermate.service.cfg.ServiceConfig;
 import com.fasterxml.clustermate.service.state.ActiveNodeState;
 import com.fasterxml.clustermate.service.store.*;
 
 import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.service.cleanup.CleanupState;
+import com.fasterxml.transistore.service.cleanup.ExpirationIndex;
+import com.fasterxml.transistore.service.cleanup.FileReclaimer;
+import com.fasterxml.transistore.service.cleanup.LocalCleanupHistory;
+import com.fasterxml.transistore.service.lastaccess.LastAccessBuffer;
 
 public class BasicTSStores extends StoresImpl<BasicTSKey, StoredEntry<BasicTSKey>>
 {
+    /**
+     * Write mutex used by the entry store, if known; needed by background
+     * tasks that need to rewrite entries directly.
+     */
+    protected PartitionedWriteMutex _writeMutex;
+
+    /**
+     * Index of expiration times of entries, if one is maintained.
+     */
+    protected ExpirationIndex _expirationIndex;
+
+    /**
+     * Store used for persisting progress of local entry cleanup, if any.
+     */
+    protected NodeStateStore<String, CleanupState> _cleanupStateStore;
+
+    /**
+     * Helper used for asynchronous deletion of external files of entries
+     * removed by clean up, if enabled.
+     */
+    protected FileReclaimer _fileReclaimer;
+
+    /**
+     * Statistics of recent local entry clean up runs, exposed as metrics.
+     */
+    protected LocalCleanupHistory _cleanupHistory;
+
+    /**
+     * Buffer for last-access timestamps not yet written to the last-access
+     * store, if buffering is enabled.
+     */
+    protected LastAccessBuffer _lastAccessBuffer;
+
     public BasicTSStores(ServiceConfig config, TimeMaster timeMaster, ObjectMapper jsonMapper,
             StoredEntryConverter<BasicTSKey, StoredEntry<BasicTSKey>,?> entryFactory,
             StorableStore entryStore,
@@ -37,14 +77,118 @@ public class BasicTSStores extends StoresImpl<BasicTSKey, StoredEntry<BasicTSKey
                 entryStore, nodeStates, remoteNodeStates, dbEnvRoot);
     }
 
+    /**
+     * Method for registering write mutex that the entry store uses; needs to
+     * be called by code that constructed the store, if it is to be made
+     * available via {@link #getWriteMutex()}.
+     */
+    public BasicTSStores setWriteMutex(PartitionedWriteMutex m) {
+        _writeMutex = m;
+        return this;
+    }
+
+    /**
+     * @return Write mutex used by the entry store, if known; null if not
+     */
+    public PartitionedWriteMutex getWriteMutex() {
+        return _writeMutex;
+    }
+
+    public BasicTSStores setExpirationIndex(ExpirationIndex index) {
+        _expirationIndex = index;
+        return this;
+    }
+
+    /**
+     * @return Index of expiration times of entries, if one is maintained;
+     *    null if not
+     */
+    public ExpirationIndex getExpirationIndex() {
+        return _expirationIndex;
+    }
+
+    public BasicTSStores setCleanupStateStore(NodeStateStore<String, CleanupState> store) {
+        _cleanupStateStore = store;
+        return this;
+    }
+
+    /**
+     * @return Store used for persisting progress of local entry cleanup,
+     *    if any; null if none
+     */
+    public NodeStateStore<String, CleanupState> getCleanupStateStore() {
+        return _cleanupStateStore;
+    }
+
+    public BasicTSStores setFileReclaimer(FileReclaimer r) {
+        _fileReclaimer = r;
+        return this;
+    }
+
+    /**
+     * @return Helper used for asynchronous deletion of external files, if
+     *    enabled; null if not
+     */
+    public FileReclaimer getFileReclaimer() {
+        return _fileReclaimer;
+    }
+
+    public BasicTSStores setCleanupHistory(LocalCleanupHistory h) {
+        _cleanupHistory = h;
+        return this;
+    }
+
+    /**
+     * @return Statistics of recent local entry clean up runs, if
+     *    kept; null if not
+     */
+    public LocalCleanupHistory getCleanupHistory() {
+        return _cleanupHistory;
+    }
+
+    public BasicTSStores setLastAccessBuffer(LastAccessBuffer b) {
+        _lastAccessBuffer = b;
+        return this;
+    }
+
+    /**
+     * @return Buffer for last-access timestamps not yet written to the
+     *    last-access store, if buffering is enabled; null if not
+     */
+    public LastAccessBuffer getLastAccessBuffer() {
+        return _lastAccessBuffer;
+    }
+
+    @Override
+    public void start() throws IOException {
+        super.start();
+        if (_fileReclaimer != null) {
+            _fileReclaimer.start();
+        }
+    }
+
     @Override
     protected boolean _openLocalStores(boolean log, boolean allowCreate, boolean writeAccess) {
         return true;
     }
 
     @Override
-    protected void _prepareToCloseLocalStores() { }
+    protected void _prepareToCloseLocalStores() {
+        if (_fileReclaimer != null) {
+            _fileReclaimer.prepareForStop();
+        }
+        if (_cleanupStateStore != null) {
+            _cleanupStateStore.prepareForStop();
+        }
+    }
 
     @Override
-    protected void _closeLocalStores() { }
+    protected void _closeLocalStores() {
+        if (_fileReclaimer != null) {
+            _fileReclaimer.stop();
+        }
+        if (_cleanupStateStore != null) {
+            _cleanupStateStore.stop();
+        }
+    }
 }
@@ -0,0 +1,36 @@
+package com.fasterxml.transistore.service.store;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.store.Storable;
+import com.fasterxml.storemate.store.StoreException;
+
+/**
+ * Interface implemented by {@link com.fasterxml.storemate.store.backend.StoreBackend}s
+ * that can delete multiple entries as a single transaction, to amortize
+ * cost of commits for bulk deletions (like ones done by clean up).
+ */
+public interface BatchDeletingBackend
+{
+    /**
+     * Method for checking whether {@link #deleteEntries} can be used; it may
+     * only be used if deletions are atomic (all or nothing).
+     */
+    public boolean canDeleteInBatches();
+
+    /**
+     * Method for deleting all entries with given keys, as a single transaction:
+     * either all existing entries are deleted, or, if an exception is thrown,
+     * none of them. Keys of entries that do not exist are skipped.
+     *<p>
+     * Note that caller is responsible for deleting external files of
+     * deleted entries, as well as for holding write locks for all keys
+     * (see {@link BatchWriteMutex}), since store is bypassed.
+     *
+     * @return Entries that were deleted
+     */
+    public List<Storable> deleteEntries(List<StorableKey> keys)
+        throws IOException, StoreException;
+}
@@ -0,0 +1,188 @@
+package com.fasterxml.transistore.service.store;
+
+import java.io.*;
+import java.util.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.shared.compress.Compressors;
+import com.fasterxml.storemate.store.FileOperationCallback;
+import com.fasterxml.storemate.store.Storable;
+import com.fasterxml.storemate.store.StoreOperationSource;
+import com.fasterxml.storemate.store.StoreOperationThrottler;
+import com.fasterxml.storemate.store.file.FileManager;
+
+import com.fasterxml.clustermate.service.msg.StreamingResponseContent;
+
+import com.fasterxml.transistore.basic.BasicTSBatchResponse;
+
+/**
+ * Helper class used for producing response for batch GETs: entries to
+ * include are looked up before response is committed, but their contents
+ * are only read when streaming response, one entry at a time, so that
+ * memory usage is bounded by the generator buffer instead of size of
+ * the whole response. Serialization is the same as that of
+ * {@link BasicTSBatchResponse}, with contents as base64-encoded JSON Strings.
+ */
+public class BatchGetResponseContent implements StreamingResponseContent
+{
+    private final static Logger LOG = LoggerFactory.getLogger(BatchGetResponseContent.class);
+
+    private final JsonFactory _jsonFactory;
+
+    private final FileManager _fileManager;
+
+    private final StoreOperationThrottler _throttler;
+
+    /**
+     * Timestamp to pass to throttler for file reads
+     */
+    private final long _accessTime;
+
+    private final List<Integer> _statuses;
+
+    /**
+     * Entries to include contents of; null for ones that are not included
+     */
+    private final List<Storable> _entries;
+
+    public BatchGetResponseContent(JsonFactory jsonFactory, FileManager fileManager,
+            StoreOperationThrottler throttler, long accessTime, int expSize)
+    {
+        _jsonFactory = jsonFactory;
+        _fileManager = fileManager;
+        _throttler = throttler;
+        _accessTime = accessTime;
+        _statuses = new ArrayList<Integer>(expSize);
+        _entries = new ArrayList<Storable>(expSize);
+    }
+
+    /**
+     * Method for adding entry whose contents are to be included.
+     */
+    public void addEntry(Storable rawEntry) {
+        _statuses.add(BasicTSBatchResponse.STATUS_OK);
+        _entries.add(rawEntry);
+    }
+
+    /**
+     * Method for adding item for an entry that is not included, with
+     * given status (one of <code>BasicTSBatchResponse.STATUS_xxx</code>).
+     */
+    public void addMissing(int status) {
+        _statuses.add(status);
+        _entries.add(null);
+    }
+
+    public int size() {
+        return _entries.size();
+    }
+
+    /*
+    /**********************************************************************
+    /* StreamingResponseContent impl
+    /**********************************************************************
+     */
+
+    @Override
+    public boolean hasFile() { return false; }
+
+    @Override
+    public boolean inline() { return false; }
+
+    @Override
+    public long getLength() {
+        // not known before contents are encoded
+        return -1L;
+    }
+
+    @Override
+    public void writeContent(OutputStream out) throws IOException
+    {
+        final JsonGenerator gen = _jsonFactory.createGenerator(out);
+        gen.writeStartObject();
+        gen.writeArrayFieldStart("entries");
+        for (int i = 0, end = _entries.size(); i < end; ++i) {
+            Storable rawEntry = _entries.get(i);
+            if (rawEntry == null) {
+                _writeItem(gen, _statuses.get(i));
+            } else if (rawEntry.hasExternalData()) {
+                _writeExternal(gen, rawEntry);
+            } else {
+                _writeInlined(gen, rawEntry);
+            }
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+        gen.close();
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    private void _writeItem(JsonGenerator gen, int status) throws IOException
+    {
+        gen.writeStartObject();
+        gen.writeNumberField("status", status);
+        gen.writeEndObject();
+    }
+
+    private void _writeInlined(JsonGenerator gen, Storable rawEntry) throws IOException
+    {
+        byte[] data = Compressors.uncompress(rawEntry.getInlinedData(), rawEntry.getCompression(),
+                (int) rawEntry.getActualUncompressedLength()).asBytes();
+        gen.writeStartObject();
+        gen.writeNumberField("status", BasicTSBatchResponse.STATUS_OK);
+        gen.writeFieldName("data");
+        gen.writeBinary(data);
+        gen.writeEndObject();
+    }
+
+    private void _writeExternal(final JsonGenerator gen, final Storable rawEntry) throws IOException
+    {
+        final File f = rawEntry.getExternalFile(_fileManager);
+        // file reads go through store throttler, same as for single-entry GETs
+        Boolean found = _throttler.performFileRead(StoreOperationSource.REQUEST,
+                _accessTime, rawEntry, f,
+                new FileOperationCallback<Boolean>() {
+            @Override
+            public Boolean perform(long operationTime, StorableKey key, Storable value,
+                    File externalFile) throws IOException
+            {
+                InputStream in;
+                try {
+                    in = new FileInputStream(externalFile);
+                } catch (FileNotFoundException e) {
+                    // may have been deleted by clean up; can still report it as failed
+                    return Boolean.FALSE;
+                }
+                try {
+                    in = Compressors.uncompressingStream(in, rawEntry.getCompression());
+                    gen.writeStartObject();
+                    gen.writeNumberField("status", BasicTSBatchResponse.STATUS_OK);
+                    gen.writeFieldName("data");
+                    // 'int' is fine, since entries included are limited in size
+                    gen.writeBinary(in, (int) rawEntry.getActualUncompressedLength());
+                    gen.writeEndObject();
+                } finally {
+                    try {
+                        in.close();
+                    } catch (IOException e) { }
+                }
+                return Boolean.TRUE;
+            }
+        });
+        if (!found.booleanValue()) {
+            LOG.warn("Missing file '{}' of entry '{}' for batch GET", f.getAbsolutePath(), rawEntry.getKey());
+            _writeItem(gen, BasicTSBatchResponse.STATUS_ERROR);
+        }
+    }
+}
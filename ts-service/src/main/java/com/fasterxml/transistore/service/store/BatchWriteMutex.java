@@ -0,0 +1,105 @@
+package com.fasterxml.transistore.service.store;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.store.StoreException;
+import com.fasterxml.storemate.store.util.PartitionedWriteMutex;
+
+/**
+ * {@link PartitionedWriteMutex} extension that can also lock partitions of
+ * all keys of a batch, for operations (like batch deletion done by clean up)
+ * that modify multiple entries at once, bypassing the store.
+ *<p>
+ * Partitions are locked in ascending order (and each only once), so that
+ * concurrent batch operations can not deadlock with each other; and since
+ * single-key writes only ever hold one partition lock, not with them either.
+ * Note that all single-key writes to locked partitions are blocked for
+ * the duration of a batch operation; callers should limit batches to keys
+ * of one (or few) partitions, as clean up does.
+ */
+public class BatchWriteMutex extends PartitionedWriteMutex
+{
+    /**
+     * Callback used for batch operations.
+     */
+    public interface BatchCallback<T> {
+        public T performWrite(List<StorableKey> keys) throws IOException, StoreException;
+    }
+
+    public BatchWriteMutex(int n, boolean fair) {
+        super(n, fair);
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API
+    /**********************************************************************
+     */
+
+    public <T> T partitionedWrite(long operationTime, List<StorableKey> keys, BatchCallback<T> cb)
+        throws IOException, StoreException
+    {
+        final int[] partitions = partitionsFor(keys);
+        int locked = 0;
+        try {
+            for (; locked < partitions.length; ++locked) {
+                final int partition = partitions[locked];
+                try {
+                    _semaphores[partition].acquire();
+                } catch (InterruptedException e) {
+                    throw new StoreException.Internal(keys.get(0), "partitionedWrite() Semaphore-wait for batch of "
+                            +keys.size()+" keys interrupted ("+e.getClass().getName()+"), message: "+e.getMessage(),
+                            e);
+                }
+                _inFlightStartTimes.set(partition, operationTime);
+            }
+            return cb.performWrite(keys);
+        } finally {
+            while (--locked >= 0) {
+                final int partition = partitions[locked];
+                _inFlightStartTimes.set(partition, 0L);
+                _semaphores[partition].release();
+            }
+        }
+    }
+
+    /**
+     * Method for finding distinct partitions that given keys map to,
+     * in ascending order.
+     */
+    public int[] partitionsFor(List<StorableKey> keys)
+    {
+        final boolean[] used = new boolean[_semaphores.length];
+        int count = 0;
+        for (StorableKey key : keys) {
+            final int partition = partitionFor(key);
+            if (!used[partition]) {
+                used[partition] = true;
+                ++count;
+            }
+        }
+        int[] result = new int[count];
+        for (int i = 0, ix = 0; ix < count; ++i) {
+            if (used[i]) {
+                result[ix++] = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Method for calculating partition for given key: must be kept in sync
+     * with (private) logic of {@link PartitionedWriteMutex}, so that both
+     * single-key and batch writes lock the same partition for a key.
+     */
+    public int partitionFor(StorableKey key)
+    {
+        int hash = key.hashCode();
+        hash ^= (int) (hash >>> 15);
+        hash += (int) (hash >>> 7);
+        return hash & _modulo;
+    }
+}
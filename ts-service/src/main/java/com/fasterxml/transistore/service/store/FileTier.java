@@ -0,0 +1,128 @@
+package com.fasterxml.transistore.service.store;
+
+import java.io.File;
+
+import com.fasterxml.storemate.store.file.FileManager;
+
+import com.fasterxml.transistore.service.cfg.FileTierConfig;
+
+/**
+ * Storage tier for external files: a data root with its own
+ * {@link FileManager}, and placement rules that determine which
+ * entries get stored in it.
+ */
+public class FileTier
+{
+    /**
+     * Name used for the tier of the default data root
+     */
+    public final static String DEFAULT_NAME = "default";
+
+    protected final String _name;
+
+    protected final File _dataRoot;
+
+    protected final FileManager _files;
+
+    protected final long _minTTLSecs, _maxTTLSecs;
+
+    protected final long _minSize, _maxSize;
+
+    /**
+     * Disk usage as calculated by the latest measurement, if any
+     */
+    protected volatile FileTierMetrics _usage;
+
+    public FileTier(String name, File dataRoot, FileManager files)
+    {
+        _name = name;
+        _dataRoot = dataRoot;
+        _files = files;
+        _minTTLSecs = -1L;
+        _maxTTLSecs = -1L;
+        _minSize = -1L;
+        _maxSize = -1L;
+    }
+
+    public FileTier(FileTierConfig config, FileManager files)
+    {
+        _name = config.name;
+        _dataRoot = config.dataRoot;
+        _files = files;
+        _minTTLSecs = (config.minEntryTTL == null) ? -1L : config.minEntryTTL.getMillis() / 1000L;
+        _maxTTLSecs = (config.maxEntryTTL == null) ? -1L : config.maxEntryTTL.getMillis() / 1000L;
+        _minSize = config.minSize;
+        _maxSize = config.maxSize;
+    }
+
+    /**
+     * Helper method for verifying that given tier name is valid.
+     *
+     * @throws IllegalArgumentException If name is not valid
+     */
+    public static String validateName(String name)
+    {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Missing 'name' for a file tier");
+        }
+        for (int i = 0, len = name.length(); i < len; ++i) {
+            char c = name.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '_' || c == '-')) {
+                throw new IllegalArgumentException("Invalid file tier name '"+name
+                        +"': may only contain ASCII letters, digits, underscores and hyphens");
+            }
+        }
+        return name;
+    }
+
+    /*
+    /**********************************************************************
+    /* Accessors
+    /**********************************************************************
+     */
+
+    public String getName() { return _name; }
+
+    public File getDataRoot() { return _dataRoot; }
+
+    public FileManager getFileManager() { return _files; }
+
+    public FileTierMetrics getUsage() { return _usage; }
+
+    public void setUsage(FileTierMetrics usage) {
+        _usage = usage;
+    }
+
+    /**
+     * Method for checking whether an entry with given properties is to be
+     * stored in this tier.
+     *
+     * @param maxTTLSecs Maximum TTL of the entry, in seconds, if known;
+     *    negative if not
+     * @param size Length of the content, if known; negative if not
+     */
+    public boolean matches(long maxTTLSecs, long size)
+    {
+        if (_minTTLSecs >= 0L || _maxTTLSecs >= 0L) {
+            if (maxTTLSecs < 0L
+                    || (_minTTLSecs >= 0L && maxTTLSecs < _minTTLSecs)
+                    || (_maxTTLSecs >= 0L && maxTTLSecs >= _maxTTLSecs)) {
+                return false;
+            }
+        }
+        if (_minSize >= 0L || _maxSize >= 0L) {
+            if (size < 0L
+                    || (_minSize >= 0L && size < _minSize)
+                    || (_maxSize >= 0L && size >= _maxSize)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "[FileTier '"+_name+"': "+_dataRoot+"]";
+    }
+}
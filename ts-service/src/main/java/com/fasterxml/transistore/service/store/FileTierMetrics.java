@@ -0,0 +1,27 @@
+package com.fasterxml.transistore.service.store;
+
+/**
+ * Simple POJO for exposing disk usage of a {@link FileTier} as part
+ * of node metrics. Space values are for the file system the data
+ * root of the tier is on.
+ */
+public class FileTierMetrics
+{
+    public String name;
+
+    public String dataRoot;
+
+    /**
+     * Time when values were calculated
+     */
+    public long measured;
+
+    public long totalBytes;
+
+    public long usedBytes;
+
+    /**
+     * Number of bytes available for use by the process
+     */
+    public long usableBytes;
+}
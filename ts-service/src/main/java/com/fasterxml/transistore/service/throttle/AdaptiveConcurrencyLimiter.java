@@ -0,0 +1,633 @@
+package com.fasterxml.transistore.service.throttle;
+
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.transistore.service.cfg.OperationThrottlingConfig;
+import com.fasterxml.transistore.service.cfg.PartitionThrottlingConfig;
+import com.fasterxml.transistore.service.cfg.ThrottlingConfig;
+
+/**
+ * Helper class used by {@link com.fasterxml.transistore.service.BasicTSOperationThrottler}
+ * to limit concurrency of local database operations of a single type.
+ *<p>
+ * Unlike a plain {@link java.util.concurrent.Semaphore}, limit is not fixed:
+ * latencies of completed operations are collected in windows, and at the end
+ * of each window limit is adjusted using simple AIMD logic:
+ *<ul>
+ * <li>If configured latency percentile exceeds target latency, limit is
+ *   multiplied by back-off ratio (multiplicative decrease)
+ *  </li>
+ * <li>Otherwise, if limit was reached during window, it is increased by one
+ *   (additive increase)
+ *  </li>
+ *</ul>
+ * Operations that can not proceed are queued; if fair queuing is enabled,
+ * separately for each partition, and released using start-time fair queuing
+ * (each queued operation gets a virtual start time based on the weight
+ * of its partition, and the one with lowest start time is released first),
+ * so that a single busy partition can not starve others. Partitions may
+ * also have caps on their concurrency. If fair queuing is disabled, all
+ * operations are queued in a single FIFO queue.
+ */
+public class AdaptiveConcurrencyLimiter
+{
+    /**
+     * Key used for operations that have no partition
+     */
+    protected final static String NO_PARTITION = "";
+
+    /**
+     * Name used for operations without partition, in metrics
+     */
+    public final static String NO_PARTITION_NAME = "(none)";
+
+    /**
+     * To keep memory usage bounded, we will only keep track of this many
+     * partitions; beyond which idle partitions without explicit
+     * configuration are dropped.
+     */
+    protected final static int MAX_TRACKED_PARTITIONS = 1000;
+
+    protected final String _desc;
+
+    protected final int _minLimit;
+
+    protected final int _maxLimit;
+
+    protected final long _targetLatencyNanos;
+
+    protected final double _percentile;
+
+    protected final double _backoffRatio;
+
+    protected final boolean _fairQueuing;
+
+    protected final PartitionThrottlingConfig _partitionDefaults;
+
+    protected final Map<String,PartitionThrottlingConfig> _partitionConfigs;
+
+    /**
+     * Lock used for all state changes; operations under lock are all
+     * very short.
+     */
+    protected final Object _lock = new Object();
+
+    /*
+    /**********************************************************************
+    /* State, guarded by '_lock'
+    /**********************************************************************
+     */
+
+    protected int _limit;
+
+    protected int _inFlight;
+
+    /**
+     * Per-partition state, for all partitions currently tracked
+     */
+    protected final Map<String,PartitionState> _partitions = new HashMap<String,PartitionState>();
+
+    /**
+     * Partitions that currently have queued operations
+     */
+    protected final ArrayList<PartitionState> _backlogged = new ArrayList<PartitionState>();
+
+    protected int _queuedCount;
+
+    /**
+     * Virtual time of the fair queuing: start time of the most recently
+     * released operation.
+     */
+    protected double _virtualTime;
+
+    /**
+     * Latency samples (in nanoseconds) of the current window
+     */
+    protected final long[] _samples;
+
+    protected int _sampleCount;
+
+    /**
+     * Whether limit was reached at any point during current window;
+     * used to avoid growing limit when there is no demand.
+     */
+    protected boolean _limitReachedInWindow;
+
+    /**
+     * Latency percentile calculated at the end of the last full window
+     */
+    protected long _lastPercentileNanos;
+
+    protected long _increaseCount, _decreaseCount;
+
+    /**
+     * Number of operations rejected because they could not get a permit
+     * before their deadline
+     */
+    protected long _rejectCount;
+
+    /*
+    /**********************************************************************
+    /* Life-cycle
+    /**********************************************************************
+     */
+
+    public AdaptiveConcurrencyLimiter(String desc, int initialLimit, int minLimit, int maxLimit,
+            long targetLatencyNanos, int windowSize, double percentile, double backoffRatio)
+    {
+        this(desc, initialLimit, minLimit, maxLimit, targetLatencyNanos, windowSize,
+                percentile, backoffRatio, true, new PartitionThrottlingConfig(),
+                Collections.<String,PartitionThrottlingConfig>emptyMap());
+    }
+
+    public AdaptiveConcurrencyLimiter(String desc, int initialLimit, int minLimit, int maxLimit,
+            long targetLatencyNanos, int windowSize, double percentile, double backoffRatio,
+            boolean fairQueuing, PartitionThrottlingConfig partitionDefaults,
+            Map<String,PartitionThrottlingConfig> partitionConfigs)
+    {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("Invalid limits for "+desc+": min "+minLimit+", max "+maxLimit);
+        }
+        _desc = desc;
+        _minLimit = minLimit;
+        _maxLimit = maxLimit;
+        _limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        _targetLatencyNanos = targetLatencyNanos;
+        _samples = new long[Math.max(1, windowSize)];
+        _percentile = percentile;
+        _backoffRatio = backoffRatio;
+        _fairQueuing = fairQueuing;
+        _partitionDefaults = partitionDefaults;
+        _partitionConfigs = (partitionConfigs == null)
+                ? Collections.<String,PartitionThrottlingConfig>emptyMap() : partitionConfigs;
+    }
+
+    /**
+     * Factory method for constructing limiter using configuration settings;
+     * if adaptive limits are disabled, limiter will use fixed limit.
+     */
+    public static AdaptiveConcurrencyLimiter construct(String desc,
+            ThrottlingConfig config, OperationThrottlingConfig opConfig)
+    {
+        int min = opConfig.minLimit;
+        int max = opConfig.maxLimit;
+        if (!config.adaptiveLimits) {
+            min = max = opConfig.initialLimit;
+        }
+        return new AdaptiveConcurrencyLimiter(desc, opConfig.initialLimit, min, max,
+                opConfig.targetLatency.getMillis() * 1000L * 1000L,
+                config.latencyWindow, config.latencyPercentile, config.backoffRatio,
+                config.partitionFairQueuing, config.partitionDefaults, config.partitions);
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API
+    /**********************************************************************
+     */
+
+    /**
+     * Method called to obtain a permit to proceed with an operation; will
+     * block until one is available.
+     */
+    public void acquire() throws InterruptedException {
+        acquire(null);
+    }
+
+    /**
+     * Method called to obtain a permit to proceed with an operation for
+     * given partition; will block until one is available.
+     *
+     * @param partition Partition of the operation, if any; null if none
+     */
+    public void acquire(String partition) throws InterruptedException {
+        _acquire(partition, false, 0L);
+    }
+
+    public boolean tryAcquire(long timeoutNanos) throws InterruptedException {
+        return tryAcquire(null, timeoutNanos);
+    }
+
+    /**
+     * Method called to obtain a permit to proceed with an operation, waiting
+     * at most specified amount of time.
+     *
+     * @param partition Partition of the operation, if any; null if none
+     * @param timeoutNanos Maximum time to wait for a permit; if zero or negative,
+     *   will not wait at all (nor get a permit)
+     *
+     * @return True if permit was obtained; false if not (due to timeout)
+     */
+    public boolean tryAcquire(String partition, long timeoutNanos) throws InterruptedException
+    {
+        if (timeoutNanos <= 0L) {
+            synchronized (_lock) {
+                ++_rejectCount;
+            }
+            return false;
+        }
+        return _acquire(partition, true, timeoutNanos);
+    }
+
+    public void release(long latencyNanos) {
+        release(null, latencyNanos);
+    }
+
+    /**
+     * Method called after operation that obtained a permit has completed;
+     * releases permit and records latency of the operation.
+     *
+     * @param partition Partition that was passed when obtaining permit
+     * @param latencyNanos Time operation took (excluding wait), in nanoseconds
+     */
+    public void release(String partition, long latencyNanos)
+    {
+        synchronized (_lock) {
+            _release(partition);
+            _samples[_sampleCount++] = latencyNanos;
+            if (_sampleCount == _samples.length) {
+                _adjustLimit();
+            }
+            _releaseQueued();
+        }
+    }
+
+    /**
+     * Method called after operation that obtained a permit has completed,
+     * when its latency should not affect the limit: used for background
+     * operations, whose latencies are not what limit is tuned for (and
+     * which would otherwise drive the limit down when they are slow).
+     */
+    public void releaseWithoutSample(String partition)
+    {
+        synchronized (_lock) {
+            _release(partition);
+            _releaseQueued();
+        }
+    }
+
+    public LimiterMetrics metrics()
+    {
+        LimiterMetrics m = new LimiterMetrics();
+        synchronized (_lock) {
+            m.limit = _limit;
+            m.inFlight = _inFlight;
+            m.queued = _queuedCount;
+            m.increases = _increaseCount;
+            m.decreases = _decreaseCount;
+            m.rejected = _rejectCount;
+            m.latencyPercentileMsecs = _lastPercentileNanos / (1000.0 * 1000.0);
+            if (_fairQueuing) {
+                for (PartitionState p : _partitions.values()) {
+                    if (p.hasActivity()) {
+                        if (m.partitions == null) {
+                            m.partitions = new TreeMap<String,PartitionMetrics>();
+                        }
+                        m.partitions.put(p.id.isEmpty() ? NO_PARTITION_NAME : p.id, p.metrics());
+                    }
+                }
+            }
+        }
+        m.minLimit = _minLimit;
+        m.maxLimit = _maxLimit;
+        m.targetLatencyMsecs = _targetLatencyNanos / (1000.0 * 1000.0);
+        return m;
+    }
+
+    public int getLimit() {
+        synchronized (_lock) {
+            return _limit;
+        }
+    }
+
+    public int getQueueLength() {
+        synchronized (_lock) {
+            return _queuedCount;
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods, acquiring permits
+    /**********************************************************************
+     */
+
+    protected boolean _acquire(String partition, boolean timed, long timeoutNanos)
+        throws InterruptedException
+    {
+        final long start = System.nanoTime();
+        final Waiter w;
+        synchronized (_lock) {
+            final PartitionState p = _partition(partition);
+            if (_queuedCount == 0 && _inFlight < _limit && p.hasRoom()) {
+                _markStarted(p);
+                return true;
+            }
+            if (_inFlight >= _limit) {
+                _limitReachedInWindow = true;
+            }
+            w = new Waiter(Thread.currentThread(), p, start);
+            _enqueue(w);
+            // may be able to proceed right away, if only blocked by earlier waiters
+            _releaseQueued();
+        }
+        while (!w.granted) {
+            if (timed) {
+                final long left = timeoutNanos - (System.nanoTime() - start);
+                if (left <= 0L) {
+                    if (_cancel(w)) {
+                        synchronized (_lock) {
+                            ++_rejectCount;
+                        }
+                        return false;
+                    }
+                    // had been granted just before timing out
+                    break;
+                }
+                LockSupport.parkNanos(this, left);
+            } else {
+                LockSupport.park(this);
+            }
+            if (Thread.interrupted()) {
+                if (_cancel(w)) {
+                    throw new InterruptedException();
+                }
+                // had been granted just before interrupt; must keep permit
+                Thread.currentThread().interrupt();
+            }
+        }
+        return true;
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods; all called with lock held
+    /**********************************************************************
+     */
+
+    protected void _release(String partition)
+    {
+        --_inFlight;
+        PartitionState p = _partitions.get(_partitionKey(partition));
+        if (p != null) {
+            --p.inFlight;
+        }
+    }
+
+    protected String _partitionKey(String partition) {
+        return (!_fairQueuing || partition == null) ? NO_PARTITION : partition;
+    }
+
+    protected PartitionState _partition(String partition)
+    {
+        final String key = _partitionKey(partition);
+        PartitionState p = _partitions.get(key);
+        if (p == null) {
+            if (_partitions.size() >= MAX_TRACKED_PARTITIONS) {
+                _dropIdlePartitions();
+            }
+            PartitionThrottlingConfig cfg = _partitionConfigs.get(key);
+            boolean configured = (cfg != null);
+            if (!configured) {
+                cfg = _partitionDefaults;
+            }
+            // no caps if we are not to consider partitions at all
+            int cap = _fairQueuing ? cfg.maxConcurrent : 0;
+            p = new PartitionState(key, (cfg.weight > 0.0) ? cfg.weight : 1.0, cap, configured);
+            _partitions.put(key, p);
+        }
+        return p;
+    }
+
+    protected void _dropIdlePartitions()
+    {
+        Iterator<PartitionState> it = _partitions.values().iterator();
+        while (it.hasNext()) {
+            PartitionState p = it.next();
+            if (!p.configured && p.isIdle()) {
+                it.remove();
+            }
+        }
+    }
+
+    protected void _enqueue(Waiter w)
+    {
+        final PartitionState p = w.partition;
+        // start tag is the later of current virtual time, and finish tag of
+        // previous operation of the same partition
+        w.startTag = Math.max(_virtualTime, p.lastFinishTag);
+        p.lastFinishTag = w.startTag + (1.0 / p.weight);
+        if (p.waiters.isEmpty()) {
+            _backlogged.add(p);
+        }
+        p.waiters.addLast(w);
+        ++_queuedCount;
+    }
+
+    protected void _markStarted(PartitionState p)
+    {
+        ++p.inFlight;
+        if (++_inFlight >= _limit) {
+            _limitReachedInWindow = true;
+        }
+    }
+
+    protected void _releaseQueued()
+    {
+        while (_inFlight < _limit && _queuedCount > 0) {
+            // find partition with lowest start tag, that is not at its cap
+            PartitionState next = null;
+            double lowest = 0.0;
+            for (int i = 0, end = _backlogged.size(); i < end; ++i) {
+                PartitionState p = _backlogged.get(i);
+                if (p.hasRoom()) {
+                    double tag = p.waiters.peekFirst().startTag;
+                    if (next == null || tag < lowest) {
+                        next = p;
+                        lowest = tag;
+                    }
+                }
+            }
+            if (next == null) { // all backlogged partitions at their caps
+                break;
+            }
+            Waiter w = next.waiters.pollFirst();
+            --_queuedCount;
+            if (next.waiters.isEmpty()) {
+                _backlogged.remove(next);
+            }
+            if (w.startTag > _virtualTime) {
+                _virtualTime = w.startTag;
+            }
+            _markStarted(next);
+            next.addWait(System.nanoTime() - w.queuedAt);
+            w.granted = true;
+            LockSupport.unpark(w.thread);
+        }
+    }
+
+    protected void _adjustLimit()
+    {
+        final int count = _sampleCount;
+        _sampleCount = 0;
+        Arrays.sort(_samples, 0, count);
+        int ix = (int) (_percentile * count);
+        if (ix >= count) {
+            ix = count-1;
+        }
+        final long latency = _samples[ix];
+        _lastPercentileNanos = latency;
+
+        int newLimit = _limit;
+        if (latency > _targetLatencyNanos) {
+            newLimit = Math.max(_minLimit, (int) (_limit * _backoffRatio));
+            // with small limits, rounding may prevent decrease; force one
+            if (newLimit == _limit && newLimit > _minLimit) {
+                --newLimit;
+            }
+        } else if (_limitReachedInWindow) {
+            newLimit = Math.min(_maxLimit, _limit + 1);
+        }
+        if (newLimit > _limit) {
+            ++_increaseCount;
+        } else if (newLimit < _limit) {
+            ++_decreaseCount;
+        }
+        _limit = newLimit;
+        _limitReachedInWindow = (_inFlight >= newLimit);
+    }
+
+    /**
+     * @return True if waiter was removed from queue; false if it had already
+     *   been granted a permit
+     */
+    protected boolean _cancel(Waiter w)
+    {
+        synchronized (_lock) {
+            if (w.granted) {
+                return false;
+            }
+            final PartitionState p = w.partition;
+            if (p.waiters.remove(w)) {
+                --_queuedCount;
+                if (p.waiters.isEmpty()) {
+                    _backlogged.remove(p);
+                }
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "[Limiter for "+_desc+", limit="+getLimit()+"]";
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper classes
+    /**********************************************************************
+     */
+
+    protected final static class Waiter
+    {
+        public final Thread thread;
+
+        public final PartitionState partition;
+
+        /**
+         * Time (System.nanoTime) when operation was queued
+         */
+        public final long queuedAt;
+
+        /**
+         * Virtual start time assigned for fair queuing
+         */
+        public double startTag;
+
+        public volatile boolean granted;
+
+        public Waiter(Thread t, PartitionState p, long queuedAt) {
+            thread = t;
+            partition = p;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    /**
+     * State of a single partition; all access guarded by the lock of
+     * the limiter.
+     */
+    protected final static class PartitionState
+    {
+        public final String id;
+
+        public final double weight;
+
+        /**
+         * Maximum concurrency for the partition; 0 for "no limit"
+         */
+        public final int maxConcurrent;
+
+        /**
+         * Whether partition has explicit configuration (and should never
+         * be dropped)
+         */
+        public final boolean configured;
+
+        public final ArrayDeque<Waiter> waiters = new ArrayDeque<Waiter>();
+
+        public int inFlight;
+
+        public double lastFinishTag;
+
+        public long waitCount;
+
+        public double avgWaitNanos;
+
+        public long maxWaitNanos;
+
+        public PartitionState(String id, double weight, int maxConcurrent, boolean configured)
+        {
+            this.id = id;
+            this.weight = weight;
+            this.maxConcurrent = maxConcurrent;
+            this.configured = configured;
+        }
+
+        public boolean hasRoom() {
+            return (maxConcurrent <= 0) || (inFlight < maxConcurrent);
+        }
+
+        public boolean isIdle() {
+            return (inFlight == 0) && waiters.isEmpty();
+        }
+
+        public boolean hasActivity() {
+            return !isIdle() || (waitCount > 0);
+        }
+
+        public void addWait(long nanos)
+        {
+            ++waitCount;
+            avgWaitNanos = (waitCount == 1) ? nanos : (0.9 * avgWaitNanos) + (0.1 * nanos);
+            if (nanos > maxWaitNanos) {
+                maxWaitNanos = nanos;
+            }
+        }
+
+        public PartitionMetrics metrics()
+        {
+            PartitionMetrics m = new PartitionMetrics();
+            m.weight = weight;
+            m.maxConcurrent = maxConcurrent;
+            m.inFlight = inFlight;
+            m.queued = waiters.size();
+            m.waits = waitCount;
+            m.avgWaitMsecs = avgWaitNanos / (1000.0 * 1000.0);
+            m.maxWaitMsecs = maxWaitNanos / (1000.0 * 1000.0);
+            return m;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.fasterxml.transistore.service.throttle;
+
+/**
+ * Concurrency limiter for operations of one type by background sources:
+ * limit is not fixed, but calculated from capacity of the matching
+ * client request throttling, and the current background share
+ * (see {@link BackgroundShareController}).
+ */
+public abstract class BackgroundLane
+{
+    protected final BackgroundShareController _controller;
+
+    protected int _active;
+
+    protected int _waiting;
+
+    protected BackgroundLane(BackgroundShareController controller) {
+        _controller = controller;
+    }
+
+    /**
+     * Method implemented to return full capacity (concurrency limit for client
+     * requests) that share of background operations is based on.
+     */
+    protected abstract int capacity();
+
+    /**
+     * Currently effective limit for background operations; at least 1.
+     */
+    public int limit() {
+        return Math.max(1, (int) (capacity() * _controller.getShare()));
+    }
+
+    public synchronized void acquire() throws InterruptedException
+    {
+        ++_waiting;
+        try {
+            while (_active >= limit()) {
+                wait();
+            }
+            ++_active;
+        } finally {
+            --_waiting;
+        }
+    }
+
+    public synchronized void release()
+    {
+        --_active;
+        notifyAll();
+    }
+
+    /**
+     * Method called when share has changed, so that waiting operations
+     * can check whether they may proceed.
+     */
+    public synchronized void limitChanged() {
+        notifyAll();
+    }
+
+    public synchronized BackgroundLaneMetrics metrics()
+    {
+        BackgroundLaneMetrics m = new BackgroundLaneMetrics();
+        m.limit = limit();
+        m.active = _active;
+        m.queued = _waiting;
+        return m;
+    }
+}
@@ -0,0 +1,14 @@
+package com.fasterxml.transistore.service.throttle;
+
+/**
+ * Simple POJO for exposing state of a {@link BackgroundLane}
+ * as part of node metrics.
+ */
+public class BackgroundLaneMetrics
+{
+    public int limit;
+
+    public int active;
+
+    public int queued;
+}
@@ -0,0 +1,28 @@
+package com.fasterxml.transistore.service.throttle;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Container for metrics on throttling of background operations.
+ */
+@JsonPropertyOrder({ "share", "foregroundLatencyPercentileMsecs", "increases", "decreases",
+    "GET", "PUT", "LIST", "FILES" })
+public class BackgroundMetrics
+{
+    /**
+     * Currently effective share of capacity for background operations
+     */
+    public double share;
+
+    /**
+     * Client request latency percentile calculated over the last full window
+     */
+    public double foregroundLatencyPercentileMsecs;
+
+    public long increases, decreases;
+
+    public BackgroundLaneMetrics GET;
+    public BackgroundLaneMetrics PUT;
+    public BackgroundLaneMetrics LIST;
+    public BackgroundLaneMetrics FILES;
+}
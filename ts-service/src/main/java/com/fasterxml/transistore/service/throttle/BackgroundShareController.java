@@ -0,0 +1,159 @@
+package com.fasterxml.transistore.service.throttle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.transistore.service.cfg.BackgroundThrottlingConfig;
+
+/**
+ * Helper class that keeps track of the share of capacity that operations
+ * by background sources (sync, cleanup) may use: latencies of client requests
+ * are collected in windows, and at the end of each window share is adjusted
+ * using AIMD logic: if configured latency percentile exceeds target, share
+ * is multiplied by back-off ratio; otherwise it is increased by a fixed
+ * amount, up to the configured maximum.
+ */
+public class BackgroundShareController
+{
+    protected final double _minShare, _maxShare;
+
+    protected final long _targetLatencyNanos;
+
+    protected final double _percentile;
+
+    protected final double _backoffRatio;
+
+    protected final double _increase;
+
+    protected final List<BackgroundLane> _lanes = new ArrayList<BackgroundLane>();
+
+    protected volatile double _share;
+
+    /*
+    /**********************************************************************
+    /* State, guarded by '_samples'
+    /**********************************************************************
+     */
+
+    protected final long[] _samples;
+
+    protected int _sampleCount;
+
+    protected long _lastPercentileNanos;
+
+    /**
+     * Timestamp of the end of the last complete window of samples
+     */
+    protected long _lastWindowEnded;
+
+    protected long _increaseCount, _decreaseCount;
+
+    public BackgroundShareController(BackgroundThrottlingConfig config)
+    {
+        _minShare = Math.max(0.0, config.minShare);
+        _maxShare = Math.max(_minShare, Math.min(1.0, config.maxShare));
+        _share = _maxShare;
+        _targetLatencyNanos = config.foregroundLatencyTarget.getMillis() * 1000L * 1000L;
+        _percentile = config.foregroundPercentile;
+        _backoffRatio = config.shareBackoffRatio;
+        _increase = config.shareIncrease;
+        _samples = new long[Math.max(1, config.latencyWindow)];
+    }
+
+    /**
+     * Method for registering a lane to notify when share changes
+     */
+    public void addLane(BackgroundLane lane) {
+        _lanes.add(lane);
+    }
+
+    public double getShare() {
+        return _share;
+    }
+
+    /**
+     * Accessor for the latency percentile of client requests, as calculated
+     * for the last complete window of samples.
+     */
+    public long getForegroundLatencyNanos() {
+        synchronized (_samples) {
+            return _lastPercentileNanos;
+        }
+    }
+
+    /**
+     * Accessor for the time (in milliseconds since epoch) the last complete
+     * window of samples ended; 0 if none yet.
+     */
+    public long getLastWindowEnded() {
+        synchronized (_samples) {
+            return _lastWindowEnded;
+        }
+    }
+
+    /**
+     * Method called with total latency (including wait) of a client
+     * request operation.
+     */
+    public void foregroundCompleted(long latencyNanos)
+    {
+        boolean changed = false;
+        synchronized (_samples) {
+            _samples[_sampleCount++] = latencyNanos;
+            if (_sampleCount == _samples.length) {
+                changed = _adjustShare();
+            }
+        }
+        if (changed) {
+            for (BackgroundLane lane : _lanes) {
+                lane.limitChanged();
+            }
+        }
+    }
+
+    public BackgroundMetrics metrics()
+    {
+        BackgroundMetrics m = new BackgroundMetrics();
+        m.share = _share;
+        synchronized (_samples) {
+            m.foregroundLatencyPercentileMsecs = _lastPercentileNanos / (1000.0 * 1000.0);
+            m.increases = _increaseCount;
+            m.decreases = _decreaseCount;
+        }
+        return m;
+    }
+
+    // called with lock held
+    protected boolean _adjustShare()
+    {
+        final int count = _sampleCount;
+        _sampleCount = 0;
+        Arrays.sort(_samples, 0, count);
+        int ix = (int) (_percentile * count);
+        if (ix >= count) {
+            ix = count-1;
+        }
+        final long latency = _samples[ix];
+        _lastPercentileNanos = latency;
+        _lastWindowEnded = System.currentTimeMillis();
+
+        final double old = _share;
+        double share;
+        if (latency > _targetLatencyNanos) {
+            share = Math.max(_minShare, old * _backoffRatio);
+        } else {
+            share = Math.min(_maxShare, old + _increase);
+        }
+        if (share == old) {
+            return false;
+        }
+        if (share > old) {
+            ++_increaseCount;
+        } else {
+            ++_decreaseCount;
+        }
+        _share = share;
+        return true;
+    }
+}
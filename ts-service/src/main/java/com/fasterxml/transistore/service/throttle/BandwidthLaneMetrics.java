@@ -0,0 +1,34 @@
+package com.fasterxml.transistore.service.throttle;
+
+/**
+ * Simple POJO for exposing state of a {@link BandwidthLimitedLane}
+ * as part of node metrics.
+ */
+public class BandwidthLaneMetrics
+{
+    public int maxConcurrent;
+
+    /**
+     * Number of transfers currently in progress
+     */
+    public int active;
+
+    /**
+     * Number of transfers waiting for admission
+     */
+    public int queued;
+
+    public long bytesPerSecond;
+
+    /**
+     * Current bandwidth budget; negative if in deficit
+     */
+    public long availableBytes;
+
+    /**
+     * Total number of bytes of transfers admitted
+     */
+    public long bytesAdmitted;
+
+    public long rejected;
+}
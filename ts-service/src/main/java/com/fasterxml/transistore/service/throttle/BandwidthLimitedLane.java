@@ -0,0 +1,158 @@
+package com.fasterxml.transistore.service.throttle;
+
+/**
+ * Helper class used by {@link com.fasterxml.transistore.service.BasicTSOperationThrottler}
+ * for throttling transfers of large files: instead of just counting operations,
+ * sizes of transfers are accounted against a bandwidth budget (token bucket,
+ * refilled at configured rate of bytes per second). A transfer is admitted
+ * when the budget is not in deficit and there is a free concurrency slot;
+ * its full size is then deducted, possibly leaving budget in deficit,
+ * which delays admission of following transfers.
+ *<p>
+ * Since large transfers are relatively rare and slow, simple monitor-based
+ * waiting is used; ordering of waiting transfers is not guaranteed.
+ */
+public class BandwidthLimitedLane
+{
+    protected final String _desc;
+
+    protected final int _maxConcurrent;
+
+    protected final double _bytesPerNano;
+
+    protected final long _maxBurst;
+
+    /*
+    /**********************************************************************
+    /* State, guarded by 'this'
+    /**********************************************************************
+     */
+
+    /**
+     * Current budget, in bytes; negative when in deficit
+     */
+    protected double _available;
+
+    protected long _lastRefill;
+
+    protected int _active;
+
+    protected int _waiting;
+
+    protected long _bytesAdmitted;
+
+    protected long _rejectCount;
+
+    public BandwidthLimitedLane(String desc, int maxConcurrent,
+            long bytesPerSecond, long maxBurst)
+    {
+        if (maxConcurrent < 1 || bytesPerSecond < 1L) {
+            throw new IllegalArgumentException("Invalid settings for "+desc+": max concurrent "
+                    +maxConcurrent+", bytes per second "+bytesPerSecond);
+        }
+        _desc = desc;
+        _maxConcurrent = maxConcurrent;
+        _bytesPerNano = bytesPerSecond / (1000.0 * 1000.0 * 1000.0);
+        _maxBurst = Math.max(0L, maxBurst);
+        _available = _maxBurst;
+        _lastRefill = System.nanoTime();
+    }
+
+    /*
+    /**********************************************************************
+    /* Public API
+    /**********************************************************************
+     */
+
+    /**
+     * Method called to get admission for a transfer of given size, waiting
+     * as long as necessary.
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        tryAcquire(bytes, Long.MAX_VALUE);
+    }
+
+    /**
+     * Method called to get admission for a transfer of given size, waiting
+     * at most specified amount of time.
+     *
+     * @return True if transfer may proceed; false if timeout expired first
+     */
+    public synchronized boolean tryAcquire(long bytes, long timeoutNanos)
+        throws InterruptedException
+    {
+        final long start = System.nanoTime();
+        ++_waiting;
+        try {
+            while (true) {
+                final long now = System.nanoTime();
+                _refill(now);
+                long waitNanos;
+                if (_active < _maxConcurrent) {
+                    if (_available >= 0.0) {
+                        _available -= bytes;
+                        ++_active;
+                        _bytesAdmitted += bytes;
+                        return true;
+                    }
+                    // need to wait until deficit has been paid back
+                    waitNanos = (long) (-_available / _bytesPerNano) + 1L;
+                } else { // wait for a release
+                    waitNanos = Long.MAX_VALUE;
+                }
+                final long left = timeoutNanos - (now - start);
+                if (left <= 0L) {
+                    ++_rejectCount;
+                    return false;
+                }
+                waitNanos = Math.min(waitNanos, left);
+                wait(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+            }
+        } finally {
+            --_waiting;
+        }
+    }
+
+    /**
+     * Method called once an admitted transfer has completed
+     */
+    public synchronized void release()
+    {
+        --_active;
+        notifyAll();
+    }
+
+    public synchronized BandwidthLaneMetrics metrics()
+    {
+        _refill(System.nanoTime());
+        BandwidthLaneMetrics m = new BandwidthLaneMetrics();
+        m.maxConcurrent = _maxConcurrent;
+        m.active = _active;
+        m.queued = _waiting;
+        m.bytesPerSecond = (long) (_bytesPerNano * 1000.0 * 1000.0 * 1000.0);
+        m.availableBytes = (long) _available;
+        m.bytesAdmitted = _bytesAdmitted;
+        m.rejected = _rejectCount;
+        return m;
+    }
+
+    @Override
+    public String toString() {
+        return "[Lane for "+_desc+"]";
+    }
+
+    /*
+    /**********************************************************************
+    /* Internal methods
+    /**********************************************************************
+     */
+
+    protected void _refill(long now)
+    {
+        final long elapsed = now - _lastRefill;
+        if (elapsed > 0L) {
+            _available = Math.min(_maxBurst, _available + (elapsed * _bytesPerNano));
+            _lastRefill = now;
+        }
+    }
+}
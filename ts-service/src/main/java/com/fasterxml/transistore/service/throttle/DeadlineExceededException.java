@@ -0,0 +1,18 @@
+package com.fasterxml.transistore.service.throttle;
+
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.store.StoreException;
+
+/**
+ * Exception thrown by {@link com.fasterxml.transistore.service.BasicTSOperationThrottler}
+ * when an operation could not proceed before deadline of the request:
+ * this is used for shedding load, and should result in a 503 response.
+ */
+public class DeadlineExceededException extends StoreException.ServerTimeout
+{
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException(StorableKey key, String msg) {
+        super(key, msg);
+    }
+}
@@ -0,0 +1,54 @@
+package com.fasterxml.transistore.service.throttle;
+
+import java.util.Map;
+
+/**
+ * Simple POJO for exposing state of a {@link AdaptiveConcurrencyLimiter}
+ * as part of node metrics.
+ */
+public class LimiterMetrics
+{
+    /**
+     * Currently effective concurrency limit
+     */
+    public int limit;
+
+    public int minLimit, maxLimit;
+
+    /**
+     * Number of operations currently being executed
+     */
+    public int inFlight;
+
+    /**
+     * Number of operations waiting for a permit
+     */
+    public int queued;
+
+    /**
+     * Latency target used for adjusting limit
+     */
+    public double targetLatencyMsecs;
+
+    /**
+     * Latency percentile calculated over the last full sample window
+     */
+    public double latencyPercentileMsecs;
+
+    /**
+     * Number of times limit has been increased and decreased, respectively.
+     */
+    public long increases, decreases;
+
+    /**
+     * Number of operations rejected because their deadline passed before
+     * they could proceed.
+     */
+    public long rejected;
+
+    /**
+     * Queuing state of partitions that have had activity, if fair queuing
+     * between partitions is enabled.
+     */
+    public Map<String,PartitionMetrics> partitions;
+}
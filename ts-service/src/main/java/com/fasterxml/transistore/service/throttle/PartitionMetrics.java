@@ -0,0 +1,32 @@
+package com.fasterxml.transistore.service.throttle;
+
+/**
+ * Simple POJO for exposing per-partition state of
+ * {@link AdaptiveConcurrencyLimiter} as part of node metrics.
+ */
+public class PartitionMetrics
+{
+    public double weight;
+
+    /**
+     * Concurrency cap of the partition, if any (0 if none)
+     */
+    public int maxConcurrent;
+
+    public int inFlight;
+
+    /**
+     * Number of operations of the partition currently queued
+     */
+    public int queued;
+
+    /**
+     * Number of operations of the partition that have had to wait
+     */
+    public long waits;
+
+    /**
+     * Smoothed average and maximum of wait times of queued operations
+     */
+    public double avgWaitMsecs, maxWaitMsecs;
+}
@@ -0,0 +1,30 @@
+package com.fasterxml.transistore.service.throttle;
+
+/**
+ * Simple POJO for exposing state of
+ * {@link com.fasterxml.transistore.service.ReadWriteOperationPrioritizer}
+ * as part of node metrics.
+ */
+public class PrioritizerMetrics
+{
+    public int activeReads, activeWrites;
+
+    public int queuedReads, queuedWrites;
+
+    /**
+     * Share of queued operations released as reads (0.0 - 1.0); changes
+     * over time if auto-tuning is enabled.
+     */
+    public double readShare;
+
+    /**
+     * Smoothed average of time queued operations have waited
+     */
+    public double avgReadWaitMsecs, avgWriteWaitMsecs;
+
+    /**
+     * Number of operations rejected because their deadline passed before
+     * they could proceed.
+     */
+    public long rejectedReads, rejectedWrites;
+}
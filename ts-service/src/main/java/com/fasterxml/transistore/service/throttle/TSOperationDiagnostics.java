@@ -0,0 +1,32 @@
+package com.fasterxml.transistore.service.throttle;
+
+import com.fasterxml.storemate.store.util.OperationDiagnostics;
+
+/**
+ * TransiStore-specific extension of {@link OperationDiagnostics}, used to
+ * additionally record time spent queued by throttler, separately from
+ * actual database and file system access.
+ */
+public class TSOperationDiagnostics extends OperationDiagnostics
+{
+    /**
+     * Accumulated time spent waiting for throttler to let operations proceed
+     */
+    protected long _queueTime;
+
+    public TSOperationDiagnostics(long nanoStart) {
+        super(nanoStart);
+    }
+
+    public void addQueueTime(long nanos) {
+        _queueTime += nanos;
+    }
+
+    public boolean hasQueueTime() {
+        return (_queueTime > 0L);
+    }
+
+    public long getQueueTime() {
+        return _queueTime;
+    }
+}
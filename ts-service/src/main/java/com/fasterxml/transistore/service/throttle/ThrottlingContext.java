@@ -0,0 +1,176 @@
+package com.fasterxml.transistore.service.throttle;
+
+import com.fasterxml.transistore.basic.BasicTSKey;
+
+/**
+ * Per-request state that front-end (servlet) binds to the handling thread,
+ * to be used by {@link com.fasterxml.transistore.service.BasicTSOperationThrottler}:
+ * since throttler is called by the store, without access to request,
+ * thread-local binding is needed to pass deadline of the request, as well as
+ * diagnostics object for recording time spent waiting in queues.
+ */
+public class ThrottlingContext
+{
+    private final static ThreadLocal<ThrottlingContext> _current = new ThreadLocal<ThrottlingContext>();
+
+    /**
+     * Deadline for the request, as {@link System#nanoTime} value, if
+     * {@link #_hasDeadline} is true.
+     */
+    protected final long _deadlineNanos;
+
+    protected final boolean _hasDeadline;
+
+    protected final TSOperationDiagnostics _diagnostics;
+
+    /**
+     * Length of request content, if known (as declared by request);
+     * -1 if not known.
+     */
+    protected long _contentLength = -1L;
+
+    /**
+     * Maximum TTL (in seconds) of the entry being stored, if known; used
+     * for choosing storage tier for its file. -1 if not known.
+     */
+    protected long _maxTTLSecs = -1L;
+
+    /**
+     * Flag set if an operation was rejected due to its deadline
+     */
+    protected boolean _rejected;
+
+    /**
+     * Permit for a file read obtained ahead of the read itself (see
+     * {@link com.fasterxml.transistore.service.BasicTSOperationThrottler#reserveFileRead}),
+     * to be used by the next file read done by this thread, if any.
+     */
+    protected Permit _fileReadPermit;
+
+    /**
+     * Key of the entry being accessed, if known; used for passing
+     * partition id it may have already decoded (and memoized) to throttler,
+     * to avoid decoding it from raw key again.
+     */
+    protected BasicTSKey _entryKey;
+
+    protected ThrottlingContext(boolean hasDeadline, long deadlineNanos,
+            TSOperationDiagnostics diag)
+    {
+        _hasDeadline = hasDeadline;
+        _deadlineNanos = deadlineNanos;
+        _diagnostics = diag;
+    }
+
+    /**
+     * Method called to bind a new context for the current thread.
+     *
+     * @param timeoutMsecs Maximum time request may take, in milliseconds,
+     *    if known; 0 or negative value to indicate that there is no
+     *    request-specific deadline
+     * @param diag Diagnostics object to update with queuing times, if any
+     */
+    public static ThrottlingContext bind(long timeoutMsecs, TSOperationDiagnostics diag)
+    {
+        ThrottlingContext ctxt;
+        if (timeoutMsecs > 0L) {
+            ctxt = new ThrottlingContext(true, System.nanoTime() + (timeoutMsecs * 1000L * 1000L), diag);
+        } else {
+            ctxt = new ThrottlingContext(false, 0L, diag);
+        }
+        _current.set(ctxt);
+        return ctxt;
+    }
+
+    /**
+     * @return Context bound to the current thread, if any; null if none
+     */
+    public static ThrottlingContext current() {
+        return _current.get();
+    }
+
+    /**
+     * Method called to unbind context of the current thread; also releases
+     * file read permit that was reserved but not used, if any.
+     */
+    public static void unbind() {
+        ThrottlingContext ctxt = _current.get();
+        if (ctxt != null) {
+            Permit p = ctxt.takeFileReadPermit();
+            if (p != null) {
+                p.release();
+            }
+            _current.remove();
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Accessors, mutators
+    /**********************************************************************
+     */
+
+    public boolean hasDeadline() { return _hasDeadline; }
+
+    public long getDeadlineNanos() { return _deadlineNanos; }
+
+    public TSOperationDiagnostics getDiagnostics() { return _diagnostics; }
+
+    public boolean wasRejected() { return _rejected; }
+
+    public long getContentLength() { return _contentLength; }
+
+    public void setContentLength(long l) {
+        _contentLength = l;
+    }
+
+    public long getMaxTTLSecs() { return _maxTTLSecs; }
+
+    public void setMaxTTLSecs(long secs) {
+        _maxTTLSecs = secs;
+    }
+
+    public BasicTSKey getEntryKey() { return _entryKey; }
+
+    public void setEntryKey(BasicTSKey key) {
+        _entryKey = key;
+    }
+
+    public void markRejected() {
+        _rejected = true;
+    }
+
+    public void addQueueTime(long nanos) {
+        if (_diagnostics != null) {
+            _diagnostics.addQueueTime(nanos);
+        }
+    }
+
+    public void setFileReadPermit(Permit p) {
+        _fileReadPermit = p;
+    }
+
+    /**
+     * Method for taking reserved file read permit, if any: caller becomes
+     * responsible for releasing it.
+     */
+    public Permit takeFileReadPermit() {
+        Permit p = _fileReadPermit;
+        _fileReadPermit = null;
+        return p;
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper types
+    /**********************************************************************
+     */
+
+    /**
+     * Permit obtained from a throttler, to be released once the operation
+     * it was obtained for completes.
+     */
+    public interface Permit {
+        public void release();
+    }
+}
@@ -0,0 +1,19 @@
+package com.fasterxml.transistore.service.throttle;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Container for metrics that
+ * {@link com.fasterxml.transistore.service.BasicTSOperationThrottler}
+ * exposes via node metrics end point.
+ */
+@JsonPropertyOrder({ "GET", "PUT", "LIST", "FILES", "LARGE_FILES", "BACKGROUND" })
+public class ThrottlingMetrics
+{
+    public LimiterMetrics GET;
+    public LimiterMetrics PUT;
+    public LimiterMetrics LIST;
+    public PrioritizerMetrics FILES;
+    public BandwidthLaneMetrics LARGE_FILES;
+    public BackgroundMetrics BACKGROUND;
+}
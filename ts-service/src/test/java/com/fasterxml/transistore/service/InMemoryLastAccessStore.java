@@ -0,0 +1,74 @@
+package com.fasterxml.transistore.service;
+
+import java.util.*;
+
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.store.backend.BackendStats;
+import com.fasterxml.storemate.store.backend.BackendStatsConfig;
+import com.fasterxml.storemate.store.backend.IterationResult;
+import com.fasterxml.storemate.store.lastaccess.EntryLastAccessed;
+import com.fasterxml.storemate.store.lastaccess.LastAccessStore;
+import com.fasterxml.storemate.store.lastaccess.LastAccessUpdateMethod;
+
+import com.fasterxml.clustermate.service.store.StoredEntry;
+
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.service.lastaccess.BasicTSLastAccessConverter;
+
+/**
+ * Simple in-memory {@link LastAccessStore} for unit tests; also keeps track
+ * of order in which updates were made.
+ */
+public class InMemoryLastAccessStore
+    extends LastAccessStore<BasicTSKey,StoredEntry<BasicTSKey>,LastAccessUpdateMethod>
+{
+    protected final BasicTSLastAccessConverter _converter = new BasicTSLastAccessConverter();
+
+    public final Map<StorableKey,Long> timestamps = new HashMap<StorableKey,Long>();
+
+    public final List<StorableKey> updates = new ArrayList<StorableKey>();
+
+    @Override public void prepareForStop() { }
+    @Override public void stop() { }
+    @Override public boolean isClosed() { return false; }
+    @Override public boolean hasEfficientEntryCount() { return true; }
+    @Override public long getEntryCount() { return timestamps.size(); }
+    @Override public BackendStats getEntryStatistics(BackendStatsConfig config) { return null; }
+
+    @Override
+    public EntryLastAccessed findLastAccessEntry(BasicTSKey key, LastAccessUpdateMethod method) {
+        Long ts = timestamps.get(_key(key, method));
+        return (ts == null) ? null : new EntryLastAccessed(ts.longValue(), 0L, method.asByte());
+    }
+
+    @Override
+    public EntryLastAccessed findLastAccessEntry(StoredEntry<BasicTSKey> entry) {
+        return findLastAccessEntry(entry.getKey(), entry.getLastAccessUpdateMethod());
+    }
+
+    @Override
+    public void updateLastAccess(StoredEntry<BasicTSKey> entry, long timestamp) {
+        StorableKey key = _key(entry.getKey(), entry.getLastAccessUpdateMethod());
+        timestamps.put(key, timestamp);
+        updates.add(key);
+    }
+
+    @Override
+    public boolean removeLastAccess(BasicTSKey key, LastAccessUpdateMethod method, long timestamp) {
+        return timestamps.remove(_key(key, method)) != null;
+    }
+
+    @Override
+    public boolean removeLastAccess(StorableKey rawKey) {
+        return timestamps.remove(rawKey) != null;
+    }
+
+    @Override
+    public IterationResult scanEntries(LastAccessIterationCallback cb) {
+        throw new UnsupportedOperationException();
+    }
+
+    private StorableKey _key(BasicTSKey key, LastAccessUpdateMethod method) {
+        return new StorableKey(_converter.createLastAccessedKey(key, method));
+    }
+}
@@ -0,0 +1,168 @@
+package com.fasterxml.transistore.service;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import com.fasterxml.transistore.service.cfg.PartitionThrottlingConfig;
+import com.fasterxml.transistore.service.throttle.AdaptiveConcurrencyLimiter;
+
+public class TestAdaptiveLimiter extends TestCase
+{
+    private final static long MSECS = 1000L * 1000L;
+
+    public void testDecreaseOnSlowOperations() throws Exception
+    {
+        // limit 8, bounds [2, 16]; target 10 msecs; window of 4 samples
+        AdaptiveConcurrencyLimiter lim = new AdaptiveConcurrencyLimiter("test",
+                8, 2, 16, 10 * MSECS, 4, 0.9, 0.5);
+        for (int i = 0; i < 4; ++i) {
+            lim.acquire();
+            lim.release(50 * MSECS);
+        }
+        assertEquals(4, lim.getLimit());
+        for (int i = 0; i < 8; ++i) {
+            lim.acquire();
+            lim.release(50 * MSECS);
+        }
+        // can not go below minimum
+        assertEquals(2, lim.getLimit());
+        assertEquals(2, lim.metrics().decreases);
+    }
+
+    public void testIncreaseOnlyWhenLimitReached() throws Exception
+    {
+        AdaptiveConcurrencyLimiter lim = new AdaptiveConcurrencyLimiter("test",
+                2, 1, 3, 10 * MSECS, 2, 0.9, 0.5);
+        // fast, but only one concurrent op: no need to grow
+        for (int i = 0; i < 4; ++i) {
+            lim.acquire();
+            lim.release(MSECS);
+        }
+        assertEquals(2, lim.getLimit());
+
+        // but when limit is reached, grow by one
+        lim.acquire();
+        lim.acquire();
+        lim.release(MSECS);
+        lim.release(MSECS);
+        assertEquals(3, lim.getLimit());
+        assertEquals(1, lim.metrics().increases);
+    }
+
+    public void testReleaseWithoutSample() throws Exception
+    {
+        AdaptiveConcurrencyLimiter lim = new AdaptiveConcurrencyLimiter("test",
+                8, 2, 16, 10 * MSECS, 4, 0.9, 0.5);
+        // background operations do not count, no matter how many
+        for (int i = 0; i < 8; ++i) {
+            lim.acquire();
+            lim.releaseWithoutSample(null);
+        }
+        assertEquals(8, lim.getLimit());
+        assertEquals(0, lim.metrics().inFlight);
+        // nor do they fill the window: need full window of real samples
+        for (int i = 0; i < 3; ++i) {
+            lim.acquire();
+            lim.release(50 * MSECS);
+        }
+        assertEquals(8, lim.getLimit());
+        lim.acquire();
+        lim.release(50 * MSECS);
+        assertEquals(4, lim.getLimit());
+    }
+
+    public void testQueuedOperationReleased() throws Exception
+    {
+        final AdaptiveConcurrencyLimiter lim = new AdaptiveConcurrencyLimiter("test",
+                1, 1, 1, 10 * MSECS, 100, 0.9, 0.5);
+        lim.acquire();
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    lim.acquire();
+                    lim.release(MSECS);
+                } catch (InterruptedException e) { }
+            }
+        });
+        t.start();
+        // wait for the other thread to get queued
+        for (int i = 0; i < 100 && lim.getQueueLength() == 0; ++i) {
+            Thread.sleep(10L);
+        }
+        assertEquals(1, lim.getQueueLength());
+        lim.release(MSECS);
+        t.join(2000L);
+        assertFalse(t.isAlive());
+        assertEquals(0, lim.metrics().inFlight);
+    }
+
+    public void testTimedAcquire() throws Exception
+    {
+        AdaptiveConcurrencyLimiter lim = new AdaptiveConcurrencyLimiter("test",
+                1, 1, 1, 10 * MSECS, 100, 0.9, 0.5);
+        assertTrue(lim.tryAcquire(10 * MSECS));
+        // no permits left: must time out, and not be left queued
+        assertFalse(lim.tryAcquire(10 * MSECS));
+        assertEquals(0, lim.getQueueLength());
+        // and deadline already passed: rejected right away
+        assertFalse(lim.tryAcquire(0L));
+        assertEquals(2L, lim.metrics().rejected);
+        lim.release(MSECS);
+        assertTrue(lim.tryAcquire(10 * MSECS));
+        lim.release(MSECS);
+        assertEquals(0, lim.metrics().inFlight);
+    }
+
+    public void testFairQueuingBetweenPartitions() throws Exception
+    {
+        final AdaptiveConcurrencyLimiter lim = new AdaptiveConcurrencyLimiter("test",
+                1, 1, 1, 10 * MSECS, 100, 0.9, 0.5);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        lim.acquire("x");
+        List<Thread> threads = new ArrayList<Thread>();
+        // three operations from busy partition, then one from another one
+        for (String id : new String[] { "a1", "a2", "a3", "b1" }) {
+            final String name = id;
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        lim.acquire(name.substring(0, 1));
+                        order.add(name);
+                        lim.release(name.substring(0, 1), MSECS);
+                    } catch (InterruptedException e) { }
+                }
+            });
+            t.start();
+            threads.add(t);
+            for (int i = 0; i < 100 && lim.getQueueLength() < threads.size(); ++i) {
+                Thread.sleep(10L);
+            }
+        }
+        assertEquals(4, lim.getQueueLength());
+        assertEquals(4, lim.metrics().partitions.get("a").queued
+                + lim.metrics().partitions.get("b").queued);
+        lim.release("x", MSECS);
+        for (Thread t : threads) {
+            t.join(2000L);
+        }
+        // "b" should not need to wait for all of "a" operations
+        assertEquals(Arrays.asList("a1", "b1", "a2", "a3"), order);
+    }
+
+    public void testPartitionCap() throws Exception
+    {
+        AdaptiveConcurrencyLimiter lim = new AdaptiveConcurrencyLimiter("test",
+                4, 4, 4, 10 * MSECS, 100, 0.9, 0.5,
+                true, new PartitionThrottlingConfig(1.0, 0),
+                Collections.singletonMap("c", new PartitionThrottlingConfig(1.0, 1)));
+        assertTrue(lim.tryAcquire("c", 10 * MSECS));
+        assertFalse(lim.tryAcquire("c", 10 * MSECS));
+        assertTrue(lim.tryAcquire("d", 10 * MSECS));
+        assertTrue(lim.tryAcquire("d", 10 * MSECS));
+        lim.release("c", MSECS);
+        assertTrue(lim.tryAcquire("c", 10 * MSECS));
+    }
+}
@@ -0,0 +1,49 @@
+package com.fasterxml.transistore.service;
+
+import junit.framework.TestCase;
+
+import org.skife.config.TimeSpan;
+
+import com.fasterxml.transistore.service.cfg.BackgroundThrottlingConfig;
+import com.fasterxml.transistore.service.throttle.BackgroundLane;
+import com.fasterxml.transistore.service.throttle.BackgroundShareController;
+
+public class TestBackgroundShare extends TestCase
+{
+    private final static long MSECS = 1000L * 1000L;
+
+    public void testShareAdjustment() throws Exception
+    {
+        BackgroundThrottlingConfig config = new BackgroundThrottlingConfig();
+        config.maxShare = 0.5;
+        config.minShare = 0.1;
+        config.latencyWindow = 10;
+        config.foregroundLatencyTarget = new TimeSpan("50ms");
+        BackgroundShareController ctrl = new BackgroundShareController(config);
+        BackgroundLane lane = new BackgroundLane(ctrl) {
+            @Override
+            protected int capacity() {
+                return 10;
+            }
+        };
+        ctrl.addLane(lane);
+        assertEquals(5, lane.limit());
+
+        // slow foreground requests: share should go down, to minimum
+        for (int i = 0; i < 30; ++i) {
+            ctrl.foregroundCompleted(200 * MSECS);
+        }
+        assertEquals(0.1, ctrl.getShare(), 0.001);
+        assertEquals(1, lane.limit());
+
+        // and then gradually back up
+        for (int i = 0; i < 10; ++i) {
+            ctrl.foregroundCompleted(MSECS);
+        }
+        assertEquals(0.15, ctrl.getShare(), 0.001);
+        for (int i = 0; i < 200; ++i) {
+            ctrl.foregroundCompleted(MSECS);
+        }
+        assertEquals(0.5, ctrl.getShare(), 0.001);
+    }
+}
@@ -0,0 +1,34 @@
+package com.fasterxml.transistore.service;
+
+import junit.framework.TestCase;
+
+import com.fasterxml.transistore.service.throttle.BandwidthLimitedLane;
+
+public class TestBandwidthLane extends TestCase
+{
+    private final static long MSECS = 1000L * 1000L;
+
+    public void testBudget() throws Exception
+    {
+        // 1 MB/sec, burst of 100 kB
+        BandwidthLimitedLane lane = new BandwidthLimitedLane("test", 4, 1000L * 1000L, 100L * 1000L);
+        // first one fine, using burst and going in deficit
+        assertTrue(lane.tryAcquire(500L * 1000L, 10 * MSECS));
+        lane.release();
+        // but then need to wait for about 400 msecs
+        assertFalse(lane.tryAcquire(1000L, 50 * MSECS));
+        assertEquals(1L, lane.metrics().rejected);
+        assertTrue(lane.tryAcquire(1000L, 2000 * MSECS));
+        lane.release();
+        assertEquals(0, lane.metrics().active);
+    }
+
+    public void testConcurrency() throws Exception
+    {
+        BandwidthLimitedLane lane = new BandwidthLimitedLane("test", 1, 1000L * 1000L * 1000L, 1000L * 1000L);
+        assertTrue(lane.tryAcquire(1000L, 10 * MSECS));
+        assertFalse(lane.tryAcquire(1000L, 10 * MSECS));
+        lane.release();
+        assertTrue(lane.tryAcquire(1000L, 10 * MSECS));
+    }
+}
@@ -0,0 +1,88 @@
+package com.fasterxml.transistore.service;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.store.StoreException;
+import com.fasterxml.storemate.store.util.PartitionedWriteMutex;
+
+import com.fasterxml.transistore.service.store.BatchWriteMutex;
+
+public class TestBatchWriteMutex extends TestCase
+{
+    public void testDistinctPartitions()
+    {
+        BatchWriteMutex mutex = new BatchWriteMutex(4, false);
+        List<StorableKey> keys = _keys(40);
+        int[] partitions = mutex.partitionsFor(keys);
+        // with 40 keys and 4 partitions, some must share a partition
+        assertTrue(partitions.length <= 4);
+        for (int i = 1; i < partitions.length; ++i) {
+            assertTrue(partitions[i-1] < partitions[i]);
+        }
+        for (StorableKey key : keys) {
+            assertTrue(Arrays.binarySearch(partitions, mutex.partitionFor(key)) >= 0);
+        }
+    }
+
+    public void testBatchBlocksSingleWrites() throws Exception
+    {
+        final BatchWriteMutex mutex = new BatchWriteMutex(16, false);
+        final List<StorableKey> keys = _keys(40);
+        final CountDownLatch batchLocked = new CountDownLatch(1);
+        final CountDownLatch singleDone = new CountDownLatch(1);
+        final AtomicBoolean singleDuringBatch = new AtomicBoolean(false);
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    batchLocked.await();
+                    mutex.partitionedWrite(1L, keys.get(7), new PartitionedWriteMutex.Callback<Void>() {
+                        @Override
+                        public Void performWrite(StorableKey key) {
+                            singleDone.countDown();
+                            return null;
+                        }
+                    });
+                } catch (Exception e) {
+                    fail("Unexpected exception: "+e);
+                }
+            }
+        });
+        writer.start();
+
+        // note: keys that share partitions must not block each other within batch
+        mutex.partitionedWrite(1L, keys, new BatchWriteMutex.BatchCallback<Void>() {
+            @Override
+            public Void performWrite(List<StorableKey> lockedKeys) throws IOException, StoreException {
+                assertEquals(mutex.partitionsFor(lockedKeys).length, mutex.getInFlightWritesCount());
+                batchLocked.countDown();
+                try {
+                    singleDuringBatch.set(singleDone.await(100L, TimeUnit.MILLISECONDS));
+                } catch (InterruptedException e) { }
+                return null;
+            }
+        });
+        assertFalse("Single-key write should be blocked by batch", singleDuringBatch.get());
+        // but proceed once batch completes
+        assertTrue(singleDone.await(5L, TimeUnit.SECONDS));
+        writer.join();
+        assertEquals(0, mutex.getInFlightWritesCount());
+    }
+
+    private List<StorableKey> _keys(int count)
+    {
+        List<StorableKey> keys = new ArrayList<StorableKey>();
+        for (int i = 0; i < count; ++i) {
+            keys.add(new StorableKey(("key"+i).getBytes()));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,46 @@
+package com.fasterxml.transistore.service;
+
+import junit.framework.TestCase;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.fasterxml.storemate.shared.StorableKey;
+
+import com.fasterxml.transistore.service.cleanup.CleanupSegment;
+import com.fasterxml.transistore.service.cleanup.CleanupState;
+
+public class TestCleanupSegment extends TestCase
+{
+    public void testResumeFromState() throws Exception
+    {
+        CleanupSegment segment = new CleanupSegment(100L, 200L);
+        assertFalse(segment.processedAlready(100L, key("a")));
+        segment.processed(150L, key("m"));
+        assertTrue(segment.processedAlready(120L, key("z")));
+        assertTrue(segment.processedAlready(150L, key("a")));
+        assertTrue(segment.processedAlready(150L, key("m")));
+        assertFalse(segment.processedAlready(150L, key("n")));
+        assertFalse(segment.processedAlready(151L, key("a")));
+
+        // and state must survive round-trip via JSON
+        ObjectMapper mapper = new ObjectMapper();
+        CleanupState state = new CleanupState(1000L, 2);
+        state.segments.add(segment.asState());
+        state = mapper.readValue(mapper.writeValueAsBytes(state), CleanupState.class);
+        assertEquals(1000L, state.started);
+        assertEquals(2, state.runs);
+        assertEquals(1, state.segments.size());
+
+        CleanupSegment resumed = new CleanupSegment(state.segments.get(0));
+        assertEquals(100L, resumed.getStartTime());
+        assertEquals(200L, resumed.getEndTime());
+        assertEquals(150L, resumed.getCheckpoint());
+        assertFalse(resumed.isCompleted());
+        assertTrue(resumed.processedAlready(150L, key("m")));
+        assertFalse(resumed.processedAlready(150L, key("n")));
+    }
+
+    private StorableKey key(String str) {
+        return new StorableKey(str.getBytes());
+    }
+}
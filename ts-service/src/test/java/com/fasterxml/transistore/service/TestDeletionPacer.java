@@ -0,0 +1,116 @@
+package com.fasterxml.transistore.service;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+import org.skife.config.TimeSpan;
+
+import com.fasterxml.transistore.service.cfg.BackgroundThrottlingConfig;
+import com.fasterxml.transistore.service.cfg.DeletionThrottlingConfig;
+import com.fasterxml.transistore.service.cleanup.CleanupRateLimiter;
+import com.fasterxml.transistore.service.cleanup.DeletionPacer;
+import com.fasterxml.transistore.service.throttle.BackgroundShareController;
+
+public class TestDeletionPacer extends TestCase
+{
+    private final static long MSECS = 1000L * 1000L;
+
+    public void testCommitTimeFeedback() throws Exception
+    {
+        DeletionThrottlingConfig config = new DeletionThrottlingConfig();
+        config.initialBatchSize = 400;
+        config.minBatchSize = 100;
+        config.maxBatchSize = 1000;
+        config.commitTimeTarget = new TimeSpan("5ms");
+        DeletionPacer pacer = new DeletionPacer(config, null);
+        assertEquals(400, pacer.batchSize());
+
+        // slow commits: batches shrink, breaks grow
+        pacer.batchCompleted(100, 100 * 20 * MSECS);
+        assertEquals(200, pacer.batchSize());
+        assertEquals(0.5, pacer.breakRatio(), 0.001);
+        pacer.batchCompleted(100, 100 * 20 * MSECS);
+        pacer.batchCompleted(100, 100 * 20 * MSECS);
+        assertEquals(100, pacer.batchSize());
+
+        // fast ones: back up, to maximum
+        for (int i = 0; i < 50; ++i) {
+            pacer.batchCompleted(100, 100 * MSECS);
+        }
+        assertEquals(1000, pacer.batchSize());
+        assertEquals(config.minBreakRatio, pacer.breakRatio(), 0.001);
+        // but breaks are still within bounds
+        assertEquals(20L, pacer.breakMsecs(10L));
+        assertEquals(500L, pacer.breakMsecs(1000L * 1000L));
+    }
+
+    public void testForegroundFeedback() throws Exception
+    {
+        BackgroundThrottlingConfig bgConfig = new BackgroundThrottlingConfig();
+        bgConfig.latencyWindow = 10;
+        BackgroundShareController ctrl = new BackgroundShareController(bgConfig);
+        DeletionThrottlingConfig config = new DeletionThrottlingConfig();
+        config.foregroundLatencyTarget = new TimeSpan("50ms");
+        DeletionPacer pacer = new DeletionPacer(config, ctrl);
+
+        // no client requests seen yet; fast commits mean we can speed up
+        pacer.batchCompleted(10, 10 * MSECS);
+        assertEquals(625, pacer.batchSize());
+
+        for (int i = 0; i < 10; ++i) {
+            ctrl.foregroundCompleted(200 * MSECS);
+        }
+        pacer.batchCompleted(10, 10 * MSECS);
+        assertEquals(312, pacer.batchSize());
+    }
+
+    public void testOffPeakWindows() throws Exception
+    {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        int[] windows = DeletionPacer.parseWindows(Arrays.asList("01:00-05:30", "22:00-00:30"));
+        assertEquals(4, windows.length);
+        final long HOUR = 3600L * 1000L;
+        final long day = 10000L * 24L * HOUR;
+
+        assertFalse(DeletionPacer.isOffPeak(windows, utc, day + HOUR - 1L));
+        assertTrue(DeletionPacer.isOffPeak(windows, utc, day + HOUR));
+        assertTrue(DeletionPacer.isOffPeak(windows, utc, day + 5 * HOUR + 29 * 60000L));
+        assertFalse(DeletionPacer.isOffPeak(windows, utc, day + 5 * HOUR + 30 * 60000L));
+        assertFalse(DeletionPacer.isOffPeak(windows, utc, day + 12 * HOUR));
+        // spanning midnight
+        assertTrue(DeletionPacer.isOffPeak(windows, utc, day + 23 * HOUR));
+        assertTrue(DeletionPacer.isOffPeak(windows, utc, day + 10 * 60000L));
+
+        try {
+            DeletionPacer.parseWindows(Arrays.asList("1am-5am"));
+            fail("Should not pass");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("1am"));
+        }
+
+        // and if within window, no breaks, max batch size
+        DeletionThrottlingConfig config = new DeletionThrottlingConfig();
+        config.offPeakWindows = Arrays.asList("00:00-24:00");
+        DeletionPacer pacer = new DeletionPacer(config, null);
+        assertTrue(pacer.isOffPeak());
+        assertEquals(config.maxBatchSize, pacer.batchSize());
+        assertEquals(0L, pacer.breakMsecs(1000L));
+    }
+
+    public void testSharedRateLimit() throws Exception
+    {
+        // 1000 entries per second, so 1 msec per entry
+        CleanupRateLimiter limiter = new CleanupRateLimiter(1000);
+        // up to a second worth of entries is allowed as a burst
+        assertEquals(0L, limiter.reserve(600));
+        assertEquals(0L, limiter.reserve(300));
+        // but after that, callers (from any thread) need to wait
+        limiter.reserve(100);
+        limiter.reserve(100);
+        long wait = limiter.reserve(100);
+        assertTrue("Should wait about 100 msecs, was "+(wait / MSECS), wait > 90 * MSECS);
+        assertTrue("Should wait about 100 msecs, was "+(wait / MSECS), wait <= 100 * MSECS);
+    }
+}
@@ -49,4 +49,97 @@ public class TestEntryMetadata extends TestCase
         assertEquals(Integer.MAX_VALUE/2, entry.getMinTTLSinceAccessSecs());
         assertEquals(Integer.MAX_VALUE/5, entry.getMaxTTLSecs());
     }
+
+    public void testMetadataCursor()
+    {
+        BasicTSEntryConverter f = new BasicTSEntryConverter(BasicTSKeyConverter.defaultInstance());
+        long creationTime = 0x1234567887654321L;
+        byte[] raw = f.createMetadata(creationTime,
+                TSLastAccess.SIMPLE.asByte(), Integer.MAX_VALUE, Integer.MAX_VALUE / 3).asBytes();
+        BasicTSMetadataCursor cursor = f.metadataCursor();
+        f.decodeMetadata(null, raw, 0, raw.length, cursor);
+        assertEquals(Long.toHexString(creationTime), Long.toHexString(cursor.getCreationTime()));
+        assertEquals(TSLastAccess.SIMPLE, cursor.getLastAccessUpdateMethod());
+        assertEquals(Integer.MAX_VALUE, cursor.getMinTTLSinceAccessSecs());
+        assertEquals(Integer.MAX_VALUE/3, cursor.getMaxTTLSecs());
+        assertTrue(cursor.usesLastAccessTime());
+
+        // and cursor must be reusable
+        raw = f.createMetadata(1000L, TSLastAccess.NONE.asByte(), 10, 20).asBytes();
+        f.decodeMetadata(null, raw, 0, raw.length, cursor);
+        assertEquals(1000L, cursor.getCreationTime());
+        assertEquals(TSLastAccess.NONE, cursor.getLastAccessUpdateMethod());
+        assertFalse(cursor.usesLastAccessTime());
+        assertFalse(cursor.hasExceededMaxTTL(20999L));
+        assertTrue(cursor.hasExceededMaxTTL(21000L));
+    }
+
+    public void testEntryMetadataV2()
+    {
+        BasicTSEntryConverter f = new BasicTSEntryConverter(BasicTSKeyConverter.defaultInstance(), 2);
+        // first: something typical; should be much more compact than v1
+        long creationTime = System.currentTimeMillis();
+        byte[] raw = f.createMetadata(creationTime,
+                TSLastAccess.SIMPLE.asByte(), 3600, 3600).asBytes();
+        assertTrue(raw.length < BasicTSEntryConverter.METADATA_LENGTH);
+        assertEquals(BasicTSEntryConverter.V_METADATA_VERSION_2, raw[0]);
+        StoredEntry<?> entry = f.entryFromStorable(null, null, raw, 0, raw.length);
+        assertEquals(creationTime, entry.getCreationTime());
+        assertEquals(TSLastAccess.SIMPLE, entry.getLastAccessUpdateMethod());
+        assertEquals(3600, entry.getMinTTLSinceAccessSecs());
+        assertEquals(3600, entry.getMaxTTLSecs());
+
+        // then edge cases: times before epoch, max TTLs
+        creationTime = 0x1234567887654321L;
+        raw = f.createMetadata(creationTime,
+                TSLastAccess.NONE.asByte(), Integer.MAX_VALUE, Integer.MAX_VALUE / 3).asBytes();
+        entry = f.entryFromStorable(null, null, raw, 0, raw.length);
+        assertEquals(Long.toHexString(creationTime), Long.toHexString(entry.getCreationTime()));
+        assertEquals(TSLastAccess.NONE, entry.getLastAccessUpdateMethod());
+        assertEquals(Integer.MAX_VALUE, entry.getMinTTLSinceAccessSecs());
+        assertEquals(Integer.MAX_VALUE/3, entry.getMaxTTLSecs());
+
+        raw = f.createMetadata(1000L, TSLastAccess.SIMPLE.asByte(), 0, 20).asBytes();
+        BasicTSMetadataCursor cursor = f.metadataCursor();
+        f.decodeMetadata(null, raw, 0, raw.length, cursor);
+        assertEquals(BasicTSEntryConverter.V_METADATA_VERSION_2, cursor.getVersion());
+        assertEquals(1000L, cursor.getCreationTime());
+        assertEquals(TSLastAccess.SIMPLE, cursor.getLastAccessUpdateMethod());
+        assertEquals(0, cursor.getMinTTLSinceAccessSecs());
+        assertEquals(20, cursor.getMaxTTLSecs());
+        assertTrue(cursor.hasExceededMaxTTL(21000L));
+
+        // and explicit expiration time, earlier than max-TTL would indicate
+        raw = f.createMetadata(1000L, TSLastAccess.NONE.asByte(), 10, 20, 5500L).asBytes();
+        f.decodeMetadata(null, raw, 0, raw.length, cursor);
+        assertEquals(5500L, cursor.getExplicitExpirationTime());
+        assertFalse(cursor.hasExceededMaxTTL(5499L));
+        assertTrue(cursor.hasExceededMaxTTL(5500L));
+        BasicTSEntry tsEntry = f.entryFromStorable(null, null, raw, 0, raw.length);
+        assertEquals(5500L, tsEntry.getExpirationTime());
+    }
+
+    public void testMetadataV1WithV2Converter()
+    {
+        BasicTSEntryConverter f1 = new BasicTSEntryConverter(BasicTSKeyConverter.defaultInstance());
+        BasicTSEntryConverter f2 = f1.withMetadataVersion(2);
+        assertEquals(2, f2.getMetadataVersion());
+        byte[] raw = f1.createMetadata(1000L, TSLastAccess.SIMPLE.asByte(), 10, 20).asBytes();
+        BasicTSMetadataCursor cursor = f2.metadataCursor();
+        f2.decodeMetadata(null, raw, 0, raw.length, cursor);
+        assertEquals(BasicTSEntryConverter.V_METADATA_VERSION_1, cursor.getVersion());
+        assertEquals(1000L, cursor.getCreationTime());
+        assertEquals(TSLastAccess.SIMPLE, cursor.getLastAccessUpdateMethod());
+        assertEquals(10, cursor.getMinTTLSinceAccessSecs());
+        assertEquals(20, cursor.getMaxTTLSecs());
+
+        // and migration should produce equivalent v2 metadata
+        byte[] migrated = f2.createMetadata(cursor).asBytes();
+        assertEquals(BasicTSEntryConverter.V_METADATA_VERSION_2, migrated[0]);
+        f2.decodeMetadata(null, migrated, 0, migrated.length, cursor);
+        assertEquals(1000L, cursor.getCreationTime());
+        assertEquals(TSLastAccess.SIMPLE, cursor.getLastAccessUpdateMethod());
+        assertEquals(10, cursor.getMinTTLSinceAccessSecs());
+        assertEquals(20, cursor.getMaxTTLSecs());
+    }
 }
@@ -0,0 +1,126 @@
+package com.fasterxml.transistore.service;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.skife.config.TimeSpan;
+
+import com.fasterxml.storemate.shared.StorableKey;
+
+import com.fasterxml.transistore.service.cfg.CleanupConfig;
+import com.fasterxml.transistore.service.cleanup.ExpirationIndex;
+
+public class TestExpirationIndex extends TestCase
+{
+    public void testBuckets()
+    {
+        CleanupConfig config = new CleanupConfig();
+        config.expirationBucketSize = new TimeSpan("1s");
+        ExpirationIndex index = new ExpirationIndex(config, new BasicTSEntryConverter(), 1000L);
+        assertFalse(index.isComplete());
+
+        index.add(key("a"), 1500L);
+        index.add(key("b"), 1999L);
+        index.add(key("c"), 2000L);
+        // duplicates within bucket only counted once
+        index.add(key("a"), 1500L);
+        assertEquals(3, index.size());
+
+        // nothing until bucket has fully passed
+        assertEquals(0, index.removeExpired(1999L, 100).size());
+        List<StorableKey> keys = index.removeExpired(2000L, 100);
+        assertEquals(2, keys.size());
+        assertTrue(keys.contains(key("a")));
+        assertTrue(keys.contains(key("b")));
+        assertEquals(1, index.size());
+
+        keys = index.removeExpired(10000L, 100);
+        assertEquals(1, keys.size());
+        assertEquals(key("c"), keys.get(0));
+        assertEquals(0, index.size());
+    }
+
+    public void testBoundedRemoval()
+    {
+        CleanupConfig config = new CleanupConfig();
+        config.expirationBucketSize = new TimeSpan("1s");
+        ExpirationIndex index = new ExpirationIndex(config, new BasicTSEntryConverter(), 1000L);
+        for (int i = 0; i < 5; ++i) {
+            index.add(key("a"+i), 1500L);
+        }
+        index.add(key("b"), 2500L);
+
+        // even within a bucket, no more keys than requested are removed
+        List<StorableKey> keys = index.removeExpired(5000L, 2);
+        assertEquals(2, keys.size());
+        assertEquals(4, index.size());
+        keys = index.removeExpired(5000L, 2);
+        assertEquals(2, keys.size());
+        // last of first bucket, and then the next bucket
+        keys = index.removeExpired(5000L, 2);
+        assertEquals(2, keys.size());
+        assertTrue(keys.contains(key("b")));
+        assertEquals(0, index.size());
+        assertEquals(0, index.removeExpired(5000L, 2).size());
+    }
+
+    public void testOverflow()
+    {
+        CleanupConfig config = new CleanupConfig();
+        config.maxIndexedEntries = 2;
+        ExpirationIndex index = new ExpirationIndex(config, new BasicTSEntryConverter(), 1000L);
+        index.fullScanStarted();
+        index.add(key("a"), 1000L);
+        index.add(key("b"), 1000L);
+        index.fullScanCompleted();
+        assertTrue(index.isComplete());
+
+        // and once max size is exceeded, can not be used until next full scan
+        index.add(key("c"), 1000L);
+        assertFalse(index.isComplete());
+        index.fullScanStarted();
+        assertEquals(0, index.size());
+        index.add(key("c"), 1000L);
+        index.fullScanCompleted();
+        assertTrue(index.isComplete());
+        assertEquals(1, index.size());
+    }
+
+    public void testDisabledIfScanOverflows()
+    {
+        CleanupConfig config = new CleanupConfig();
+        config.maxIndexedEntries = 2;
+        ExpirationIndex index = new ExpirationIndex(config, new BasicTSEntryConverter(), 1000L);
+        index.fullScanStarted();
+        index.add(key("a"), 1000L);
+        index.add(key("b"), 1000L);
+        index.add(key("c"), 1000L);
+        // contents are dropped right away
+        assertEquals(0, index.size());
+        index.fullScanCompleted();
+        assertFalse(index.isComplete());
+        assertTrue(index.isDisabled());
+
+        // and store being too big to index, index is not used any more
+        index.fullScanStarted();
+        index.add(key("a"), 1000L);
+        index.fullScanCompleted();
+        assertFalse(index.isComplete());
+        assertEquals(0, index.size());
+    }
+
+    public void testMaxSizeFromHeap()
+    {
+        CleanupConfig config = new CleanupConfig();
+        final long expected = (long) (Runtime.getRuntime().maxMemory() * config.expirationIndexHeapShare)
+                / ExpirationIndex.ESTIMATED_BYTES_PER_ENTRY;
+        assertEquals(Math.min(expected, Integer.MAX_VALUE), ExpirationIndex.maxEntries(config), 1.0);
+        config.maxIndexedEntries = 1000;
+        assertEquals(1000, ExpirationIndex.maxEntries(config));
+    }
+
+    private StorableKey key(String str) {
+        return new StorableKey(str.getBytes());
+    }
+}
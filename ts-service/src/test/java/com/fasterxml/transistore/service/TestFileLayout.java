@@ -0,0 +1,110 @@
+package com.fasterxml.transistore.service;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.shared.TimeMaster;
+import com.fasterxml.storemate.shared.compress.Compression;
+import com.fasterxml.storemate.store.file.FileManagerConfig;
+import com.fasterxml.storemate.store.file.FileReference;
+
+import com.fasterxml.transistore.basic.BasicTSKeyConverter;
+import com.fasterxml.transistore.service.cfg.BasicTSFileManager;
+import com.fasterxml.transistore.service.cfg.FileLayoutConfig;
+import com.fasterxml.transistore.service.cfg.FileReclaimerConfig;
+import com.fasterxml.transistore.service.cleanup.FileReclaimer;
+
+public class TestFileLayout extends TestCase
+{
+    // 2013-02-01 10:30 UTC
+    private final static long CREATED = 1359714600000L;
+
+    public void testHashLayout() throws Exception
+    {
+        File root = _tempDir();
+        FileLayoutConfig layout = new FileLayoutConfig();
+        layout.type = FileLayoutConfig.Type.HASH;
+        layout.hashDirsPerLevel = 4;
+        FileManagerConfig config = new FileManagerConfig(root);
+        config.maxFilesPerDirectory = 2;
+        BasicTSFileManager files = new BasicTSFileManager(config, layout, null, _fixedTime(CREATED));
+        assertTrue(files.usesHashLayout());
+
+        // 4 x 4 sub-directories, 2 files per each on average: 32 files per "NNN" dir
+        for (int i = 0; i < 40; ++i) {
+            StorableKey key = BasicTSKeyConverter.defaultInstance().construct("key"+i).asStorableKey();
+            FileReference ref = files.createStorageFile(key, Compression.NONE, CREATED);
+            String[] parts = ref.getReference().split("/");
+            assertEquals(6, parts.length);
+            assertEquals("2013-02-01", parts[0]);
+            assertEquals("10:30", parts[1]);
+            assertEquals((i < 32) ? "000" : "001", parts[2]);
+            assertTrue(Arrays.asList("00", "01", "02", "03").contains(parts[3]));
+            assertTrue(Arrays.asList("00", "01", "02", "03").contains(parts[4]));
+            // file is in the sub-directory reference points to
+            assertEquals(ref.getFile().getParentFile().getName(), parts[4]);
+            assertTrue(ref.getFile().getParentFile().isDirectory());
+            assertEquals(ref.getFile().getAbsoluteFile(),
+                    files.derefenceFile(ref.getReference()).getAbsoluteFile());
+        }
+    }
+
+    public void testReclaimEitherLayout() throws Exception
+    {
+        File root = _tempDir();
+        File timeDir = new File(root, "2013-02-01/10:30");
+        File plainDir = new File(timeDir, "000");
+        File hashDir = new File(timeDir, "001/0a/03");
+        assertTrue(plainDir.mkdirs());
+        assertTrue(hashDir.mkdirs());
+        File f1 = _file(plainDir, "a");
+        File f2 = _file(hashDir, "b");
+
+        // "now" is 2013-02-01 12:00 UTC; min age is 1 hour
+        FileReclaimer reclaimer = new FileReclaimer(new FileReclaimerConfig(), root,
+                _fixedTime(1359720000000L));
+        assertTrue(reclaimer.reclaim(f2, 1));
+        assertEquals(1, reclaimer.deleteQueued());
+        // hash sub-directories and "001" removed; time dir still has "000"
+        assertFalse(new File(timeDir, "001").exists());
+        assertTrue(plainDir.exists());
+        assertEquals(3, reclaimer.metrics().deletedDirs);
+
+        assertTrue(reclaimer.reclaim(f1, 1));
+        assertEquals(1, reclaimer.deleteQueued());
+        assertFalse(timeDir.getParentFile().exists());
+        assertTrue(root.exists());
+    }
+
+    private File _file(File dir, String name) throws Exception
+    {
+        File f = new File(dir, name);
+        assertTrue(f.createNewFile());
+        return f;
+    }
+
+    private File _tempDir() throws Exception
+    {
+        File dir = File.createTempFile("layout", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private TimeMaster _fixedTime(final long now)
+    {
+        return new TimeMaster() {
+            @Override
+            public long currentTimeMillis() { return now; }
+
+            @Override
+            public void sleep(long waitTime) throws InterruptedException {
+                Thread.sleep(waitTime);
+            }
+        };
+    }
+}
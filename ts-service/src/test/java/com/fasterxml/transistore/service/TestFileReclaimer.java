@@ -0,0 +1,99 @@
+package com.fasterxml.transistore.service;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import junit.framework.TestCase;
+
+import com.fasterxml.storemate.shared.TimeMaster;
+
+import com.fasterxml.transistore.service.cfg.FileReclaimerConfig;
+import com.fasterxml.transistore.service.cleanup.FileReclaimer;
+import com.fasterxml.transistore.service.cleanup.FileReclaimerMetrics;
+
+public class TestFileReclaimer extends TestCase
+{
+    public void testDirTime() throws Exception
+    {
+        // 2013-02-01 10:30 UTC
+        assertEquals(1359714600000L, FileReclaimer.dirTime("2013-02-01", "10:30"));
+        assertEquals(0L, FileReclaimer.dirTime("2013-02-01", "1030"));
+        assertEquals(0L, FileReclaimer.dirTime("2013/02/01", "10:30"));
+        assertEquals(0L, FileReclaimer.dirTime("2013-xx-01", "10:30"));
+    }
+
+    public void testDeleteAndRemoveDirs() throws Exception
+    {
+        File root = _tempDir();
+        // one old enough data dir, one too new to remove
+        File oldDir = new File(root, "2013-02-01/10:30/000");
+        File newDir = new File(root, "2013-02-01/11:50/001");
+        assertTrue(oldDir.mkdirs());
+        assertTrue(newDir.mkdirs());
+        File f1 = _file(oldDir, "a", 10);
+        File f2 = _file(oldDir, "b", 20);
+        File f3 = _file(newDir, "c", 30);
+
+        FileReclaimerConfig config = new FileReclaimerConfig();
+        config.maxQueuedFiles = 2;
+        // "now" is 2013-02-01 12:00 UTC; min age is 1 hour
+        FileReclaimer reclaimer = new FileReclaimer(config, root, _fixedTime(1359720000000L));
+        assertTrue(reclaimer.reclaim(f1, 10));
+        assertTrue(reclaimer.reclaim(f2, 20));
+        // queue full: caller has to handle
+        assertFalse(reclaimer.reclaim(f3, 30));
+
+        assertEquals(2, reclaimer.deleteQueued());
+        assertFalse(f1.exists());
+        assertFalse(f2.exists());
+        // "000" and "10:30" removed, but date dir still has the newer dir
+        assertFalse(oldDir.exists());
+        assertFalse(oldDir.getParentFile().exists());
+        assertTrue(newDir.exists());
+
+        assertTrue(reclaimer.reclaim(f3, 30));
+        assertEquals(1, reclaimer.deleteQueued());
+        assertFalse(f3.exists());
+        // too new to remove
+        assertTrue(newDir.exists());
+
+        FileReclaimerMetrics metrics = reclaimer.metrics();
+        assertEquals(3L, metrics.queuedFiles);
+        assertEquals(1L, metrics.rejectedFiles);
+        assertEquals(3L, metrics.deletedFiles);
+        assertEquals(60L, metrics.deletedBytes);
+        assertEquals(2L, metrics.deletedDirs);
+        assertEquals(0, metrics.queued);
+    }
+
+    private TimeMaster _fixedTime(final long now)
+    {
+        return new TimeMaster() {
+            @Override
+            public long currentTimeMillis() { return now; }
+
+            @Override
+            public void sleep(long waitTime) throws InterruptedException {
+                Thread.sleep(waitTime);
+            }
+        };
+    }
+
+    private File _tempDir() throws Exception
+    {
+        File dir = File.createTempFile("reclaimer", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private File _file(File dir, String name, int size) throws Exception
+    {
+        File f = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(f);
+        out.write(new byte[size]);
+        out.close();
+        return f;
+    }
+}
@@ -0,0 +1,108 @@
+package com.fasterxml.transistore.service;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.skife.config.TimeSpan;
+
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.shared.TimeMaster;
+import com.fasterxml.storemate.shared.compress.Compression;
+import com.fasterxml.storemate.store.file.DefaultFilenameConverter;
+import com.fasterxml.storemate.store.file.FileManagerConfig;
+import com.fasterxml.storemate.store.file.FileReference;
+
+import com.fasterxml.transistore.service.cfg.BasicTSFileManager;
+import com.fasterxml.transistore.service.cfg.FileTierConfig;
+import com.fasterxml.transistore.service.throttle.ThrottlingContext;
+
+public class TestFileTiers extends TestCase
+{
+    private final StorableKey KEY = new StorableKey("abc".getBytes());
+
+    public void testPlacement() throws Exception
+    {
+        File root = _tempDir();
+        FileTierConfig hot = _tier("hot", new File(root, "hot"));
+        hot.maxEntryTTL = new TimeSpan("1h");
+        hot.maxSize = 1000000L;
+        FileTierConfig cold = _tier("cold", new File(root, "cold"));
+        cold.minEntryTTL = new TimeSpan("7d");
+
+        BasicTSFileManager files = new BasicTSFileManager(new FileManagerConfig(new File(root, "main")),
+                Arrays.asList(hot, cold), TimeMaster.nonTestInstance(), new DefaultFilenameConverter());
+        assertEquals(3, files.getTiers().size());
+        final long now = System.currentTimeMillis();
+
+        // no context: default root
+        FileReference ref = files.createStorageFile(KEY, Compression.NONE, now);
+        _verify(files, ref, new File(root, "main"), false);
+
+        ThrottlingContext ctxt = ThrottlingContext.bind(0L, null);
+        try {
+            ctxt.setMaxTTLSecs(60);
+            ctxt.setContentLength(5000L);
+            _verify(files, files.createStorageFile(KEY, Compression.NONE, now),
+                    new File(root, "hot"), true);
+            // too big for hot tier
+            ctxt.setContentLength(5000000L);
+            _verify(files, files.createStorageFile(KEY, Compression.NONE, now),
+                    new File(root, "main"), false);
+            // unknown length: not for hot tier either
+            ctxt.setContentLength(-1L);
+            _verify(files, files.createStorageFile(KEY, Compression.NONE, now),
+                    new File(root, "main"), false);
+            ctxt.setMaxTTLSecs(30L * 24 * 3600);
+            _verify(files, files.createStorageFile(KEY, Compression.NONE, now),
+                    new File(root, "cold"), true);
+        } finally {
+            ThrottlingContext.unbind();
+        }
+    }
+
+    public void testInvalidConfig() throws Exception
+    {
+        File root = _tempDir();
+        try {
+            new BasicTSFileManager(new FileManagerConfig(root),
+                    Arrays.asList(_tier("a/b", root)), TimeMaster.nonTestInstance());
+            fail("Should not pass");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("a/b"));
+        }
+        try {
+            new BasicTSFileManager(new FileManagerConfig(root),
+                    Arrays.asList(_tier("default", root)), TimeMaster.nonTestInstance());
+            fail("Should not pass");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("Duplicate"));
+        }
+    }
+
+    private void _verify(BasicTSFileManager files, FileReference ref, File expRoot, boolean prefixed)
+    {
+        assertTrue(ref.getFile().getAbsolutePath().startsWith(expRoot.getAbsolutePath()+File.separator));
+        assertEquals(prefixed, ref.getReference().startsWith("@"));
+        assertEquals(ref.getFile().getAbsoluteFile(),
+                files.derefenceFile(ref.getReference()).getAbsoluteFile());
+    }
+
+    private FileTierConfig _tier(String name, File dataRoot)
+    {
+        FileTierConfig config = new FileTierConfig();
+        config.name = name;
+        config.dataRoot = dataRoot;
+        return config;
+    }
+
+    private File _tempDir() throws Exception
+    {
+        File dir = File.createTempFile("tiers", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+        dir.deleteOnExit();
+        return dir;
+    }
+}
@@ -0,0 +1,90 @@
+package com.fasterxml.transistore.service;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.shared.TimeMaster;
+import com.fasterxml.storemate.shared.compress.Compression;
+import com.fasterxml.storemate.store.file.FileManager;
+import com.fasterxml.storemate.store.file.FileManagerConfig;
+
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSKeyConverter;
+import com.fasterxml.transistore.service.cfg.BasicTSFileManager;
+import com.fasterxml.transistore.service.cfg.BasicTSFilenameConverter;
+
+public class TestFilenameConverter extends TestCase
+{
+    private final BasicTSKeyConverter KEYS = BasicTSKeyConverter.defaultInstance();
+
+    private final BasicTSFilenameConverter CONV = new BasicTSFilenameConverter(KEYS);
+
+    private final BasicTSKey[] TEST_KEYS = new BasicTSKey[] {
+            KEYS.construct("simple/path.txt"),
+            KEYS.construct("customer", "some path/with \"quotes\"\\and\tcontrols"),
+            KEYS.construct("p\u00e4rt", "caf\u00e9/\u20ac100/\ud83d\ude00.jpg"),
+            KEYS.construct(""),
+    };
+
+    public void testMatchesDecodedPath()
+    {
+        for (BasicTSKey key : TEST_KEYS) {
+            StorableKey raw = key.asStorableKey();
+            assertEquals(_decodedFilename(key), CONV.createFilename(raw));
+        }
+    }
+
+    public void testTruncation()
+    {
+        StorableKey raw = TEST_KEYS[2].asStorableKey();
+        final String full = _decodedFilename(TEST_KEYS[2]);
+        char[] buffer = new char[100];
+        for (int end = 0; end <= full.length(); ++end) {
+            int len = CONV.appendFilename(raw, buffer, 0, end);
+            assertEquals(full.substring(0, end), new String(buffer, 0, len));
+        }
+    }
+
+    public void testSameFilenamesAsFileManager() throws Exception
+    {
+        for (int maxLength : new int[] { 40, 240 }) {
+            for (BasicTSKey key : TEST_KEYS) {
+                FileManagerConfig config = new FileManagerConfig(_tempDir());
+                config.maxFilenameLength = maxLength;
+                FileManager plain = new FileManager(config, TimeMaster.nonTestInstance(), CONV);
+                BasicTSFileManager files = new BasicTSFileManager(config, TimeMaster.nonTestInstance(), CONV);
+                final long now = System.currentTimeMillis();
+                for (int i = 0; i < 3; ++i) {
+                    StorableKey raw = key.asStorableKey();
+                    assertEquals(plain.createStorageFile(raw, Compression.LZF, now).getFile().getName(),
+                            files.createStorageFile(raw, Compression.LZF, now).getFile().getName());
+                }
+            }
+        }
+    }
+
+    // Reference implementation that decodes path first
+    private String _decodedFilename(BasicTSKey key)
+    {
+        StringBuilder sb = new StringBuilder();
+        if (key.getPartitionIdLength() > 0) {
+            sb.append(key.getPartitionIdLength());
+        }
+        sb.append(':');
+        for (char c : key.getPartitionAndPath().toCharArray()) {
+            sb.append((c > 0x20 && c < 0x7F && c != '/' && c != '"' && c != '\\') ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    private File _tempDir() throws Exception
+    {
+        File dir = File.createTempFile("files", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+        dir.deleteOnExit();
+        return dir;
+    }
+}
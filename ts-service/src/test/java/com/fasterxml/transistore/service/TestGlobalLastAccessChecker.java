@@ -0,0 +1,197 @@
+package com.fasterxml.transistore.service;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import org.skife.config.TimeSpan;
+
+import com.fasterxml.storemate.shared.ByteContainer;
+import com.fasterxml.storemate.shared.IpAndPort;
+import com.fasterxml.storemate.shared.compress.Compression;
+import com.fasterxml.storemate.store.Storable;
+
+import com.fasterxml.clustermate.api.KeyRange;
+import com.fasterxml.clustermate.api.KeySpace;
+import com.fasterxml.clustermate.service.cluster.ClusterPeer;
+
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSKeyConverter;
+import com.fasterxml.transistore.service.cleanup.GlobalLastAccessChecker;
+import com.fasterxml.transistore.service.cleanup.GlobalLastAccessChecker.Candidate;
+import com.fasterxml.transistore.service.lastaccess.BasicTSLastAccessConverter;
+import com.fasterxml.transistore.service.lastaccess.LastAccessRequest;
+import com.fasterxml.transistore.service.lastaccess.LastAccessResponse;
+
+public class TestGlobalLastAccessChecker extends TestCase
+{
+    private final BasicTSKeyConverter _keyConverter = BasicTSKeyConverter.defaultInstance();
+
+    private final BasicTSEntryConverter _entryConverter = new BasicTSEntryConverter();
+
+    private final KeySpace _keyspace = new KeySpace(360);
+
+    public void testUnreachablePeer()
+    {
+        BasicTSKey key = _keyConverter.construct("unreachable");
+        // peer has no response to give
+        FakePeer peer = new FakePeer(7001, _keyspace.fullRange(), null);
+        TestChecker checker = new TestChecker(peer);
+        checker.addCandidate(_metadata(key, TSLastAccess.SIMPLE), 1000L);
+
+        List<Candidate> result = checker.checkCandidates();
+        assertEquals(1, result.size());
+        // can not verify, so must not be removed
+        assertEquals(GlobalLastAccessChecker.UNKNOWN, result.get(0).globalLastAccess);
+        assertEquals(1, peer.requests.size());
+        assertFalse(checker.hasCandidates());
+    }
+
+    public void testNewerAccessByPeer()
+    {
+        BasicTSKey key1 = _keyConverter.construct("newer");
+        BasicTSKey key2 = _keyConverter.construct("older");
+        FakePeer peer = new FakePeer(7001, _keyspace.fullRange(), new long[] { 5000L, 500L });
+        TestChecker checker = new TestChecker(peer);
+        checker.addCandidate(_metadata(key1, TSLastAccess.SIMPLE), 1000L);
+        checker.addCandidate(_metadata(key2, TSLastAccess.SIMPLE), 1000L);
+
+        List<Candidate> result = checker.checkCandidates();
+        assertEquals(2, result.size());
+        // latest access of any node is used: for first entry, that of peer
+        assertEquals(5000L, result.get(0).globalLastAccess);
+        assertEquals(1000L, result.get(1).globalLastAccess);
+
+        // and entry accessed more recently by peer is retained
+        BasicTSMetadataCursor md = _metadata(key1, TSLastAccess.SIMPLE);
+        final long now = 1000L * (md.getMinTTLSinceAccessSecs() + 2L);
+        assertTrue(md.hasExceededLastAccessTTL(now, result.get(0).localLastAccess));
+        assertFalse(md.hasExceededLastAccessTTL(now, result.get(0).globalLastAccess));
+    }
+
+    public void testPeerOutsideRangeNotQueried()
+    {
+        BasicTSKey key = _keyConverter.construct("ranged");
+        final int hash = _keyConverter.routingHashFor(key);
+        KeyRange covering = _keyspace.range(0, 180);
+        KeyRange other = _keyspace.range(180, 180);
+        if (!covering.contains(hash)) {
+            KeyRange tmp = covering;
+            covering = other;
+            other = tmp;
+        }
+        FakePeer inRange = new FakePeer(7001, covering, new long[] { 3000L });
+        FakePeer outOfRange = new FakePeer(7002, other, new long[] { 9000L });
+        TestChecker checker = new TestChecker(inRange, outOfRange);
+        checker.addCandidate(_metadata(key, TSLastAccess.SIMPLE), 1000L);
+
+        List<Candidate> result = checker.checkCandidates();
+        assertEquals(3000L, result.get(0).globalLastAccess);
+        assertEquals(1, inRange.requests.size());
+        assertEquals(0, outOfRange.requests.size());
+    }
+
+    public void testGroupedKeysRequestedOnce()
+    {
+        BasicTSKey key1 = _keyConverter.construct("group1", "a");
+        BasicTSKey key2 = _keyConverter.construct("group1", "b");
+        BasicTSKey key3 = _keyConverter.construct("group2", "c");
+        FakePeer peer = new FakePeer(7001, _keyspace.fullRange(), new long[] { 4000L, 6000L });
+        TestChecker checker = new TestChecker(peer);
+        checker.addCandidate(_metadata(key1, TSLastAccess.GROUPED), 1000L);
+        checker.addCandidate(_metadata(key2, TSLastAccess.GROUPED), 1000L);
+        checker.addCandidate(_metadata(key3, TSLastAccess.GROUPED), 1000L);
+
+        List<Candidate> result = checker.checkCandidates();
+        assertEquals(1, peer.requests.size());
+        // entries of the same group share timestamp, so only included once
+        assertEquals(2, peer.requests.get(0).size());
+        assertEquals(4000L, result.get(0).globalLastAccess);
+        assertEquals(4000L, result.get(1).globalLastAccess);
+        assertEquals(6000L, result.get(2).globalLastAccess);
+    }
+
+    public void testGroupedKeysWithoutPartitionNotShared()
+    {
+        BasicTSKey key1 = _keyConverter.construct("a");
+        BasicTSKey key2 = _keyConverter.construct("b");
+        FakePeer peer = new FakePeer(7001, _keyspace.fullRange(), new long[] { 4000L, 6000L });
+        TestChecker checker = new TestChecker(peer);
+        checker.addCandidate(_metadata(key1, TSLastAccess.GROUPED), 1000L);
+        checker.addCandidate(_metadata(key2, TSLastAccess.GROUPED), 1000L);
+
+        List<Candidate> result = checker.checkCandidates();
+        // no partition id, no group: both need to be requested
+        assertEquals(2, peer.requests.get(0).size());
+        assertEquals(4000L, result.get(0).globalLastAccess);
+        assertEquals(6000L, result.get(1).globalLastAccess);
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper methods, classes
+    /**********************************************************************
+     */
+
+    private BasicTSMetadataCursor _metadata(BasicTSKey key, TSLastAccess method)
+    {
+        byte[] md = _entryConverter.createMetadata(0L, method.asByte(), 60, 3600).asBytes();
+        Storable raw = new Storable(key.asStorableKey(), ByteContainer.simple(md), 0L, 0,
+                Compression.NONE, 0, 0, 0, -1L, 0, md.length, md.length, 0);
+        return _entryConverter.metadataCursor().read(raw);
+    }
+
+    private static class TestChecker extends GlobalLastAccessChecker
+    {
+        private final List<ClusterPeer> _testPeers;
+
+        public TestChecker(FakePeer... peers) {
+            super(null, BasicTSKeyConverter.defaultInstance(), new BasicTSLastAccessConverter(),
+                    null, 100, new TimeSpan("1s"));
+            _testPeers = new ArrayList<ClusterPeer>(Arrays.asList(peers));
+        }
+
+        @Override
+        protected List<ClusterPeer> _peers() {
+            return _testPeers;
+        }
+
+        @Override
+        protected LastAccessResponse _fetch(ClusterPeer peer, LastAccessRequest request) {
+            return ((FakePeer) peer).fetch(request);
+        }
+    }
+
+    private static class FakePeer extends ClusterPeer
+    {
+        private final IpAndPort _address;
+
+        private final KeyRange _range;
+
+        private final long[] _lastAccess;
+
+        public final List<LastAccessRequest> requests = new ArrayList<LastAccessRequest>();
+
+        public FakePeer(int port, KeyRange range, long[] lastAccess) {
+            _address = new IpAndPort("http", "localhost", port);
+            _range = range;
+            _lastAccess = lastAccess;
+        }
+
+        public LastAccessResponse fetch(LastAccessRequest request) {
+            requests.add(request);
+            if (_lastAccess == null) {
+                return null;
+            }
+            return new LastAccessResponse(Arrays.copyOf(_lastAccess, request.size()));
+        }
+
+        @Override public int getFailCount() { return 0; }
+        @Override public void resetFailCount() { }
+        @Override public long getSyncedUpTo() { return 0L; }
+        @Override public IpAndPort getAddress() { return _address; }
+        @Override public KeyRange getActiveRange() { return _range; }
+        @Override public KeyRange getTotalRange() { return _range; }
+        @Override public KeyRange getSyncRange() { return _range; }
+    }
+}
@@ -0,0 +1,145 @@
+package com.fasterxml.transistore.service;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+import org.skife.config.TimeSpan;
+
+import com.fasterxml.clustermate.service.store.StoredEntry;
+
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSKeyConverter;
+import com.fasterxml.transistore.service.cfg.LastAccessBufferConfig;
+import com.fasterxml.transistore.service.lastaccess.LastAccessBuffer;
+import com.fasterxml.transistore.service.lastaccess.LastAccessBufferMetrics;
+
+public class TestLastAccessBuffer extends TestCase
+{
+    public void testCoalescing()
+    {
+        LastAccessBufferConfig config = new LastAccessBufferConfig();
+        config.stripes = 3; // should be rounded up to 4
+        config.flushInterval = new TimeSpan("1h");
+        InMemoryLastAccessStore store = new InMemoryLastAccessStore();
+        // note: not started, so need to flush explicitly
+        LastAccessBuffer buffer = new LastAccessBuffer(store, config);
+
+        BasicTSEntry b = entry("b");
+        buffer.recordAccess(b, 2000L);
+        buffer.recordAccess(entry("a"), 1000L);
+        buffer.recordAccess(b, 3000L);
+        // older timestamp must not replace newer one
+        buffer.recordAccess(b, 2500L);
+        assertEquals(0, store.updates.size());
+
+        LastAccessBufferMetrics metrics = buffer.metrics();
+        assertEquals(4L, metrics.hits);
+        assertEquals(2L, metrics.coalesced);
+        assertEquals(2, metrics.pending);
+
+        assertEquals(2, buffer.flush());
+        assertEquals(2, store.updates.size());
+        // written in key order
+        assertTrue(store.updates.get(0).compareTo(store.updates.get(1)) < 0);
+        assertEquals(1000L, store.findLastAccessTime(entry("a")));
+        assertEquals(3000L, store.findLastAccessTime(b));
+
+        metrics = buffer.metrics();
+        assertEquals(1L, metrics.flushes);
+        assertEquals(2L, metrics.flushedEntries);
+        assertEquals(0, metrics.pending);
+
+        // and nothing more to flush
+        assertEquals(0, buffer.flush());
+    }
+
+    public void testGroupedCoalescing()
+    {
+        InMemoryLastAccessStore store = new InMemoryLastAccessStore();
+        LastAccessBuffer buffer = new LastAccessBuffer(store, new LastAccessBufferConfig());
+
+        // all entries of a partition share the same last-access timestamp
+        buffer.recordAccess(groupedEntry("p1", "a"), 1000L);
+        buffer.recordAccess(groupedEntry("p1", "b"), 2000L);
+        buffer.recordAccess(groupedEntry("p2", "a"), 1500L);
+        assertEquals(1L, buffer.metrics().coalesced);
+        assertEquals(2, buffer.flush());
+
+        assertEquals(2000L, store.findLastAccessTime(groupedEntry("p1", "c")));
+        assertEquals(1500L, store.findLastAccessTime(groupedEntry("p2", "b")));
+        // but separate from simple last-access entries
+        assertEquals(0L, store.findLastAccessTime(entry("p1")));
+    }
+
+    public void testGroupedWithoutPartition()
+    {
+        InMemoryLastAccessStore store = new InMemoryLastAccessStore();
+        LastAccessBuffer buffer = new LastAccessBuffer(store, new LastAccessBufferConfig());
+
+        // without partition id there is no group, so entries tracked one by one
+        BasicTSKey key = BasicTSKeyConverter.defaultInstance().construct("a");
+        BasicTSEntry a = new BasicTSEntry(key, null, 100L, 10, 100, TSLastAccess.GROUPED);
+        buffer.recordAccess(a, 1000L);
+        buffer.recordAccess(groupedEntry("p1", "b"), 2000L);
+        assertEquals(0L, buffer.metrics().coalesced);
+        assertEquals(2, buffer.flush());
+
+        assertEquals(1000L, store.findLastAccessTime(a));
+        key = BasicTSKeyConverter.defaultInstance().construct("b");
+        assertEquals(0L, store.findLastAccessTime(new BasicTSEntry(key, null, 100L, 10, 100, TSLastAccess.GROUPED)));
+    }
+
+    public void testPendingAccessTime()
+    {
+        final LastAccessBuffer[] bufferRef = new LastAccessBuffer[1];
+        final List<Long> seenDuringFlush = new ArrayList<Long>();
+        InMemoryLastAccessStore store = new InMemoryLastAccessStore() {
+            @Override
+            public void updateLastAccess(StoredEntry<BasicTSKey> entry, long timestamp) {
+                // timestamps being flushed must remain visible until written
+                seenDuringFlush.add(bufferRef[0].pendingAccessTime(entry.getKey(),
+                        entry.getLastAccessUpdateMethod()));
+                super.updateLastAccess(entry, timestamp);
+            }
+        };
+        LastAccessBuffer buffer = new LastAccessBuffer(store, new LastAccessBufferConfig());
+        bufferRef[0] = buffer;
+
+        BasicTSEntry a = entry("a");
+        assertEquals(0L, buffer.pendingAccessTime(a.getKey(), TSLastAccess.SIMPLE));
+        buffer.recordAccess(a, 1000L);
+        buffer.recordAccess(a, 3000L);
+        buffer.recordAccess(groupedEntry("p1", "a"), 2000L);
+        assertEquals(3000L, buffer.pendingAccessTime(a.getKey(), TSLastAccess.SIMPLE));
+        // not yet written to store
+        assertEquals(0L, store.findLastAccessTime(a));
+        // grouped ones shared by all entries of the group
+        assertEquals(2000L, buffer.pendingAccessTime(groupedEntry("p1", "b").getKey(), TSLastAccess.GROUPED));
+        assertEquals(0L, buffer.pendingAccessTime(groupedEntry("p2", "a").getKey(), TSLastAccess.GROUPED));
+        // and none for entries that do not track last-access
+        assertEquals(0L, buffer.pendingAccessTime(a.getKey(), TSLastAccess.NONE));
+
+        assertEquals(2, buffer.flush());
+        assertEquals(Arrays.asList(2000L, 3000L), _sorted(seenDuringFlush));
+        // and once written, no longer pending
+        assertEquals(0L, buffer.pendingAccessTime(a.getKey(), TSLastAccess.SIMPLE));
+        assertEquals(3000L, store.findLastAccessTime(a));
+    }
+
+    private List<Long> _sorted(List<Long> values) {
+        List<Long> result = new ArrayList<Long>(values);
+        Collections.sort(result);
+        return result;
+    }
+
+    private BasicTSEntry entry(String path) {
+        BasicTSKey key = BasicTSKeyConverter.defaultInstance().construct(path);
+        return new BasicTSEntry(key, null, 100L, 10, 100, TSLastAccess.SIMPLE);
+    }
+
+    private BasicTSEntry groupedEntry(String partitionId, String path) {
+        BasicTSKey key = BasicTSKeyConverter.defaultInstance().construct(partitionId, path);
+        return new BasicTSEntry(key, null, 100L, 10, 100, TSLastAccess.GROUPED);
+    }
+}
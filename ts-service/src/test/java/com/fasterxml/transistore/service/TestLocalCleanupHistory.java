@@ -0,0 +1,70 @@
+package com.fasterxml.transistore.service;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.fasterxml.transistore.service.cleanup.LocalCleanupHistory;
+import com.fasterxml.transistore.service.cleanup.LocalCleanupMetrics;
+import com.fasterxml.transistore.service.cleanup.LocalCleanupStats;
+
+public class TestLocalCleanupHistory extends TestCase
+{
+    public void testCurrentRun() throws Exception
+    {
+        LocalCleanupHistory history = new LocalCleanupHistory(3);
+        LocalCleanupStats stats = new LocalCleanupStats();
+        stats.markStarted(10000L);
+        history.runStarted(stats);
+        for (int i = 0; i < 30; ++i) {
+            stats.addExpiredMaxTTLEntry();
+        }
+        for (int i = 0; i < 10; ++i) {
+            stats.addExpiredTombstone();
+            stats.addRemainingEntry();
+        }
+
+        // visible while still running
+        LocalCleanupMetrics metrics = history.metrics(12000L);
+        assertNotNull(metrics.current);
+        assertEquals(LocalCleanupMetrics.Outcome.RUNNING, metrics.current.outcome);
+        assertEquals(2000L, metrics.current.duration);
+        assertEquals(50, metrics.current.scanned);
+        assertEquals(40, metrics.current.deleted);
+        assertEquals(25.0, metrics.current.scannedPerSecond, 0.01);
+        assertEquals(20.0, metrics.current.deletedPerSecond, 0.01);
+        assertEquals(0, metrics.recent.size());
+
+        stats.markEnded(14000L);
+        history.runEnded(stats, LocalCleanupMetrics.Outcome.COMPLETED, 20000L);
+        metrics = history.metrics(20000L);
+        assertNull(metrics.current);
+        assertEquals(1L, metrics.runs);
+        assertEquals(1, metrics.recent.size());
+        assertEquals(4000L, metrics.recent.get(0).duration);
+        assertEquals(10.0, metrics.recent.get(0).deletedPerSecond, 0.01);
+    }
+
+    public void testRingBuffer() throws Exception
+    {
+        LocalCleanupHistory history = new LocalCleanupHistory(3);
+        for (int i = 1; i <= 5; ++i) {
+            LocalCleanupStats stats = new LocalCleanupStats();
+            stats.markStarted(i * 1000L);
+            history.runStarted(stats);
+            history.runEnded(stats, (i == 4) ? LocalCleanupMetrics.Outcome.FAILED
+                    : LocalCleanupMetrics.Outcome.COMPLETED, i * 1000L + 500L);
+        }
+        List<LocalCleanupMetrics.Run> recent = history.getRecent();
+        assertEquals(3, recent.size());
+        // latest first
+        assertEquals(5000L, recent.get(0).started);
+        assertEquals(4000L, recent.get(1).started);
+        assertEquals(LocalCleanupMetrics.Outcome.FAILED, recent.get(1).outcome);
+        assertEquals(3000L, recent.get(2).started);
+
+        LocalCleanupMetrics metrics = history.metrics(6000L);
+        assertEquals(5L, metrics.runs);
+        assertEquals(1L, metrics.failedRuns);
+    }
+}
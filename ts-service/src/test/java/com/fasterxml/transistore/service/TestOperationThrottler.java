@@ -0,0 +1,149 @@
+package com.fasterxml.transistore.service;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.skife.config.DataAmount;
+
+import com.fasterxml.storemate.shared.ByteContainer;
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.shared.compress.Compression;
+import com.fasterxml.storemate.store.FileOperationCallback;
+import com.fasterxml.storemate.store.Storable;
+import com.fasterxml.storemate.store.StoreOperationCallback;
+import com.fasterxml.storemate.store.StoreOperationSource;
+
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSKeyConverter;
+import com.fasterxml.transistore.service.cfg.ThrottlingConfig;
+import com.fasterxml.transistore.service.throttle.DeadlineExceededException;
+import com.fasterxml.transistore.service.throttle.ThrottlingContext;
+
+public class TestOperationThrottler extends TestCase
+{
+    public void testReservedFileRead() throws Exception
+    {
+        ThrottlingConfig config = new ThrottlingConfig();
+        config.files.largeFileThreshold = new DataAmount("1kB");
+        config.files.maxConcurrentLarge = 1;
+        final BasicTSOperationThrottler throttler = new BasicTSOperationThrottler(config);
+        final Storable entry = _externalEntry("large", 2000L);
+
+        ThrottlingContext ctxt = ThrottlingContext.bind(100L, null);
+        try {
+            throttler.reserveFileRead(entry);
+            assertEquals(1, throttler.getMetrics().LARGE_FILES.active);
+            // hold on to it, so that next reservation can not succeed
+            ThrottlingContext.Permit held = ctxt.takeFileReadPermit();
+            assertNotNull(held);
+            try {
+                throttler.reserveFileRead(entry);
+                fail("Should have been rejected");
+            } catch (DeadlineExceededException e) {
+                assertTrue(ctxt.wasRejected());
+            }
+            held.release();
+
+            // reserved permit is used by the read (which would otherwise block)
+            throttler.reserveFileRead(entry);
+            Integer active = throttler.performFileRead(StoreOperationSource.REQUEST, 0L, entry, null,
+                    new FileOperationCallback<Integer>() {
+                @Override
+                public Integer perform(long operationTime, StorableKey key, Storable value, File externalFile)
+                        throws IOException {
+                    return throttler.getMetrics().LARGE_FILES.active;
+                }
+            });
+            assertEquals(Integer.valueOf(1), active);
+            assertEquals(0, throttler.getMetrics().LARGE_FILES.active);
+
+            // and unused reservation is released when context is unbound
+            throttler.reserveFileRead(entry);
+            assertEquals(1, throttler.getMetrics().LARGE_FILES.active);
+        } finally {
+            ThrottlingContext.unbind();
+        }
+        assertEquals(0, throttler.getMetrics().LARGE_FILES.active);
+    }
+
+    public void testBackgroundSharesLimit() throws Exception
+    {
+        ThrottlingConfig config = new ThrottlingConfig();
+        config.adaptiveLimits = false;
+        config.get.initialLimit = 1;
+        final BasicTSOperationThrottler throttler = new BasicTSOperationThrottler(config);
+        StorableKey key = BasicTSKeyConverter.defaultInstance().construct("bg").asStorableKey();
+
+        // background operation takes its permit from the same limiter as requests
+        assertEquals(Integer.valueOf(1), _getInFlight(throttler, StoreOperationSource.SYNC, key));
+        assertEquals(0, throttler.getMetrics().GET.inFlight);
+
+        // but with background throttling disabled, nothing is throttled
+        config.background.enabled = false;
+        final BasicTSOperationThrottler unthrottled = new BasicTSOperationThrottler(config);
+        assertEquals(Integer.valueOf(0), _getInFlight(unthrottled, StoreOperationSource.SYNC, key));
+    }
+
+    public void testPartitionFromContextKey() throws Exception
+    {
+        final BasicTSOperationThrottler throttler = new BasicTSOperationThrottler();
+        BasicTSKey key = BasicTSKeyConverter.defaultInstance().construct("part", "path");
+        // without context, decoded from raw key
+        assertEquals("part", throttler._partitionFor(key.asStorableKey()));
+
+        ThrottlingContext ctxt = ThrottlingContext.bind(0L, null);
+        try {
+            ctxt.setEntryKey(key);
+            // with it, memoized one used for same key, but not for other keys
+            assertSame(key.getPartitionId(), throttler._partitionFor(key.asStorableKey()));
+            BasicTSKey other = BasicTSKeyConverter.defaultInstance().construct("other", "path");
+            assertEquals("other", throttler._partitionFor(other.asStorableKey()));
+        } finally {
+            ThrottlingContext.unbind();
+        }
+    }
+
+    public void testUnthrottledHardDelete() throws Exception
+    {
+        final BasicTSOperationThrottler throttler = new BasicTSOperationThrottler();
+        StorableKey key = BasicTSKeyConverter.defaultInstance().construct("del").asStorableKey();
+        final int[] inFlight = new int[2];
+        StoreOperationCallback<Storable> cb = new StoreOperationCallback<Storable>() {
+            @Override
+            public Storable perform(long operationTime, StorableKey key, Storable value) {
+                inFlight[0] = throttler.getMetrics().PUT.inFlight;
+                inFlight[1] = throttler.getMetrics().BACKGROUND.PUT.active;
+                return null;
+            }
+        };
+        // clean up paces deletions itself, so they must not count against PUT limits
+        throttler.performHardDelete(StoreOperationSource.CLEANUP, 0L, key, cb);
+        assertEquals(0, inFlight[0]);
+        assertEquals(0, inFlight[1]);
+    }
+
+    private Integer _getInFlight(final BasicTSOperationThrottler throttler,
+            StoreOperationSource source, StorableKey key) throws Exception
+    {
+        final int[] inFlight = new int[1];
+        throttler.performGet(source, 0L, key, new StoreOperationCallback<Storable>() {
+            @Override
+            public Storable perform(long operationTime, StorableKey key, Storable value) {
+                inFlight[0] = throttler.getMetrics().GET.inFlight;
+                return null;
+            }
+        });
+        return Integer.valueOf(inFlight[0]);
+    }
+
+    private Storable _externalEntry(String path, long storageLength)
+    {
+        StorableKey key = BasicTSKeyConverter.defaultInstance().construct(path).asStorableKey();
+        // no metadata, only the external path
+        final int pathLength = 10;
+        return new Storable(key, ByteContainer.simple(new byte[pathLength]), 0L, 0,
+                Compression.NONE, pathLength, 0, 0, -1L, 0, 0, 0, storageLength);
+    }
+}
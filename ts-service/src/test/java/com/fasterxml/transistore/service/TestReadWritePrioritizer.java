@@ -0,0 +1,97 @@
+package com.fasterxml.transistore.service;
+
+import junit.framework.TestCase;
+
+import com.fasterxml.transistore.service.cfg.FileThrottlingConfig;
+
+public class TestReadWritePrioritizer extends TestCase
+{
+    public void testLimits() throws Exception
+    {
+        FileThrottlingConfig config = new FileThrottlingConfig();
+        config.guaranteedReads = 1;
+        config.maxReads = 2;
+        config.guaranteedWrites = 1;
+        config.maxWrites = 1;
+        config.maxConcurrent = 2;
+        final ReadWriteOperationPrioritizer prio = new ReadWriteOperationPrioritizer(config);
+
+        ReadWriteOperationPrioritizer.Lease r1 = prio.obtainReadLease();
+        // guaranteed write is fine even if over total
+        ReadWriteOperationPrioritizer.Lease w1 = prio.obtainWriteLease();
+        assertEquals(1, prio.metrics().activeReads);
+        assertEquals(1, prio.metrics().activeWrites);
+
+        // but second read must wait
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    prio.obtainReadLease().returnLease();
+                } catch (InterruptedException e) { }
+            }
+        });
+        t.start();
+        for (int i = 0; i < 100 && prio.metrics().queuedReads == 0; ++i) {
+            Thread.sleep(10L);
+        }
+        assertEquals(1, prio.metrics().queuedReads);
+        w1.returnLease();
+        t.join(2000L);
+        assertFalse(t.isAlive());
+        r1.returnLease();
+        assertEquals(0, prio.metrics().activeReads);
+        assertEquals(0, prio.metrics().activeWrites);
+        assertEquals(0, prio.metrics().queuedReads);
+    }
+
+    public void testTuningNeedsBothWaits() throws Exception
+    {
+        FileThrottlingConfig config = new FileThrottlingConfig();
+        ReadWriteOperationPrioritizer prio = new ReadWriteOperationPrioritizer(config);
+        final double initial = prio.metrics().readShare;
+
+        // only reads queued: must keep the ratio, not jump to all reads
+        prio._reads.addWait(1000L);
+        prio._tuneRatio();
+        assertEquals(initial, prio.metrics().readShare);
+
+        // but once writes are queued as well, waits of both are considered
+        prio._writes.addWait(3000L);
+        prio._tuneRatio();
+        double share = prio.metrics().readShare;
+        assertTrue("Read share should decrease from "+initial+", was "+share, share < initial);
+        assertFalse(prio._reads.hasWaits());
+        assertFalse(prio._writes.hasWaits());
+    }
+
+    public void testInterruptedWhileQueued() throws Exception
+    {
+        FileThrottlingConfig config = new FileThrottlingConfig();
+        config.guaranteedWrites = 1;
+        config.maxWrites = 1;
+        final ReadWriteOperationPrioritizer prio = new ReadWriteOperationPrioritizer(config);
+        ReadWriteOperationPrioritizer.Lease w1 = prio.obtainWriteLease();
+        final boolean[] interrupted = new boolean[1];
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    prio.obtainWriteLease().returnLease();
+                } catch (InterruptedException e) {
+                    interrupted[0] = true;
+                }
+            }
+        });
+        t.start();
+        for (int i = 0; i < 100 && prio.metrics().queuedWrites == 0; ++i) {
+            Thread.sleep(10L);
+        }
+        t.interrupt();
+        t.join(2000L);
+        assertTrue(interrupted[0]);
+        assertEquals(0, prio.metrics().queuedWrites);
+        w1.returnLease();
+        assertEquals(0, prio.metrics().activeWrites);
+    }
+}
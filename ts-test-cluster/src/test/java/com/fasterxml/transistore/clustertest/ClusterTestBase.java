@@ -4,12 +4,12 @@ import java.io.*;
 
 import com.fasterxml.clustermate.client.StoreClientBootstrapper;
 import com.fasterxml.clustermate.service.cfg.ServiceConfig;
-import com.fasterxml.storemate.backend.bdbje.BDBJEBuilder;
 import com.fasterxml.storemate.backend.bdbje.BDBJEConfig;
 import com.fasterxml.storemate.backend.leveldb.LevelDBBuilder;
 import com.fasterxml.storemate.backend.leveldb.LevelDBConfig;
 import com.fasterxml.storemate.store.backend.StoreBackendConfig;
 import com.fasterxml.transistore.client.BasicTSClientConfig;
+import com.fasterxml.transistore.dw.backend.BatchingBDBJEBuilder;
 
 /**
  * Shared base class for unit tests, regardless of backend DB
@@ -46,7 +46,7 @@ public abstract class ClusterTestBase extends GenericClusterTestBase
 
     protected StoreBackendConfig bdbBackendConfig(ServiceConfig serviceConfig, File dataDir)
     {
-        serviceConfig.storeBackendType = BDBJEBuilder.class;
+        serviceConfig.storeBackendType = BatchingBDBJEBuilder.class;
         BDBJEConfig config = new BDBJEConfig(dataDir);
         return config;
     }
@@ -3,12 +3,15 @@ package com.fasterxml.transistore.clustertest.base.dual;
 import static org.junit.Assert.assertArrayEquals;
 
 import java.io.*;
-import java.util.Arrays;
+import java.util.*;
 
 import org.junit.Assert;
 
 import io.dropwizard.util.Duration;
 
+import org.skife.config.TimeSpan;
+
+import com.fasterxml.storemate.shared.ByteContainer;
 import com.fasterxml.storemate.shared.IpAndPort;
 import com.fasterxml.storemate.shared.compress.Compression;
 import com.fasterxml.storemate.shared.compress.Compressors;
@@ -25,13 +28,23 @@ import com.fasterxml.clustermate.client.operation.PutOperationResult;
 import com.fasterxml.clustermate.dw.RunMode;
 import com.fasterxml.clustermate.service.cfg.ClusterConfig;
 import com.fasterxml.clustermate.service.cluster.ClusterPeer;
+import com.fasterxml.clustermate.std.JdkHttpClientPathBuilder;
 
 import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.basic.BasicTSPaths;
+import com.fasterxml.transistore.basic.JdkJsonPoster;
 import com.fasterxml.transistore.client.*;
 import com.fasterxml.transistore.clustertest.ClusterTestBase;
 import com.fasterxml.transistore.clustertest.StoreForTests;
 import com.fasterxml.transistore.clustertest.util.TimeMasterForClusterTesting;
 import com.fasterxml.transistore.dw.BasicTSServiceConfigForDW;
+import com.fasterxml.transistore.service.TSLastAccess;
+import com.fasterxml.transistore.service.cleanup.GlobalLastAccessChecker;
+import com.fasterxml.transistore.service.cleanup.GlobalLastAccessChecker.Candidate;
+import com.fasterxml.transistore.service.lastaccess.BasicTSLastAccessConverter;
+import com.fasterxml.transistore.service.lastaccess.LastAccessAccessor;
+import com.fasterxml.transistore.service.lastaccess.LastAccessRequest;
+import com.fasterxml.transistore.service.lastaccess.LastAccessResponse;
 
 /**
  * Simple CRUD tests for two-node setup (with 100% overlapping key range),
@@ -189,6 +202,145 @@ public abstract class TwoNodesSimpleTestBase extends ClusterTestBase
         }
     }
     
+    /**
+     * Test to verify that last-access timestamps of peers are fetched
+     * (via last-access end point) when checking whether an entry may be
+     * expired based on last-access TTL. Nodes do not track last-access
+     * here, so peers report no accesses; but peer must be reachable for
+     * the global last-access to be known.
+     */
+    public void testLastAccessFromPeer() throws Exception
+    {
+        initTestLogging();
+        ClusterConfig clusterConfig = twoNodeClusterConfig(endpoint1, endpoint2, 100);
+
+        BasicTSServiceConfigForDW serviceConfig1 = createNodeConfig("fullStack2LastAccess_1", true, TEST_PORT1, clusterConfig);
+        final TimeMasterForClusterTesting timeMaster = new TimeMasterForClusterTesting(200L);
+        StoreForTests service1 = StoreForTests.createTestService(serviceConfig1, timeMaster, RunMode.TEST_MINIMAL);
+
+        BasicTSServiceConfigForDW serviceConfig2 = createNodeConfig("fullStack2LastAccess_2", true, TEST_PORT2, clusterConfig);
+        StoreForTests service2 = StoreForTests.createTestService(serviceConfig2, timeMaster, RunMode.TEST_MINIMAL);
+        startServices(service1, service2);
+
+        try {
+            final BasicTSKey KEY = contentKey("testSimple2/lastAccess/item");
+            final BasicTSKey KEY2 = contentKey("testSimple2/lastAccess/other");
+            final TimeSpan timeout = new TimeSpan("5s");
+            LastAccessAccessor accessor = new LastAccessAccessor(service1.getServiceStuff(),
+                    (BasicTSPaths) service1.getServiceStuff().getPathStrategy());
+
+            // first, direct access; entries without info have timestamp of 0
+            LastAccessRequest request = new LastAccessRequest();
+            request.addEntry(KEY.asStorableKey(), TSLastAccess.SIMPLE.asInt());
+            request.addEntry(KEY2.asStorableKey(), TSLastAccess.NONE.asInt());
+            LastAccessResponse response = accessor.fetchLastAccessTimes(endpoint2, request, timeout);
+            assertNotNull(response);
+            assertEquals(2, response.size());
+            assertEquals(0L, response.lastAccess[0]);
+            assertEquals(0L, response.lastAccess[1]);
+
+            // requests with mismatching number of methods are rejected as invalid
+            LastAccessRequest invalid = new LastAccessRequest();
+            invalid.addEntry(KEY.asStorableKey(), TSLastAccess.SIMPLE.asInt());
+            invalid.addEntry(KEY2.asStorableKey(), TSLastAccess.SIMPLE.asInt());
+            invalid.methods.remove(1);
+            JdkJsonPoster<LastAccessRequest,LastAccessResponse> poster = new JdkJsonPoster<LastAccessRequest,LastAccessResponse>(
+                    service1.getServiceStuff().jsonWriter(LastAccessRequest.class),
+                    service1.getServiceStuff().jsonReader(LastAccessResponse.class));
+            String url = ((BasicTSPaths) service1.getServiceStuff().getPathStrategy())
+                    .appendSyncLastAccessPath(new JdkHttpClientPathBuilder(endpoint2)
+                            .addPathSegments(serviceConfig2.getServiceConfig().servicePathRoot))
+                    .toString();
+            try {
+                poster.post(url, invalid, timeout.getMillis(), null);
+                fail("Should not accept request with mismatching methods");
+            } catch (JdkJsonPoster.Failure e) {
+                assertEquals(400, e.statusCode);
+            }
+
+            // and then via checker: since peer has no newer access, local one is used
+            byte[] md = _entryConverter.createMetadata(100L, TSLastAccess.SIMPLE.asByte(), 60, 3600).asBytes();
+            Storable raw = new Storable(KEY.asStorableKey(), ByteContainer.simple(md), 0L, 0,
+                    Compression.NONE, 0, 0, 0, -1L, 0, md.length, md.length, 0);
+            GlobalLastAccessChecker checker = new GlobalLastAccessChecker(service1.getCluster(),
+                    _keyConverter, new BasicTSLastAccessConverter(), accessor, 100, timeout);
+            checker.addCandidate(_entryConverter.metadataCursor().read(raw), 150L);
+            List<Candidate> result = checker.checkCandidates();
+            assertEquals(1, result.size());
+            assertEquals(150L, result.get(0).globalLastAccess);
+
+            // but if peer can not be reached, global last-access is not known
+            service2._stop();
+            service2.waitForStopped();
+            checker.addCandidate(_entryConverter.metadataCursor().read(raw), 150L);
+            result = checker.checkCandidates();
+            assertEquals(GlobalLastAccessChecker.UNKNOWN, result.get(0).globalLastAccess);
+        } finally {
+            service1._stop();
+            service2._stop();
+            service1.waitForStopped();
+            service2.waitForStopped();
+        }
+    }
+
+    /**
+     * Test to verify that batch GETs that fail as a whole are retried
+     * on the other node.
+     */
+    public void testBatchGetFailover() throws Exception
+    {
+        initTestLogging();
+        ClusterConfig clusterConfig = twoNodeClusterConfig(endpoint1, endpoint2, 100);
+
+        BasicTSServiceConfigForDW serviceConfig1 = createNodeConfig("fullStack2BatchFailover_1", true, TEST_PORT1, clusterConfig);
+        final TimeMasterForClusterTesting timeMaster = new TimeMasterForClusterTesting(200L);
+        StoreForTests service1 = StoreForTests.createTestService(serviceConfig1, timeMaster, RunMode.TEST_MINIMAL);
+
+        BasicTSServiceConfigForDW serviceConfig2 = createNodeConfig("fullStack2BatchFailover_2", true, TEST_PORT2, clusterConfig);
+        StoreForTests service2 = StoreForTests.createTestService(serviceConfig2, timeMaster, RunMode.TEST_MINIMAL);
+        startServices(service1, service2);
+
+        try {
+            BasicTSClientConfig clientConfig = new BasicTSClientConfigBuilder()
+                    .setMinimalOksToSucceed(2)
+                    .setOptimalOks(2)
+                    .setMaxOks(2)
+                    .setAllowRetries(false)
+                    .build();
+            BasicTSClient client = createClient(clientConfig, endpoint1, endpoint2);
+
+            List<BasicTSKey> keys = new ArrayList<BasicTSKey>();
+            for (int i = 0; i < 10; ++i) {
+                BasicTSKey key = contentKey("testSimple2/batch/entry"+i);
+                final byte[] data = ("Entry #"+i).getBytes("UTF-8");
+                PutOperationResult result = client.putContent(null, key, data).completeOptimally().finish();
+                // first call to a node may reuse a stale pooled connection from an earlier test; PUTs are idempotent
+                if (!result.succeededOptimally()) {
+                    result = client.putContent(null, key, data).completeOptimally().finish();
+                }
+                assertTrue("Entry #"+i+" should be stored on both nodes; first fail: "+result.getFirstFail(),
+                        result.succeededOptimally());
+                keys.add(key);
+            }
+            Map<BasicTSKey,byte[]> contents = client.getContents(keys);
+            assertEquals(keys, new ArrayList<BasicTSKey>(contents.keySet()));
+
+            // with one node down, batches sent to it must be retried on the other one
+            service1._stop();
+            service1.waitForStopped();
+            contents = client.getContents(keys);
+            assertEquals(keys, new ArrayList<BasicTSKey>(contents.keySet()));
+            for (int i = 0; i < 10; ++i) {
+                assertArrayEquals(("Entry #"+i).getBytes("UTF-8"), contents.get(keys.get(i)));
+            }
+        } finally {
+            service1._stop();
+            service2._stop();
+            service1.waitForStopped();
+            service2.waitForStopped();
+        }
+    }
+
     /**
      * Test to verify that it is possible to force a partial completion,
      * aimed at giving more control over concurrency setting.
@@ -451,6 +603,10 @@ public abstract class TwoNodesSimpleTestBase extends ClusterTestBase
              * 1 msec virtual sleep)
              */
             timeMaster.advanceCurrentTimeMillis(1L); // to 201
+            // and sync threads do their first (empty) round; otherwise they might
+            // only list entries after next advance, and copy the first entry too early
+            _waitForFirstSync(service1);
+            _waitForFirstSync(service2);
 	
             // just for fun, use a space, slash and ampersand in key (to ensure correct encoding)
             final BasicTSKey KEY1 = contentKey("testSimple2a");
@@ -587,6 +743,16 @@ public abstract class TwoNodesSimpleTestBase extends ClusterTestBase
         service2.waitForStopped();
     }
 
+    protected void _waitForFirstSync(StoreForTests store) throws InterruptedException
+    {
+        for (ClusterPeer peer : store.getCluster().getPeers()) {
+            for (int i = 0; i < 200 && peer.getSyncedUpTo() <= 0L; ++i) {
+                Thread.sleep(10L);
+            }
+            assertTrue("Peer for "+peer.getAddress()+" did not complete first sync", peer.getSyncedUpTo() > 0L);
+        }
+    }
+
     protected boolean _verifyClusterPeer(String desc, StoreForTests store,
             long minSyncedUpTo, boolean fail)
     {
@@ -6,12 +6,15 @@ import java.util.Arrays;
 import static org.junit.Assert.assertArrayEquals;
 
 import com.fasterxml.storemate.shared.IpAndPort;
+import com.fasterxml.storemate.store.Storable;
 import com.fasterxml.storemate.store.StoreConfig;
+import com.fasterxml.storemate.store.StoreOperationSource;
 
 import com.fasterxml.clustermate.client.operation.PutOperationResult;
 import com.fasterxml.clustermate.dw.RunMode;
 
 import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.service.BasicTSEntry;
 import com.fasterxml.transistore.client.*;
 import com.fasterxml.transistore.clustertest.ClusterTestBase;
 import com.fasterxml.transistore.clustertest.StoreForTests;
@@ -28,6 +31,7 @@ public abstract class SingleNodeExpirationTestBase extends ClusterTestBase
 	final static int PORT_BASE = PORT_BASE_SINGLE + PORT_DELTA_EXPIRATION;
 
 	private final static int TEST_PORT1 = PORT_BASE;
+     private final static int TEST_PORT_EXPLICIT = PORT_BASE+1;
      private final static int TEST_PORT2 = PORT_BASE+2;
      private final static int TEST_PORT3 = PORT_BASE+3;
 
@@ -205,6 +209,50 @@ public abstract class SingleNodeExpirationTestBase extends ClusterTestBase
 		}
 	}
 
+     /**
+      * Test to verify that absolute expiration time passed with PUT is
+      * stored in entry metadata.
+      */
+     public void testExplicitExpirationTime() throws Exception
+     {
+         initTestLogging(); // reduce noise
+         final long START_TIME = 100L;
+         final TimeMasterForClusterTesting timeMaster = new TimeMasterForClusterTesting(START_TIME);
+         BasicTSServiceConfigForDW serviceConfig = createSingleNodeConfig("expire5",
+                 true, TEST_PORT_EXPLICIT);
+         serviceConfig.getServiceConfig().overrideDefaultMaxTTL("1h");
+         // explicit expiration time is only stored as such by version 2 format
+         serviceConfig.getServiceConfig().setMetadataVersion(2);
+         StoreForTests service = StoreForTests.createTestService(serviceConfig,
+                 timeMaster, RunMode.TEST_FULL);
+         startServices(service);
+
+         BasicTSClient client = createClient(_clientConfig(),
+                 new IpAndPort("http", "localhost", TEST_PORT_EXPLICIT));
+         final BasicTSKey KEY = contentKey("test/expire/explicit");
+         final long EXPIRES = START_TIME + 5000L;
+
+         try {
+             PutOperationResult result = client.putContent(new TSPutCallParameters().withExpirationTime(EXPIRES),
+                     KEY, "Expiring data".getBytes("UTF-8"))
+                     .completeOptimally()
+                     .finish();
+             assertTrue(result.succeededOptimally());
+
+             Storable raw = service.getEntryStore().findEntry(StoreOperationSource.ADMIN_TOOL,
+                     null, KEY.asStorableKey());
+             assertNotNull(raw);
+             BasicTSEntry entry = contentEntry(raw);
+             assertEquals(3600, entry.getMaxTTLSecs());
+             assertEquals(EXPIRES, entry.explicitExpirationTime);
+         } finally {
+             service.prepareForStop();
+             try { Thread.sleep(20L); } catch (InterruptedException e) { }
+             service._stop();
+             service.waitForStopped();
+         }
+     }
+
      private BasicTSClientConfig _clientConfig() {
          return new BasicTSClientConfigBuilder()
          .setAllowRetries(false) // no retries!
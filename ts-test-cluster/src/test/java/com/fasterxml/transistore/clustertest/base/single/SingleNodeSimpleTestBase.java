@@ -1,7 +1,7 @@
 package com.fasterxml.transistore.clustertest.base.single;
 
 import java.io.*;
-import java.util.Arrays;
+import java.util.*;
 
 import static org.junit.Assert.assertArrayEquals;
 
@@ -18,6 +18,7 @@ import com.fasterxml.clustermate.client.operation.HeadOperationResult;
 import com.fasterxml.clustermate.client.operation.PutOperationResult;
 import com.fasterxml.clustermate.dw.RunMode;
 
+import com.fasterxml.transistore.basic.BasicTSBatchResponse;
 import com.fasterxml.transistore.basic.BasicTSKey;
 import com.fasterxml.transistore.client.*;
 import com.fasterxml.transistore.clustertest.ClusterTestBase;
@@ -280,6 +281,64 @@ public abstract class SingleNodeSimpleTestBase extends ClusterTestBase
         }        
     }
 
+    /**
+     * Test for verifying that batch GET returns small entries (inlined or not),
+     * and that client falls back to individual GETs for others.
+     */
+    public void testBatchGet() throws Exception
+    {
+        initTestLogging(); // reduce noise
+        BasicTSServiceConfigForDW serviceConfig = createSingleNodeConfig("fullStack1Batch", true, PORT_1);
+        StoreForTests service = StoreForTests.createTestService(serviceConfig,
+                new TimeMasterForClusterTesting(100L), RunMode.TEST_MINIMAL);
+        startServices(service);
+
+        BasicTSClientConfig clientConfig = new BasicTSClientConfigBuilder()
+                .setOptimalOks(1).setMaxOks(1)
+                .setAllowRetries(false) // no retries!
+                .build();
+        final IpAndPort endpoint = new IpAndPort("http", "localhost", PORT_1);
+        final BasicTSKey SMALL_KEY = contentKey("testBatch/small");
+        final BasicTSKey FILE_KEY = contentKey("testBatch/file");
+        final BasicTSKey BIG_KEY = contentKey("testBatch/big");
+        final BasicTSKey MISSING_KEY = contentKey("testBatch/missing");
+
+        try {
+            BasicTSClient client = createClient(clientConfig, endpoint);
+            final byte[] SMALL = "Some small entry".getBytes("UTF-8");
+            final byte[] FILE = biggerSomewhatCompressibleData(MAX_PAYLOAD_IN_MEMORY + 100);
+            final byte[] BIG = biggerSomewhatCompressibleData(200000);
+            _verifyPutResult(client.putContent(null, SMALL_KEY, SMALL).completeOptimally().finish());
+            _verifyPutResult(client.putContent(null, FILE_KEY, FILE).completeOptimally().finish());
+            _verifyPutResult(client.putContent(null, BIG_KEY, BIG).completeOptimally().finish());
+
+            List<BasicTSKey> keys = Arrays.asList(MISSING_KEY, BIG_KEY, FILE_KEY, SMALL_KEY);
+
+            // First, batch call itself: big entry not included
+            BasicTSBatchResponse resp = new TSBatchGetter(clientConfig).getEntries(endpoint, keys, 5000L);
+            assertNotNull(resp);
+            assertEquals(4, resp.size());
+            assertEquals(BasicTSBatchResponse.STATUS_NOT_FOUND, resp.entries.get(0).status);
+            assertEquals(BasicTSBatchResponse.STATUS_TOO_LARGE, resp.entries.get(1).status);
+            assertNull(resp.entries.get(1).data);
+            assertEquals(BasicTSBatchResponse.STATUS_OK, resp.entries.get(2).status);
+            assertArrayEquals(FILE, resp.entries.get(2).data);
+            assertEquals(BasicTSBatchResponse.STATUS_OK, resp.entries.get(3).status);
+            assertArrayEquals(SMALL, resp.entries.get(3).data);
+
+            // and then via client, which fetches big one separately
+            Map<BasicTSKey,byte[]> contents = client.getContents(keys);
+            assertEquals(Arrays.asList(BIG_KEY, FILE_KEY, SMALL_KEY),
+                    new ArrayList<BasicTSKey>(contents.keySet()));
+            assertArrayEquals(BIG, contents.get(BIG_KEY));
+            assertArrayEquals(FILE, contents.get(FILE_KEY));
+            assertArrayEquals(SMALL, contents.get(SMALL_KEY));
+        } finally {
+            service._stop();
+            service.waitForStopped();
+        }
+    }
+
     private void _verifyPutResult(PutOperationResult result)
     {
         if (!result.succeededOptimally()) {
@@ -0,0 +1,184 @@
+package com.fasterxml.transistore.clustertest.bdb_jdk;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.storemate.backend.bdbje.BDBJEConfig;
+import com.fasterxml.storemate.shared.ByteContainer;
+import com.fasterxml.storemate.shared.StorableKey;
+import com.fasterxml.storemate.shared.TimeMaster;
+import com.fasterxml.storemate.store.*;
+import com.fasterxml.storemate.store.backend.StoreBackend;
+import com.fasterxml.storemate.store.backend.StoreBackendConfig;
+import com.fasterxml.storemate.store.file.FileManagerConfig;
+import com.fasterxml.storemate.store.impl.StorableStoreImpl;
+
+import com.fasterxml.clustermate.client.StoreClientBootstrapper;
+import com.fasterxml.clustermate.service.cfg.ServiceConfig;
+
+import com.fasterxml.transistore.basic.BasicTSKey;
+import com.fasterxml.transistore.client.BasicTSClientConfig;
+import com.fasterxml.transistore.clustertest.ClusterTestBase;
+import com.fasterxml.transistore.dw.backend.BatchingBDBJEBuilder;
+import com.fasterxml.transistore.dw.backend.BatchingBDBJEStoreBackend;
+import com.fasterxml.transistore.service.TSLastAccess;
+import com.fasterxml.transistore.service.cfg.BasicTSFileManager;
+import com.fasterxml.transistore.service.cleanup.LocalCleanupStats;
+import com.fasterxml.transistore.service.cleanup.ThrottlingDeleter;
+import com.fasterxml.transistore.service.store.BatchWriteMutex;
+
+/**
+ * Tests for deleting entries in batches (single transaction per batch),
+ * using actual BDB-JE backend.
+ */
+public class BatchDeletionTest extends ClusterTestBase
+{
+    private final static int ENTRY_COUNT = 20;
+
+    private final TimeMaster _timeMaster = TimeMaster.nonTestInstance();
+
+    private RecordingWriteMutex _writeMutex;
+
+    public void testDeleteEntries() throws Exception
+    {
+        StorableStore store = _createStore("batchDelete1");
+        try {
+            BatchingBDBJEStoreBackend backend = (BatchingBDBJEStoreBackend) store.getBackend();
+            // transactions must have been enabled by builder
+            assertTrue(backend.canDeleteInBatches());
+
+            List<StorableKey> keys = _insertEntries(store);
+            List<StorableKey> toDelete = new ArrayList<StorableKey>(keys.subList(0, 5));
+            // missing entries are simply skipped
+            toDelete.add(contentKey("batch/missing").asStorableKey());
+
+            List<Storable> deleted = backend.deleteEntries(toDelete);
+            assertEquals(5, deleted.size());
+            for (int i = 0; i < 5; ++i) {
+                assertEquals(keys.get(i), deleted.get(i).getKey());
+                assertNull(store.findEntry(StoreOperationSource.REQUEST, null, keys.get(i)));
+            }
+            assertEquals(ENTRY_COUNT - 5, store.getEntryCount());
+        } finally {
+            store.stop();
+        }
+    }
+
+    public void testDeleteBatchWithDeleter() throws Exception
+    {
+        StorableStore store = _createStore("batchDelete2");
+        try {
+            List<StorableKey> keys = _insertEntries(store);
+            List<File> files = new ArrayList<File>();
+            for (StorableKey key : keys) {
+                Storable raw = store.findEntry(StoreOperationSource.REQUEST, null, key);
+                if (raw.hasExternalData()) {
+                    File f = raw.getExternalFile(store.getFileManager());
+                    assertTrue(f.exists());
+                    files.add(f);
+                }
+            }
+            assertEquals(ENTRY_COUNT / 2, files.size());
+
+            LocalCleanupStats stats = new LocalCleanupStats();
+            ThrottlingDeleter.Helpers helpers = new ThrottlingDeleter.Helpers();
+            helpers.writeMutex = _writeMutex;
+            ThrottlingDeleter deleter = new ThrottlingDeleter(LoggerFactory.getLogger(getClass()),
+                    store, stats, new AtomicBoolean(false), helpers);
+            for (StorableKey key : keys) {
+                Storable raw = store.findEntry(StoreOperationSource.REQUEST, null, key);
+                deleter.deleteExpired(_entryConverter.entryFromStorable(raw));
+            }
+            deleter.finish();
+
+            // deleted as a single batch, not one by one
+            assertEquals(1, stats.asMetrics(System.currentTimeMillis(), null).deleteBatches);
+            // but holding just one partition lock at a time
+            assertEquals(1, _writeMutex.maxLockedPartitions);
+            assertEquals(0, stats.asMetrics(System.currentTimeMillis(), null).failedDeleteBatches);
+            assertEquals(0L, store.getEntryCount());
+            // along with external files
+            for (File f : files) {
+                assertFalse("File "+f+" should have been deleted", f.exists());
+            }
+        } finally {
+            store.stop();
+        }
+    }
+
+    /*
+    /**********************************************************************
+    /* Helper methods
+    /**********************************************************************
+     */
+
+    private StorableStore _createStore(String testSuffix) throws Exception
+    {
+        File testRoot = getTestScratchDir(testSuffix, true);
+        StoreConfig storeConfig = new StoreConfig();
+        storeConfig.compressionEnabled = false;
+        storeConfig.maxInlinedStorageSize = 100;
+        // note: transactions not enabled here
+        BDBJEConfig bdbConfig = new BDBJEConfig(new File(testRoot, "v-store"));
+        StoreBackend backend = new BatchingBDBJEBuilder(storeConfig, bdbConfig).buildCreateAndInit();
+        _writeMutex = new RecordingWriteMutex(storeConfig.lockPartitions);
+        StorableStore store = new StorableStoreImpl(storeConfig, backend, _timeMaster,
+                new BasicTSFileManager(new FileManagerConfig(new File(testRoot, "v-files")), _timeMaster),
+                null, _writeMutex);
+        store.start();
+        return store;
+    }
+
+    private List<StorableKey> _insertEntries(StorableStore store) throws Exception
+    {
+        List<StorableKey> keys = new ArrayList<StorableKey>();
+        for (int i = 0; i < ENTRY_COUNT; ++i) {
+            BasicTSKey key = contentKey(String.format("batch/entry%02d", i));
+            // every other entry large enough to be stored as external file
+            byte[] data = new byte[((i & 1) == 0) ? 20 : 500];
+            Arrays.fill(data, (byte) 'x');
+            StorableCreationMetadata stdMetadata = new StorableCreationMetadata(null, 0, 0);
+            ByteContainer customMetadata = _entryConverter.createMetadata(_timeMaster.currentTimeMillis(),
+                    TSLastAccess.NONE.asByte(), 1, 1);
+            StorableCreationResult result = store.insert(StoreOperationSource.REQUEST, null,
+                    key.asStorableKey(), ByteContainer.simple(data), stdMetadata, customMetadata);
+            assertTrue(result.succeeded());
+            keys.add(key.asStorableKey());
+        }
+        assertEquals(ENTRY_COUNT, store.getEntryCount());
+        // deleter sorts entries, so let's do the same to compare results
+        Collections.sort(keys);
+        return keys;
+    }
+
+    static class RecordingWriteMutex extends BatchWriteMutex
+    {
+        public int maxLockedPartitions;
+
+        public RecordingWriteMutex(int n) {
+            super(n, true);
+        }
+
+        @Override
+        public <T> T partitionedWrite(long operationTime, List<StorableKey> keys, BatchCallback<T> cb)
+            throws IOException, StoreException
+        {
+            maxLockedPartitions = Math.max(maxLockedPartitions, partitionsFor(keys).length);
+            return super.partitionedWrite(operationTime, keys, cb);
+        }
+    }
+
+    @Override
+    protected StoreBackendConfig createBackendConfig(ServiceConfig serviceConfig, File dataDir) {
+        return bdbBackendConfig(serviceConfig, dataDir);
+    }
+
+    @Override
+    protected StoreClientBootstrapper<?, ?, ?, ?> createClientBootstrapper(BasicTSClientConfig clientConfig) {
+        return bootstrapperWithJDK(clientConfig);
+    }
+}